@@ -0,0 +1,52 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.exception;
+
+import com.jd.meeop.util.StringUtil;
+
+/**
+ * 缓存加载异常
+ * @ClassName: CacheException
+ * @Description:
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 09:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class CacheException extends RuntimeException{
+	private static final long serialVersionUID = 3961504129071529874L;
+
+	public CacheException(Throwable e) {
+		super(e);
+	}
+	
+	public CacheException(String message) {
+		super(message);
+	}
+	
+	public CacheException(String messageTemplate, Object... params) {
+		super(StringUtil.format(messageTemplate, params));
+	}
+	
+	public CacheException(String message, Throwable throwable) {
+		super(message, throwable);
+	}
+	
+	public CacheException(Throwable throwable, String messageTemplate, Object... params) {
+		super(StringUtil.format(messageTemplate, params), throwable);
+	}
+}
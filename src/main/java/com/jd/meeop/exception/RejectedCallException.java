@@ -0,0 +1,40 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.exception;
+
+import com.jd.meeop.util.StringUtil;
+
+/**
+ * @ClassName: RejectedCallException
+ * @Description:
+ * 调用被保护器拒绝（熔断器打开或并发数超过限制），调用本身未执行
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 11:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class RejectedCallException extends RuntimeException {
+    private static final long serialVersionUID = -3183447561372953861L;
+
+    public RejectedCallException(String message) {
+        super(message);
+    }
+
+    public RejectedCallException(String messageTemplate, Object... params) {
+        super(StringUtil.format(messageTemplate, params));
+    }
+}
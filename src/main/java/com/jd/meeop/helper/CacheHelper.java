@@ -15,9 +15,19 @@
  */
 package com.jd.meeop.helper;
 
+import com.jd.meeop.util.cache.Cache;
+import com.jd.meeop.util.cache.CacheBuilder;
+import com.jd.meeop.util.cache.CacheKey;
+import com.jd.meeop.util.cache.CacheKeyTemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
 /**
  * @ClassName: Project
  * @Description:
+ * 静态方法用于生成标准缓存key；实例方法以相同的key读写进程内缓存{@link Cache}
  * @author: 冷水(Toby)
  * @date: 16-12-12 18:16
  * @mail: zhao.wang@aliyun.com
@@ -36,6 +46,51 @@ public class CacheHelper<T> {
      */
     public static final String CACHE_ENIGMA_ENTITY_PROP_KEY = "enigma_entity:%s:%s:%s";
 
+    /**
+     * 预编译的实体key模板
+     */
+    public static final CacheKeyTemplate ENTITY_KEY_TEMPLATE = CacheKeyTemplate.compile(CACHE_ENIGMA_ENTITY_KEY);
+
+    /**
+     * 预编译的实体属性key模板
+     */
+    public static final CacheKeyTemplate ENTITY_PROP_KEY_TEMPLATE = CacheKeyTemplate.compile(CACHE_ENIGMA_ENTITY_PROP_KEY);
+
+    /**
+     * 已编译的自定义key模板上限，kind通常为常量，超出后不再缓存
+     */
+    private static final int MAX_TEMPLATES = 256;
+
+    /**
+     * 已编译的自定义key模板
+     */
+    private static final ConcurrentMap<String, CacheKeyTemplate> TEMPLATES = new ConcurrentHashMap<String, CacheKeyTemplate>();
+
+    /**
+     * 默认最大缓存条目数
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    /**
+     * 进程内缓存
+     */
+    private final Cache<String, T> cache;
+
+    /**
+     * 构造，使用默认容量的进程内缓存
+     */
+    public CacheHelper() {
+        this(CacheBuilder.<String, T>create().setMaximumSize(DEFAULT_MAXIMUM_SIZE).build());
+    }
+
+    /**
+     * 构造
+     * @param cache 进程内缓存
+     */
+    public CacheHelper(Cache<String, T> cache) {
+        this.cache = cache;
+    }
+
     /**
      * 生成一个标准key
      * @param kind 种类
@@ -43,7 +98,8 @@ public class CacheHelper<T> {
      * @return
      */
     public static final String makeCacheKey(String kind,String fix){
-        return String.format(kind,fix);
+        final CacheKeyTemplate template = template(kind, 1);
+        return null == template ? String.format(kind,fix) : template.format(fix);
     }
 
     /**
@@ -54,7 +110,8 @@ public class CacheHelper<T> {
      * @return
      */
     public static final String makeCacheKey(String kind,String fix1,String fix12){
-        return String.format(kind,fix1,fix12);
+        final CacheKeyTemplate template = template(kind, 2);
+        return null == template ? String.format(kind,fix1,fix12) : template.format(fix1, fix12);
     }
 
     /**
@@ -64,7 +121,7 @@ public class CacheHelper<T> {
      * @return
      */
     public static final String makeEntityKeyCacheKey(String entity, Long id){
-        return String.format(CACHE_ENIGMA_ENTITY_KEY,entity.toLowerCase(), id);
+        return ENTITY_KEY_TEMPLATE.format(lowerCase(entity), id);
     }
 
     /**
@@ -75,6 +132,157 @@ public class CacheHelper<T> {
      * @return
      */
     public static final String makeEntityPropKeyCacheKey(String entity, String prop, Object pk){
-        return String.format(CACHE_ENIGMA_ENTITY_PROP_KEY,entity.toLowerCase(),prop, pk);
+        return ENTITY_PROP_KEY_TEMPLATE.format(lowerCase(entity), prop, pk);
+    }
+
+    /**
+     * 生成进程内使用的实体组合key，与{@link #makeEntityKeyCacheKey(String, Long)}一一对应，不构造String
+     * @param entity 实体
+     * @param id 主键值
+     * @return CacheKey
+     */
+    public static final CacheKey entityKey(String entity, Long id){
+        return ENTITY_KEY_TEMPLATE.key(lowerCase(entity), id);
+    }
+
+    /**
+     * 生成进程内使用的实体属性组合key，与{@link #makeEntityPropKeyCacheKey(String, String, Object)}一一对应，不构造String
+     * @param entity 实体
+     * @param prop 属性
+     * @param pk key值
+     * @return CacheKey
+     */
+    public static final CacheKey entityPropKey(String entity, String prop, Object pk){
+        return ENTITY_PROP_KEY_TEMPLATE.key(lowerCase(entity), prop, pk);
+    }
+
+    /**
+     * 获取已编译的key模板
+     * @param kind 模式
+     * @param arity 参数个数
+     * @return 模板，模式无法编译或参数个数不符时返回null，由调用方退回String.format
+     */
+    private static CacheKeyTemplate template(String kind, int arity){
+        CacheKeyTemplate template = TEMPLATES.get(kind);
+        if (null == template) {
+            if (false == CacheKeyTemplate.isCompilable(kind)) {
+                return null;
+            }
+            template = CacheKeyTemplate.compile(kind);
+            if (TEMPLATES.size() < MAX_TEMPLATES) {
+                TEMPLATES.putIfAbsent(kind, template);
+            }
+        }
+        return template.getArity() == arity ? template : null;
+    }
+
+    /**
+     * 转小写，实体名本身已是小写ASCII时直接返回，避免每次生成key都分配新的String
+     * @param entity 实体
+     * @return 小写的实体名
+     */
+    private static String lowerCase(String entity){
+        for (int i = 0; i < entity.length(); i++) {
+            final char c = entity.charAt(i);
+            if (c >= 'A' && c <= 'Z' || c > 127) {
+                return entity.toLowerCase();
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * 获取缓存的实体
+     * @param entity 实体
+     * @param id 主键值
+     * @return 缓存值，不存在返回null
+     */
+    public T getEntity(String entity, Long id) {
+        return cache.getIfPresent(makeEntityKeyCacheKey(entity, id));
+    }
+
+    /**
+     * 缓存实体
+     * @param entity 实体
+     * @param id 主键值
+     * @param value 缓存值
+     */
+    public void putEntity(String entity, Long id, T value) {
+        cache.put(makeEntityKeyCacheKey(entity, id), value);
+    }
+
+    /**
+     * 缓存实体，并指定存活时间
+     * @param entity 实体
+     * @param id 主键值
+     * @param value 缓存值
+     * @param ttl 存活时长
+     * @param unit 时间单位
+     */
+    public void putEntity(String entity, Long id, T value, long ttl, TimeUnit unit) {
+        cache.put(makeEntityKeyCacheKey(entity, id), value, ttl, unit);
+    }
+
+    /**
+     * 移除缓存的实体
+     * @param entity 实体
+     * @param id 主键值
+     * @return 被移除的值
+     */
+    public T invalidateEntity(String entity, Long id) {
+        return cache.invalidate(makeEntityKeyCacheKey(entity, id));
+    }
+
+    /**
+     * 获取缓存的实体属性
+     * @param entity 实体
+     * @param prop 属性
+     * @param pk key值
+     * @return 缓存值，不存在返回null
+     */
+    public T getEntityProp(String entity, String prop, Object pk) {
+        return cache.getIfPresent(makeEntityPropKeyCacheKey(entity, prop, pk));
+    }
+
+    /**
+     * 缓存实体属性
+     * @param entity 实体
+     * @param prop 属性
+     * @param pk key值
+     * @param value 缓存值
+     */
+    public void putEntityProp(String entity, String prop, Object pk, T value) {
+        cache.put(makeEntityPropKeyCacheKey(entity, prop, pk), value);
+    }
+
+    /**
+     * 缓存实体属性，并指定存活时间
+     * @param entity 实体
+     * @param prop 属性
+     * @param pk key值
+     * @param value 缓存值
+     * @param ttl 存活时长
+     * @param unit 时间单位
+     */
+    public void putEntityProp(String entity, String prop, Object pk, T value, long ttl, TimeUnit unit) {
+        cache.put(makeEntityPropKeyCacheKey(entity, prop, pk), value, ttl, unit);
+    }
+
+    /**
+     * 移除缓存的实体属性
+     * @param entity 实体
+     * @param prop 属性
+     * @param pk key值
+     * @return 被移除的值
+     */
+    public T invalidateEntityProp(String entity, String prop, Object pk) {
+        return cache.invalidate(makeEntityPropKeyCacheKey(entity, prop, pk));
+    }
+
+    /**
+     * @return 进程内缓存
+     */
+    public Cache<String, T> getCache() {
+        return cache;
     }
 }
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.helper;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.jd.meeop.exception.CacheException;
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.ThreadUtil;
+import com.jd.meeop.util.bloom.BloomFilter;
+import com.jd.meeop.util.cache.Cache;
+import com.jd.meeop.util.cache.CacheLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 自动加载的缓存辅助类
+ * @ClassName: LoadingCacheHelper
+ * @Description:
+ * 在{@link Cache}之上提供“读穿透”加载：<br>
+ * 1、同一个key的并发未命中共享一次正在进行的加载（single-flight），后端只被访问一次；<br>
+ * 2、{@link #getAll(Collection)}把所有未命中的key合并为一次{@link CacheLoader#loadAll(Collection)}调用；<br>
+ * 3、设置{@link #setRefreshAfterWrite(long, TimeUnit)}后，写入时间超过该时长的条目在被读取时于后台重新加载，
+ * 调用方立即拿到旧值，热点key不会因过期而阻塞；<br>
+ * 4、设置{@link #setKeyFilter(BloomFilter)}后，过滤器判定一定不存在的key直接返回<code>null</code>，不访问后端。<br>
+ * 加载在执行器中进行（默认为{@link ThreadUtil}的公共线程池），每次调用可以指定等待超时
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 09:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class LoadingCacheHelper<K, V> {
+	private final static Logger logger = LoggerFactory.getLogger(LoadingCacheHelper.class);
+
+	/** 默认执行器：ThreadUtil公共线程池 */
+	private static final Executor DEFAULT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			ThreadUtil.execute(command);
+		}
+	};
+
+	private final Cache<K, V> cache;
+	private final CacheLoader<K, V> loader;
+	/** 正在进行的加载 */
+	private final ConcurrentMap<K, LoadFuture<V>> loadings = new ConcurrentHashMap<K, LoadFuture<V>>();
+
+	private volatile Executor executor = DEFAULT_EXECUTOR;
+	/** 默认等待超时（纳秒），0表示一直等待 */
+	private volatile long timeoutNanos;
+	/** 写入后多久触发后台刷新（纳秒），0表示不刷新 */
+	private volatile long refreshAfterWriteNanos;
+	/** 存在的key的布隆过滤器，null表示不过滤 */
+	private volatile BloomFilter keyFilter;
+
+	/**
+	 * 构造
+	 * @param cache 缓存
+	 * @param loader 加载器
+	 */
+	public LoadingCacheHelper(Cache<K, V> cache, CacheLoader<K, V> loader) {
+		AssertUtil.notNull(cache, "cache must not be null");
+		AssertUtil.notNull(loader, "loader must not be null");
+		this.cache = cache;
+		this.loader = loader;
+	}
+
+	// ---------------------------------------------------------------- Setters start
+	/**
+	 * 设置执行加载的执行器
+	 * @param executor 执行器
+	 * @return 自身
+	 */
+	public LoadingCacheHelper<K, V> setExecutor(Executor executor) {
+		AssertUtil.notNull(executor, "executor must not be null");
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * 设置默认等待超时
+	 * @param timeout 超时，小于等于0表示一直等待
+	 * @param unit 时间单位
+	 * @return 自身
+	 */
+	public LoadingCacheHelper<K, V> setTimeout(long timeout, TimeUnit unit) {
+		this.timeoutNanos = timeout > 0 ? unit.toNanos(timeout) : 0;
+		return this;
+	}
+
+	/**
+	 * 设置提前刷新：条目写入超过该时长后，下一次读取会触发后台重新加载，读取方仍立即返回旧值。<br>
+	 * 应小于缓存本身的过期时间，才能让热点key在过期之前被刷新
+	 * @param duration 时长，小于等于0表示不刷新
+	 * @param unit 时间单位
+	 * @return 自身
+	 */
+	public LoadingCacheHelper<K, V> setRefreshAfterWrite(long duration, TimeUnit unit) {
+		this.refreshAfterWriteNanos = duration > 0 ? unit.toNanos(duration) : 0;
+		return this;
+	}
+
+	/**
+	 * 设置存在的key的布隆过滤器（key按toString结果判定），未命中缓存且被判定一定不存在的key不再调用加载器。<br>
+	 * 过滤器应预先装入后端全部key（可通过{@link BloomFilter#readFrom(java.io.InputStream)}在启动时载入），
+	 * 之后经{@link #put(Object, Object)}放入的key会自动加入过滤器
+	 * @param keyFilter 过滤器，<code>null</code>表示不过滤
+	 * @return 自身
+	 */
+	public LoadingCacheHelper<K, V> setKeyFilter(BloomFilter keyFilter) {
+		this.keyFilter = keyFilter;
+		return this;
+	}
+	// ---------------------------------------------------------------- Setters end
+
+	/**
+	 * 获取值，未命中时加载，使用默认超时
+	 * @param key 键
+	 * @return 值，加载器返回<code>null</code>时为<code>null</code>
+	 * @throws CacheException 加载失败或等待超时
+	 */
+	public V get(K key) throws CacheException {
+		return get(key, timeoutNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 获取值，未命中时加载
+	 * @param key 键
+	 * @param timeout 等待超时，小于等于0表示一直等待；超时后加载仍会继续，完成后写入缓存
+	 * @param unit 时间单位
+	 * @return 值，加载器返回<code>null</code>时为<code>null</code>
+	 * @throws CacheException 加载失败或等待超时
+	 */
+	public V get(K key, long timeout, TimeUnit unit) throws CacheException {
+		AssertUtil.notNull(key, "key must not be null");
+		final Cache.Entry<K, V> entry = cache.getEntryIfPresent(key);
+		if (null != entry) {
+			final V value = entry.getValue();
+			refreshIfNeeded(entry, value);
+			return value;
+		}
+		if (definitelyAbsent(key)) {
+			return null;
+		}
+
+		LoadFuture<V> future = loadings.get(key);
+		if (null == future) {
+			final LoadFuture<V> created = new LoadFuture<V>();
+			future = loadings.putIfAbsent(key, created);
+			if (null == future) {
+				future = created;
+				load(key, created);
+			}
+		}
+		return await(key, future, timeout > 0 ? unit.toNanos(timeout) : 0);
+	}
+
+	/**
+	 * 批量获取，使用默认超时
+	 * @param keys 键
+	 * @return 存在的键值对，顺序与传入的键一致
+	 * @throws CacheException 加载失败或等待超时
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) throws CacheException {
+		return getAll(keys, timeoutNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 批量获取，所有未命中且不在加载中的键合并为一次{@link CacheLoader#loadAll(Collection)}
+	 * @param keys 键
+	 * @param timeout 整体等待超时，小于等于0表示一直等待
+	 * @param unit 时间单位
+	 * @return 存在的键值对，顺序与传入的键一致
+	 * @throws CacheException 加载失败或等待超时
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys, long timeout, TimeUnit unit) throws CacheException {
+		final Map<K, V> result = new LinkedHashMap<K, V>(keys.size() * 4 / 3 + 1);
+		final Map<K, LoadFuture<V>> waitings = new LinkedHashMap<K, LoadFuture<V>>();
+		final Map<K, LoadFuture<V>> owned = new LinkedHashMap<K, LoadFuture<V>>();
+		for (K key : keys) {
+			if (result.containsKey(key) || waitings.containsKey(key)) {
+				continue;
+			}
+			final Cache.Entry<K, V> entry = cache.getEntryIfPresent(key);
+			if (null != entry) {
+				final V value = entry.getValue();
+				refreshIfNeeded(entry, value);
+				result.put(key, value);
+				continue;
+			}
+			if (definitelyAbsent(key)) {
+				continue;
+			}
+			LoadFuture<V> future = loadings.get(key);
+			if (null == future) {
+				final LoadFuture<V> created = new LoadFuture<V>();
+				future = loadings.putIfAbsent(key, created);
+				if (null == future) {
+					future = created;
+					// 抢到加载权之前可能已有其他加载完成并写入缓存
+					final V cached = cache.getIfPresent(key);
+					if (null != cached) {
+						loadings.remove(key, created);
+						created.complete(cached);
+						result.put(key, cached);
+						continue;
+					}
+					owned.put(key, created);
+				}
+			}
+			waitings.put(key, future);
+		}
+
+		if (false == owned.isEmpty()) {
+			loadAll(owned);
+		}
+
+		final long timeoutNanos = timeout > 0 ? unit.toNanos(timeout) : 0;
+		final long deadline = System.nanoTime() + timeoutNanos;
+		for (Entry<K, LoadFuture<V>> waiting : waitings.entrySet()) {
+			long remaining = 0;
+			if (timeoutNanos > 0) {
+				remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					// 已超时：结果已就绪的仍可取回，未就绪的立即抛出超时异常
+					remaining = 1;
+				}
+			}
+			final V value = await(waiting.getKey(), waiting.getValue(), remaining);
+			if (null != value) {
+				result.put(waiting.getKey(), value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 放入缓存，该key正在进行的加载或刷新完成后不再覆盖此值
+	 * @param key 键
+	 * @param value 值
+	 */
+	public void put(K key, V value) {
+		supersede(key);
+		cache.put(key, value);
+		final BloomFilter filter = keyFilter;
+		if (null != filter) {
+			filter.put(String.valueOf(key));
+		}
+	}
+
+	/**
+	 * 移除缓存，该key正在进行的加载或刷新完成后不再写回旧数据
+	 * @param key 键
+	 * @return 被移除的值
+	 */
+	public V invalidate(K key) {
+		supersede(key);
+		return cache.invalidate(key);
+	}
+
+	/**
+	 * @return 底层缓存
+	 */
+	public Cache<K, V> getCache() {
+		return cache;
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 异步加载单个key
+	 * @param key 键
+	 * @param future 本次加载的结果
+	 */
+	private void load(final K key, final LoadFuture<V> future) {
+		// 抢到加载权之前可能已有其他加载完成并写入缓存
+		final V cached = cache.getIfPresent(key);
+		if (null != cached) {
+			loadings.remove(key, future);
+			future.complete(cached);
+			return;
+		}
+
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final V value = loader.load(key);
+					if (null != value) {
+						future.putIfCurrent(cache, key, value);
+					}
+					future.complete(value);
+				} catch (Throwable e) {
+					future.fail(e);
+				} finally {
+					loadings.remove(key, future);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 异步批量加载
+	 * @param owned 本次负责加载的键及其结果
+	 */
+	private void loadAll(final Map<K, LoadFuture<V>> owned) {
+		submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final Map<K, V> loaded = loader.loadAll(Collections.unmodifiableSet(owned.keySet()));
+					for (Entry<K, LoadFuture<V>> entry : owned.entrySet()) {
+						final V value = null == loaded ? null : loaded.get(entry.getKey());
+						if (null != value) {
+							entry.getValue().putIfCurrent(cache, entry.getKey(), value);
+						}
+						entry.getValue().complete(value);
+					}
+				} catch (Throwable e) {
+					for (LoadFuture<V> future : owned.values()) {
+						future.fail(e);
+					}
+				} finally {
+					for (Entry<K, LoadFuture<V>> entry : owned.entrySet()) {
+						loadings.remove(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * 使该key正在进行的加载作废：调用方仍拿到加载结果，但结果不再写入缓存，
+	 * 避免晚完成的加载或刷新覆盖之后写入（或移除）的值
+	 * @param key 键
+	 */
+	private void supersede(K key) {
+		final LoadFuture<V> future = loadings.remove(key);
+		if (null != future) {
+			future.supersede();
+		}
+	}
+
+	/**
+	 * @param key 键
+	 * @return 布隆过滤器判定该键一定不存在
+	 */
+	private boolean definitelyAbsent(K key) {
+		final BloomFilter filter = keyFilter;
+		return null != filter && false == filter.mightContain(String.valueOf(key));
+	}
+
+	/**
+	 * 条目写入时间超过刷新时长时，在后台重新加载
+	 * @param entry 条目
+	 * @param oldValue 旧值
+	 */
+	private void refreshIfNeeded(Cache.Entry<K, V> entry, final V oldValue) {
+		final long refreshNanos = refreshAfterWriteNanos;
+		if (refreshNanos <= 0 || System.nanoTime() - entry.getWriteTime() < refreshNanos) {
+			return;
+		}
+		final K key = entry.getKey();
+		final LoadFuture<V> future = new LoadFuture<V>();
+		if (null != loadings.putIfAbsent(key, future)) {
+			// 已在刷新或加载中
+			return;
+		}
+		final Runnable refresh = new Runnable() {
+			@Override
+			public void run() {
+				V value = oldValue;
+				try {
+					final V reloaded = loader.reload(key, oldValue);
+					if (null != reloaded) {
+						future.putIfCurrent(cache, key, reloaded);
+						value = reloaded;
+					}
+				} catch (Throwable e) {
+					logger.warn("Refresh cache key [{}] failed, keep the old value: {}", key, e.getMessage());
+				} finally {
+					loadings.remove(key, future);
+					future.complete(value);
+				}
+			}
+		};
+		try {
+			executor.execute(refresh);
+		} catch (RuntimeException e) {
+			// 执行器拒绝时放弃本次刷新，下次读取再尝试
+			loadings.remove(key, future);
+			future.complete(oldValue);
+		}
+	}
+
+	/**
+	 * 提交任务，执行器拒绝时在当前线程执行
+	 * @param task 任务
+	 */
+	private void submit(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RuntimeException e) {
+			logger.debug("Loader executor rejected task, load in caller thread: {}", e.getMessage());
+			task.run();
+		}
+	}
+
+	/**
+	 * 等待加载结果
+	 * @param key 键
+	 * @param future 结果
+	 * @param timeoutNanos 超时（纳秒），0表示一直等待
+	 * @return 值
+	 */
+	private V await(K key, LoadFuture<V> future, long timeoutNanos) {
+		try {
+			return timeoutNanos > 0 ? future.get(timeoutNanos, TimeUnit.NANOSECONDS) : future.get();
+		} catch (TimeoutException e) {
+			throw new CacheException(e, "Load key [{}] timeout after {}ms", key, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheException(e, "Load key [{}] interrupted", key);
+		} catch (ExecutionException e) {
+			throw new CacheException(e.getCause(), "Load key [{}] failed: {}", key, e.getCause().getMessage());
+		}
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 可由外部完成的加载结果<br>
+	 * 每次加载对应一代：{@link #supersede()}之后本代作废，结果不再写入缓存。
+	 * 写入在锁外进行：先写入再检查作废标记，期间被作废时移除刚写入的值，
+	 * 因为作废方的操作可能已先于这次写入发生，宁可多一次未命中也不留下旧数据
+	 */
+	private static final class LoadFuture<V> extends AbstractFuture<V> {
+		/** 本代是否已被后续的put/invalidate作废 */
+		private volatile boolean superseded;
+
+		void complete(V value) {
+			set(value);
+		}
+
+		void fail(Throwable e) {
+			setException(e);
+		}
+
+		void supersede() {
+			superseded = true;
+		}
+
+		/**
+		 * 本代未作废时写入缓存
+		 * @param cache 缓存
+		 * @param key 键
+		 * @param value 值
+		 */
+		<K> void putIfCurrent(Cache<K, V> cache, K key, V value) {
+			if (superseded) {
+				return;
+			}
+			cache.put(key, value);
+			if (superseded) {
+				cache.invalidate(key);
+			}
+		}
+	}
+}
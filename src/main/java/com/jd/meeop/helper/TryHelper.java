@@ -1,17 +1,32 @@
 package com.jd.meeop.helper;
 
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jd.meeop.util.AssertUtil;
 import com.jd.meeop.util.CollectionUtil;
+import com.jd.meeop.util.ThreadUtil;
+import com.jd.meeop.util.retry.RetryBudget;
+import com.jd.meeop.util.retry.RetryPolicy;
+import com.jd.meeop.util.thread.HashedWheelTimer;
+import com.jd.meeop.util.thread.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 重试辅助类
  * @ClassName: TryHelper
  * @Description:
- * 可以对选择的方法进行重试次数
+ * 可以对选择的方法进行重试次数。<br>
+ * {@link #retryAsync(Callable, RetryPolicy)}不阻塞调用线程：每次尝试在执行器中运行，重试前的等待交给公共定时器调度，
+ * 按{@link RetryPolicy}退避、抖动、限时，并从共享的{@link RetryBudget}中扣减，避免下游故障时重试放大流量。<br>
+ * 失败日志按间隔汇总输出，异常堆栈只在DEBUG级别输出
  * @author: 冷水(Toby)
  * @date: 16-12-7 14:45
  * @mail: zhao.wang@aliyun.com
@@ -21,6 +36,21 @@ import java.util.concurrent.Callable;
 public class TryHelper {
 
 	private final static Logger logger = LoggerFactory.getLogger(TryHelper.class);
+
+	/** 失败日志的最小输出间隔 */
+	private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	/** 单次尝试失败的日志 */
+	private static final FailureLog RETRY_LOG = new FailureLog("[Retry call error]");
+	/** 放弃重试的日志 */
+	private static final FailureLog GIVE_UP_LOG = new FailureLog("[Retry gave up]");
+
+	/** 公共执行器 */
+	private static final Executor SHARED_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			ThreadUtil.execute(command);
+		}
+	};
 	
 	/**
 	 * 对call请求重试
@@ -38,7 +68,7 @@ public class TryHelper {
 				return call.call();
 			} catch (Exception e) {
 				exception = e;
-				logger.error((new StringBuilder()).append("[Retry call error]-- count ").append(i).toString(), e);
+				RETRY_LOG.log(i, e);
 			}
 			try {
 				Thread.sleep(30L);
@@ -77,7 +107,7 @@ public class TryHelper {
 				}
 				if (!needRetry) throw e;
 				exception = e;
-				logger.error((new StringBuilder()).append("[Retry call error]-- count").append(i).append("---needRetry--").append(needRetry)	.toString(), e);
+				RETRY_LOG.log(i, e);
 			}
 			try {
 				Thread.sleep(30L);
@@ -86,4 +116,217 @@ public class TryHelper {
 		}
 		throw exception;
 	}
+
+	/**
+	 * 异步重试，使用默认策略，见{@link RetryPolicy#create()}
+	 * @param maxAttempts 最多尝试次数（含首次）
+	 * @param call 调用
+	 * @return 调用结果，全部失败时为最后一次的异常
+	 */
+	public static <T> ListenableFuture<T> retryAsync(int maxAttempts, Callable<T> call) {
+		return retryAsync(call, RetryPolicy.create().setMaxAttempts(maxAttempts));
+	}
+
+	/**
+	 * 异步重试，调用线程不阻塞<br>
+	 * 以下情况结束重试，结果为最后一次的异常：异常不可重试、达到最多尝试次数、下次重试会超过总时限、重试预算不足；
+	 * 到达总时限时结果为{@link TimeoutException}（cause为最后一次的异常），正在进行的尝试不会被中断，其结果被忽略。<br>
+	 * 取消返回的Future会取消尚未开始的重试
+	 * @param call 调用，可能在多个线程中先后执行
+	 * @param policy 重试策略
+	 * @return 调用结果
+	 */
+	public static <T> ListenableFuture<T> retryAsync(Callable<T> call, RetryPolicy policy) {
+		AssertUtil.notNull(call, "Callable must not be null!");
+		AssertUtil.notNull(policy, "Retry policy must not be null!");
+		final AsyncRetry<T> retry = new AsyncRetry<T>(call, policy);
+		retry.start();
+		return retry;
+	}
+
+	// ---------------------------------------------------------------- AsyncRetry start
+	/**
+	 * 一次异步重试，同时是结果Future和每次尝试的任务
+	 */
+	private static class AsyncRetry<T> extends AbstractFuture<T> implements Runnable {
+		private final Callable<T> call;
+		private final RetryPolicy policy;
+		private final Executor executor;
+		private final HashedWheelTimer timer;
+		private final long startNanos = System.nanoTime();
+		/** 已开始的尝试次数，尝试之间先后发生，只需可见性 */
+		private volatile int attempts;
+		private volatile Throwable lastError;
+		private volatile Timeout retryTimeout;
+		private volatile Timeout deadlineTimeout;
+
+		AsyncRetry(Callable<T> call, RetryPolicy policy) {
+			this.call = call;
+			this.policy = policy;
+			this.executor = null == policy.getExecutor() ? SHARED_EXECUTOR : policy.getExecutor();
+			this.timer = null == policy.getTimer() ? RetryTimerHolder.TIMER : policy.getTimer();
+		}
+
+		void start() {
+			final RetryBudget budget = policy.getBudget();
+			if (null != budget) {
+				budget.deposit();
+			}
+			if (policy.getTimeoutNanos() > 0) {
+				deadlineTimeout = timer.newTimeout(new Runnable() {
+					@Override
+					public void run() {
+						onDeadline();
+					}
+				}, policy.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+			}
+			submit();
+		}
+
+		/**
+		 * 提交一次尝试，执行器拒绝时以拒绝异常结束
+		 */
+		private void submit() {
+			if (isDone()) {
+				return;
+			}
+			try {
+				executor.execute(this);
+			} catch (RuntimeException e) {
+				giveUp(e, "rejected by executor");
+			}
+		}
+
+		@Override
+		public void run() {
+			if (isDone()) {
+				return;
+			}
+			final int attempt = ++attempts;
+			try {
+				set(call.call());
+			} catch (Throwable e) {
+				try {
+					onFailure(attempt, e);
+				} catch (Throwable t) {
+					// 定时器已停止等意外情况，不能让结果永远不结束
+					setException(t);
+				}
+			}
+		}
+
+		private void onFailure(int attempt, Throwable e) {
+			lastError = e;
+			if (isDone()) {
+				return;
+			}
+			if (false == policy.isRetryable(e)) {
+				giveUp(e, "not retryable");
+				return;
+			}
+			if (attempt >= policy.getMaxAttempts()) {
+				giveUp(e, "attempts exhausted");
+				return;
+			}
+			final long delay = policy.delayNanos(attempt);
+			final long timeout = policy.getTimeoutNanos();
+			if (timeout > 0 && System.nanoTime() - startNanos + delay >= timeout) {
+				giveUp(e, "deadline exceeded");
+				return;
+			}
+			final RetryBudget budget = policy.getBudget();
+			if (null != budget && false == budget.tryWithdraw()) {
+				giveUp(e, "retry budget exhausted");
+				return;
+			}
+			RETRY_LOG.log(attempt, e);
+			retryTimeout = timer.newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					submit();
+				}
+			}, delay, TimeUnit.NANOSECONDS);
+			if (isDone()) {
+				retryTimeout.cancel();
+			}
+		}
+
+		private void onDeadline() {
+			final TimeoutException e = new TimeoutException("Retry deadline of "
+					+ TimeUnit.NANOSECONDS.toMillis(policy.getTimeoutNanos()) + "ms exceeded after " + attempts + " attempts");
+			final Throwable cause = lastError;
+			if (null != cause) {
+				e.initCause(cause);
+			}
+			giveUp(e, "deadline exceeded");
+		}
+
+		private void giveUp(Throwable e, String reason) {
+			if (setException(e)) {
+				GIVE_UP_LOG.log(attempts, reason, e);
+			}
+		}
+
+		@Override
+		protected void afterDone() {
+			final Timeout retry = retryTimeout;
+			if (null != retry) {
+				retry.cancel();
+			}
+			final Timeout deadline = deadlineTimeout;
+			if (null != deadline) {
+				deadline.cancel();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "AsyncRetry[" + call + ", attempts=" + attempts + "]";
+		}
+	}
+	// ---------------------------------------------------------------- AsyncRetry end
+
+	/**
+	 * 重试的默认定时器，第一次使用时创建。到期任务只是把下一次尝试交给执行器，直接在时钟线程中运行：
+	 * 经公共执行器中转时，公共执行器拒绝会让重试丢失，结果永远不结束
+	 */
+	private static class RetryTimerHolder {
+		static final HashedWheelTimer TIMER = ThreadUtil.newTimer("retry-timer", HashedWheelTimer.DEFAULT_TICK_MILLIS,
+				TimeUnit.MILLISECONDS, null);
+	}
+
+	/**
+	 * 限流的失败日志：每个间隔最多输出一条WARN，带上间隔内的失败次数，异常堆栈只在DEBUG级别输出
+	 */
+	private static final class FailureLog {
+		private final String title;
+		private final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+		private final AtomicLong failures = new AtomicLong();
+
+		FailureLog(String title) {
+			this.title = title;
+		}
+
+		void log(int attempt, Throwable e) {
+			log(attempt, null, e);
+		}
+
+		void log(int attempt, String reason, Throwable e) {
+			failures.incrementAndGet();
+			if (logger.isDebugEnabled()) {
+				logger.debug(title + " count " + attempt + (null == reason ? "" : ", " + reason), e);
+			}
+			final long now = System.nanoTime();
+			final long next = nextLogNanos.get();
+			if (now - next < 0 || false == nextLogNanos.compareAndSet(next, now + LOG_INTERVAL_NANOS)) {
+				return;
+			}
+			final long count = failures.getAndSet(0);
+			if (null == reason) {
+				logger.warn("{} count {}: {}, {} failure(s) since last report", title, attempt, e, count);
+			} else {
+				logger.warn("{} after {} attempt(s), {}: {}, {} failure(s) since last report", title, attempt, reason, e, count);
+			}
+		}
+	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.lang;
+
+import com.jd.meeop.lang.ConsistentHash.HashFunc;
+import com.jd.meeop.util.HashUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 节点选择器基类
+ * @ClassName: AbstractNodeSelector
+ * @Description:
+ * 维护节点列表，增删节点时加锁并回调{@link #rebuild(List)}重建查找结构；
+ * 子类把查找结构放在volatile的不可变快照中，查找不加锁
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 14:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public abstract class AbstractNodeSelector<T> implements NodeSelector<T> {
+	/** Hash计算对象 */
+	protected final HashFunc hashFunc;
+	/** 节点列表，由自身锁保护 */
+	private final List<T> nodes = new ArrayList<T>();
+
+	/**
+	 * 构造
+	 * @param hashFunc hash算法对象，为<code>null</code>时使用与{@link ConsistentHash}相同的FNV1算法
+	 */
+	protected AbstractNodeSelector(HashFunc hashFunc) {
+		this.hashFunc = null == hashFunc ? ConsistentHash.DEFAULT_HASH_FUNC : hashFunc;
+	}
+
+	@Override
+	public void add(T node) {
+		synchronized (nodes) {
+			if (false == nodes.contains(node)) {
+				nodes.add(node);
+				rebuild(Collections.unmodifiableList(new ArrayList<T>(nodes)));
+			}
+		}
+	}
+
+	/**
+	 * 批量增加节点，只重建一次
+	 * @param nodes 节点对象
+	 */
+	public void addAll(Collection<T> nodes) {
+		synchronized (this.nodes) {
+			for (T node : nodes) {
+				if (false == this.nodes.contains(node)) {
+					this.nodes.add(node);
+				}
+			}
+			rebuild(Collections.unmodifiableList(new ArrayList<T>(this.nodes)));
+		}
+	}
+
+	@Override
+	public void remove(T node) {
+		synchronized (nodes) {
+			if (nodes.remove(node)) {
+				rebuild(Collections.unmodifiableList(new ArrayList<T>(nodes)));
+			}
+		}
+	}
+
+	/**
+	 * @return 当前节点列表（副本）
+	 */
+	public List<T> getNodes() {
+		synchronized (nodes) {
+			return new ArrayList<T>(nodes);
+		}
+	}
+
+	/**
+	 * 节点变化后重建查找结构并发布
+	 * @param nodes 节点列表，不可修改
+	 */
+	protected abstract void rebuild(List<T> nodes);
+
+	/**
+	 * 计算key的hash值
+	 * @param key 键
+	 * @return hash值
+	 */
+	protected int hash(Object key) {
+		return ConsistentHash.hash(hashFunc, key);
+	}
+
+	/**
+	 * 64位混淆（MurmurHash3 fmix64），把32位hash扩展为分布均匀的64位值
+	 * @param h 输入
+	 * @return 混淆结果
+	 */
+	protected static long mix64(long h) {
+		return HashUtil.mix64(h);
+	}
+}
@@ -15,29 +15,70 @@
  */
 package com.jd.meeop.lang;
 
+import com.jd.meeop.util.AssertUtil;
 import com.jd.meeop.util.HashUtil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 一致性Hash算法
  * @ClassName: ConsistentHash
  * @Description:
+ * 查找使用不可变的有序int数组快照做二分查找，不加锁、不装箱；
+ * 增删节点时加锁修改后重新发布快照（写时复制），查找线程始终看到完整一致的环。<br>
+ * 节点可以带权重，虚拟节点数 = 复制节点数 × 权重，容量大的节点分到更多的key。<br>
+ * 设置{@link #setLoadBound(double)}后可使用有界负载模式：通过{@link #acquire(Object)}/{@link Lease#release()}
+ * 跟踪各节点正在处理的请求数，当顺时针第一个节点的负载超过平均值的(1+ε)倍（按权重折算）时，
+ * 继续顺时针寻找下一个未超载的节点，从而在不迁移数据的前提下限制热点分片的负载。<br>
+ * 批量路由{@link #route(Collection)}将一批key按所属节点分组，key较多时先对hash排序，再与环做一次归并
  * @author: 冷水(Toby)
  * @date: 16-12-11 14:45
  * @mail: zhao.wang@aliyun.com
  * @version: v1.0
  * @since: JDK 1.7.0_79(Liunx)
  */
-public class ConsistentHash<T> {
+public class ConsistentHash<T> implements NodeSelector<T> {
+	/** long转十进制字符串的最大长度 */
+	private static final int LONG_CHARS = 20;
+	/** 批量路由时，key数不少于此值才先排序再归并，否则逐个二分查找 */
+	private static final int MERGE_THRESHOLD = 16;
+
+	/** 默认的FNV1 hash算法，对key的toString结果计算hash */
+	static final HashFunc DEFAULT_HASH_FUNC = new HashFunc() {
+
+		@Override
+		public Integer hash(Object key) {
+			//默认使用FNV1hash算法
+			return HashUtil.fnvHash(key.toString());
+		}
+	};
+
 	/** Hash计算对象，用于自定义hash算法 */
 	HashFunc hashFunc;
 	/** 复制的节点个数 */
 	private final int numberOfReplicas;
-	/** 一致性Hash环 */
+	/** 一致性Hash环，仅在增删节点时使用，由自身锁保护 */
 	private final SortedMap<Integer, T> circle = new TreeMap<Integer, T>();
+	/** 节点及其权重、负载，在circle锁内修改，读取不加锁 */
+	private final Map<T, NodeLoad> members = new ConcurrentHashMap<T, NodeLoad>();
+	/** 供查找使用的环快照 */
+	private volatile Ring<T> ring = Ring.empty();
+	/** 有界负载系数ε，0表示不限制 */
+	private volatile double loadBound;
+	/** 所有节点正在处理的请求总数 */
+	private final AtomicLong totalLoad = new AtomicLong();
 	
 	/**
 	 * 构造，使用Java默认的Hash算法
@@ -46,18 +87,9 @@ public class ConsistentHash<T> {
 	 */
 	public ConsistentHash(int numberOfReplicas, Collection<T> nodes) {
 		this.numberOfReplicas = numberOfReplicas;
-		this.hashFunc = new HashFunc() {
-			
-			@Override
-			public Integer hash(Object key) {
-				//默认使用FNV1hash算法
-				return HashUtil.fnvHash(key.toString());
-			}
-		};
+		this.hashFunc = DEFAULT_HASH_FUNC;
 		//初始化节点
-		for (T node : nodes) {
-			add(node);
-		}
+		addAll(nodes);
 	}
 
 	/**
@@ -70,9 +102,7 @@ public class ConsistentHash<T> {
 		this.numberOfReplicas = numberOfReplicas;
 		this.hashFunc = hashFunc;
 		//初始化节点
-		for (T node : nodes) {
-			add(node);
-		}
+		addAll(nodes);
 	}
 
 	/**
@@ -82,9 +112,35 @@ public class ConsistentHash<T> {
 	 * 由于hash算法会调用node的toString方法，故按照toString去重
 	 * @param node 节点对象
 	 */
+	@Override
 	public void add(T node) {
-		for (int i = 0; i < numberOfReplicas; i++) {
-			circle.put(hashFunc.hash(node.toString() + i), node);
+		add(node, 1);
+	}
+
+	/**
+	 * 增加带权重的节点<br>
+	 * 虚拟节点数为复制节点数 × 权重，权重为1时与{@link #add(Object)}相同；节点已存在时按新权重重新分布
+	 * @param node 节点对象
+	 * @param weight 权重，须大于0
+	 */
+	public void add(T node, int weight) {
+		AssertUtil.isTrue(weight > 0, "weight must be positive");
+		synchronized (circle) {
+			addNode(node, weight);
+			publish();
+		}
+	}
+
+	/**
+	 * 批量增加节点，只发布一次快照
+	 * @param nodes 节点对象
+	 */
+	public void addAll(Collection<T> nodes) {
+		synchronized (circle) {
+			for (T node : nodes) {
+				addNode(node, 1);
+			}
+			publish();
 		}
 	}
 
@@ -92,28 +148,526 @@ public class ConsistentHash<T> {
 	 * 移除节点的同时移除相应的虚拟节点
 	 * @param node 节点对象
 	 */
+	@Override
 	public void remove(T node) {
-		for (int i = 0; i < numberOfReplicas; i++) {
-			circle.remove(hashFunc.hash(node.toString() + i));
+		synchronized (circle) {
+			removeNode(node);
+			publish();
 		}
 	}
 
+	/**
+	 * 获取节点权重
+	 * @param node 节点对象
+	 * @return 权重，节点不存在返回0
+	 */
+	public int getWeight(T node) {
+		final NodeLoad member = members.get(node);
+		return null == member ? 0 : member.weight;
+	}
+
 	/**
 	 * 获得一个最近的顺时针节点
 	 * @param key 为给定键取Hash，取得顺时针方向上最近的一个虚拟节点对应的实际节点
 	 * @return 节点对象
 	 */
+	@Override
 	public T get(Object key) {
-		if (circle.isEmpty()) {
+		final Ring<T> ring = this.ring;
+		if (ring.hashes.length == 0) {
+			return null;
+		}
+		return ring.get(hash(key));
+	}
+
+	/**
+	 * 获得long类型key对应的节点，与{@link #get(Object)}传入同值的Long结果一致，但使用默认hash算法时不构造String
+	 * @param key 键
+	 * @return 节点对象
+	 */
+	public T get(long key) {
+		final Ring<T> ring = this.ring;
+		if (ring.hashes.length == 0) {
+			return null;
+		}
+		return ring.get(hash(key, new char[LONG_CHARS]));
+	}
+
+	/**
+	 * 获得byte[]类型key对应的节点，使用默认hash算法时对字节内容计算FNV1 hash，否则把数组直接交给hash算法对象
+	 * @param key 键
+	 * @return 节点对象
+	 */
+	public T get(byte[] key) {
+		final Ring<T> ring = this.ring;
+		if (ring.hashes.length == 0) {
+			return null;
+		}
+		return ring.get(hash(key));
+	}
+
+	// ---------------------------------------------------------------- Batch route start
+	/**
+	 * 批量路由，将key按所属节点分组，每组可以合并为一次对该节点的批量请求
+	 * @param keys 键
+	 * @return 节点与其负责的key，key在组内保持原有顺序；没有节点时返回空Map
+	 */
+	@SuppressWarnings("unchecked")
+	public <K> Map<T, List<K>> route(Collection<? extends K> keys) {
+		final Ring<T> ring = this.ring;
+		final Map<T, List<K>> result = new LinkedHashMap<T, List<K>>();
+		if (ring.hashes.length == 0 || keys.isEmpty()) {
+			return result;
+		}
+		final Object[] keyArray = keys.toArray();
+		final int[] keyHashes = new int[keyArray.length];
+		for (int i = 0; i < keyArray.length; i++) {
+			keyHashes[i] = hash(keyArray[i]);
+		}
+		final int[] owners = ring.locate(keyHashes);
+		for (int i = 0; i < keyArray.length; i++) {
+			final T node = (T) ring.nodes[owners[i]];
+			List<K> group = result.get(node);
+			if (null == group) {
+				group = new ArrayList<K>();
+				result.put(node, group);
+			}
+			group.add((K) keyArray[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * 批量路由long类型key，结果与逐个调用{@link #get(long)}一致
+	 * @param keys 键
+	 * @return 节点与其负责的key，key在组内保持原有顺序；没有节点时返回空Map
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<T, long[]> route(long[] keys) {
+		final Ring<T> ring = this.ring;
+		final Map<T, long[]> result = new LinkedHashMap<T, long[]>();
+		if (ring.hashes.length == 0 || keys.length == 0) {
+			return result;
+		}
+		final char[] buf = new char[LONG_CHARS];
+		final int[] keyHashes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keyHashes[i] = hash(keys[i], buf);
+		}
+		final int[] owners = ring.locate(keyHashes);
+
+		// 先统计每个虚拟节点位置的key数，再按实际节点分配定长数组
+		final Map<T, int[]> counts = new LinkedHashMap<T, int[]>();
+		for (int owner : owners) {
+			final T node = (T) ring.nodes[owner];
+			final int[] count = counts.get(node);
+			if (null == count) {
+				counts.put(node, new int[]{1});
+			} else {
+				count[0]++;
+			}
+		}
+		for (Entry<T, int[]> entry : counts.entrySet()) {
+			result.put(entry.getKey(), new long[entry.getValue()[0]]);
+			entry.getValue()[0] = 0;
+		}
+		for (int i = 0; i < keys.length; i++) {
+			final T node = (T) ring.nodes[owners[i]];
+			final int[] position = counts.get(node);
+			result.get(node)[position[0]++] = keys[i];
+		}
+		return result;
+	}
+
+	/**
+	 * 批量路由byte[]类型key，结果与逐个调用{@link #get(byte[])}一致
+	 * @param keys 键
+	 * @return 节点与其负责的key，key在组内保持原有顺序；没有节点时返回空Map
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<T, List<byte[]>> route(byte[][] keys) {
+		final Ring<T> ring = this.ring;
+		final Map<T, List<byte[]>> result = new LinkedHashMap<T, List<byte[]>>();
+		if (ring.hashes.length == 0 || keys.length == 0) {
+			return result;
+		}
+		final int[] keyHashes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keyHashes[i] = hash(keys[i]);
+		}
+		final int[] owners = ring.locate(keyHashes);
+		for (int i = 0; i < keys.length; i++) {
+			final T node = (T) ring.nodes[owners[i]];
+			List<byte[]> group = result.get(node);
+			if (null == group) {
+				group = new ArrayList<byte[]>();
+				result.put(node, group);
+			}
+			group.add(keys[i]);
+		}
+		return result;
+	}
+	// ---------------------------------------------------------------- Batch route end
+
+	// ---------------------------------------------------------------- Bounded load start
+	/**
+	 * 设置有界负载系数，开启后{@link #acquire(Object)}会跳过负载超过平均值(1+ε)倍的节点
+	 * @param epsilon 系数ε，例如0.25表示节点负载不超过平均值的1.25倍；0表示不限制
+	 * @return 自身
+	 */
+	public ConsistentHash<T> setLoadBound(double epsilon) {
+		AssertUtil.isTrue(epsilon >= 0, "epsilon must not be negative");
+		this.loadBound = epsilon;
+		return this;
+	}
+
+	/**
+	 * 选择节点并占用一个负载，请求处理完成后须调用返回值的{@link Lease#release()}归还<br>
+	 * 未设置有界负载时与{@link #get(Object)}选择相同的节点
+	 * @param key 键
+	 * @return 占用的负载，没有节点时返回<code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public Lease<T> acquire(Object key) {
+		final Ring<T> ring = this.ring;
+		final int length = ring.hashes.length;
+		if (length == 0) {
 			return null;
 		}
-		int hash = hashFunc.hash(key);
-		if (!circle.containsKey(hash)) {
-			SortedMap<Integer, T> tailMap = circle.tailMap(hash);	//返回此映射的部分视图，其键大于等于 hash
-			hash = tailMap.isEmpty() ? circle.firstKey() : tailMap.firstKey();
+		final int start = ring.indexOf(hash(key));
+		final double epsilon = this.loadBound;
+		if (epsilon > 0) {
+			final double average = (double) (totalLoad.get() + 1) / ring.totalWeight;
+			// 每个实际节点只检查一次，全部检查过即停止，不必走完所有虚拟节点
+			boolean[] checked = null;
+			int remaining = ring.memberCount;
+			for (int i = 0; i < length && remaining > 0; i++) {
+				final int index = (start + i) % length;
+				final int member = ring.memberIndexes[index];
+				if (null != checked && checked[member]) {
+					continue;
+				}
+				final NodeLoad load = ring.loads[index];
+				final long capacity = (long) Math.ceil(average * load.weight * (1 + epsilon));
+				if (load.tryAcquire(capacity)) {
+					totalLoad.incrementAndGet();
+					return new Lease<T>((T) ring.nodes[index], load, totalLoad);
+				}
+				if (null == checked) {
+					checked = new boolean[ring.memberCount];
+				}
+				checked[member] = true;
+				remaining--;
+			}
+		}
+		// 未限制负载，或并发竞争下所有节点均已满，落在原始节点上
+		final NodeLoad load = ring.loads[start];
+		load.inFlight.incrementAndGet();
+		totalLoad.incrementAndGet();
+		return new Lease<T>((T) ring.nodes[start], load, totalLoad);
+	}
+
+	/**
+	 * 获取节点正在处理的请求数
+	 * @param node 节点对象
+	 * @return 负载，节点不存在返回0
+	 */
+	public long getLoad(T node) {
+		final NodeLoad load = members.get(node);
+		return null == load ? 0 : load.inFlight.get();
+	}
+
+	/**
+	 * 获取所有节点正在处理的请求总数
+	 * @return 总负载
+	 */
+	public long getTotalLoad() {
+		return totalLoad.get();
+	}
+	// ---------------------------------------------------------------- Bounded load end
+
+	/**
+	 * 计算key的hash值
+	 * @param key 键
+	 * @return hash值
+	 */
+	int hash(Object key) {
+		return hash(hashFunc, key);
+	}
+
+	/**
+	 * 计算long类型key的hash值，默认算法直接对十进制字符计算，与对Long.toString(key)计算的结果一致
+	 * @param key 键
+	 * @param buf 长度为{@link #LONG_CHARS}的字符缓冲
+	 * @return hash值
+	 */
+	private int hash(long key, char[] buf) {
+		if (hashFunc != DEFAULT_HASH_FUNC) {
+			return hashFunc.hash(key);
+		}
+		int pos = buf.length;
+		long value = key;
+		do {
+			buf[--pos] = (char) ('0' + Math.abs((int) (value % 10)));
+			value /= 10;
+		} while (value != 0);
+		if (key < 0) {
+			buf[--pos] = '-';
+		}
+		return HashUtil.fnvHash(buf, pos, buf.length - pos);
+	}
+
+	/**
+	 * 计算byte[]类型key的hash值
+	 * @param key 键
+	 * @return hash值
+	 */
+	private int hash(byte[] key) {
+		return hashFunc == DEFAULT_HASH_FUNC ? HashUtil.fnvHash(key) : hashFunc.hash(key);
+	}
+
+	/**
+	 * 计算key的hash值，默认算法走不装箱的快速路径
+	 * @param hashFunc hash算法对象
+	 * @param key 键
+	 * @return hash值
+	 */
+	static int hash(HashFunc hashFunc, Object key) {
+		return hashFunc == DEFAULT_HASH_FUNC ? HashUtil.fnvHash(key.toString()) : hashFunc.hash(key);
+	}
+
+	/**
+	 * 在环上加入节点的虚拟节点，需持有circle锁
+	 * @param node 节点对象
+	 * @param weight 权重
+	 */
+	private void addNode(T node, int weight) {
+		NodeLoad member = members.get(node);
+		if (null != member && member.weight != weight) {
+			// 已占用的负载仍通过旧对象归还，不会计入新对象
+			removeNode(node);
+			member = null;
+		}
+		if (null == member) {
+			members.put(node, new NodeLoad(weight));
+		}
+		final int replicas = numberOfReplicas * weight;
+		for (int i = 0; i < replicas; i++) {
+			circle.put(hashFunc.hash(node.toString() + i), node);
+		}
+	}
+
+	/**
+	 * 从环上移除节点的虚拟节点，需持有circle锁
+	 * @param node 节点对象
+	 */
+	private void removeNode(T node) {
+		final NodeLoad member = members.remove(node);
+		final int replicas = numberOfReplicas * (null == member ? 1 : member.weight);
+		for (int i = 0; i < replicas; i++) {
+			circle.remove(hashFunc.hash(node.toString() + i));
+		}
+		if (null != member) {
+			member.retired = true;
+		}
+	}
+
+	/**
+	 * 根据当前的环生成新的快照并发布，同时按现有节点重新统计总负载，需持有circle锁
+	 */
+	private void publish() {
+		final Map<NodeLoad, Integer> ordinals = new IdentityHashMap<NodeLoad, Integer>();
+		long totalWeight = 0;
+		long load = 0;
+		for (NodeLoad member : members.values()) {
+			ordinals.put(member, ordinals.size());
+			totalWeight += member.weight;
+			load += member.inFlight.get();
+		}
+		final int size = circle.size();
+		final int[] hashes = new int[size];
+		final Object[] nodes = new Object[size];
+		final NodeLoad[] loads = new NodeLoad[size];
+		final int[] memberIndexes = new int[size];
+		int i = 0;
+		for (Entry<Integer, T> entry : circle.entrySet()) {
+			hashes[i] = entry.getKey();
+			nodes[i] = entry.getValue();
+			loads[i] = members.get(entry.getValue());
+			memberIndexes[i] = ordinals.get(loads[i]);
+			i++;
+		}
+		// 已移除节点的负载不再计入，并发归还造成的偏差也在此修正
+		totalLoad.set(load);
+		this.ring = new Ring<T>(hashes, nodes, loads, memberIndexes, ordinals.size(), totalWeight);
+	}
+
+	/**
+	 * 节点权重及正在处理的请求数
+	 */
+	static final class NodeLoad {
+		final int weight;
+		final AtomicLong inFlight = new AtomicLong();
+		/** 已从环上移除，归还时不再计入总负载 */
+		volatile boolean retired;
+
+		NodeLoad(int weight) {
+			this.weight = weight;
+		}
+
+		/**
+		 * 负载未达到容量时占用一个负载
+		 * @param capacity 容量
+		 * @return 是否占用成功
+		 */
+		boolean tryAcquire(long capacity) {
+			for (;;) {
+				final long current = inFlight.get();
+				if (current >= capacity) {
+					return false;
+				}
+				if (inFlight.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * 归还一个负载，不会减到负数
+		 * @return 是否归还成功
+		 */
+		boolean release() {
+			for (;;) {
+				final long current = inFlight.get();
+				if (current <= 0) {
+					return false;
+				}
+				if (inFlight.compareAndSet(current, current - 1)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 不可变的环快照，hashes升序排列，nodes[i]为hashes[i]对应的节点
+	 */
+	static final class Ring<T> {
+		private static final Ring<Object> EMPTY = new Ring<Object>(new int[0], new Object[0], new NodeLoad[0], new int[0], 0, 0);
+
+		final int[] hashes;
+		final Object[] nodes;
+		/** loads[i]为nodes[i]的负载，同一节点的虚拟节点共享同一对象 */
+		final NodeLoad[] loads;
+		/** memberIndexes[i]为nodes[i]在实际节点中的序号，范围[0, memberCount) */
+		final int[] memberIndexes;
+		/** 实际节点数 */
+		final int memberCount;
+		/** 所有节点的权重之和 */
+		final long totalWeight;
+
+		Ring(int[] hashes, Object[] nodes, NodeLoad[] loads, int[] memberIndexes, int memberCount, long totalWeight) {
+			this.hashes = hashes;
+			this.nodes = nodes;
+			this.loads = loads;
+			this.memberIndexes = memberIndexes;
+			this.memberCount = memberCount;
+			this.totalWeight = totalWeight;
+		}
+
+		@SuppressWarnings("unchecked")
+		static <T> Ring<T> empty() {
+			return (Ring<T>) EMPTY;
+		}
+
+		/**
+		 * 顺时针查找第一个hash大于等于给定值的节点，超过末尾时回到第一个节点
+		 * @param hash hash值
+		 * @return 节点
+		 */
+		@SuppressWarnings("unchecked")
+		T get(int hash) {
+			return (T) nodes[indexOf(hash)];
+		}
+
+		/**
+		 * 批量定位：key较多时对hash排序后与环归并一次，否则逐个二分查找
+		 * @param keyHashes key的hash值
+		 * @return 每个key对应的虚拟节点下标
+		 */
+		int[] locate(int[] keyHashes) {
+			final int n = keyHashes.length;
+			final int[] owners = new int[n];
+			if (n < MERGE_THRESHOLD) {
+				for (int i = 0; i < n; i++) {
+					owners[i] = indexOf(keyHashes[i]);
+				}
+				return owners;
+			}
+
+			// 高32位为hash，低32位为原始下标，排序后即按hash升序
+			final long[] sorted = new long[n];
+			for (int i = 0; i < n; i++) {
+				sorted[i] = ((long) keyHashes[i] << 32) | i;
+			}
+			Arrays.sort(sorted);
+			int j = 0;
+			for (long packed : sorted) {
+				final int hash = (int) (packed >> 32);
+				while (j < hashes.length && hashes[j] < hash) {
+					j++;
+				}
+				owners[(int) packed] = j == hashes.length ? 0 : j;
+			}
+			return owners;
+		}
+
+		/**
+		 * @param hash hash值
+		 * @return 顺时针方向第一个虚拟节点的下标
+		 */
+		int indexOf(int hash) {
+			int index = Arrays.binarySearch(hashes, hash);
+			if (index < 0) {
+				index = -index - 1;
+				if (index == hashes.length) {
+					index = 0;
+				}
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * {@link #acquire(Object)}占用的负载，绑定占用时的节点负载对象，节点随后被移除或重新设置权重也能正确归还
+	 */
+	public static final class Lease<T> {
+		private final T node;
+		private final NodeLoad load;
+		private final AtomicLong totalLoad;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Lease(T node, NodeLoad load, AtomicLong totalLoad) {
+			this.node = node;
+			this.load = load;
+			this.totalLoad = totalLoad;
+		}
+
+		/**
+		 * @return 选中的节点
+		 */
+		public T getNode() {
+			return node;
+		}
+
+		/**
+		 * 归还负载，重复调用无影响
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true) && load.release() && false == load.retired) {
+				totalLoad.decrementAndGet();
+			}
 		}
-		//正好命中
-		return circle.get(hash);
 	}
 
 	/**
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.lang;
+
+import com.jd.meeop.lang.ConsistentHash.HashFunc;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Jump一致性Hash算法
+ * @ClassName: JumpConsistentHash
+ * @Description:
+ * 参考Lamping与Veach的Jump Consistent Hash：不需要环或虚拟节点，内存O(1)，查找O(log n)，分布均匀。<br>
+ * 节点以加入顺序编号为桶，只有在末尾增加或移除节点时迁移量最小；移除中间节点会使其后的桶整体前移，
+ * 适合按编号扩缩容的分片，不适合任意节点下线的场景
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 14:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class JumpConsistentHash<T> extends AbstractNodeSelector<T> {
+	/** 节点快照 */
+	private volatile Object[] buckets = new Object[0];
+
+	/**
+	 * 构造，使用FNV1 hash算法
+	 * @param nodes 节点对象
+	 */
+	public JumpConsistentHash(Collection<T> nodes) {
+		this(null, nodes);
+	}
+
+	/**
+	 * 构造
+	 * @param hashFunc hash算法对象
+	 * @param nodes 节点对象
+	 */
+	public JumpConsistentHash(HashFunc hashFunc, Collection<T> nodes) {
+		super(hashFunc);
+		addAll(nodes);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(Object key) {
+		final Object[] buckets = this.buckets;
+		if (buckets.length == 0) {
+			return null;
+		}
+		return (T) buckets[jump(mix64(hash(key)), buckets.length)];
+	}
+
+	@Override
+	protected void rebuild(List<T> nodes) {
+		this.buckets = nodes.toArray();
+	}
+
+	/**
+	 * Jump Consistent Hash
+	 * @param key 64位key
+	 * @param numBuckets 桶数
+	 * @return 桶序号，[0, numBuckets)
+	 */
+	public static int jump(long key, int numBuckets) {
+		long b = -1;
+		long j = 0;
+		while (j < numBuckets) {
+			b = j;
+			key = key * 2862933555777941757L + 1;
+			j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+		}
+		return (int) b;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.lang;
+
+import com.jd.meeop.lang.ConsistentHash.HashFunc;
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maglev Hash算法
+ * @ClassName: MaglevHash
+ * @Description:
+ * 参考Google Maglev负载均衡器的一致性Hash：每个节点根据自身hash生成一个槽位排列，
+ * 各节点轮流按排列认领查找表中的空槽，直到表被填满。查找为一次取模加一次数组访问，
+ * 各节点占有的槽位数最多相差1，负载最均匀；增删节点时大部分槽位保持不变，但迁移量略多于环形一致性Hash。<br>
+ * 查找表大小须为质数，且远大于节点数（建议至少为节点数的100倍）
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 14:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class MaglevHash<T> extends AbstractNodeSelector<T> {
+	/** 默认查找表大小 */
+	public static final int DEFAULT_TABLE_SIZE = 65537;
+
+	/** 查找表大小 */
+	private final int tableSize;
+	/** 查找表快照 */
+	private volatile Snapshot snapshot = new Snapshot(new Object[0], null);
+
+	/**
+	 * 构造，使用FNV1 hash算法与默认查找表大小
+	 * @param nodes 节点对象
+	 */
+	public MaglevHash(Collection<T> nodes) {
+		this(null, DEFAULT_TABLE_SIZE, nodes);
+	}
+
+	/**
+	 * 构造
+	 * @param hashFunc hash算法对象
+	 * @param tableSize 查找表大小，须为质数
+	 * @param nodes 节点对象
+	 */
+	public MaglevHash(HashFunc hashFunc, int tableSize, Collection<T> nodes) {
+		super(hashFunc);
+		AssertUtil.isTrue(isPrime(tableSize), "tableSize must be a prime number");
+		this.tableSize = tableSize;
+		addAll(nodes);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(Object key) {
+		final Snapshot snapshot = this.snapshot;
+		if (null == snapshot.table) {
+			return null;
+		}
+		final int slot = (int) ((mix64(hash(key)) >>> 1) % tableSize);
+		return (T) snapshot.nodes[snapshot.table[slot]];
+	}
+
+	@Override
+	protected void rebuild(List<T> nodes) {
+		final int n = nodes.size();
+		if (n == 0) {
+			this.snapshot = new Snapshot(new Object[0], null);
+			return;
+		}
+		final int m = tableSize;
+		final int[] offsets = new int[n];
+		final int[] skips = new int[n];
+		for (int i = 0; i < n; i++) {
+			final String name = nodes.get(i).toString();
+			final long h = mix64(hash(name));
+			offsets[i] = (int) ((h >>> 1) % m);
+			skips[i] = (int) ((mix64(h ^ 0x9E3779B97F4A7C15L) >>> 1) % (m - 1)) + 1;
+		}
+
+		final int[] table = new int[m];
+		for (int i = 0; i < m; i++) {
+			table[i] = -1;
+		}
+		final int[] next = new int[n];
+		int filled = 0;
+		while (true) {
+			for (int i = 0; i < n; i++) {
+				int slot = (int) ((offsets[i] + (long) next[i] * skips[i]) % m);
+				while (table[slot] >= 0) {
+					next[i]++;
+					slot = (int) ((offsets[i] + (long) next[i] * skips[i]) % m);
+				}
+				table[slot] = i;
+				next[i]++;
+				if (++filled == m) {
+					this.snapshot = new Snapshot(nodes.toArray(), table);
+					return;
+				}
+			}
+		}
+	}
+
+	private static boolean isPrime(int n) {
+		if (n < 2) {
+			return false;
+		}
+		for (int i = 2; (long) i * i <= n; i++) {
+			if (n % i == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 不可变快照，table[slot]为节点下标
+	 */
+	private static final class Snapshot {
+		final Object[] nodes;
+		final int[] table;
+
+		Snapshot(Object[] nodes, int[] table) {
+			this.nodes = nodes;
+			this.table = table;
+		}
+	}
+}
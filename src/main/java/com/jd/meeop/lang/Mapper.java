@@ -0,0 +1,36 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.lang;
+
+/**
+ * 映射接口
+ * @ClassName: Mapper
+ * @Description:
+ * 把一个对象映射为另一个对象，常用于集合的分组（映射为分组键）与转换
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 22:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface Mapper<T, R> {
+	/**
+	 * 映射
+	 * @param t 被映射的对象
+	 * @return 映射结果
+	 */
+	R map(T t);
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.lang;
+
+/**
+ * 节点选择器
+ * @ClassName: NodeSelector
+ * @Description:
+ * 根据key选择负责它的节点，用于分片路由。实现有：<br>
+ * {@link ConsistentHash}：虚拟节点环，增删节点时迁移量最小，内存随复制节点数增长；<br>
+ * {@link JumpConsistentHash}：O(1)内存、O(log n)查找，适合只在末尾扩缩容的分片；<br>
+ * {@link RendezvousHash}：无需虚拟节点，增删节点时迁移量最小，查找O(n)，适合节点数较少的场景；<br>
+ * {@link MaglevHash}：O(1)查表，负载最均匀，增删节点时有少量额外迁移
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 14:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface NodeSelector<T> {
+
+	/**
+	 * 选择节点
+	 * @param key 键
+	 * @return 节点对象，没有节点时返回<code>null</code>
+	 */
+	T get(Object key);
+
+	/**
+	 * 增加节点
+	 * @param node 节点对象
+	 */
+	void add(T node);
+
+	/**
+	 * 移除节点
+	 * @param node 节点对象
+	 */
+	void remove(T node);
+}
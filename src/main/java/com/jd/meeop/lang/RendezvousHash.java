@@ -0,0 +1,100 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.lang;
+
+import com.jd.meeop.lang.ConsistentHash.HashFunc;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Rendezvous Hash（最高随机权重，HRW）算法
+ * @ClassName: RendezvousHash
+ * @Description:
+ * 对每个节点计算 score = mix(hash(key), hash(node))，取得分最高的节点。<br>
+ * 不需要虚拟节点，内存只与节点数有关；增删节点时只有归属于该节点的key迁移。查找为O(n)，适合节点数不多的场景
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 14:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class RendezvousHash<T> extends AbstractNodeSelector<T> {
+	/** 节点及其hash快照 */
+	private volatile Snapshot snapshot = new Snapshot(new Object[0], new long[0]);
+
+	/**
+	 * 构造，使用FNV1 hash算法
+	 * @param nodes 节点对象
+	 */
+	public RendezvousHash(Collection<T> nodes) {
+		this(null, nodes);
+	}
+
+	/**
+	 * 构造
+	 * @param hashFunc hash算法对象
+	 * @param nodes 节点对象
+	 */
+	public RendezvousHash(HashFunc hashFunc, Collection<T> nodes) {
+		super(hashFunc);
+		addAll(nodes);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(Object key) {
+		final Snapshot snapshot = this.snapshot;
+		final Object[] nodes = snapshot.nodes;
+		if (nodes.length == 0) {
+			return null;
+		}
+		final long keyHash = mix64(hash(key));
+		final long[] nodeHashes = snapshot.nodeHashes;
+		int best = 0;
+		long bestScore = Long.MIN_VALUE;
+		for (int i = 0; i < nodes.length; i++) {
+			final long score = mix64(keyHash ^ nodeHashes[i]);
+			if (score > bestScore) {
+				bestScore = score;
+				best = i;
+			}
+		}
+		return (T) nodes[best];
+	}
+
+	@Override
+	protected void rebuild(List<T> nodes) {
+		final long[] nodeHashes = new long[nodes.size()];
+		for (int i = 0; i < nodeHashes.length; i++) {
+			nodeHashes[i] = mix64(hash(nodes.get(i).toString()) * 0x9E3779B97F4A7C15L);
+		}
+		this.snapshot = new Snapshot(nodes.toArray(), nodeHashes);
+	}
+
+	/**
+	 * 不可变快照
+	 */
+	private static final class Snapshot {
+		final Object[] nodes;
+		final long[] nodeHashes;
+
+		Snapshot(Object[] nodes, long[] nodeHashes) {
+			this.nodes = nodes;
+			this.nodeHashes = nodeHashes;
+		}
+	}
+}
@@ -16,17 +16,34 @@
 package com.jd.meeop.lang;
 
 import com.jd.meeop.exception.NotInitedException;
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.ThreadUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 线程同步结束器
  * @ClassName: SyncFinisher
  * @Description:
  * 在完成一组正在其他线程中执行的操作之前，它允许一个或多个线程一直等待。<br>
- * 不能保证同时开始
+ * 不能保证同时开始。<br>
+ * 任务提交到线程池执行（默认为{@link ThreadUtil}的公共线程池，线程池拒绝时在调用线程执行），不再为每个任务新建线程；
+ * {@link #addTask(Callable)}返回的{@link Task}在每轮结束后持有该任务的结果或异常。<br>
+ * {@link #await(long, TimeUnit)}超时后会取消尚未完成的任务（中断其执行线程），本轮随即结束。<br>
+ * 一轮结束后可再次{@link #start()}，任务与计数器在各轮之间复用；{@link #getStats()}给出上一轮的耗时统计。<br>
+ * 内部使用ReentrantLock而不是synchronized，在虚拟线程中调用时不会占住载体线程
  * @author: 冷水(Toby)
  * @date: 16-12-11 14:45
  * @mail: zhao.wang@aliyun.com
@@ -34,25 +51,113 @@ import java.util.concurrent.CountDownLatch;
  * @since: JDK 1.7.0_79(Liunx)
  */
 public class SyncFinisher{
-	private CountDownLatch countDownLatch;
+	private final static Logger logger = LoggerFactory.getLogger(SyncFinisher.class);
+
+	/** 默认执行器：ThreadUtil公共线程池 */
+	private static final Executor DEFAULT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			ThreadUtil.execute(command);
+		}
+	};
+
+	private final Executor executor;
+	/** 可复用的计数器，每轮开始时重置 */
+	private final RoundLatch latch = new RoundLatch();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Set<Worker> workers = new LinkedHashSet<Worker>();
+	private final List<Task<?>> tasks = new ArrayList<Task<?>>();
+
+	/** 本轮是否已开始 */
+	private volatile boolean started;
+	private volatile long roundStartNanos;
+	/** 本轮执行取消的时间，0表示未取消 */
+	private volatile long cancelNanos;
 	
-	private Set<Worker> workers = new LinkedHashSet<Worker>();
+	/**
+	 * 构造，任务在公共线程池中执行
+	 */
+	public SyncFinisher() {
+		this(DEFAULT_EXECUTOR);
+	}
+
+	/**
+	 * 构造
+	 * @param executor 执行任务的线程池
+	 */
+	public SyncFinisher(Executor executor) {
+		AssertUtil.notNull(executor, "executor must not be null");
+		this.executor = executor;
+	}
 	
 	/**
 	 * 增加工作线程
 	 * @param worker 工作线程
 	 */
-	synchronized public void addWorker(Worker worker) {
-		workers.add(worker);
+	public void addWorker(Worker worker) {
+		lock.lock();
+		try {
+			if (workers.add(worker)) {
+				tasks.add(new Task<Object>(Executors.callable(worker)));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 增加有返回值的任务
+	 * @param callable 任务
+	 * @return 任务句柄，每轮结束后可从中取得结果
+	 */
+	public <R> Task<R> addTask(Callable<R> callable) {
+		lock.lock();
+		try {
+			AssertUtil.notNull(callable, "callable must not be null");
+			final Task<R> task = new Task<R>(callable);
+			tasks.add(task);
+			return task;
+		} finally {
+			lock.unlock();
+		}
 	}
 	
 	/**
-	 * 开始工作
+	 * 开始工作，线程池拒绝的任务在释放锁后于调用线程执行，执行期间超时仍可取消其它任务
+	 * @throws IllegalStateException 上一轮尚未结束
 	 */
 	public void start() {
-		countDownLatch = new CountDownLatch(workers.size());
-		for (Worker worker : workers) {
-			worker.start();
+		List<Execution<?>> rejected = null;
+		lock.lock();
+		try {
+			if (latch.getCount() > 0) {
+				throw new IllegalStateException("Previous round is still running!");
+			}
+			latch.reset(tasks.size());
+			roundStartNanos = System.nanoTime();
+			cancelNanos = 0;
+			started = true;
+			for (Task<?> task : tasks) {
+				final Execution<?> execution = task.newExecution(latch);
+				try {
+					executor.execute(execution);
+				} catch (RuntimeException e) {
+					logger.debug("Executor rejected task, run in caller thread: {}", e.getMessage());
+					if (null == rejected) {
+						rejected = new ArrayList<Execution<?>>();
+					}
+					rejected.add(execution);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (null != rejected) {
+			// 已取消的任务不会再执行
+			for (Execution<?> execution : rejected) {
+				execution.run();
+			}
 		}
 	}
 	
@@ -61,42 +166,394 @@ public class SyncFinisher{
 	 * @throws InterruptedException
 	 */
 	public void await() throws InterruptedException {
-		if(countDownLatch == null) {
-			throw new NotInitedException("Please call start() method first!");
+		checkStarted();
+		latch.await();
+	}
+
+	/**
+	 * 等待所有任务结束，超时后取消尚未完成的任务
+	 * @param timeout 超时
+	 * @param unit 时间单位
+	 * @return 全部任务在超时前完成返回true，否则返回false（未完成的任务已被取消）
+	 * @throws InterruptedException
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+		checkStarted();
+		if (latch.await(unit.toNanos(timeout))) {
+			return true;
+		}
+		cancel();
+		return false;
+	}
+
+	/**
+	 * 取消本轮尚未完成的任务：未开始的不再执行，执行中的被中断
+	 */
+	public void cancel() {
+		lock.lock();
+		try {
+			if (started && latch.getCount() > 0) {
+				cancelNanos = System.nanoTime();
+			}
+			for (Task<?> task : tasks) {
+				final Execution<?> execution = task.execution;
+				if (null != execution) {
+					execution.cancel();
+				}
+			}
+		} finally {
+			lock.unlock();
 		}
-		
-		countDownLatch.await();
 	}
 	
 	/**
-	 * 清空工作线程对象
+	 * 清空工作线程和任务
+	 * @throws IllegalStateException 本轮尚未结束
 	 */
 	public void clearWorker() {
-		workers.clear();
+		lock.lock();
+		try {
+			if (latch.getCount() > 0) {
+				throw new IllegalStateException("Round is still running!");
+			}
+			workers.clear();
+			tasks.clear();
+		} finally {
+			lock.unlock();
+		}
 	}
 	
 	/**
-	 * @return 并发数
+	 * @return 本轮尚未结束的任务数
 	 */
 	public long count() {
-		return countDownLatch.getCount();
+		return latch.getCount();
+	}
+
+	/**
+	 * 获取最近一轮的耗时统计，本轮未结束时统计的是截至目前已结束的任务
+	 * @return 统计
+	 */
+	public RoundStats getStats() {
+		lock.lock();
+		try {
+			checkStarted();
+			final RoundStats stats = new RoundStats();
+			long lastEnd = roundStartNanos;
+			for (Task<?> task : tasks) {
+				final Execution<?> execution = task.execution;
+				if (null == execution) {
+					continue;
+				}
+				switch (execution.state.get()) {
+					case Execution.SUCCEEDED:
+						stats.succeeded++;
+						break;
+					case Execution.FAILED:
+						stats.failed++;
+						break;
+					case Execution.CANCELLED:
+					case Execution.INTERRUPTING:
+						stats.cancelled++;
+						continue;
+					default:
+						continue;
+				}
+				final long elapsed = execution.endNanos - execution.startNanos;
+				if (null == stats.slowest || elapsed > stats.slowestNanos) {
+					stats.slowest = task;
+					stats.slowestNanos = elapsed;
+				}
+				lastEnd = Math.max(lastEnd, execution.endNanos);
+			}
+			if (stats.cancelled > 0 && cancelNanos != 0) {
+				lastEnd = Math.max(lastEnd, cancelNanos);
+			}
+			stats.elapsedNanos = lastEnd - roundStartNanos;
+			return stats;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void checkStarted() {
+		if (false == started) {
+			throw new NotInitedException("Please call start() method first!");
+		}
 	}
 	
 	/**
-	 * 工作者，为一个线程
+	 * 工作者，在线程池中执行
 	 *
 	 */
 	public abstract class Worker extends Thread {
 
 		@Override
 		public void run() {
-			try {
-				work();
-			} finally {
-				countDownLatch.countDown();
-			}
+			work();
 		}
 		
 		public abstract void work();
 	}
+
+	/**
+	 * 任务句柄，持有最近一轮的执行结果
+	 */
+	public static class Task<R> {
+		private final Callable<R> callable;
+		private volatile Execution<R> execution;
+
+		Task(Callable<R> callable) {
+			this.callable = callable;
+		}
+
+		Execution<R> newExecution(RoundLatch latch) {
+			final Execution<R> created = new Execution<R>(callable, latch);
+			this.execution = created;
+			return created;
+		}
+
+		/**
+		 * @return 本轮是否已结束（成功、失败或被取消）
+		 */
+		public boolean isDone() {
+			final Execution<R> current = execution;
+			return null != current && current.state.get() > Execution.RUNNING;
+		}
+
+		/**
+		 * @return 本轮是否成功完成
+		 */
+		public boolean isSucceeded() {
+			final Execution<R> current = execution;
+			return null != current && current.state.get() == Execution.SUCCEEDED;
+		}
+
+		/**
+		 * @return 本轮是否被取消
+		 */
+		public boolean isCancelled() {
+			final Execution<R> current = execution;
+			return null != current && current.state.get() >= Execution.INTERRUPTING;
+		}
+
+		/**
+		 * @return 本轮的返回值，未成功完成时为<code>null</code>
+		 */
+		public R getResult() {
+			final Execution<R> current = execution;
+			return null != current && current.state.get() == Execution.SUCCEEDED ? current.result : null;
+		}
+
+		/**
+		 * @return 本轮抛出的异常，未失败时为<code>null</code>
+		 */
+		public Throwable getError() {
+			final Execution<R> current = execution;
+			return null != current && current.state.get() == Execution.FAILED ? current.error : null;
+		}
+
+		/**
+		 * @param unit 时间单位
+		 * @return 本轮执行耗时，未结束或被取消时为-1
+		 */
+		public long getElapsed(TimeUnit unit) {
+			final Execution<R> current = execution;
+			if (null == current) {
+				return -1;
+			}
+			final int state = current.state.get();
+			if (state != Execution.SUCCEEDED && state != Execution.FAILED) {
+				return -1;
+			}
+			return unit.convert(current.endNanos - current.startNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @return 任务本身
+		 */
+		public Callable<R> getCallable() {
+			return callable;
+		}
+	}
+
+	/**
+	 * 一轮的耗时统计
+	 */
+	public static class RoundStats {
+		private int succeeded;
+		private int failed;
+		private int cancelled;
+		private long elapsedNanos;
+		private Task<?> slowest;
+		private long slowestNanos;
+
+		/**
+		 * @return 成功的任务数
+		 */
+		public int getSucceeded() {
+			return succeeded;
+		}
+
+		/**
+		 * @return 抛出异常的任务数
+		 */
+		public int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return 被取消的任务数
+		 */
+		public int getCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * @param unit 时间单位
+		 * @return 从开始到最后一个任务结束（或被取消）的耗时
+		 */
+		public long getElapsed(TimeUnit unit) {
+			return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @return 耗时最长的已结束任务，没有时为<code>null</code>
+		 */
+		public Task<?> getSlowest() {
+			return slowest;
+		}
+
+		/**
+		 * @param unit 时间单位
+		 * @return 耗时最长的任务的耗时
+		 */
+		public long getSlowestElapsed(TimeUnit unit) {
+			return unit.convert(slowestNanos, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public String toString() {
+			return "RoundStats[succeeded=" + succeeded + ", failed=" + failed + ", cancelled=" + cancelled
+					+ ", elapsed=" + getElapsed(TimeUnit.MILLISECONDS) + "ms, slowest=" + getSlowestElapsed(TimeUnit.MILLISECONDS) + "ms]";
+		}
+	}
+
+	/**
+	 * 任务的一次执行，每轮新建，避免上一轮被取消但仍在运行的任务影响本轮
+	 */
+	static class Execution<R> implements Runnable {
+		static final int NEW = 0;
+		static final int RUNNING = 1;
+		static final int SUCCEEDED = 2;
+		static final int FAILED = 3;
+		static final int INTERRUPTING = 4;
+		static final int CANCELLED = 5;
+
+		private final Callable<R> callable;
+		private final RoundLatch latch;
+		final AtomicInteger state = new AtomicInteger(NEW);
+		private volatile Thread runner;
+		private volatile R result;
+		private volatile Throwable error;
+		volatile long startNanos;
+		volatile long endNanos;
+
+		Execution(Callable<R> callable, RoundLatch latch) {
+			this.callable = callable;
+			this.latch = latch;
+		}
+
+		@Override
+		public void run() {
+			runner = Thread.currentThread();
+			startNanos = System.nanoTime();
+			if (false == state.compareAndSet(NEW, RUNNING)) {
+				runner = null;
+				return;
+			}
+			R value = null;
+			Throwable failure = null;
+			try {
+				value = callable.call();
+			} catch (Throwable e) {
+				failure = e;
+			}
+			endNanos = System.nanoTime();
+			result = value;
+			error = failure;
+			if (state.compareAndSet(RUNNING, null == failure ? SUCCEEDED : FAILED)) {
+				runner = null;
+				latch.countDown();
+				return;
+			}
+			// 已被取消：等待中断发出后清除中断标志，避免影响线程池中的下一个任务
+			while (state.get() == INTERRUPTING) {
+				Thread.yield();
+			}
+			runner = null;
+			Thread.interrupted();
+		}
+
+		void cancel() {
+			if (state.compareAndSet(NEW, CANCELLED)) {
+				latch.countDown();
+			} else if (state.compareAndSet(RUNNING, INTERRUPTING)) {
+				try {
+					final Thread thread = runner;
+					if (null != thread) {
+						thread.interrupt();
+					}
+				} finally {
+					state.set(CANCELLED);
+					latch.countDown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 可重置的计数器，语义与CountDownLatch相同
+	 */
+	static final class RoundLatch extends AbstractQueuedSynchronizer {
+		private static final long serialVersionUID = 1L;
+
+		void reset(int count) {
+			setState(count);
+		}
+
+		int getCount() {
+			return getState();
+		}
+
+		void countDown() {
+			releaseShared(1);
+		}
+
+		void await() throws InterruptedException {
+			acquireSharedInterruptibly(1);
+		}
+
+		boolean await(long nanos) throws InterruptedException {
+			return tryAcquireSharedNanos(1, nanos);
+		}
+
+		@Override
+		protected int tryAcquireShared(int acquires) {
+			return getState() == 0 ? 1 : -1;
+		}
+
+		@Override
+		protected boolean tryReleaseShared(int releases) {
+			for (;;) {
+				final int count = getState();
+				if (count == 0) {
+					return false;
+				}
+				if (compareAndSetState(count, count - 1)) {
+					return count == 1;
+				}
+			}
+		}
+	}
 }
@@ -17,6 +17,7 @@ package com.jd.meeop.util;
 
 import com.jd.meeop.exception.UtilException;
 import com.jd.meeop.lang.Editor;
+import com.jd.meeop.lang.Mapper;
 
 import java.lang.reflect.Array;
 import java.util.*;
@@ -35,6 +36,23 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class CollectionUtil {
 
+	/**
+	 * 并行操作的阈值，元素数小于此值时在调用线程中顺序执行，避免小集合的任务切分与线程调度开销
+	 */
+	public static final int PARALLEL_THRESHOLD = 8192;
+
+	/**
+	 * 并行集合运算的类型
+	 */
+	private enum SetOperation {
+		/** 并集，保留两个集合中最多的个数 */
+		UNION,
+		/** 交集，保留两个集合中最少的个数 */
+		INTERSECTION,
+		/** 对称差，保留两个集合中个数之差 */
+		DISJUNCTION
+	}
+
 	/**
 	 * 静态类不可实例化
 	 */
@@ -202,6 +220,9 @@ public class CollectionUtil {
 	 * a: 1<br>
 	 * b: 1<br>
 	 * c: 3<br>
+	 * 精确计数会为每个不同元素保存一个计数，高基数的数据流请使用固定内存的
+	 * {@link com.jd.meeop.util.sketch.HyperLogLog}（基数）、{@link com.jd.meeop.util.sketch.CountMinSketch}（频率）
+	 * 或{@link com.jd.meeop.util.sketch.TopK}（高频元素）
 	 * 
 	 * @param collection 集合
 	 * @return {@link Map}
@@ -358,7 +379,8 @@ public class CollectionUtil {
 	}
 
 	/**
-	 * 切取部分数据
+	 * 切取部分数据<br>
+	 * 把逐个到达的数据异步合并为批次见{@link ThreadUtil#newBatcher(String, int, long, java.util.concurrent.TimeUnit, com.jd.meeop.util.thread.BatchConsumer)}
 	 * 
 	 * @param <T> 集合元素类型
 	 * @param surplusAlaDatas 原数据
@@ -386,7 +408,8 @@ public class CollectionUtil {
 	}
 
 	/**
-	 * 切取部分数据
+	 * 切取部分数据<br>
+	 * 把逐个到达的数据异步合并为批次见{@link ThreadUtil#newBatcher(String, int, long, java.util.concurrent.TimeUnit, com.jd.meeop.util.thread.BatchConsumer)}
 	 * 
 	 * @param <T> 集合元素类型
 	 * @param surplusAlaDatas 原数据
@@ -1525,6 +1548,177 @@ public class CollectionUtil {
 		}
 	}
 	
+	// ---------------------------------------------------------------- Parallel start
+	/**
+	 * 并行过滤，语义同{@link #filter(Collection, Editor)}：{@link Editor#edit(Object)}返回<code>null</code>的元素被丢弃，其余保留原值<br>
+	 * 编辑器会在Fork/Join池的多个线程中并发调用，需线程安全
+	 *
+	 * @param collection 集合
+	 * @param editor 编辑器
+	 * @return 过滤后的列表，保持原有顺序
+	 */
+	public static <T> List<T> parallelFilter(Collection<T> collection, Editor<T> editor) {
+		final Object[] items = collection.toArray();
+		return ParallelTasks.edit(items, editor, false, isParallel(items));
+	}
+
+	/**
+	 * 并行映射：保留{@link Editor#edit(Object)}的返回值，返回<code>null</code>的元素被丢弃<br>
+	 * 编辑器会在Fork/Join池的多个线程中并发调用，需线程安全
+	 *
+	 * @param collection 集合
+	 * @param editor 编辑器
+	 * @return 编辑后的列表，保持原有顺序
+	 */
+	public static <T> List<T> parallelEdit(Collection<T> collection, Editor<T> editor) {
+		final Object[] items = collection.toArray();
+		return ParallelTasks.edit(items, editor, true, isParallel(items));
+	}
+
+	/**
+	 * 并行排序，稳定排序，结果与{@link #sort(Collection, Comparator)}一致
+	 *
+	 * @param collection 集合
+	 * @param comparator 比较器，<code>null</code>表示按自然顺序
+	 * @return 排序后的新列表
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> List<T> parallelSort(Collection<T> collection, Comparator<? super T> comparator) {
+		final Object[] items = collection.toArray();
+		ParallelTasks.sort(items, comparator, isParallel(items));
+		return (List<T>) new ArrayList<Object>(Arrays.asList(items));
+	}
+
+	/**
+	 * 并行计数，语义同{@link #countMap(Collection)}<br>
+	 * 每个子任务使用私有的计数表，汇合时合并，子任务之间不共享计数器
+	 *
+	 * @param collection 集合
+	 * @return 元素与出现次数
+	 */
+	public static <T> Map<T, Long> parallelCountMap(Collection<T> collection) {
+		return parallelCountBy(collection, null);
+	}
+
+	/**
+	 * 并行按键计数
+	 *
+	 * @param collection 集合
+	 * @param mapper 计数键，<code>null</code>表示以元素本身为键，会被并发调用，需线程安全
+	 * @return 键与元素个数
+	 */
+	public static <T, K> Map<K, Long> parallelCountBy(Collection<T> collection, Mapper<T, K> mapper) {
+		final Object[] items = collection.toArray();
+		return toLongMap(ParallelTasks.<T, K>count(items, mapper, isParallel(items)));
+	}
+
+	/**
+	 * 并行分组
+	 *
+	 * @param collection 集合
+	 * @param mapper 分组键，会被并发调用，需线程安全
+	 * @return 键与组内元素，组内保持原有顺序
+	 */
+	public static <T, K> Map<K, List<T>> parallelGroupBy(Collection<T> collection, Mapper<T, K> mapper) {
+		final Object[] items = collection.toArray();
+		return ParallelTasks.group(items, mapper, isParallel(items));
+	}
+
+	/**
+	 * 并行求两个集合的并集，每个元素保留两个集合中最多的个数<br>
+	 * 例如：集合1：[a, b, c, c, c, d]，集合2：[a, b, c, c, e]<br>
+	 * 结果：[a, b, c, c, c, d, e]，元素顺序不保证<br>
+	 * 注意与{@link #union(Collection, Collection)}不同：只在集合1中出现的元素（上例中的d）同样保留，
+	 * 而union在两个集合都非空时只统计集合2中出现过的元素
+	 *
+	 * @param coll1 集合1
+	 * @param coll2 集合2
+	 * @return 并集，返回 {@link ArrayList}
+	 */
+	public static <T> List<T> parallelUnion(Collection<T> coll1, Collection<T> coll2) {
+		return parallelSetOperation(coll1, coll2, SetOperation.UNION);
+	}
+
+	/**
+	 * 并行求两个集合的交集，每个元素保留两个集合中最少的个数<br>
+	 * 例如：集合1：[a, b, c, c, c]，集合2：[a, b, c, c]<br>
+	 * 结果：[a, b, c, c]，元素顺序不保证
+	 *
+	 * @param coll1 集合1
+	 * @param coll2 集合2
+	 * @return 交集，返回 {@link ArrayList}
+	 */
+	public static <T> List<T> parallelIntersection(Collection<T> coll1, Collection<T> coll2) {
+		return parallelSetOperation(coll1, coll2, SetOperation.INTERSECTION);
+	}
+
+	/**
+	 * 并行求两个集合的差集（对称差），每个元素保留两个集合中个数之差<br>
+	 * 例如：集合1：[a, b, c, c, c, d]，集合2：[a, b, c, e]<br>
+	 * 结果：[c, c, d, e]，元素顺序不保证<br>
+	 * 注意与{@link #disjunction(Collection, Collection)}不同：只在集合1中出现的元素（上例中的d）同样保留，
+	 * 其中一个集合为空时结果为另一个集合的全部元素；而disjunction只统计集合2中出现过的元素，任一集合为空时返回空集合
+	 *
+	 * @param coll1 集合1
+	 * @param coll2 集合2
+	 * @return 差集，返回 {@link ArrayList}
+	 */
+	public static <T> List<T> parallelDisjunction(Collection<T> coll1, Collection<T> coll2) {
+		return parallelSetOperation(coll1, coll2, SetOperation.DISJUNCTION);
+	}
+
+	private static <T> List<T> parallelSetOperation(Collection<T> coll1, Collection<T> coll2, SetOperation operation) {
+		final Object[] items1 = null == coll1 ? new Object[0] : coll1.toArray();
+		final Object[] items2 = null == coll2 ? new Object[0] : coll2.toArray();
+		final Map<T, long[]> counts1 = ParallelTasks.<T, T>count(items1, null, isParallel(items1));
+		final Map<T, long[]> counts2 = ParallelTasks.<T, T>count(items2, null, isParallel(items2));
+
+		final ArrayList<T> list = new ArrayList<T>();
+		for (Entry<T, long[]> entry : counts1.entrySet()) {
+			final long count1 = entry.getValue()[0];
+			final long[] count2 = counts2.get(entry.getKey());
+			final long n;
+			switch (operation) {
+			case UNION:
+				n = null == count2 ? count1 : Math.max(count1, count2[0]);
+				break;
+			case INTERSECTION:
+				n = null == count2 ? 0 : Math.min(count1, count2[0]);
+				break;
+			default:
+				n = null == count2 ? count1 : Math.abs(count1 - count2[0]);
+				break;
+			}
+			for (long i = 0; i < n; i++) {
+				list.add(entry.getKey());
+			}
+		}
+		if (SetOperation.INTERSECTION != operation) {
+			// 只在集合2中出现的元素
+			for (Entry<T, long[]> entry : counts2.entrySet()) {
+				if (false == counts1.containsKey(entry.getKey())) {
+					for (long i = 0, n = entry.getValue()[0]; i < n; i++) {
+						list.add(entry.getKey());
+					}
+				}
+			}
+		}
+		return list;
+	}
+
+	private static boolean isParallel(Object[] items) {
+		return items.length >= PARALLEL_THRESHOLD;
+	}
+
+	private static <K> Map<K, Long> toLongMap(Map<K, long[]> counts) {
+		final HashMap<K, Long> result = new HashMap<K, Long>(Math.max(16, (int) (counts.size() / 0.75f) + 1));
+		for (Entry<K, long[]> entry : counts.entrySet()) {
+			result.put(entry.getKey(), entry.getValue()[0]);
+		}
+		return result;
+	}
+	// ---------------------------------------------------------------- Parallel end
+
 	/**
 	 * 针对一个参数做相应的操作
 	 *
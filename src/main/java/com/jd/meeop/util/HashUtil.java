@@ -15,11 +15,18 @@
  */
 package com.jd.meeop.util;
 
+import com.jd.meeop.util.hash.Murmur3;
+import com.jd.meeop.util.hash.StreamingHasher;
+import com.jd.meeop.util.hash.XxHash64;
+
+import java.nio.ByteBuffer;
+
 /**
  * Hash算法工具类
  * @ClassName: HashUtil
  * @Description:
- * 推荐使用FNV1算法
+ * 推荐使用FNV1算法；分片、布隆过滤器、去重等场景推荐MurmurHash3或xxHash64，
+ * 它们接受byte[]、ByteBuffer和CharSequence（按UTF-16LE，不转码），按字/长字读取
  *
  * @author: 冷水(Toby)
  * @date: 16-12-7 14:45
@@ -199,6 +206,29 @@ public class HashUtil {
 		return hash;
 	}
 
+	/**
+	 * 改进的32位FNV算法1，结果与对相同字符组成的字符串调用{@link #fnvHash(String)}一致
+	 * 
+	 * @param data 字符数组
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @return hash结果
+	 */
+	public static int fnvHash(char[] data, int offset, int length) {
+		final int p = 16777619;
+		int hash = (int) 2166136261L;
+		final int end = offset + length;
+		for (int i = offset; i < end; i++){
+			hash = (hash ^ data[i]) * p;
+		}
+		hash += hash << 13;
+		hash ^= hash >> 7;
+		hash += hash << 3;
+		hash ^= hash >> 17;
+		hash += hash << 5;
+		return hash;
+	}
+
 	/**
 	 * Thomas Wang的算法，整数hash
 	 * 
@@ -452,4 +482,171 @@ public class HashUtil {
 		hash |= fnvHash(str);
 		return hash;
 	}
+
+	// ---------------------------------------------------------------- MurmurHash3 / xxHash64 start
+	/**
+	 * 32位MurmurHash3，种子为0
+	 * 
+	 * @param data 数据
+	 * @return hash值
+	 */
+	public static int murmur32(byte[] data) {
+		return Murmur3.hash32(data, 0, data.length, 0);
+	}
+
+	/**
+	 * 32位MurmurHash3
+	 * 
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static int murmur32(byte[] data, int offset, int length, int seed) {
+		return Murmur3.hash32(data, offset, length, seed);
+	}
+
+	/**
+	 * 32位MurmurHash3，计算position到limit之间的数据，不改变position
+	 * 
+	 * @param data 数据
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static int murmur32(ByteBuffer data, int seed) {
+		return Murmur3.hash32(data, seed);
+	}
+
+	/**
+	 * 32位MurmurHash3，按UTF-16LE编码计算，不做字符集转换
+	 * 
+	 * @param data 字符序列
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static int murmur32(CharSequence data, int seed) {
+		return Murmur3.hash32(data, seed);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128），种子为0
+	 * 
+	 * @param data 数据
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	public static long[] murmur128(byte[] data) {
+		return Murmur3.hash128(data, 0, data.length, 0);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128）
+	 * 
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @param seed 种子
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	public static long[] murmur128(byte[] data, int offset, int length, int seed) {
+		return Murmur3.hash128(data, offset, length, seed);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128），计算position到limit之间的数据，不改变position
+	 * 
+	 * @param data 数据
+	 * @param seed 种子
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	public static long[] murmur128(ByteBuffer data, int seed) {
+		return Murmur3.hash128(data, seed);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128），按UTF-16LE编码计算，不做字符集转换
+	 * 
+	 * @param data 字符序列
+	 * @param seed 种子
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	public static long[] murmur128(CharSequence data, int seed) {
+		return Murmur3.hash128(data, seed);
+	}
+
+	/**
+	 * xxHash64，种子为0
+	 * 
+	 * @param data 数据
+	 * @return hash值
+	 */
+	public static long xxHash64(byte[] data) {
+		return XxHash64.hash(data, 0, data.length, 0);
+	}
+
+	/**
+	 * xxHash64
+	 * 
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static long xxHash64(byte[] data, int offset, int length, long seed) {
+		return XxHash64.hash(data, offset, length, seed);
+	}
+
+	/**
+	 * xxHash64，计算position到limit之间的数据，不改变position
+	 * 
+	 * @param data 数据
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static long xxHash64(ByteBuffer data, long seed) {
+		return XxHash64.hash(data, seed);
+	}
+
+	/**
+	 * xxHash64，按UTF-16LE编码计算，不做字符集转换
+	 * 
+	 * @param data 字符序列
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static long xxHash64(CharSequence data, long seed) {
+		return XxHash64.hash(data, seed);
+	}
+
+	/**
+	 * 创建128位MurmurHash3的增量计算对象，用于分段输入的大数据
+	 * 
+	 * @param seed 种子
+	 * @return 增量计算对象，{@link Murmur3.Hasher#hash128()}获取128位结果
+	 */
+	public static Murmur3.Hasher newMurmur128Hasher(int seed) {
+		return Murmur3.newHasher(seed);
+	}
+
+	/**
+	 * 创建xxHash64的增量计算对象，用于分段输入的大数据
+	 * 
+	 * @param seed 种子
+	 * @return 增量计算对象
+	 */
+	public static StreamingHasher newXxHash64Hasher(long seed) {
+		return XxHash64.newHasher(seed);
+	}
+
+	/**
+	 * 64位快速混淆（MurmurHash3 fmix64），输入的每一位都会影响输出的每一位，适合把整数key或弱hash打散
+	 * 
+	 * @param value 输入
+	 * @return 混淆结果
+	 */
+	public static long mix64(long value) {
+		return Murmur3.fmix64(value);
+	}
+	// ---------------------------------------------------------------- MurmurHash3 / xxHash64 end
 }
\ No newline at end of file
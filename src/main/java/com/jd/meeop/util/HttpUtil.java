@@ -16,6 +16,7 @@
 package com.jd.meeop.util;
 
 import com.jd.meeop.util.http.HttpRequest;
+import com.jd.meeop.util.http.RangeDownloader;
 import com.jd.meeop.util.io.FastByteArrayOutputStream;
 import com.jd.meeop.util.io.StreamProgress;
 import com.jd.meeop.exception.HttpException;
@@ -244,17 +245,7 @@ public class HttpUtil {
 		if(StringUtil.isBlank(url)){
 			throw new NullPointerException("[url] is null!");
 		}
-		if(null == destFile){
-			throw new NullPointerException("[destFile] is null!");
-		}
-		if(destFile.isDirectory()){
-			String fileName = StringUtil.subSuf(url, url.lastIndexOf('/') + 1);
-			logger.debug("FileName: {}", fileName);
-			if(StringUtil.isBlank(fileName)){
-				fileName = encode(url, CharsetUtil.CHARSET_UTF_8);
-			}
-			destFile = FileUtil.file(destFile, fileName);
-		}
+		destFile = destFile(url, destFile);
 		
 		OutputStream out = null;
 		try {
@@ -265,6 +256,24 @@ public class HttpUtil {
 		}
 	}
 	
+	/**
+	 * 分段并行下载远程文件，支持断点续传<br>
+	 * 服务器支持Range请求时分成多段同时下载，中断后再次调用从断点继续；不支持时顺序下载。详见{@link RangeDownloader}
+	 * 
+	 * @param url 请求的url
+	 * @param destFile 目标文件或目录，当为目录时，取URL中的文件名，取不到使用编码后的URL做为文件名
+	 * @param segments 分段数
+	 * @param streamProgress 进度条
+	 * @return 文件大小
+	 */
+	public static long downloadFile(String url, File destFile, int segments, StreamProgress streamProgress) {
+		if(StringUtil.isBlank(url)){
+			throw new NullPointerException("[url] is null!");
+		}
+		destFile = destFile(url, destFile);
+		return RangeDownloader.create(url).setSegments(segments).download(destFile, streamProgress);
+	}
+	
 	/**
 	 * 下载远程文件
 	 * 
@@ -457,8 +466,21 @@ public class HttpUtil {
 			return null;
 		}
 
-		String charset = ReUtil.get(CHARSET_PATTERN, conn.getContentType(), 1);
-		return charset;
+		return getCharset(conn.getContentType());
+	}
+	
+	/**
+	 * 从Content-Type头信息中获得字符集
+	 * 
+	 * @param contentType Content-Type头信息
+	 * @return 字符集，无法获得时返回<code>null</code>
+	 */
+	public static String getCharset(String contentType) {
+		if(null == contentType){
+			return null;
+		}
+		
+		return ReUtil.get(CHARSET_PATTERN, contentType, 1);
 	}
 	
 	/**
@@ -538,6 +560,28 @@ public class HttpUtil {
 	}
 	// ----------------------------------------------------------------------------------------- Private method start
 
+	/**
+	 * 下载的目标文件，为目录时取URL中的文件名
+	 * 
+	 * @param url 请求的url
+	 * @param destFile 目标文件或目录
+	 * @return 目标文件
+	 */
+	private static File destFile(String url, File destFile) {
+		if(null == destFile){
+			throw new NullPointerException("[destFile] is null!");
+		}
+		if(destFile.isDirectory()){
+			String fileName = StringUtil.subSuf(url, url.lastIndexOf('/') + 1);
+			logger.debug("FileName: {}", fileName);
+			if(StringUtil.isBlank(fileName)){
+				fileName = encode(url, CharsetUtil.CHARSET_UTF_8);
+			}
+			destFile = FileUtil.file(destFile, fileName);
+		}
+		return destFile;
+	}
+
 	/**
 	 * 将键值对加入到值为List类型的Map中
 	 * 
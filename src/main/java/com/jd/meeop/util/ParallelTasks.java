@@ -0,0 +1,392 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util;
+
+import com.jd.meeop.lang.Editor;
+import com.jd.meeop.lang.Mapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CollectionUtil并行操作的Fork/Join任务
+ * @ClassName: ParallelTasks
+ * @Description:
+ * 输入先复制为数组，按固定大小切分为若干叶子段：过滤、映射的结果按叶子下标存放，最后一次性按顺序拼接；
+ * 计数、分组在每个叶子内使用私有的HashMap，汇合时把小的合并进大的，叶子之间没有共享的计数器，也就没有竞争
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 22:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class ParallelTasks {
+
+	/** 每个叶子段的最小元素数 */
+	private static final int MIN_LEAF_SIZE = 1024;
+
+	private ParallelTasks() {
+	}
+
+	/**
+	 * 并行度为CPU数的公共池，延迟到第一次并行操作时创建
+	 */
+	private static class PoolHolder {
+		static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * 执行任务：输入小于阈值时在调用线程中顺序执行，否则提交到公共池
+	 * @param task 任务
+	 * @param parallel 是否并行
+	 * @return 结果
+	 */
+	static <R> R invoke(RecursiveTask<R> task, boolean parallel) {
+		return parallel ? PoolHolder.POOL.invoke(task) : task.invoke();
+	}
+
+	/**
+	 * 执行任务：输入小于阈值时在调用线程中顺序执行，否则提交到公共池
+	 * @param task 任务
+	 * @param parallel 是否并行
+	 */
+	static void invoke(RecursiveAction task, boolean parallel) {
+		if (parallel) {
+			PoolHolder.POOL.invoke(task);
+		} else {
+			task.invoke();
+		}
+	}
+
+	/**
+	 * @param size 元素数
+	 * @param parallel 是否并行
+	 * @return 叶子段大小，顺序执行时为整个输入
+	 */
+	static int leafSize(int size, boolean parallel) {
+		if (false == parallel) {
+			return Math.max(1, size);
+		}
+		return Math.max(MIN_LEAF_SIZE, size / (PoolHolder.POOL.getParallelism() << 2));
+	}
+
+	// ---------------------------------------------------------------- Edit start
+	/**
+	 * 并行编辑
+	 * @param items 元素
+	 * @param editor 编辑器
+	 * @param keepEdited true保留编辑后的值（映射），false保留原值（过滤）
+	 * @param parallel 是否并行
+	 * @return 结果，保持原有顺序，编辑结果为null的元素被丢弃
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> List<T> edit(final Object[] items, final Editor<T> editor, final boolean keepEdited, boolean parallel) {
+		final int leaf = leafSize(items.length, parallel);
+		final int leafCount = (items.length + leaf - 1) / leaf;
+		final Object[][] parts = new Object[leafCount][];
+		final int[] partSizes = new int[leafCount];
+		invoke(new LeafAction(0, leafCount, new Leaf() {
+			@Override
+			public void leaf(int index) {
+				final int from = index * leaf;
+				final int to = Math.min(items.length, from + leaf);
+				final Object[] part = new Object[to - from];
+				int size = 0;
+				for (int i = from; i < to; i++) {
+					final T modified = editor.edit((T) items[i]);
+					if (null != modified) {
+						part[size++] = keepEdited ? modified : items[i];
+					}
+				}
+				parts[index] = part;
+				partSizes[index] = size;
+			}
+		}), parallel);
+
+		int total = 0;
+		for (int size : partSizes) {
+			total += size;
+		}
+		final Object[] result = new Object[total];
+		int pos = 0;
+		for (int i = 0; i < leafCount; i++) {
+			System.arraycopy(parts[i], 0, result, pos, partSizes[i]);
+			pos += partSizes[i];
+		}
+		return (List<T>) new ArrayList<Object>(Arrays.asList(result));
+	}
+	// ---------------------------------------------------------------- Edit end
+
+	// ---------------------------------------------------------------- Count & group start
+	/**
+	 * 并行计数
+	 * @param items 元素
+	 * @param mapper 计数键，null表示以元素本身为键
+	 * @param parallel 是否并行
+	 * @return 键与计数（long[1]）
+	 */
+	static <T, K> Map<K, long[]> count(Object[] items, Mapper<T, K> mapper, boolean parallel) {
+		return invoke(new CountTask<T, K>(items, 0, items.length, leafSize(items.length, parallel), mapper), parallel);
+	}
+
+	/**
+	 * 并行分组
+	 * @param items 元素
+	 * @param mapper 分组键
+	 * @param parallel 是否并行
+	 * @return 键与组内元素，组内保持原有顺序
+	 */
+	static <T, K> Map<K, List<T>> group(Object[] items, Mapper<T, K> mapper, boolean parallel) {
+		return invoke(new GroupTask<T, K>(items, 0, items.length, leafSize(items.length, parallel), mapper), parallel);
+	}
+
+	private static class CountTask<T, K> extends RecursiveTask<Map<K, long[]>> {
+		private static final long serialVersionUID = 1L;
+		private final Object[] items;
+		private final int from;
+		private final int to;
+		private final int leaf;
+		private final Mapper<T, K> mapper;
+
+		CountTask(Object[] items, int from, int to, int leaf, Mapper<T, K> mapper) {
+			this.items = items;
+			this.from = from;
+			this.to = to;
+			this.leaf = leaf;
+			this.mapper = mapper;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected Map<K, long[]> compute() {
+			if (to - from <= leaf) {
+				final Map<K, long[]> counts = new HashMap<K, long[]>();
+				for (int i = from; i < to; i++) {
+					final K key = null == mapper ? (K) items[i] : mapper.map((T) items[i]);
+					final long[] count = counts.get(key);
+					if (null == count) {
+						counts.put(key, new long[]{1});
+					} else {
+						count[0]++;
+					}
+				}
+				return counts;
+			}
+			final int mid = (from + to) >>> 1;
+			final CountTask<T, K> left = new CountTask<T, K>(items, from, mid, leaf, mapper);
+			left.fork();
+			final Map<K, long[]> right = new CountTask<T, K>(items, mid, to, leaf, mapper).compute();
+			return merge(left.join(), right);
+		}
+
+		private static <K> Map<K, long[]> merge(Map<K, long[]> a, Map<K, long[]> b) {
+			final Map<K, long[]> big = a.size() >= b.size() ? a : b;
+			final Map<K, long[]> small = big == a ? b : a;
+			for (Entry<K, long[]> entry : small.entrySet()) {
+				final long[] count = big.get(entry.getKey());
+				if (null == count) {
+					big.put(entry.getKey(), entry.getValue());
+				} else {
+					count[0] += entry.getValue()[0];
+				}
+			}
+			return big;
+		}
+	}
+
+	private static class GroupTask<T, K> extends RecursiveTask<Map<K, List<T>>> {
+		private static final long serialVersionUID = 1L;
+		private final Object[] items;
+		private final int from;
+		private final int to;
+		private final int leaf;
+		private final Mapper<T, K> mapper;
+
+		GroupTask(Object[] items, int from, int to, int leaf, Mapper<T, K> mapper) {
+			this.items = items;
+			this.from = from;
+			this.to = to;
+			this.leaf = leaf;
+			this.mapper = mapper;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected Map<K, List<T>> compute() {
+			if (to - from <= leaf) {
+				final Map<K, List<T>> groups = new HashMap<K, List<T>>();
+				for (int i = from; i < to; i++) {
+					final T item = (T) items[i];
+					final K key = mapper.map(item);
+					List<T> group = groups.get(key);
+					if (null == group) {
+						group = new ArrayList<T>();
+						groups.put(key, group);
+					}
+					group.add(item);
+				}
+				return groups;
+			}
+			final int mid = (from + to) >>> 1;
+			final GroupTask<T, K> left = new GroupTask<T, K>(items, from, mid, leaf, mapper);
+			left.fork();
+			final Map<K, List<T>> right = new GroupTask<T, K>(items, mid, to, leaf, mapper).compute();
+			final Map<K, List<T>> result = left.join();
+			// 右半部分并入左半部分，保证组内顺序
+			for (Entry<K, List<T>> entry : right.entrySet()) {
+				final List<T> group = result.get(entry.getKey());
+				if (null == group) {
+					result.put(entry.getKey(), entry.getValue());
+				} else {
+					group.addAll(entry.getValue());
+				}
+			}
+			return result;
+		}
+	}
+	// ---------------------------------------------------------------- Count & group end
+
+	// ---------------------------------------------------------------- Sort start
+	/** 自然顺序比较器，元素需实现Comparable */
+	private static final Comparator<Object> NATURAL_ORDER = new Comparator<Object>() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public int compare(Object o1, Object o2) {
+			return ((Comparable<Object>) o1).compareTo(o2);
+		}
+	};
+
+	/**
+	 * 并行归并排序，稳定
+	 * @param items 元素，原地排序
+	 * @param comparator 比较器，<code>null</code>表示按自然顺序
+	 * @param parallel 是否并行
+	 */
+	static <T> void sort(Object[] items, Comparator<? super T> comparator, boolean parallel) {
+		if (false == parallel) {
+			sortRange(items, 0, items.length, comparator);
+			return;
+		}
+		// 归并时直接调用比较器，null需在拆分前换成自然顺序
+		Comparator<? super T> order = comparator;
+		if (null == order) {
+			order = NATURAL_ORDER;
+		}
+		invoke(new SortTask<T>(items, new Object[items.length], 0, items.length, leafSize(items.length, true), order), true);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void sortRange(Object[] items, int from, int to, Comparator<? super T> comparator) {
+		Arrays.sort((T[]) items, from, to, comparator);
+	}
+
+	private static class SortTask<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Object[] items;
+		private final Object[] buffer;
+		private final int from;
+		private final int to;
+		private final int leaf;
+		private final Comparator<? super T> comparator;
+
+		SortTask(Object[] items, Object[] buffer, int from, int to, int leaf, Comparator<? super T> comparator) {
+			this.items = items;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.leaf = leaf;
+			this.comparator = comparator;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void compute() {
+			if (to - from <= leaf) {
+				sortRange(items, from, to, comparator);
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			invokeAll(new SortTask<T>(items, buffer, from, mid, leaf, comparator),
+					new SortTask<T>(items, buffer, mid, to, leaf, comparator));
+			if (comparator.compare((T) items[mid - 1], (T) items[mid]) <= 0) {
+				// 已有序
+				return;
+			}
+			System.arraycopy(items, from, buffer, from, to - from);
+			int i = from;
+			int j = mid;
+			int k = from;
+			while (i < mid && j < to) {
+				// 相等时取左侧，保持稳定
+				items[k++] = comparator.compare((T) buffer[j], (T) buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+			}
+			while (i < mid) {
+				items[k++] = buffer[i++];
+			}
+			while (j < to) {
+				items[k++] = buffer[j++];
+			}
+		}
+	}
+	// ---------------------------------------------------------------- Sort end
+
+	/**
+	 * 叶子段处理
+	 */
+	interface Leaf {
+		/**
+		 * 处理一个叶子段
+		 * @param index 叶子下标
+		 */
+		void leaf(int index);
+	}
+
+	/**
+	 * 按叶子下标二分的任务
+	 */
+	private static class LeafAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int fromLeaf;
+		private final int toLeaf;
+		private final Leaf leaf;
+
+		LeafAction(int fromLeaf, int toLeaf, Leaf leaf) {
+			this.fromLeaf = fromLeaf;
+			this.toLeaf = toLeaf;
+			this.leaf = leaf;
+		}
+
+		@Override
+		protected void compute() {
+			if (toLeaf - fromLeaf <= 1) {
+				if (toLeaf > fromLeaf) {
+					leaf.leaf(fromLeaf);
+				}
+				return;
+			}
+			final int mid = (fromLeaf + toLeaf) >>> 1;
+			invokeAll(new LeafAction(fromLeaf, mid, leaf), new LeafAction(mid, toLeaf, leaf));
+		}
+	}
+}
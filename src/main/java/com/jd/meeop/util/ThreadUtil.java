@@ -15,8 +15,18 @@
  */
 package com.jd.meeop.util;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jd.meeop.exception.UtilException;
+import com.jd.meeop.util.queue.WaitStrategy;
+import com.jd.meeop.util.thread.BatchConsumer;
+import com.jd.meeop.util.thread.HashedWheelTimer;
+import com.jd.meeop.util.thread.InstrumentedThreadPool;
+import com.jd.meeop.util.thread.KeyedSerialExecutor;
+import com.jd.meeop.util.thread.MicroBatcher;
+import com.jd.meeop.util.thread.PoolMetrics;
+import com.jd.meeop.util.thread.RingBufferExecutor;
+import com.jd.meeop.util.thread.ThreadPoolBuilder;
+import com.jd.meeop.util.thread.Timeout;
+import com.jd.meeop.util.thread.VirtualThreads;
 
 import java.util.concurrent.*;
 
@@ -24,6 +34,10 @@ import java.util.concurrent.*;
  * 线程池工具
  * @ClassName: ThreadUtil
  * @Description:
+ * 公共线程池核心线程数按CPU数确定并允许空闲回收，通过{@link #getMetrics()}查看其队列、拒绝与耗时统计；
+ * 独立的线程池通过{@link #newPoolBuilder(String)}构建；延迟任务、超时通过{@link #schedule(Runnable, long, TimeUnit)}放入公共时间轮定时器。<br>
+ * 在Java 21+上设置系统属性<code>meeop.thread.virtual=true</code>后，{@link #execute(Runnable)}、{@link #execAsync(Callable)}
+ * 等公共方法改为每个任务一个虚拟线程，适合HTTP等阻塞型任务；低版本JVM上该属性无效，保持线程池行为
  * @author: 冷水(Toby)
  * @date: 16-12-7 14:45
  * @mail: zhao.wang@aliyun.com
@@ -31,7 +45,17 @@ import java.util.concurrent.*;
  * @since: JDK 1.7.0_79(Liunx)
  */
 public class ThreadUtil {
-	private static ExecutorService executor = newExecutor();
+	/** 公共线程池的队列容量 */
+	private static final int SHARED_QUEUE_CAPACITY = 100;
+	/** 公共线程池的最大线程数 */
+	private static final int SHARED_MAXIMUM_POOL_SIZE = 1024;
+
+	/** 启用虚拟线程的系统属性 */
+	public static final String VIRTUAL_THREAD_PROPERTY = "meeop.thread.virtual";
+
+	private static InstrumentedThreadPool executor = newExecutor();
+	/** 公共虚拟线程执行器，未启用或不支持时为null */
+	private static volatile ExecutorService virtualExecutor = newVirtualExecutorIfEnabled();
 
 	/**
 	 * 静态类不可实例化
@@ -45,7 +69,7 @@ public class ThreadUtil {
 	 */
 	public static void execute(Runnable runnable) {
 		try {
-			executor.execute(runnable);
+			sharedExecutor().execute(runnable);
 		} catch (Exception e) {
 			throw new UtilException("Exception when running task!", e);
 		}
@@ -57,6 +81,11 @@ public class ThreadUtil {
 	public static void restart() {
 		executor.shutdownNow();
 		executor = newExecutor();
+		final ExecutorService oldVirtualExecutor = virtualExecutor;
+		virtualExecutor = newVirtualExecutorIfEnabled();
+		if (null != oldVirtualExecutor) {
+			oldVirtualExecutor.shutdownNow();
+		}
 	}
 
 	/**
@@ -70,16 +99,188 @@ public class ThreadUtil {
 	}
 
 	/**
-	 * 获得一个新的线程池
+	 * 获得一个新的公共线程池：核心线程数为CPU数的两倍，空闲时回收，队列满后扩容到最大线程数，再满则拒绝
+	 * 
+	 * @return ExecutorService
+	 */
+	private static InstrumentedThreadPool newExecutor() {
+		final int core = Math.min(SHARED_MAXIMUM_POOL_SIZE, ThreadPoolBuilder.availableProcessors() * 2);
+		return ThreadPoolBuilder.create()
+				.setName("biz-pool")
+				.setCorePoolSize(core)
+				.setMaximumPoolSize(SHARED_MAXIMUM_POOL_SIZE)
+				.setKeepAliveTime(60L, TimeUnit.SECONDS)
+				.setQueueCapacity(SHARED_QUEUE_CAPACITY)
+				.setRejectedHandler(new ThreadPoolExecutor.AbortPolicy())
+				.setAllowCoreThreadTimeOut(true)
+				.build();
+	}
+
+	/**
+	 * 创建带名称和统计的线程池构建器
+	 * 
+	 * @param name 线程池名称
+	 * @return ThreadPoolBuilder
+	 */
+	public static ThreadPoolBuilder newPoolBuilder(String name) {
+		return ThreadPoolBuilder.create().setName(name);
+	}
+
+	/**
+	 * 创建每个任务一个虚拟线程的执行器，适合大量阻塞型任务（如HTTP扇出）。<br>
+	 * Java 21之前的JVM不支持虚拟线程，此时返回按阻塞型任务设置线程数（阻塞系数0.9）的有界线程池
 	 * 
+	 * @param name 线程名前缀
 	 * @return ExecutorService
 	 */
-	private static ExecutorService newExecutor() {
-		return new ThreadPoolExecutor(200, 1024, 60L,
-                TimeUnit.SECONDS,
-                new ArrayBlockingQueue<Runnable>(100),
-                new ThreadFactoryBuilder().setNameFormat("biz-pool-%d").build(),
-                new ThreadPoolExecutor.AbortPolicy());
+	public static ExecutorService newVirtualThreadExecutor(String name) {
+		if (VirtualThreads.isSupported()) {
+			return VirtualThreads.newVirtualThreadPerTaskExecutor(name);
+		}
+		return newPoolBuilder(name).sizeForIo(0.9).setAllowCoreThreadTimeOut(true).build();
+	}
+
+	/**
+	 * @return 公共方法是否在使用虚拟线程执行任务
+	 */
+	public static boolean isVirtualThreadEnabled() {
+		return null != virtualExecutor;
+	}
+
+	/**
+	 * @return 公共方法使用的执行器：启用虚拟线程时为虚拟线程执行器，否则为公共线程池
+	 */
+	private static ExecutorService sharedExecutor() {
+		final ExecutorService virtual = virtualExecutor;
+		return null != virtual ? virtual : executor;
+	}
+
+	/**
+	 * @return 设置了{@link #VIRTUAL_THREAD_PROPERTY}且JVM支持时返回虚拟线程执行器，否则返回null
+	 */
+	private static ExecutorService newVirtualExecutorIfEnabled() {
+		if (Boolean.getBoolean(VIRTUAL_THREAD_PROPERTY) && VirtualThreads.isSupported()) {
+			return VirtualThreads.newVirtualThreadPerTaskExecutor("biz-vthread");
+		}
+		return null;
+	}
+
+	/**
+	 * 获取公共线程池的统计快照，启用虚拟线程时公共方法提交的任务不计入
+	 * 
+	 * @return 统计快照
+	 */
+	public static PoolMetrics getMetrics() {
+		return executor.getMetrics();
+	}
+
+	/**
+	 * 在公共定时器上新建定时任务，到期后在公共执行器中运行，精度为{@link HashedWheelTimer#DEFAULT_TICK_MILLIS}毫秒
+	 * 
+	 * @param task 任务
+	 * @param delay 延迟
+	 * @param unit 延迟单位
+	 * @return 定时任务句柄，可用于取消
+	 */
+	public static Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		return getTimer().newTimeout(task, delay, unit);
+	}
+
+	/**
+	 * 获取公共定时器，所有定时任务共用一个时钟线程，到期的任务提交到公共执行器（{@link #execute(Runnable)}所用的执行器），
+	 * 公共执行器拒绝时在时钟线程中直接运行
+	 * 
+	 * @return 公共定时器
+	 */
+	public static HashedWheelTimer getTimer() {
+		return TimerHolder.TIMER;
+	}
+
+	/**
+	 * 新建时间轮定时器
+	 * 
+	 * @param name 时钟线程名
+	 * @param tickDuration 刻度，即到期时间的精度
+	 * @param unit 刻度单位
+	 * @param taskExecutor 到期任务的执行器，为null时在时钟线程中直接运行
+	 * @return 定时器
+	 */
+	public static HashedWheelTimer newTimer(String name, long tickDuration, TimeUnit unit, Executor taskExecutor) {
+		return new HashedWheelTimer(name, tickDuration, unit, HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL, taskExecutor);
+	}
+
+	/**
+	 * 新建微批处理器，批次在公共执行器中处理，等待时间由公共定时器调度，最多16个未完成的批次
+	 * 
+	 * @param name 名称
+	 * @param maxBatchSize 每批最多元素数
+	 * @param maxLinger 批次的最长等待时间
+	 * @param unit 时间单位
+	 * @param consumer 批量处理
+	 * @return 微批处理器
+	 */
+	public static <T, R> MicroBatcher<T, R> newBatcher(String name, int maxBatchSize, long maxLinger, TimeUnit unit,
+			BatchConsumer<T, R> consumer) {
+		return newBatcher(name, maxBatchSize, maxLinger, unit, 16, consumer);
+	}
+
+	/**
+	 * 新建微批处理器，批次在公共执行器中处理，等待时间由公共定时器调度
+	 * 
+	 * @param name 名称
+	 * @param maxBatchSize 每批最多元素数
+	 * @param maxLinger 批次的最长等待时间
+	 * @param unit 时间单位
+	 * @param maxOutstandingBatches 最多未完成的批次数，超过后提交阻塞
+	 * @param consumer 批量处理
+	 * @return 微批处理器
+	 */
+	public static <T, R> MicroBatcher<T, R> newBatcher(String name, int maxBatchSize, long maxLinger, TimeUnit unit,
+			int maxOutstandingBatches, BatchConsumer<T, R> consumer) {
+		return new MicroBatcher<T, R>(name, consumer, maxBatchSize, maxLinger, unit, maxOutstandingBatches,
+				SharedExecutorHolder.EXECUTOR, getTimer());
+	}
+
+	/**
+	 * 新建按键串行的执行器：同一个键的任务按提交顺序执行，不同键的任务在公共执行器中并行执行，
+	 * 代替按分片创建多个{@link #newSingleExecutor()}
+	 * 
+	 * @return 按键串行的执行器
+	 */
+	public static KeyedSerialExecutor newKeyedSerialExecutor() {
+		return new KeyedSerialExecutor(SharedExecutorHolder.EXECUTOR);
+	}
+
+	/**
+	 * 新建基于无锁环形队列的单线程执行器，用于把请求线程中的事件交给后台线程，代替单线程池的有锁队列
+	 * 
+	 * @param name 消费线程名
+	 * @param capacity 队列容量，队列满时提交等待
+	 * @param waitStrategy 消费线程空闲时的等待策略
+	 * @return 执行器
+	 */
+	public static RingBufferExecutor newRingBufferExecutor(String name, int capacity, WaitStrategy waitStrategy) {
+		return new RingBufferExecutor(name, capacity, waitStrategy);
+	}
+
+	/**
+	 * 转发到当前公共执行器的执行器，restart后仍然有效
+	 */
+	private static class SharedExecutorHolder {
+		static final Executor EXECUTOR = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				sharedExecutor().execute(command);
+			}
+		};
+	}
+
+	/**
+	 * 公共定时器，第一次使用时创建
+	 */
+	private static class TimerHolder {
+		static final HashedWheelTimer TIMER = new HashedWheelTimer("biz-timer", HashedWheelTimer.DEFAULT_TICK_MILLIS,
+				TimeUnit.MILLISECONDS, HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL, SharedExecutorHolder.EXECUTOR);
 	}
 
 	/**
@@ -117,7 +318,7 @@ public class ThreadUtil {
 	 * @return Future
 	 */
 	public static <T> Future<T> execAsync(Callable<T> task) {
-		return executor.submit(task);
+		return sharedExecutor().submit(task);
 	}
 
 	/**
@@ -126,7 +327,7 @@ public class ThreadUtil {
 	 * @return CompletionService
 	 */
 	public static <T> CompletionService<T> newCompletionService() {
-		return new ExecutorCompletionService<T>(executor);
+		return new ExecutorCompletionService<T>(sharedExecutor());
 	}
 
 	/**
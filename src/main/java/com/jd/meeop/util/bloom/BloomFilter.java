@@ -0,0 +1,388 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.bloom;
+
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.HashUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器
+ * @ClassName: BloomFilter
+ * @Description:
+ * 按预期元素数和目标误判率确定位数与hash函数个数。{@link #mightContain(CharSequence)}返回false时元素一定不存在，
+ * 返回true时有不超过目标误判率的概率误判，典型用途是挡住对不存在key的后端查询。<br>
+ * 位图为紧凑的long数组，写入通过CAS原子更新单个字，读写均不加锁；
+ * 每个元素只计算一次64位hash（{@link HashUtil#xxHash64(CharSequence, long)}），再用双重hash派生k个位置。<br>
+ * 可通过{@link #writeTo(OutputStream)}/{@link #readFrom(InputStream)}保存与加载，启动时直接载入预构建的过滤器
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 14:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class BloomFilter {
+
+	/** 流格式标识："BLMF" */
+	private static final int MAGIC = 0x424C4D46;
+	private static final int VERSION = 1;
+
+	private final AtomicLongArray words;
+	private final long bitSize;
+	private final int numHashFunctions;
+	/** 已置位的位数 */
+	private final AtomicLong bitCount = new AtomicLong();
+
+	/**
+	 * 构造
+	 * @param bitSize 位数，向上取整到64的倍数
+	 * @param numHashFunctions hash函数个数
+	 */
+	public BloomFilter(long bitSize, int numHashFunctions) {
+		AssertUtil.isTrue(bitSize > 0, "bitSize must be positive: " + bitSize);
+		AssertUtil.isTrue(numHashFunctions > 0 && numHashFunctions <= 255, "numHashFunctions must be in [1, 255]: " + numHashFunctions);
+		final long wordCount = (bitSize + 63) >>> 6;
+		AssertUtil.isTrue(wordCount <= Integer.MAX_VALUE, "bitSize too large: " + bitSize);
+		this.words = new AtomicLongArray((int) wordCount);
+		this.bitSize = wordCount << 6;
+		this.numHashFunctions = numHashFunctions;
+	}
+
+	/**
+	 * 按预期元素数和误判率创建
+	 * @param expectedInsertions 预期元素数
+	 * @param fpp 目标误判率，(0, 1)
+	 * @return 布隆过滤器
+	 */
+	public static BloomFilter create(long expectedInsertions, double fpp) {
+		final long bits = optimalNumOfBits(expectedInsertions, fpp);
+		return new BloomFilter(bits, optimalNumOfHashFunctions(expectedInsertions, bits));
+	}
+
+	// ---------------------------------------------------------------- put start
+	/**
+	 * 加入元素
+	 * @param key 元素，按UTF-16计算hash，不转码
+	 * @return 是否改变了过滤器（为true时该元素一定是新加入的）
+	 */
+	public boolean put(CharSequence key) {
+		return putHash(hash(key));
+	}
+
+	/**
+	 * 加入元素
+	 * @param key 元素
+	 * @return 是否改变了过滤器（为true时该元素一定是新加入的）
+	 */
+	public boolean put(byte[] key) {
+		return putHash(hash(key));
+	}
+
+	/**
+	 * 加入元素
+	 * @param key 元素
+	 * @return 是否改变了过滤器（为true时该元素一定是新加入的）
+	 */
+	public boolean put(long key) {
+		return putHash(hash(key));
+	}
+	// ---------------------------------------------------------------- put end
+
+	// ---------------------------------------------------------------- mightContain start
+	/**
+	 * 元素是否可能存在
+	 * @param key 元素
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(CharSequence key) {
+		return mightContainHash(hash(key));
+	}
+
+	/**
+	 * 元素是否可能存在
+	 * @param key 元素
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(byte[] key) {
+		return mightContainHash(hash(key));
+	}
+
+	/**
+	 * 元素是否可能存在
+	 * @param key 元素
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(long key) {
+		return mightContainHash(hash(key));
+	}
+	// ---------------------------------------------------------------- mightContain end
+
+	/**
+	 * 合并另一个参数相同的过滤器，合并后包含两者的全部元素
+	 * @param other 另一个过滤器
+	 */
+	public void putAll(BloomFilter other) {
+		AssertUtil.isTrue(this != other, "Cannot merge a bloom filter with itself");
+		AssertUtil.isTrue(bitSize == other.bitSize && numHashFunctions == other.numHashFunctions,
+				"Incompatible bloom filter, bitSize: " + bitSize + "/" + other.bitSize
+				+ ", numHashFunctions: " + numHashFunctions + "/" + other.numHashFunctions);
+		for (int i = 0; i < words.length(); i++) {
+			orWord(i, other.words.get(i));
+		}
+	}
+
+	/**
+	 * @return 位数
+	 */
+	public long bitSize() {
+		return bitSize;
+	}
+
+	/**
+	 * @return hash函数个数
+	 */
+	public int numHashFunctions() {
+		return numHashFunctions;
+	}
+
+	/**
+	 * @return 根据置位比例估算的元素数
+	 */
+	public long approximateElementCount() {
+		final double fractionOfBitsSet = (double) bitCount.get() / bitSize;
+		return Math.round(-Math.log1p(-fractionOfBitsSet) * bitSize / numHashFunctions);
+	}
+
+	/**
+	 * @return 根据当前置位比例计算的实际误判率
+	 */
+	public double expectedFpp() {
+		return Math.pow((double) bitCount.get() / bitSize, numHashFunctions);
+	}
+
+	// ---------------------------------------------------------------- Serialization start
+	/**
+	 * 写出到流，不关闭流
+	 * @param out 输出流
+	 * @throws IOException IO异常
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		final DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.writeInt(MAGIC);
+		dataOut.writeByte(VERSION);
+		dataOut.writeByte(numHashFunctions);
+		dataOut.writeInt(words.length());
+		writeWords(dataOut, words);
+		dataOut.flush();
+	}
+
+	/**
+	 * 从流中读取{@link #writeTo(OutputStream)}写出的过滤器，不关闭流
+	 * @param in 输入流
+	 * @return 布隆过滤器
+	 * @throws IOException IO异常或格式错误
+	 */
+	public static BloomFilter readFrom(InputStream in) throws IOException {
+		final DataInputStream dataIn = new DataInputStream(in);
+		checkHeader(dataIn, MAGIC, VERSION);
+		final int numHashFunctions = dataIn.readUnsignedByte();
+		final int wordCount = dataIn.readInt();
+		if (wordCount <= 0 || numHashFunctions == 0) {
+			throw new IOException("Corrupted bloom filter stream, words: " + wordCount + ", numHashFunctions: " + numHashFunctions);
+		}
+		final BloomFilter filter = new BloomFilter((long) wordCount << 6, numHashFunctions);
+		filter.bitCount.set(readWords(dataIn, filter.words));
+		return filter;
+	}
+	// ---------------------------------------------------------------- Serialization end
+
+	private boolean putHash(long hash) {
+		final long h2 = hash2(hash);
+		long combined = hash;
+		boolean changed = false;
+		for (int i = 0; i < numHashFunctions; i++) {
+			changed |= set((combined & Long.MAX_VALUE) % bitSize);
+			combined += h2;
+		}
+		return changed;
+	}
+
+	private boolean mightContainHash(long hash) {
+		final long h2 = hash2(hash);
+		long combined = hash;
+		for (int i = 0; i < numHashFunctions; i++) {
+			final long index = (combined & Long.MAX_VALUE) % bitSize;
+			if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+				return false;
+			}
+			combined += h2;
+		}
+		return true;
+	}
+
+	/**
+	 * 原子地置位
+	 * @param index 位下标
+	 * @return 该位原来是否为0
+	 */
+	private boolean set(long index) {
+		final int wordIndex = (int) (index >>> 6);
+		final long mask = 1L << index;
+		long old;
+		do {
+			old = words.get(wordIndex);
+			if ((old & mask) != 0) {
+				return false;
+			}
+		} while (false == words.compareAndSet(wordIndex, old, old | mask));
+		bitCount.incrementAndGet();
+		return true;
+	}
+
+	// ---------------------------------------------------------------- Package-private helpers start
+	/**
+	 * 原子地把一个字与掩码按位或
+	 * @param wordIndex 字下标
+	 * @param mask 掩码
+	 */
+	void orWord(int wordIndex, long mask) {
+		long old;
+		do {
+			old = words.get(wordIndex);
+			if ((old | mask) == old) {
+				return;
+			}
+		} while (false == words.compareAndSet(wordIndex, old, old | mask));
+		bitCount.addAndGet(Long.bitCount(old | mask) - Long.bitCount(old));
+	}
+
+	/**
+	 * 最优位数：m = -n * ln(p) / (ln2)^2
+	 * @param n 预期元素数
+	 * @param p 误判率
+	 * @return 位数
+	 */
+	static long optimalNumOfBits(long n, double p) {
+		AssertUtil.isTrue(n > 0, "expectedInsertions must be positive: " + n);
+		AssertUtil.isTrue(p > 0 && p < 1, "fpp must be in (0, 1): " + p);
+		return Math.max(64, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+	}
+
+	/**
+	 * 最优hash函数个数：k = m / n * ln2
+	 * @param n 预期元素数
+	 * @param m 位数
+	 * @return hash函数个数
+	 */
+	static int optimalNumOfHashFunctions(long n, long m) {
+		return (int) Math.min(255, Math.max(1, Math.round((double) m / n * Math.log(2))));
+	}
+
+	static long hash(CharSequence key) {
+		return HashUtil.xxHash64(key, 0);
+	}
+
+	static long hash(byte[] key) {
+		return HashUtil.xxHash64(key);
+	}
+
+	static long hash(long key) {
+		return HashUtil.mix64(key);
+	}
+
+	/**
+	 * 双重hash的第二个hash，由第一个hash再混淆得到
+	 * @param hash 第一个hash
+	 * @return 第二个hash
+	 */
+	static long hash2(long hash) {
+		return HashUtil.mix64(hash ^ 0x9E3779B97F4A7C15L);
+	}
+
+	/**
+	 * 读取并校验流头
+	 * @param in 输入流
+	 * @param magic 期望的格式标识
+	 * @param version 期望的版本
+	 * @throws IOException 格式不匹配
+	 */
+	static void checkHeader(DataInputStream in, int magic, int version) throws IOException {
+		final int actualMagic = in.readInt();
+		if (actualMagic != magic) {
+			throw new IOException("Not a bloom filter stream, magic: 0x" + Integer.toHexString(actualMagic));
+		}
+		final int actualVersion = in.readUnsignedByte();
+		if (actualVersion != version) {
+			throw new IOException("Unsupported bloom filter version: " + actualVersion);
+		}
+	}
+
+	/**
+	 * 分块写出字数组（大端序）
+	 * @param out 输出流
+	 * @param words 字数组
+	 * @throws IOException IO异常
+	 */
+	static void writeWords(OutputStream out, AtomicLongArray words) throws IOException {
+		final byte[] chunk = new byte[8192];
+		int pos = 0;
+		for (int i = 0; i < words.length(); i++) {
+			final long word = words.get(i);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				chunk[pos++] = (byte) (word >>> shift);
+			}
+			if (pos == chunk.length) {
+				out.write(chunk, 0, pos);
+				pos = 0;
+			}
+		}
+		out.write(chunk, 0, pos);
+	}
+
+	/**
+	 * 分块读取字数组（大端序）
+	 * @param in 输入流
+	 * @param words 字数组
+	 * @return 读取到的置位总数
+	 * @throws IOException IO异常或数据不足
+	 */
+	static long readWords(DataInputStream in, AtomicLongArray words) throws IOException {
+		final byte[] chunk = new byte[8192];
+		long bits = 0;
+		int i = 0;
+		while (i < words.length()) {
+			final int count = Math.min(chunk.length >>> 3, words.length() - i);
+			in.readFully(chunk, 0, count << 3);
+			for (int j = 0; j < count; j++) {
+				long word = 0;
+				for (int k = j << 3, end = k + 8; k < end; k++) {
+					word = (word << 8) | (chunk[k] & 0xff);
+				}
+				words.set(i++, word);
+				bits += Long.bitCount(word);
+			}
+		}
+		return bits;
+	}
+	// ---------------------------------------------------------------- Package-private helpers end
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.bloom;
+
+import com.jd.meeop.util.AssertUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 计数布隆过滤器
+ * @ClassName: CountingBloomFilter
+ * @Description:
+ * 与{@link BloomFilter}相同的hash与定位方式，每个位置换成4位计数器（每个long存16个），因此支持删除。<br>
+ * 计数器达到15后不再变化（既不增也不减），以免溢出后误删其他元素；
+ * 只应删除确实加入过的元素，删除不存在的元素会产生误判的漏报。<br>
+ * 计数器通过CAS原子更新，读写均不加锁
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 15:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class CountingBloomFilter {
+
+	/** 流格式标识："BLMC" */
+	private static final int MAGIC = 0x424C4D43;
+	private static final int VERSION = 1;
+	/** 计数器上限，到达后保持不变 */
+	private static final long MAX_COUNT = 15;
+
+	private final AtomicLongArray words;
+	private final long counterSize;
+	private final int numHashFunctions;
+
+	/**
+	 * 构造
+	 * @param counterSize 计数器个数，向上取整到64的倍数（与同参数的{@link BloomFilter}位数一致）
+	 * @param numHashFunctions hash函数个数
+	 */
+	public CountingBloomFilter(long counterSize, int numHashFunctions) {
+		AssertUtil.isTrue(counterSize > 0, "counterSize must be positive: " + counterSize);
+		AssertUtil.isTrue(numHashFunctions > 0 && numHashFunctions <= 255, "numHashFunctions must be in [1, 255]: " + numHashFunctions);
+		final long wordCount = ((counterSize + 63) >>> 6) << 2;
+		AssertUtil.isTrue(wordCount <= Integer.MAX_VALUE, "counterSize too large: " + counterSize);
+		this.words = new AtomicLongArray((int) wordCount);
+		this.counterSize = wordCount << 4;
+		this.numHashFunctions = numHashFunctions;
+	}
+
+	/**
+	 * 按预期元素数和误判率创建，计数器个数与同参数的{@link BloomFilter}位数相同，内存为其4倍
+	 * @param expectedInsertions 预期元素数
+	 * @param fpp 目标误判率，(0, 1)
+	 * @return 计数布隆过滤器
+	 */
+	public static CountingBloomFilter create(long expectedInsertions, double fpp) {
+		final long counters = BloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+		return new CountingBloomFilter(counters, BloomFilter.optimalNumOfHashFunctions(expectedInsertions, counters));
+	}
+
+	// ---------------------------------------------------------------- put start
+	/**
+	 * 加入元素
+	 * @param key 元素，按UTF-16计算hash，不转码
+	 */
+	public void put(CharSequence key) {
+		putHash(BloomFilter.hash(key));
+	}
+
+	/**
+	 * 加入元素
+	 * @param key 元素
+	 */
+	public void put(byte[] key) {
+		putHash(BloomFilter.hash(key));
+	}
+
+	/**
+	 * 加入元素
+	 * @param key 元素
+	 */
+	public void put(long key) {
+		putHash(BloomFilter.hash(key));
+	}
+	// ---------------------------------------------------------------- put end
+
+	// ---------------------------------------------------------------- remove start
+	/**
+	 * 删除元素
+	 * @param key 元素
+	 * @return 元素可能存在并已删除返回true，一定不存在返回false
+	 */
+	public boolean remove(CharSequence key) {
+		return removeHash(BloomFilter.hash(key));
+	}
+
+	/**
+	 * 删除元素
+	 * @param key 元素
+	 * @return 元素可能存在并已删除返回true，一定不存在返回false
+	 */
+	public boolean remove(byte[] key) {
+		return removeHash(BloomFilter.hash(key));
+	}
+
+	/**
+	 * 删除元素
+	 * @param key 元素
+	 * @return 元素可能存在并已删除返回true，一定不存在返回false
+	 */
+	public boolean remove(long key) {
+		return removeHash(BloomFilter.hash(key));
+	}
+	// ---------------------------------------------------------------- remove end
+
+	// ---------------------------------------------------------------- mightContain start
+	/**
+	 * 元素是否可能存在
+	 * @param key 元素
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(CharSequence key) {
+		return countHash(BloomFilter.hash(key)) > 0;
+	}
+
+	/**
+	 * 元素是否可能存在
+	 * @param key 元素
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(byte[] key) {
+		return countHash(BloomFilter.hash(key)) > 0;
+	}
+
+	/**
+	 * 元素是否可能存在
+	 * @param key 元素
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(long key) {
+		return countHash(BloomFilter.hash(key)) > 0;
+	}
+
+	/**
+	 * 元素加入次数的上界估计（各计数器的最小值，最大为15）
+	 * @param key 元素
+	 * @return 次数估计
+	 */
+	public int count(CharSequence key) {
+		return countHash(BloomFilter.hash(key));
+	}
+	// ---------------------------------------------------------------- mightContain end
+
+	/**
+	 * @return 计数器个数
+	 */
+	public long counterSize() {
+		return counterSize;
+	}
+
+	/**
+	 * @return hash函数个数
+	 */
+	public int numHashFunctions() {
+		return numHashFunctions;
+	}
+
+	/**
+	 * 转换为普通布隆过滤器，计数大于0的位置置位，用于只读场景下节省内存
+	 * @return 布隆过滤器
+	 */
+	public BloomFilter toBloomFilter() {
+		final BloomFilter filter = new BloomFilter(counterSize, numHashFunctions);
+		for (int i = 0; i < words.length(); i++) {
+			final long word = words.get(i);
+			if (word == 0) {
+				continue;
+			}
+			long mask = 0;
+			for (int c = 0; c < 16; c++) {
+				if (((word >>> (c << 2)) & MAX_COUNT) != 0) {
+					mask |= 1L << c;
+				}
+			}
+			filter.orWord(i >>> 2, mask << ((i & 3) << 4));
+		}
+		return filter;
+	}
+
+	// ---------------------------------------------------------------- Serialization start
+	/**
+	 * 写出到流，不关闭流
+	 * @param out 输出流
+	 * @throws IOException IO异常
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		final DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.writeInt(MAGIC);
+		dataOut.writeByte(VERSION);
+		dataOut.writeByte(numHashFunctions);
+		dataOut.writeInt(words.length());
+		BloomFilter.writeWords(dataOut, words);
+		dataOut.flush();
+	}
+
+	/**
+	 * 从流中读取{@link #writeTo(OutputStream)}写出的过滤器，不关闭流
+	 * @param in 输入流
+	 * @return 计数布隆过滤器
+	 * @throws IOException IO异常或格式错误
+	 */
+	public static CountingBloomFilter readFrom(InputStream in) throws IOException {
+		final DataInputStream dataIn = new DataInputStream(in);
+		BloomFilter.checkHeader(dataIn, MAGIC, VERSION);
+		final int numHashFunctions = dataIn.readUnsignedByte();
+		final int wordCount = dataIn.readInt();
+		if (wordCount <= 0 || (wordCount & 3) != 0 || numHashFunctions == 0) {
+			throw new IOException("Corrupted bloom filter stream, words: " + wordCount + ", numHashFunctions: " + numHashFunctions);
+		}
+		final CountingBloomFilter filter = new CountingBloomFilter((long) wordCount << 4, numHashFunctions);
+		BloomFilter.readWords(dataIn, filter.words);
+		return filter;
+	}
+	// ---------------------------------------------------------------- Serialization end
+
+	private void putHash(long hash) {
+		final long h2 = BloomFilter.hash2(hash);
+		long combined = hash;
+		for (int i = 0; i < numHashFunctions; i++) {
+			add((combined & Long.MAX_VALUE) % counterSize, 1);
+			combined += h2;
+		}
+	}
+
+	private boolean removeHash(long hash) {
+		if (countHash(hash) == 0) {
+			return false;
+		}
+		final long h2 = BloomFilter.hash2(hash);
+		long combined = hash;
+		for (int i = 0; i < numHashFunctions; i++) {
+			add((combined & Long.MAX_VALUE) % counterSize, -1);
+			combined += h2;
+		}
+		return true;
+	}
+
+	private int countHash(long hash) {
+		final long h2 = BloomFilter.hash2(hash);
+		long combined = hash;
+		long min = MAX_COUNT;
+		for (int i = 0; i < numHashFunctions && min > 0; i++) {
+			final long index = (combined & Long.MAX_VALUE) % counterSize;
+			min = Math.min(min, (words.get((int) (index >>> 4)) >>> ((index & 15) << 2)) & MAX_COUNT);
+			combined += h2;
+		}
+		return (int) min;
+	}
+
+	/**
+	 * 原子地增减计数器，已饱和或已为0（减）时不变
+	 * @param index 计数器下标
+	 * @param delta 1或-1
+	 */
+	private void add(long index, int delta) {
+		final int wordIndex = (int) (index >>> 4);
+		final int shift = (int) ((index & 15) << 2);
+		long old;
+		do {
+			old = words.get(wordIndex);
+			final long count = (old >>> shift) & MAX_COUNT;
+			if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+				return;
+			}
+		} while (false == words.compareAndSet(wordIndex, old, old + ((long) delta << shift)));
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内缓存
+ * @ClassName: Cache
+ * @Description:
+ * 键值均不允许为<code>null</code>，读操作不加锁
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface Cache<K, V> {
+
+	/**
+	 * 获取缓存值
+	 * @param key 键
+	 * @return 值，不存在或已过期返回<code>null</code>
+	 */
+	V getIfPresent(K key);
+
+	/**
+	 * 获取缓存条目，与{@link #getIfPresent(Object)}一样记录访问
+	 * @param key 键
+	 * @return 条目，不存在或已过期返回<code>null</code>
+	 */
+	Entry<K, V> getEntryIfPresent(K key);
+
+	/**
+	 * 放入缓存，使用默认的过期策略
+	 * @param key 键
+	 * @param value 值
+	 */
+	void put(K key, V value);
+
+	/**
+	 * 放入缓存，并指定该条目的存活时间（TTL）
+	 * @param key 键
+	 * @param value 值
+	 * @param ttl 写入后存活时长，小于等于0表示使用默认值
+	 * @param unit 时间单位
+	 */
+	void put(K key, V value, long ttl, TimeUnit unit);
+
+	/**
+	 * 放入缓存，并指定该条目的存活时间（TTL）和空闲时间（TTI）
+	 * @param key 键
+	 * @param value 值
+	 * @param ttl 写入后存活时长，小于等于0表示使用默认值
+	 * @param tti 最后一次访问后存活时长，小于等于0表示使用默认值
+	 * @param unit 时间单位
+	 */
+	void put(K key, V value, long ttl, long tti, TimeUnit unit);
+
+	/**
+	 * 键不存在时放入缓存
+	 * @param key 键
+	 * @param value 值
+	 * @return 已存在的值，不存在返回<code>null</code>
+	 */
+	V putIfAbsent(K key, V value);
+
+	/**
+	 * 移除缓存
+	 * @param key 键
+	 * @return 被移除的值
+	 */
+	V invalidate(K key);
+
+	/**
+	 * 清空缓存
+	 */
+	void invalidateAll();
+
+	/**
+	 * @return 缓存条目数（可能包含尚未清理的过期条目）
+	 */
+	long size();
+
+	/**
+	 * @return 当前缓存总权重
+	 */
+	long weightedSize();
+
+	/**
+	 * 立即执行清理：处理积压的访问记录，移除过期条目
+	 */
+	void cleanUp();
+
+	/**
+	 * @return 命中统计
+	 */
+	CacheStats stats();
+
+	/**
+	 * 缓存条目
+	 */
+	interface Entry<K, V> {
+		/**
+		 * @return 键
+		 */
+		K getKey();
+
+		/**
+		 * @return 值
+		 */
+		V getValue();
+
+		/**
+		 * @return 最近一次写入的时间，与{@link System#nanoTime()}同一基准
+		 */
+		long getWriteTime();
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存构建器
+ * @ClassName: CacheBuilder
+ * @Description:
+ * 例如：<br>
+ * <pre>
+ * Cache&lt;String, User&gt; cache = CacheBuilder.&lt;String, User&gt;create()
+ *         .setMaximumSize(10000)
+ *         .setExpireAfterWrite(10, TimeUnit.MINUTES)
+ *         .build();
+ * </pre>
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class CacheBuilder<K, V> {
+	static final long UNSET = -1L;
+
+	private int initialCapacity = 16;
+	private long maximumSize = UNSET;
+	private long maximumWeight = UNSET;
+	private Weigher<? super K, ? super V> weigher;
+	private long expireAfterWriteNanos;
+	private long expireAfterAccessNanos;
+	private RemovalListener<K, V> removalListener;
+	private boolean recordStats;
+
+	/**
+	 * 创建 CacheBuilder
+	 * @return CacheBuilder
+	 */
+	public static <K, V> CacheBuilder<K, V> create() {
+		return new CacheBuilder<K, V>();
+	}
+
+	/**
+	 * 设置初始容量
+	 * @param initialCapacity 初始容量
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> setInitialCapacity(int initialCapacity) {
+		AssertUtil.isTrue(initialCapacity >= 0, "initialCapacity must not be negative");
+		this.initialCapacity = initialCapacity;
+		return this;
+	}
+
+	/**
+	 * 设置最大条目数，与{@link #setMaximumWeight(long)}互斥
+	 * @param maximumSize 最大条目数
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> setMaximumSize(long maximumSize) {
+		AssertUtil.isTrue(maximumSize >= 0, "maximumSize must not be negative");
+		AssertUtil.state(this.maximumWeight == UNSET, "maximumWeight was already set");
+		this.maximumSize = maximumSize;
+		return this;
+	}
+
+	/**
+	 * 设置最大总权重，需配合{@link #setWeigher(Weigher)}使用
+	 * @param maximumWeight 最大总权重
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> setMaximumWeight(long maximumWeight) {
+		AssertUtil.isTrue(maximumWeight >= 0, "maximumWeight must not be negative");
+		AssertUtil.state(this.maximumSize == UNSET, "maximumSize was already set");
+		this.maximumWeight = maximumWeight;
+		return this;
+	}
+
+	/**
+	 * 设置权重计算器
+	 * @param weigher 权重计算器
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> setWeigher(Weigher<? super K, ? super V> weigher) {
+		AssertUtil.notNull(weigher, "weigher must not be null");
+		this.weigher = weigher;
+		return this;
+	}
+
+	/**
+	 * 设置默认写入后存活时长（TTL）
+	 * @param duration 时长，小于等于0表示不过期
+	 * @param unit 时间单位
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> setExpireAfterWrite(long duration, TimeUnit unit) {
+		this.expireAfterWriteNanos = duration > 0 ? unit.toNanos(duration) : 0;
+		return this;
+	}
+
+	/**
+	 * 设置默认最后一次访问后存活时长（TTI）
+	 * @param duration 时长，小于等于0表示不过期
+	 * @param unit 时间单位
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> setExpireAfterAccess(long duration, TimeUnit unit) {
+		this.expireAfterAccessNanos = duration > 0 ? unit.toNanos(duration) : 0;
+		return this;
+	}
+
+	/**
+	 * 设置移除监听
+	 * @param removalListener 移除监听
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> setRemovalListener(RemovalListener<K, V> removalListener) {
+		this.removalListener = removalListener;
+		return this;
+	}
+
+	/**
+	 * 开启命中统计
+	 * @return 自身
+	 */
+	public CacheBuilder<K, V> recordStats() {
+		this.recordStats = true;
+		return this;
+	}
+
+	/**
+	 * 构建缓存
+	 * @return Cache
+	 */
+	public Cache<K, V> build() {
+		AssertUtil.state(this.maximumWeight == UNSET || null != this.weigher, "maximumWeight requires weigher");
+		AssertUtil.state(null == this.weigher || this.maximumWeight != UNSET, "weigher requires maximumWeight");
+		return new LocalCache<K, V>(this);
+	}
+
+	// ---------------------------------------------------------------- Getters for LocalCache start
+	int getInitialCapacity() {
+		return initialCapacity;
+	}
+
+	long getMaximum() {
+		return maximumWeight != UNSET ? maximumWeight : maximumSize;
+	}
+
+	Weigher<? super K, ? super V> getWeigher() {
+		return weigher;
+	}
+
+	long getExpireAfterWriteNanos() {
+		return expireAfterWriteNanos;
+	}
+
+	long getExpireAfterAccessNanos() {
+		return expireAfterAccessNanos;
+	}
+
+	RemovalListener<K, V> getRemovalListener() {
+		return removalListener;
+	}
+
+	boolean isRecordStats() {
+		return recordStats;
+	}
+	// ---------------------------------------------------------------- Getters for LocalCache end
+}
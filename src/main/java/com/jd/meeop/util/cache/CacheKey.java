@@ -0,0 +1,83 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import java.util.Arrays;
+
+/**
+ * 组合缓存key
+ * @ClassName: CacheKey
+ * @Description:
+ * 由{@link CacheKeyTemplate}和参数组成，构造时即计算好hash，作为进程内Map的key时无需构造String。<br>
+ * 与{@link CacheKeyTemplate#format(Object...)}生成的String对应：相同模板、相同参数的key相等，
+ * {@link #toString()}返回对应的String，可用于远程缓存。整数参数统一按Long、CharSequence统一按String比较，
+ * 因此<code>1</code>与<code>1L</code>得到相等的key；其它类型按equals比较，toString相同但不equals的参数得到不相等的key
+
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 15:40
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public final class CacheKey {
+	private final CacheKeyTemplate template;
+	private final Object[] args;
+	private final int hash;
+
+	CacheKey(CacheKeyTemplate template, Object[] args) {
+		this.template = template;
+		this.args = args;
+		this.hash = 31 * template.hashCode() + Arrays.hashCode(args);
+	}
+
+	/**
+	 * @return 模板
+	 */
+	public CacheKeyTemplate getTemplate() {
+		return template;
+	}
+
+	/**
+	 * 获取参数
+	 * @param index 参数序号
+	 * @return 参数
+	 */
+	public Object getArg(int index) {
+		return args[index];
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (false == (obj instanceof CacheKey)) {
+			return false;
+		}
+		final CacheKey other = (CacheKey) obj;
+		return hash == other.hash && template.equals(other.template) && Arrays.equals(args, other.args);
+	}
+
+	@Override
+	public String toString() {
+		return template.format(args);
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预编译的缓存key模板
+ * @ClassName: CacheKeyTemplate
+ * @Description:
+ * 一次性把形如<code>enigma_entity:%s:%s</code>的模式拆分为字面量片段，之后每次生成key只做追加，
+ * 不再像{@link String#format(String, Object...)}那样在每次调用时解析模式、创建Formatter。<br>
+ * 模式中仅支持<code>%s</code>占位符和<code>%%</code>转义。<br>
+ * {@link #format(Object, Object)}等方法复用线程内的StringBuilder，只分配最终的String（参数的toString中再次生成key时使用新的StringBuilder）；
+ * 进程内缓存可以使用{@link #key(Object, Object)}生成的{@link CacheKey}，完全不构造String
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 15:40
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public final class CacheKeyTemplate {
+	/** 每个占位符预估的长度 */
+	private static final int ESTIMATED_ARG_LENGTH = 16;
+	/** 线程内复用的StringBuilder超过此容量后不再复用，避免长期持有大对象 */
+	private static final int MAX_REUSED_CAPACITY = 1024;
+
+	private static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			return new Buffer();
+		}
+	};
+
+	/** 原始模式 */
+	private final String pattern;
+	/** 字面量片段，个数为占位符数+1 */
+	private final String[] literals;
+	/** 预估的结果长度 */
+	private final int estimatedLength;
+	private final int hash;
+
+	/**
+	 * 编译模式
+	 * @param pattern 模式，例如：enigma_entity:%s:%s
+	 * @return CacheKeyTemplate
+	 * @throws IllegalArgumentException 模式中包含%s、%%以外的格式符
+	 */
+	public static CacheKeyTemplate compile(String pattern) throws IllegalArgumentException {
+		AssertUtil.notNull(pattern, "pattern must not be null");
+		final List<String> literals = new ArrayList<String>();
+		final StringBuilder literal = new StringBuilder();
+		final int length = pattern.length();
+		for (int i = 0; i < length; i++) {
+			final char c = pattern.charAt(i);
+			if (c != '%') {
+				literal.append(c);
+				continue;
+			}
+			final char next = i + 1 < length ? pattern.charAt(i + 1) : 0;
+			if (next == 's') {
+				literals.add(literal.toString());
+				literal.setLength(0);
+			} else if (next == '%') {
+				literal.append('%');
+			} else {
+				throw new IllegalArgumentException("Unsupported format specifier at index " + i + " of pattern: " + pattern);
+			}
+			i++;
+		}
+		literals.add(literal.toString());
+		return new CacheKeyTemplate(pattern, literals.toArray(new String[literals.size()]));
+	}
+
+	/**
+	 * 判断模式是否可被{@link #compile(String)}编译
+	 * @param pattern 模式
+	 * @return 是否只包含%s和%%
+	 */
+	public static boolean isCompilable(String pattern) {
+		if (null == pattern) {
+			return false;
+		}
+		final int length = pattern.length();
+		for (int i = 0; i < length; i++) {
+			if (pattern.charAt(i) == '%') {
+				final char next = i + 1 < length ? pattern.charAt(i + 1) : 0;
+				if (next != 's' && next != '%') {
+					return false;
+				}
+				i++;
+			}
+		}
+		return true;
+	}
+
+	private CacheKeyTemplate(String pattern, String[] literals) {
+		this.pattern = pattern;
+		this.literals = literals;
+		int literalLength = 0;
+		for (String literal : literals) {
+			literalLength += literal.length();
+		}
+		this.estimatedLength = literalLength + (literals.length - 1) * ESTIMATED_ARG_LENGTH;
+		this.hash = pattern.hashCode();
+	}
+
+	/**
+	 * @return 原始模式
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return 占位符个数
+	 */
+	public int getArity() {
+		return literals.length - 1;
+	}
+
+	// ---------------------------------------------------------------- format start
+	/**
+	 * 生成key
+	 * @param arg 参数
+	 * @return key
+	 */
+	public String format(Object arg) {
+		checkArity(1);
+		final Buffer buffer = BUFFER.get();
+		final StringBuilder sb = buffer.borrow(estimatedLength);
+		try {
+			return appendTo(sb, arg).toString();
+		} finally {
+			buffer.release(sb);
+		}
+	}
+
+	/**
+	 * 生成key
+	 * @param arg1 参数1
+	 * @param arg2 参数2
+	 * @return key
+	 */
+	public String format(Object arg1, Object arg2) {
+		checkArity(2);
+		final Buffer buffer = BUFFER.get();
+		final StringBuilder sb = buffer.borrow(estimatedLength);
+		try {
+			return appendTo(sb, arg1, arg2).toString();
+		} finally {
+			buffer.release(sb);
+		}
+	}
+
+	/**
+	 * 生成key
+	 * @param arg1 参数1
+	 * @param arg2 参数2
+	 * @param arg3 参数3
+	 * @return key
+	 */
+	public String format(Object arg1, Object arg2, Object arg3) {
+		checkArity(3);
+		final Buffer buffer = BUFFER.get();
+		final StringBuilder sb = buffer.borrow(estimatedLength);
+		try {
+			return appendTo(sb, arg1, arg2, arg3).toString();
+		} finally {
+			buffer.release(sb);
+		}
+	}
+
+	/**
+	 * 生成key
+	 * @param args 参数，个数须与占位符个数一致
+	 * @return key
+	 */
+	public String format(Object... args) {
+		checkArity(args.length);
+		final Buffer buffer = BUFFER.get();
+		final StringBuilder sb = buffer.borrow(estimatedLength);
+		try {
+			return appendTo(sb, args).toString();
+		} finally {
+			buffer.release(sb);
+		}
+	}
+
+	/**
+	 * 生成key并追加到StringBuilder
+	 * @param sb StringBuilder
+	 * @param arg 参数
+	 * @return 传入的StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb, Object arg) {
+		checkArity(1);
+		sb.append(literals[0]);
+		appendArg(sb, arg);
+		return sb.append(literals[1]);
+	}
+
+	/**
+	 * 生成key并追加到StringBuilder
+	 * @param sb StringBuilder
+	 * @param arg1 参数1
+	 * @param arg2 参数2
+	 * @return 传入的StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb, Object arg1, Object arg2) {
+		checkArity(2);
+		sb.append(literals[0]);
+		appendArg(sb, arg1);
+		sb.append(literals[1]);
+		appendArg(sb, arg2);
+		return sb.append(literals[2]);
+	}
+
+	/**
+	 * 生成key并追加到StringBuilder
+	 * @param sb StringBuilder
+	 * @param arg1 参数1
+	 * @param arg2 参数2
+	 * @param arg3 参数3
+	 * @return 传入的StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb, Object arg1, Object arg2, Object arg3) {
+		checkArity(3);
+		sb.append(literals[0]);
+		appendArg(sb, arg1);
+		sb.append(literals[1]);
+		appendArg(sb, arg2);
+		sb.append(literals[2]);
+		appendArg(sb, arg3);
+		return sb.append(literals[3]);
+	}
+
+	/**
+	 * 生成key并追加到StringBuilder
+	 * @param sb StringBuilder
+	 * @param args 参数
+	 * @return 传入的StringBuilder
+	 */
+	public StringBuilder appendTo(StringBuilder sb, Object... args) {
+		checkArity(args.length);
+		sb.append(literals[0]);
+		for (int i = 0; i < args.length; i++) {
+			appendArg(sb, args[i]);
+			sb.append(literals[i + 1]);
+		}
+		return sb;
+	}
+	// ---------------------------------------------------------------- format end
+
+	// ---------------------------------------------------------------- key start
+	/**
+	 * 生成进程内使用的组合key，不构造String
+	 * @param arg 参数
+	 * @return CacheKey
+	 */
+	public CacheKey key(Object arg) {
+		checkArity(1);
+		return new CacheKey(this, new Object[]{normalize(arg)});
+	}
+
+	/**
+	 * 生成进程内使用的组合key，不构造String
+	 * @param arg1 参数1
+	 * @param arg2 参数2
+	 * @return CacheKey
+	 */
+	public CacheKey key(Object arg1, Object arg2) {
+		checkArity(2);
+		return new CacheKey(this, new Object[]{normalize(arg1), normalize(arg2)});
+	}
+
+	/**
+	 * 生成进程内使用的组合key，不构造String
+	 * @param arg1 参数1
+	 * @param arg2 参数2
+	 * @param arg3 参数3
+	 * @return CacheKey
+	 */
+	public CacheKey key(Object arg1, Object arg2, Object arg3) {
+		checkArity(3);
+		return new CacheKey(this, new Object[]{normalize(arg1), normalize(arg2), normalize(arg3)});
+	}
+	// ---------------------------------------------------------------- key end
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		return obj instanceof CacheKeyTemplate && pattern.equals(((CacheKeyTemplate) obj).pattern);
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	private void checkArity(int count) {
+		if (count != literals.length - 1) {
+			throw new IllegalArgumentException("Pattern [" + pattern + "] requires " + (literals.length - 1) + " arguments but got " + count);
+		}
+	}
+
+	/**
+	 * 按{@link #appendArg(StringBuilder, Object)}的格式归一化key的参数：整数类型统一为Long，其它CharSequence转为String，
+	 * 使格式相同的参数得到相等的{@link CacheKey}
+	 */
+	static Object normalize(Object arg) {
+		if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+			return Long.valueOf(((Number) arg).longValue());
+		}
+		if (arg instanceof CharSequence && false == (arg instanceof String)) {
+			return arg.toString();
+		}
+		return arg;
+	}
+
+	/**
+	 * 追加参数，数值类型直接按数字追加，避免toString产生临时String
+	 */
+	static void appendArg(StringBuilder sb, Object arg) {
+		if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+			sb.append(((Number) arg).longValue());
+		} else if (arg instanceof CharSequence) {
+			sb.append((CharSequence) arg);
+		} else {
+			sb.append(arg);
+		}
+	}
+
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 线程内复用的StringBuilder，正在使用时（参数的toString中再次生成key）借出新的StringBuilder，不覆盖外层未完成的key
+	 */
+	private static final class Buffer {
+		private StringBuilder sb = new StringBuilder(128);
+		private boolean inUse;
+
+		StringBuilder borrow(int capacity) {
+			if (inUse) {
+				return new StringBuilder(capacity);
+			}
+			inUse = true;
+			sb.setLength(0);
+			sb.ensureCapacity(capacity);
+			return sb;
+		}
+
+		void release(StringBuilder used) {
+			if (used != sb) {
+				return;
+			}
+			inUse = false;
+			if (sb.capacity() > MAX_REUSED_CAPACITY) {
+				sb = new StringBuilder(128);
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 缓存加载器
+ * @ClassName: CacheLoader
+ * @Description:
+ * 至少实现{@link #load(Object)}；后端支持批量查询时覆盖{@link #loadAll(Collection)}，一次调用加载所有未命中的key
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 09:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public abstract class CacheLoader<K, V> {
+
+	/**
+	 * 加载单个值
+	 * @param key 键
+	 * @return 值，返回<code>null</code>表示不存在，不会被缓存
+	 * @throws Exception 加载失败
+	 */
+	public abstract V load(K key) throws Exception;
+
+	/**
+	 * 批量加载，默认逐个调用{@link #load(Object)}
+	 * @param keys 键
+	 * @return 键值对，不存在的键可不包含在结果中
+	 * @throws Exception 加载失败
+	 */
+	public Map<K, V> loadAll(Collection<? extends K> keys) throws Exception {
+		final Map<K, V> result = new HashMap<K, V>(keys.size() * 4 / 3 + 1);
+		for (K key : keys) {
+			final V value = load(key);
+			if (null != value) {
+				result.put(key, value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 后台刷新时重新加载，默认调用{@link #load(Object)}
+	 * @param key 键
+	 * @param oldValue 旧值
+	 * @return 新值，返回<code>null</code>表示保留旧值
+	 * @throws Exception 加载失败，保留旧值
+	 */
+	public V reload(K key, V oldValue) throws Exception {
+		return load(key);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存统计
+ * @ClassName: CacheStats
+ * @Description:
+ * 只有通过{@link CacheBuilder#recordStats()}开启后才会计数，避免读路径上的原子操作竞争
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class CacheStats {
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong expireCount = new AtomicLong();
+
+	void recordHit() {
+		hitCount.incrementAndGet();
+	}
+
+	void recordMiss() {
+		missCount.incrementAndGet();
+	}
+
+	void recordEviction() {
+		evictionCount.incrementAndGet();
+	}
+
+	void recordExpire() {
+		expireCount.incrementAndGet();
+	}
+
+	/**
+	 * @return 命中次数
+	 */
+	public long hitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return 未命中次数
+	 */
+	public long missCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return 因容量超限被淘汰的条目数
+	 */
+	public long evictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return 因过期被移除的条目数
+	 */
+	public long expireCount() {
+		return expireCount.get();
+	}
+
+	/**
+	 * @return 命中率，无请求时为1.0
+	 */
+	public double hitRate() {
+		long hit = hitCount.get();
+		long total = hit + missCount.get();
+		return total == 0 ? 1.0 : (double) hit / total;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats[hit=" + hitCount + ", miss=" + missCount + ", eviction=" + evictionCount + ", expire=" + expireCount + "]";
+	}
+}
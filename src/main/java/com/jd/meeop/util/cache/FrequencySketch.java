@@ -0,0 +1,123 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+/**
+ * 访问频率估算器
+ * @ClassName: FrequencySketch
+ * @Description:
+ * 4位计数的Count-Min Sketch，每个计数器最大15，累计采样达到容量的10倍后所有计数减半（老化），
+ * 用于W-TinyLFU的准入判断。非线程安全，由缓存的淘汰锁保护
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class FrequencySketch {
+	private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	/** 计数表容量上限，避免按权重限制时估算出过大的表 */
+	private static final int MAXIMUM_CAPACITY = 1 << 24;
+
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int size;
+
+	/**
+	 * 构造
+	 * @param maximumSize 预计的最大条目数
+	 */
+	FrequencySketch(long maximumSize) {
+		int maximum = (int) Math.min(Math.max(maximumSize, 1), MAXIMUM_CAPACITY);
+		table = new long[ceilingPowerOfTwo(maximum)];
+		tableMask = table.length - 1;
+		sampleSize = 10 * maximum;
+	}
+
+	/**
+	 * 估算频率
+	 * @param e 元素
+	 * @return 估算的访问次数，最大15
+	 */
+	int frequency(Object e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * 频率加一
+	 * @param e 元素
+	 */
+	void increment(Object e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && (++size == sampleSize)) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = (0xfL << offset);
+		if ((table[i] & mask) != mask) {
+			table[i] += (1L << offset);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 所有计数减半
+	 */
+	private void reset() {
+		int count = 0;
+		for (int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size - (count >>> 2)) >>> 1;
+	}
+
+	private int indexOf(int item, int i) {
+		long hash = (item + SEED[i]) * SEED[i];
+		hash += (hash >>> 32);
+		return ((int) hash) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	static int ceilingPowerOfTwo(int x) {
+		return x <= 1 ? 1 : 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+	}
+}
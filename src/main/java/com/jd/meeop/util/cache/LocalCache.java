@@ -0,0 +1,837 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import com.jd.meeop.util.AssertUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界进程内缓存
+ * @ClassName: LocalCache
+ * @Description:
+ * 基于W-TinyLFU淘汰策略：新条目先进入占容量1%的窗口LRU，被挤出窗口后与主区（SLRU：试用区+保护区）的
+ * 淘汰候选比较访问频率，频率更高者才被准入，一次性的扫描流量因此无法冲掉热点数据。<br>
+ * 读操作只访问ConcurrentHashMap并把访问记录写入有损的环形缓冲，不加锁；
+ * 写操作以及缓冲区满时的维护工作（重排访问顺序、过期清理、容量淘汰）在淘汰锁内完成。<br>
+ * 会过期的条目按过期时间放入分层时间轮（{@link TimerWheel}），每次维护时推进时间轮，移除走过的桶中已过期的条目，
+ * 与TTL是否相同、是否混用写入/访问过期无关；过期条目在读取时即视为不存在，也可调用{@link #cleanUp()}立即全量清理
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class LocalCache<K, V> implements Cache<K, V> {
+	private final static Logger logger = LoggerFactory.getLogger(LocalCache.class);
+
+	static final int WINDOW = 0;
+	static final int PROBATION = 1;
+	static final int PROTECTED = 2;
+
+	/** 读缓冲条带数上限 */
+	private static final int MAX_READ_BUFFERS = 16;
+
+	private final ConcurrentHashMap<K, Node<K, V>> data;
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final ReadBuffer<K, V>[] readBuffers;
+	private final int readBufferMask;
+
+	/** 是否有容量限制 */
+	private final boolean bounded;
+	private final long maximum;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	private final Weigher<? super K, ? super V> weigher;
+	private final FrequencySketch sketch;
+
+	private final long expireAfterWriteNanos;
+	private final long expireAfterAccessNanos;
+	/** 是否可能存在会过期的条目，用于跳过无意义的过期扫描 */
+	private volatile boolean expiring;
+
+	private final RemovalListener<K, V> removalListener;
+	private final CacheStats stats;
+
+	// 以下字段由evictionLock保护
+	private final AccessOrderDeque<K, V> windowDeque = new AccessOrderDeque<K, V>();
+	private final AccessOrderDeque<K, V> probationDeque = new AccessOrderDeque<K, V>();
+	private final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<K, V>();
+	private final TimerWheel<K, V> timerWheel = new TimerWheel<K, V>(System.nanoTime());
+	private long windowWeight;
+	private long protectedWeight;
+	private volatile long weightedSize;
+	private List<Removal<K, V>> pendingRemovals = new ArrayList<Removal<K, V>>();
+
+	/**
+	 * 构造，请使用{@link CacheBuilder}创建
+	 * @param builder 构建器
+	 */
+	LocalCache(CacheBuilder<K, V> builder) {
+		this.data = new ConcurrentHashMap<K, Node<K, V>>(builder.getInitialCapacity());
+		this.maximum = builder.getMaximum();
+		this.bounded = this.maximum != CacheBuilder.UNSET;
+		this.weigher = builder.getWeigher();
+		if (bounded) {
+			this.windowMaximum = Math.max(1, maximum / 100);
+			this.protectedMaximum = (long) ((maximum - windowMaximum) * 0.8);
+			this.sketch = new FrequencySketch(null == weigher ? maximum : Math.max(builder.getInitialCapacity(), maximum / 16));
+		} else {
+			this.windowMaximum = Long.MAX_VALUE;
+			this.protectedMaximum = 0;
+			this.sketch = null;
+		}
+		this.expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
+		this.expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
+		this.expiring = expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+		this.removalListener = builder.getRemovalListener();
+		this.stats = builder.isRecordStats() ? new CacheStats() : null;
+
+		int stripes = FrequencySketch.ceilingPowerOfTwo(Math.min(Runtime.getRuntime().availableProcessors(), MAX_READ_BUFFERS));
+		this.readBuffers = newReadBuffers(stripes);
+		this.readBufferMask = stripes - 1;
+	}
+
+	@Override
+	public V getIfPresent(K key) {
+		final Node<K, V> node = getEntryIfPresent(key);
+		return null == node ? null : node.value;
+	}
+
+	@Override
+	public Node<K, V> getEntryIfPresent(K key) {
+		final Node<K, V> node = data.get(key);
+		if (null == node) {
+			recordMiss();
+			return null;
+		}
+		final long now = System.nanoTime();
+		if (node.isExpired(now)) {
+			recordMiss();
+			tryExpire(node, now);
+			return null;
+		}
+		node.accessTime = now;
+		afterRead(node);
+		recordHit();
+		return node;
+	}
+
+	@Override
+	public void put(K key, V value) {
+		put(key, value, 0, 0, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void put(K key, V value, long ttl, TimeUnit unit) {
+		put(key, value, ttl, 0, unit);
+	}
+
+	@Override
+	public void put(K key, V value, long ttl, long tti, TimeUnit unit) {
+		put(key, value, ttl, tti, unit, false);
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		return put(key, value, 0, 0, TimeUnit.NANOSECONDS, true);
+	}
+
+	@Override
+	public V invalidate(K key) {
+		AssertUtil.notNull(key, "key must not be null");
+		V value = null;
+		evictionLock.lock();
+		try {
+			final Node<K, V> node = data.get(key);
+			if (null != node) {
+				final long now = System.nanoTime();
+				if (node.isExpired(now)) {
+					removeNode(node, RemovalCause.EXPIRED);
+				} else {
+					value = node.value;
+					removeNode(node, RemovalCause.EXPLICIT);
+				}
+			}
+		} finally {
+			unlockAndNotify();
+		}
+		return value;
+	}
+
+	@Override
+	public void invalidateAll() {
+		evictionLock.lock();
+		try {
+			drainReadBuffers();
+			for (Node<K, V> node : data.values()) {
+				removeNode(node, RemovalCause.EXPLICIT);
+			}
+		} finally {
+			unlockAndNotify();
+		}
+	}
+
+	@Override
+	public long size() {
+		return data.size();
+	}
+
+	@Override
+	public long weightedSize() {
+		return weightedSize;
+	}
+
+	@Override
+	public void cleanUp() {
+		evictionLock.lock();
+		try {
+			drainReadBuffers();
+			final long now = System.nanoTime();
+			if (expiring) {
+				for (Node<K, V> node : data.values()) {
+					if (node.isExpired(now)) {
+						removeNode(node, RemovalCause.EXPIRED);
+					}
+				}
+			}
+			evictEntries();
+		} finally {
+			unlockAndNotify();
+		}
+	}
+
+	@Override
+	public CacheStats stats() {
+		return null == stats ? new CacheStats() : stats;
+	}
+
+	@Override
+	public String toString() {
+		return "LocalCache[size=" + data.size() + ", weightedSize=" + weightedSize + ", maximum=" + (bounded ? maximum : "unbounded") + "]";
+	}
+
+	// ---------------------------------------------------------------- Write start
+	/**
+	 * 写入条目
+	 * @param key 键
+	 * @param value 值
+	 * @param ttl 写入后存活时长
+	 * @param tti 访问后存活时长
+	 * @param unit 时间单位
+	 * @param onlyIfAbsent 是否仅在不存在时写入
+	 * @return onlyIfAbsent时返回已存在的值，否则返回<code>null</code>
+	 */
+	private V put(K key, V value, long ttl, long tti, TimeUnit unit, boolean onlyIfAbsent) {
+		AssertUtil.notNull(key, "key must not be null");
+		AssertUtil.notNull(value, "value must not be null");
+		final int weight = weigh(key, value);
+		final long writeNanos = ttl > 0 ? unit.toNanos(ttl) : expireAfterWriteNanos;
+		final long accessNanos = tti > 0 ? unit.toNanos(tti) : expireAfterAccessNanos;
+		if (writeNanos > 0 || accessNanos > 0) {
+			expiring = true;
+		}
+
+		evictionLock.lock();
+		try {
+			drainReadBuffers();
+			final long now = System.nanoTime();
+			Node<K, V> node = data.get(key);
+			if (null != node && node.isExpired(now)) {
+				removeNode(node, RemovalCause.EXPIRED);
+				node = null;
+			}
+			if (null == node) {
+				node = new Node<K, V>(key, value, weight, now, writeNanos, accessNanos);
+				data.put(key, node);
+				onAdd(node);
+				node.deadline = node.deadline();
+				timerWheel.schedule(node);
+			} else if (onlyIfAbsent) {
+				node.accessTime = now;
+				onAccess(node);
+				return node.value;
+			} else {
+				final V oldValue = node.value;
+				updateWeight(node, weight);
+				node.expireAfterWrite = writeNanos;
+				node.expireAfterAccess = accessNanos;
+				node.writeTime = now;
+				node.accessTime = now;
+				node.value = value;
+				onAccess(node);
+				timerWheel.deschedule(node);
+				node.deadline = node.deadline();
+				timerWheel.schedule(node);
+				if (oldValue != value) {
+					addRemoval(key, oldValue, RemovalCause.REPLACED);
+				}
+			}
+			maintenance(now);
+		} finally {
+			unlockAndNotify();
+		}
+		return null;
+	}
+
+	private int weigh(K key, V value) {
+		if (null == weigher) {
+			return 1;
+		}
+		final int weight = weigher.weigh(key, value);
+		AssertUtil.isTrue(weight >= 0, "weight must not be negative");
+		return weight;
+	}
+	// ---------------------------------------------------------------- Write end
+
+	// ---------------------------------------------------------------- Policy start（以下方法均需持有evictionLock）
+	/**
+	 * 新条目进入窗口区
+	 * @param node 节点
+	 */
+	private void onAdd(Node<K, V> node) {
+		if (bounded) {
+			sketch.increment(node.key);
+		}
+		node.queueType = WINDOW;
+		windowDeque.addLast(node);
+		windowWeight += node.weight;
+		weightedSize += node.weight;
+	}
+
+	/**
+	 * 访问条目，调整其在各队列中的位置
+	 * @param node 节点
+	 */
+	private void onAccess(Node<K, V> node) {
+		if (false == node.alive) {
+			return;
+		}
+		if (bounded) {
+			sketch.increment(node.key);
+		}
+		switch (node.queueType) {
+		case WINDOW:
+			windowDeque.moveToBack(node);
+			break;
+		case PROBATION:
+			// 试用区中再次被访问，晋升至保护区
+			probationDeque.remove(node);
+			node.queueType = PROTECTED;
+			protectedDeque.addLast(node);
+			protectedWeight += node.weight;
+			demoteFromProtected();
+			break;
+		default:
+			protectedDeque.moveToBack(node);
+			break;
+		}
+	}
+
+	/**
+	 * 保护区超限时将最久未访问的条目降级至试用区
+	 */
+	private void demoteFromProtected() {
+		while (protectedWeight > protectedMaximum) {
+			final Node<K, V> demoted = protectedDeque.pollFirst();
+			if (null == demoted) {
+				break;
+			}
+			protectedWeight -= demoted.weight;
+			demoted.queueType = PROBATION;
+			probationDeque.addLast(demoted);
+		}
+	}
+
+	/**
+	 * 更新条目权重
+	 * @param node 节点
+	 * @param weight 新权重
+	 */
+	private void updateWeight(Node<K, V> node, int weight) {
+		final int delta = weight - node.weight;
+		if (delta == 0) {
+			return;
+		}
+		node.weight = weight;
+		if (node.queueType == WINDOW) {
+			windowWeight += delta;
+		} else if (node.queueType == PROTECTED) {
+			protectedWeight += delta;
+		}
+		weightedSize += delta;
+	}
+
+	/**
+	 * 从缓存和队列中移除条目
+	 * @param node 节点
+	 * @param cause 原因
+	 */
+	private void removeNode(Node<K, V> node, RemovalCause cause) {
+		if (false == node.alive) {
+			return;
+		}
+		data.remove(node.key, node);
+		switch (node.queueType) {
+		case WINDOW:
+			windowDeque.remove(node);
+			windowWeight -= node.weight;
+			break;
+		case PROBATION:
+			probationDeque.remove(node);
+			break;
+		default:
+			protectedDeque.remove(node);
+			protectedWeight -= node.weight;
+			break;
+		}
+		weightedSize -= node.weight;
+		node.alive = false;
+		timerWheel.deschedule(node);
+
+		if (null != stats) {
+			if (cause == RemovalCause.SIZE) {
+				stats.recordEviction();
+			} else if (cause == RemovalCause.EXPIRED) {
+				stats.recordExpire();
+			}
+		}
+		addRemoval(node.key, node.value, cause);
+	}
+
+	/**
+	 * 维护：过期清理与容量淘汰
+	 * @param now 当前时间（纳秒）
+	 */
+	private void maintenance(long now) {
+		expireEntries(now);
+		evictEntries();
+	}
+
+	/**
+	 * 推进时间轮，移除已过期的条目
+	 * @param now 当前时间（纳秒）
+	 */
+	private void expireEntries(long now) {
+		if (expiring) {
+			timerWheel.advance(this, now);
+		}
+	}
+
+	/**
+	 * 时间轮中到期的条目
+	 * @param node 节点
+	 */
+	void expire(Node<K, V> node) {
+		removeNode(node, RemovalCause.EXPIRED);
+	}
+
+	/**
+	 * 创建读缓冲条带
+	 * @param stripes 条带数
+	 * @return 读缓冲数组
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <K, V> ReadBuffer<K, V>[] newReadBuffers(int stripes) {
+		final ReadBuffer<K, V>[] buffers = new ReadBuffer[stripes];
+		for (int i = 0; i < stripes; i++) {
+			buffers[i] = new ReadBuffer<K, V>();
+		}
+		return buffers;
+	}
+
+	/**
+	 * 容量淘汰
+	 */
+	private void evictEntries() {
+		if (false == bounded) {
+			return;
+		}
+		final int candidates = evictFromWindow();
+		evictFromMain(candidates);
+	}
+
+	/**
+	 * 窗口区超限时把最早的条目移入试用区尾部，作为准入候选
+	 * @return 候选数
+	 */
+	private int evictFromWindow() {
+		int candidates = 0;
+		while (windowWeight > windowMaximum) {
+			final Node<K, V> node = windowDeque.pollFirst();
+			if (null == node) {
+				break;
+			}
+			windowWeight -= node.weight;
+			node.queueType = PROBATION;
+			probationDeque.addLast(node);
+			candidates++;
+		}
+		return candidates;
+	}
+
+	/**
+	 * 总权重超限时，比较试用区头部的淘汰对象与尾部的候选对象，淘汰频率较低者
+	 * @param candidates 候选数
+	 */
+	private void evictFromMain(int candidates) {
+		while (weightedSize > maximum) {
+			Node<K, V> victim = probationDeque.peekFirst();
+			final Node<K, V> candidate = candidates > 0 ? probationDeque.peekLast() : null;
+			if (null == victim) {
+				victim = protectedDeque.peekFirst();
+				if (null == victim) {
+					victim = windowDeque.peekFirst();
+				}
+				if (null == victim) {
+					break;
+				}
+				removeNode(victim, RemovalCause.SIZE);
+				continue;
+			}
+
+			if (null == candidate || candidate == victim) {
+				if (candidate == victim) {
+					candidates--;
+				}
+				removeNode(victim, RemovalCause.SIZE);
+			} else if (candidate.weight > maximum || false == admit(candidate.key, victim.key)) {
+				candidates--;
+				removeNode(candidate, RemovalCause.SIZE);
+			} else {
+				removeNode(victim, RemovalCause.SIZE);
+			}
+		}
+	}
+
+	/**
+	 * TinyLFU准入：候选频率高于淘汰对象时准入。<br>
+	 * 对于中高频的候选以很小概率随机准入，防止攻击者制造哈希冲突使热点条目永远无法被替换
+	 * @param candidateKey 候选键
+	 * @param victimKey 淘汰对象键
+	 * @return 是否准入候选
+	 */
+	private boolean admit(K candidateKey, K victimKey) {
+		final int victimFreq = sketch.frequency(victimKey);
+		final int candidateFreq = sketch.frequency(candidateKey);
+		if (candidateFreq > victimFreq) {
+			return true;
+		} else if (candidateFreq <= 5) {
+			return false;
+		}
+		return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+	}
+	// ---------------------------------------------------------------- Policy end
+
+	// ---------------------------------------------------------------- Read buffer start
+	/**
+	 * 读后记录访问，缓冲区满时尝试执行维护
+	 * @param node 节点
+	 */
+	private void afterRead(Node<K, V> node) {
+		final ReadBuffer<K, V> buffer = readBuffers[(int) spread(Thread.currentThread().getId()) & readBufferMask];
+		if (buffer.offer(node) == ReadBuffer.FULL) {
+			tryMaintenance();
+		}
+	}
+
+	/**
+	 * 不阻塞地尝试执行维护
+	 */
+	private void tryMaintenance() {
+		if (evictionLock.tryLock()) {
+			try {
+				drainReadBuffers();
+				maintenance(System.nanoTime());
+			} finally {
+				unlockAndNotify();
+			}
+		}
+	}
+
+	/**
+	 * 读到过期条目时，不阻塞地尝试立即移除
+	 * @param node 节点
+	 * @param now 当前时间（纳秒）
+	 */
+	private void tryExpire(Node<K, V> node, long now) {
+		if (evictionLock.tryLock()) {
+			try {
+				if (node.isExpired(now)) {
+					removeNode(node, RemovalCause.EXPIRED);
+				}
+			} finally {
+				unlockAndNotify();
+			}
+		}
+	}
+
+	private void drainReadBuffers() {
+		for (ReadBuffer<K, V> buffer : readBuffers) {
+			buffer.drainTo(this);
+		}
+	}
+
+	private static long spread(long id) {
+		id = (id ^ (id >>> 32)) * 0x9E3779B97F4A7C15L;
+		return id ^ (id >>> 29);
+	}
+	// ---------------------------------------------------------------- Read buffer end
+
+	// ---------------------------------------------------------------- Notification start
+	private void recordHit() {
+		if (null != stats) {
+			stats.recordHit();
+		}
+	}
+
+	private void recordMiss() {
+		if (null != stats) {
+			stats.recordMiss();
+		}
+	}
+
+	private void addRemoval(K key, V value, RemovalCause cause) {
+		if (null != removalListener) {
+			pendingRemovals.add(new Removal<K, V>(key, value, cause));
+		}
+	}
+
+	/**
+	 * 释放锁，并在锁外回调移除监听
+	 */
+	private void unlockAndNotify() {
+		List<Removal<K, V>> removals = null;
+		if (false == pendingRemovals.isEmpty()) {
+			removals = pendingRemovals;
+			pendingRemovals = new ArrayList<Removal<K, V>>();
+		}
+		evictionLock.unlock();
+
+		if (null != removals) {
+			for (Removal<K, V> removal : removals) {
+				try {
+					removalListener.onRemoval(removal.key, removal.value, removal.cause);
+				} catch (Exception e) {
+					logger.warn("Removal listener threw exception", e);
+				}
+			}
+		}
+	}
+	// ---------------------------------------------------------------- Notification end
+
+	/**
+	 * 缓存节点，同时是访问顺序双向链表的节点
+	 */
+	static final class Node<K, V> implements Entry<K, V> {
+		final K key;
+		volatile V value;
+		volatile long writeTime;
+		volatile long accessTime;
+		/** 写入后存活时长（纳秒），0表示不过期 */
+		volatile long expireAfterWrite;
+		/** 访问后存活时长（纳秒），0表示不过期 */
+		volatile long expireAfterAccess;
+
+		// 以下字段由evictionLock保护
+		int weight;
+		int queueType;
+		boolean alive = true;
+		Node<K, V> prev;
+		Node<K, V> next;
+		/** 放入时间轮时的过期时间，不过期为Long.MAX_VALUE */
+		long deadline = Long.MAX_VALUE;
+		Node<K, V> wheelPrev;
+		Node<K, V> wheelNext;
+
+		Node(K key, V value, int weight, long now, long expireAfterWrite, long expireAfterAccess) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.writeTime = now;
+			this.accessTime = now;
+			this.expireAfterWrite = expireAfterWrite;
+			this.expireAfterAccess = expireAfterAccess;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public long getWriteTime() {
+			return writeTime;
+		}
+
+		/**
+		 * @return 写入过期与访问过期中较早的时间（纳秒），不过期返回Long.MAX_VALUE
+		 */
+		long deadline() {
+			long deadline = Long.MAX_VALUE;
+			final long ttl = expireAfterWrite;
+			if (ttl > 0) {
+				deadline = writeTime + ttl;
+			}
+			final long tti = expireAfterAccess;
+			if (tti > 0) {
+				deadline = Math.min(deadline, accessTime + tti);
+			}
+			return deadline;
+		}
+
+		boolean isExpired(long now) {
+			final long ttl = expireAfterWrite;
+			if (ttl > 0 && now - writeTime >= ttl) {
+				return true;
+			}
+			final long tti = expireAfterAccess;
+			return tti > 0 && now - accessTime >= tti;
+		}
+	}
+
+	/**
+	 * 侵入式双向链表，头部为最久未访问
+	 */
+	static final class AccessOrderDeque<K, V> {
+		Node<K, V> first;
+		Node<K, V> last;
+
+		Node<K, V> peekFirst() {
+			return first;
+		}
+
+		Node<K, V> peekLast() {
+			return last;
+		}
+
+		void addLast(Node<K, V> node) {
+			node.prev = last;
+			node.next = null;
+			if (null == last) {
+				first = node;
+			} else {
+				last.next = node;
+			}
+			last = node;
+		}
+
+		Node<K, V> pollFirst() {
+			final Node<K, V> node = first;
+			if (null != node) {
+				remove(node);
+			}
+			return node;
+		}
+
+		void remove(Node<K, V> node) {
+			final Node<K, V> prev = node.prev;
+			final Node<K, V> next = node.next;
+			if (null == prev) {
+				first = next;
+			} else {
+				prev.next = next;
+			}
+			if (null == next) {
+				last = prev;
+			} else {
+				next.prev = prev;
+			}
+			node.prev = null;
+			node.next = null;
+		}
+
+		void moveToBack(Node<K, V> node) {
+			if (node != last) {
+				remove(node);
+				addLast(node);
+			}
+		}
+	}
+
+	/**
+	 * 有损的读缓冲：多个读线程CAS写入，持锁线程批量消费；满时直接丢弃访问记录
+	 */
+	static final class ReadBuffer<K, V> {
+		static final int SIZE = 64;
+		static final int MASK = SIZE - 1;
+		static final int SUCCESS = 0;
+		static final int FAILED = 1;
+		static final int FULL = 2;
+
+		final AtomicReferenceArray<Node<K, V>> buffer = new AtomicReferenceArray<Node<K, V>>(SIZE);
+		final AtomicLong writeCounter = new AtomicLong();
+		volatile long readCounter;
+
+		int offer(Node<K, V> node) {
+			final long head = readCounter;
+			final long tail = writeCounter.get();
+			if (tail - head >= SIZE) {
+				return FULL;
+			}
+			if (writeCounter.compareAndSet(tail, tail + 1)) {
+				buffer.lazySet((int) (tail & MASK), node);
+				return SUCCESS;
+			}
+			return FAILED;
+		}
+
+		void drainTo(LocalCache<K, V> cache) {
+			long head = readCounter;
+			final long tail = writeCounter.get();
+			for (; head < tail; head++) {
+				final int index = (int) (head & MASK);
+				final Node<K, V> node = buffer.get(index);
+				if (null == node) {
+					// 写入方已占位但尚未发布，留待下次消费
+					break;
+				}
+				buffer.lazySet(index, null);
+				cache.onAccess(node);
+			}
+			readCounter = head;
+		}
+	}
+
+	/**
+	 * 待通知的移除事件
+	 */
+	static final class Removal<K, V> {
+		final K key;
+		final V value;
+		final RemovalCause cause;
+
+		Removal(K key, V value, RemovalCause cause) {
+			this.key = key;
+			this.value = value;
+			this.cause = cause;
+		}
+	}
+}
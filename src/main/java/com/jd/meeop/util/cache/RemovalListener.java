@@ -0,0 +1,38 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+/**
+ * 缓存条目移除监听
+ * @ClassName: RemovalListener
+ * @Description:
+ * 在释放缓存内部锁之后、由触发移除的线程同步回调
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface RemovalListener<K, V> {
+
+	/**
+	 * 条目被移除
+	 * @param key 键
+	 * @param value 值
+	 * @param cause 移除原因
+	 */
+	void onRemoval(K key, V value, RemovalCause cause);
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+import com.jd.meeop.util.cache.LocalCache.Node;
+
+/**
+ * 过期时间轮
+ * @ClassName: TimerWheel
+ * @Description:
+ * 分层时间轮，按条目的过期时间（写入与访问两种过期中较早者）放入对应的桶，各层的桶宽约为1秒、1分钟、1小时、1天，
+ * 最后一层只有一个桶存放更远的条目。时间推进时只处理走过的桶：已过期的移除，过期时间已被访问推迟的重新放入。<br>
+ * 插入、移除为O(1)，与条目的TTL是否相同、是否混用写入/访问过期无关。非线程安全，由缓存的淘汰锁保护
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class TimerWheel<K, V> {
+	/** 各层的桶数，均为2的幂 */
+	private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+	/** 各层的桶宽（纳秒），约为1.07秒、1.14分钟、1.22小时、1.63天、6.5天 */
+	private static final long[] SPANS = { 1L << 30, 1L << 36, 1L << 42, 1L << 47, 1L << 49, 1L << 49 };
+	/** 各层桶宽的位数 */
+	private static final long[] SHIFT = { 30, 36, 42, 47, 49 };
+
+	/** 每个桶是一个以哨兵节点为头的环形双向链表 */
+	private final Node<K, V>[][] wheel;
+	/** 时间基准，轮内的时间均为相对值，不受System.nanoTime()为负的影响 */
+	private final long base;
+	/** 上次推进到的相对时间 */
+	private long nanos;
+
+	/**
+	 * 构造
+	 * @param now 当前时间（纳秒）
+	 */
+	@SuppressWarnings("unchecked")
+	TimerWheel(long now) {
+		this.base = now;
+		this.wheel = new Node[BUCKETS.length][];
+		for (int i = 0; i < BUCKETS.length; i++) {
+			wheel[i] = new Node[BUCKETS[i]];
+			for (int j = 0; j < BUCKETS[i]; j++) {
+				final Node<K, V> sentinel = new Node<K, V>(null, null, 0, now, 0, 0);
+				sentinel.wheelPrev = sentinel;
+				sentinel.wheelNext = sentinel;
+				wheel[i][j] = sentinel;
+			}
+		}
+	}
+
+	/**
+	 * 推进到当前时间，移除走过的桶中已过期的条目
+	 * @param cache 缓存
+	 * @param now 当前时间（纳秒）
+	 */
+	void advance(LocalCache<K, V> cache, long now) {
+		final long previous = nanos;
+		final long current = now - base;
+		if (current <= previous) {
+			return;
+		}
+		nanos = current;
+		for (int i = 0; i < SHIFT.length; i++) {
+			final long previousTicks = previous >>> SHIFT[i];
+			final long currentTicks = current >>> SHIFT[i];
+			if (currentTicks <= previousTicks) {
+				break;
+			}
+			expire(cache, i, previousTicks, currentTicks - previousTicks, now);
+		}
+	}
+
+	/**
+	 * 放入条目，条目不会过期时不放入
+	 * @param node 节点，其过期时间已设置
+	 */
+	void schedule(Node<K, V> node) {
+		if (node.deadline == Long.MAX_VALUE) {
+			return;
+		}
+		link(findBucket(node.deadline - base), node);
+	}
+
+	/**
+	 * 取出条目，不在轮中时忽略
+	 * @param node 节点
+	 */
+	void deschedule(Node<K, V> node) {
+		if (null == node.wheelNext) {
+			return;
+		}
+		node.wheelPrev.wheelNext = node.wheelNext;
+		node.wheelNext.wheelPrev = node.wheelPrev;
+		node.wheelPrev = null;
+		node.wheelNext = null;
+	}
+
+	/**
+	 * 处理一层中走过的桶
+	 * @param cache 缓存
+	 * @param index 层
+	 * @param previousTicks 上次推进时的刻度
+	 * @param delta 走过的刻度数
+	 * @param now 当前时间（纳秒）
+	 */
+	private void expire(LocalCache<K, V> cache, int index, long previousTicks, long delta, long now) {
+		final Node<K, V>[] buckets = wheel[index];
+		final int mask = buckets.length - 1;
+		final int steps = (int) Math.min(1 + delta, buckets.length);
+		final int start = (int) (previousTicks & mask);
+		for (int i = start; i < start + steps; i++) {
+			final Node<K, V> sentinel = buckets[i & mask];
+			Node<K, V> node = sentinel.wheelNext;
+			sentinel.wheelPrev = sentinel;
+			sentinel.wheelNext = sentinel;
+			while (node != sentinel) {
+				final Node<K, V> next = node.wheelNext;
+				node.wheelPrev = null;
+				node.wheelNext = null;
+				if (node.isExpired(now)) {
+					cache.expire(node);
+				} else {
+					// 访问推迟了过期时间，或者还没到期，按新的过期时间重新放入
+					node.deadline = node.deadline();
+					schedule(node);
+				}
+				node = next;
+			}
+		}
+	}
+
+	/**
+	 * @param time 相对过期时间
+	 * @return 应放入的桶
+	 */
+	private Node<K, V> findBucket(long time) {
+		// 已经过期的放入当前的桶，下次推进时处理
+		time = Math.max(time, nanos);
+		final long duration = time - nanos;
+		final int last = wheel.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (duration < SPANS[i + 1]) {
+				final long ticks = time >>> SHIFT[i];
+				return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+			}
+		}
+		return wheel[last][0];
+	}
+
+	private static <K, V> void link(Node<K, V> sentinel, Node<K, V> node) {
+		node.wheelPrev = sentinel.wheelPrev;
+		node.wheelNext = sentinel;
+		sentinel.wheelPrev.wheelNext = node;
+		sentinel.wheelPrev = node;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.cache;
+
+/**
+ * 缓存条目权重计算
+ * @ClassName: Weigher
+ * @Description:
+ * 配合{@link CacheBuilder#setMaximumWeight(long)}使用，按权重而非条目数限制缓存容量
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 10:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface Weigher<K, V> {
+
+	/**
+	 * 计算条目权重
+	 * @param key 键
+	 * @param value 值
+	 * @return 权重，不能为负数
+	 */
+	int weigh(K key, V value);
+}
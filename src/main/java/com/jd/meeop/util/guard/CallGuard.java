@@ -0,0 +1,51 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.guard;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 调用保护器
+ * @ClassName: CallGuard
+ * @Description:
+ * 包装一次调用，根据调用的结果和耗时决定是否放行后续调用，拒绝时抛出{@link com.jd.meeop.exception.RejectedCallException}
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 11:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface CallGuard {
+
+	/**
+	 * 在保护下执行调用，只有抛出的异常计为失败
+	 * @param callable 调用
+	 * @return 调用结果
+	 * @throws com.jd.meeop.exception.RejectedCallException 调用被拒绝，调用未执行
+	 * @throws Exception 调用本身抛出的异常
+	 */
+	<T> T call(Callable<T> callable) throws Exception;
+
+	/**
+	 * 在保护下执行调用，正常返回的结果由分类器判断是否计为失败
+	 * @param callable 调用
+	 * @param classifier 结果分类器，为<code>null</code>时只有抛出的异常计为失败
+	 * @return 调用结果，计为失败的结果同样返回给调用方
+	 * @throws com.jd.meeop.exception.RejectedCallException 调用被拒绝，调用未执行
+	 * @throws Exception 调用本身抛出的异常
+	 */
+	<T> T call(Callable<T> callable, ResultClassifier<? super T> classifier) throws Exception;
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.guard;
+
+import com.jd.meeop.exception.RejectedCallException;
+import com.jd.meeop.util.AssertUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 熔断器
+ * @ClassName: CircuitBreaker
+ * @Description:
+ * 按最近windowSize次调用的滑动窗口统计失败率和慢调用率（失败为计为失败的异常，或被结果分类器判定为失败的结果），窗口内调用数达到minimumCalls且任一比率达到阈值时打开，
+ * 打开期间直接拒绝调用（抛出{@link RejectedCallException}）；openDuration后进入半开状态，只放行halfOpenCalls个探测调用，
+ * 探测调用的比率低于阈值则关闭，否则再次打开。探测调用在openDuration内未全部完成时同样再次打开。<br>
+ * 通过{@link #create(String)}创建后链式设置，设置应在使用前完成
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 11:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class CircuitBreaker implements CallGuard {
+	private final static Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	/**
+	 * 熔断器状态
+	 */
+	public enum State {
+		/** 关闭，正常放行 */
+		CLOSED,
+		/** 打开，拒绝所有调用 */
+		OPEN,
+		/** 半开，只放行探测调用 */
+		HALF_OPEN
+	}
+
+	private static final int OUTCOME_FAILURE = 1;
+	private static final int OUTCOME_SLOW = 2;
+
+	private final String name;
+	private int windowSize = 100;
+	private int minimumCalls = 20;
+	private float failureRateThreshold = 50;
+	private float slowCallRateThreshold = 80;
+	private long slowCallNanos = TimeUnit.SECONDS.toNanos(5);
+	private long openNanos = TimeUnit.SECONDS.toNanos(10);
+	private int halfOpenCalls = 5;
+	private RecordedFailures recordOn = RecordedFailures.ALL;
+
+	/** 当前状态，用于无锁的快速判断，修改在锁内 */
+	private volatile State state = State.CLOSED;
+	/** 状态的代数，每次状态切换加一，不属于当前代的调用结果被忽略 */
+	private volatile long generation;
+	/** 打开状态的结束时间，或半开状态的探测截止时间 */
+	private long stateDeadline;
+	/** 关闭状态的滑动窗口，每次进入关闭状态时新建，无锁记录 */
+	private volatile Window window = new Window(0, windowSize);
+
+	// 半开状态的探测
+	private int probePermits;
+	private int probeCompleted;
+	private int probeFailures;
+	private int probeSlowCalls;
+
+	private final AtomicLong notPermitted = new AtomicLong();
+
+	/**
+	 * 构造
+	 * @param name 名称，用于日志和异常信息
+	 */
+	public CircuitBreaker(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * 创建熔断器，默认：窗口100次调用，至少20次调用后开始判断，失败率50%或慢调用（5秒以上）率80%时打开，
+	 * 打开10秒后半开，放行5个探测调用
+	 * @param name 名称
+	 * @return CircuitBreaker
+	 */
+	public static CircuitBreaker create(String name) {
+		return new CircuitBreaker(name);
+	}
+
+	// ---------------------------------------------------------------- Config start
+	/**
+	 * @param windowSize 滑动窗口的调用数
+	 * @return this
+	 */
+	public synchronized CircuitBreaker setWindowSize(int windowSize) {
+		AssertUtil.isTrue(windowSize > 0, "Window size must be positive: " + windowSize);
+		this.windowSize = windowSize;
+		this.window = new Window(generation, windowSize);
+		return this;
+	}
+
+	/**
+	 * @param minimumCalls 窗口内至少多少次调用后才计算比率
+	 * @return this
+	 */
+	public CircuitBreaker setMinimumCalls(int minimumCalls) {
+		AssertUtil.isTrue(minimumCalls > 0, "Minimum calls must be positive: " + minimumCalls);
+		this.minimumCalls = minimumCalls;
+		return this;
+	}
+
+	/**
+	 * @param percentage 失败率阈值，0~100，为100时只有全部失败才打开
+	 * @return this
+	 */
+	public CircuitBreaker setFailureRateThreshold(float percentage) {
+		AssertUtil.isTrue(percentage > 0 && percentage <= 100, "Failure rate threshold must be in (0, 100]: " + percentage);
+		this.failureRateThreshold = percentage;
+		return this;
+	}
+
+	/**
+	 * 设置慢调用
+	 * @param duration 耗时达到此值的调用视为慢调用
+	 * @param unit 时间单位
+	 * @param percentage 慢调用率阈值，0~100
+	 * @return this
+	 */
+	public CircuitBreaker setSlowCall(long duration, TimeUnit unit, float percentage) {
+		AssertUtil.isTrue(duration > 0, "Slow call duration must be positive: " + duration);
+		AssertUtil.isTrue(percentage > 0 && percentage <= 100, "Slow call rate threshold must be in (0, 100]: " + percentage);
+		this.slowCallNanos = unit.toNanos(duration);
+		this.slowCallRateThreshold = percentage;
+		return this;
+	}
+
+	/**
+	 * @param duration 打开状态的持续时间，之后进入半开状态
+	 * @param unit 时间单位
+	 * @return this
+	 */
+	public CircuitBreaker setOpenDuration(long duration, TimeUnit unit) {
+		AssertUtil.isTrue(duration > 0, "Open duration must be positive: " + duration);
+		this.openNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * @param halfOpenCalls 半开状态放行的探测调用数
+	 * @return this
+	 */
+	public CircuitBreaker setHalfOpenCalls(int halfOpenCalls) {
+		AssertUtil.isTrue(halfOpenCalls > 0, "Half open calls must be positive: " + halfOpenCalls);
+		this.halfOpenCalls = halfOpenCalls;
+		return this;
+	}
+
+	/**
+	 * @param recordOn 计为失败的异常类型（含子类），为空表示所有异常都计为失败；{@link Error}总是计为失败
+	 * @return this
+	 */
+	public CircuitBreaker setRecordOn(List<Class<? extends Throwable>> recordOn) {
+		this.recordOn = RecordedFailures.of(recordOn);
+		return this;
+	}
+	// ---------------------------------------------------------------- Config end
+
+	@Override
+	public <T> T call(Callable<T> callable) throws Exception {
+		return call(callable, null);
+	}
+
+	@Override
+	public <T> T call(Callable<T> callable, ResultClassifier<? super T> classifier) throws Exception {
+		final long permit = acquire();
+		if (permit < 0) {
+			throw new RejectedCallException("Circuit breaker [{}] is {}", name, state);
+		}
+		final long start = System.nanoTime();
+		boolean failed = false;
+		try {
+			final T result = callable.call();
+			failed = null != classifier && classifier.isFailure(result);
+			return result;
+		} catch (Exception e) {
+			failed = recordOn.isRecorded(e);
+			throw e;
+		} catch (Error e) {
+			failed = recordOn.isRecorded(e);
+			throw e;
+		} finally {
+			onResult(permit, System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * @return 名称
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return 当前状态
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return 窗口内的失败率，0~100，调用数不足minimumCalls时为-1
+	 */
+	public float getFailureRate() {
+		final Window current = window;
+		final int count = current.count();
+		return count < minimumCalls ? -1 : current.failures.get() * 100f / count;
+	}
+
+	/**
+	 * @return 窗口内的慢调用率，0~100，调用数不足minimumCalls时为-1
+	 */
+	public float getSlowCallRate() {
+		final Window current = window;
+		final int count = current.count();
+		return count < minimumCalls ? -1 : current.slowCalls.get() * 100f / count;
+	}
+
+	/**
+	 * @return 被拒绝的调用数
+	 */
+	public long getNotPermittedCount() {
+		return notPermitted.get();
+	}
+
+	/**
+	 * 强制关闭并清空窗口
+	 */
+	public synchronized void reset() {
+		transitionTo(State.CLOSED, System.nanoTime());
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 获取调用许可，关闭状态下不加锁
+	 * @return 当前代数，拒绝时返回-1
+	 */
+	private long acquire() {
+		if (State.CLOSED == state) {
+			return generation;
+		}
+		return acquireLocked();
+	}
+
+	private synchronized long acquireLocked() {
+		final long now = System.nanoTime();
+		switch (state) {
+		case CLOSED:
+			return generation;
+		case OPEN:
+			if (now - stateDeadline < 0) {
+				break;
+			}
+			// 打开时间已到，进入半开并按半开处理本次调用
+			transitionTo(State.HALF_OPEN, now);
+			return acquireProbe(now);
+		case HALF_OPEN:
+			return acquireProbe(now);
+		default:
+			break;
+		}
+		notPermitted.incrementAndGet();
+		return -1;
+	}
+
+	/**
+	 * 半开状态下获取探测许可，须在锁内调用
+	 * @param now 当前时间
+	 * @return 当前代数，拒绝时返回-1
+	 */
+	private long acquireProbe(long now) {
+		if (probePermits > 0) {
+			probePermits--;
+			return generation;
+		}
+		if (now - stateDeadline >= 0) {
+			// 探测调用超时未完成
+			logger.warn("Circuit breaker [{}] probe calls did not complete in time, reopening", name);
+			transitionTo(State.OPEN, now);
+		}
+		notPermitted.incrementAndGet();
+		return -1;
+	}
+
+	/**
+	 * 记录调用结果：关闭状态下用原子操作放入滑动窗口，只在需要打开时加锁；半开状态的探测在锁内统计
+	 * @param permit 获取许可时的代数
+	 * @param elapsedNanos 耗时
+	 * @param failed 是否失败
+	 */
+	private void onResult(long permit, long elapsedNanos, boolean failed) {
+		int outcome = 0;
+		if (failed) {
+			outcome |= OUTCOME_FAILURE;
+		}
+		if (elapsedNanos >= slowCallNanos) {
+			outcome |= OUTCOME_SLOW;
+		}
+		final Window current = window;
+		if (State.CLOSED == state && current.generation == permit) {
+			current.record(outcome);
+			final int count = current.count();
+			if (count >= minimumCalls) {
+				final float failureRate = current.failures.get() * 100f / count;
+				final float slowRate = current.slowCalls.get() * 100f / count;
+				if (failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) {
+					open(current, failureRate, slowRate, count);
+				}
+			}
+			return;
+		}
+		onProbeResult(permit, outcome);
+	}
+
+	/**
+	 * 窗口仍是当前窗口时打开
+	 */
+	private synchronized void open(Window current, float failureRate, float slowRate, int count) {
+		if (current != window || State.CLOSED != state) {
+			// 其它调用已经切换了状态
+			return;
+		}
+		logger.warn("Circuit breaker [{}] opened: failure rate {}%, slow call rate {}% in last {} calls",
+				name, failureRate, slowRate, count);
+		transitionTo(State.OPEN, System.nanoTime());
+	}
+
+	private synchronized void onProbeResult(long permit, int outcome) {
+		if (permit != generation || State.HALF_OPEN != state) {
+			// 状态已切换，结果不再有意义
+			return;
+		}
+		probeCompleted++;
+		if (0 != (outcome & OUTCOME_FAILURE)) {
+			probeFailures++;
+		}
+		if (0 != (outcome & OUTCOME_SLOW)) {
+			probeSlowCalls++;
+		}
+		if (probeCompleted >= halfOpenCalls) {
+			final long now = System.nanoTime();
+			final float failureRate = probeFailures * 100f / probeCompleted;
+			final float slowRate = probeSlowCalls * 100f / probeCompleted;
+			if (failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) {
+				logger.warn("Circuit breaker [{}] reopened: probe failure rate {}%, slow call rate {}%", name, failureRate, slowRate);
+				transitionTo(State.OPEN, now);
+			} else {
+				logger.info("Circuit breaker [{}] closed", name);
+				transitionTo(State.CLOSED, now);
+			}
+		}
+	}
+
+	private void transitionTo(State newState, long now) {
+		generation++;
+		switch (newState) {
+		case OPEN:
+			stateDeadline = now + openNanos;
+			break;
+		case HALF_OPEN:
+			stateDeadline = now + openNanos;
+			probePermits = halfOpenCalls;
+			probeCompleted = 0;
+			probeFailures = 0;
+			probeSlowCalls = 0;
+			break;
+		default:
+			window = new Window(generation, windowSize);
+			break;
+		}
+		this.state = newState;
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 关闭状态一代的滑动窗口，记录最近size次调用的结果<br>
+	 * 每次调用占用一个序号，按序号循环覆盖槽位，被覆盖的结果从计数中减去；并发时比率是近似值
+	 */
+	private static final class Window {
+		/** 所属的代数，状态切换后旧窗口的记录被丢弃 */
+		final long generation;
+		private final AtomicIntegerArray outcomes;
+		private final AtomicLong calls = new AtomicLong();
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicInteger slowCalls = new AtomicInteger();
+
+		Window(long generation, int size) {
+			this.generation = generation;
+			this.outcomes = new AtomicIntegerArray(size);
+		}
+
+		void record(int outcome) {
+			final int index = (int) (calls.getAndIncrement() % outcomes.length());
+			final int oldest = outcomes.getAndSet(index, outcome);
+			if (0 != (oldest & OUTCOME_FAILURE)) {
+				failures.decrementAndGet();
+			}
+			if (0 != (oldest & OUTCOME_SLOW)) {
+				slowCalls.decrementAndGet();
+			}
+			if (0 != (outcome & OUTCOME_FAILURE)) {
+				failures.incrementAndGet();
+			}
+			if (0 != (outcome & OUTCOME_SLOW)) {
+				slowCalls.incrementAndGet();
+			}
+		}
+
+		/**
+		 * @return 窗口内的调用数
+		 */
+		int count() {
+			return (int) Math.min(calls.get(), outcomes.length());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker[" + name + ", " + state + ", notPermitted=" + notPermitted.get() + "]";
+	}
+}
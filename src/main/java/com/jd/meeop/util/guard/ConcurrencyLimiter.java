@@ -0,0 +1,247 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.guard;
+
+import com.jd.meeop.exception.RejectedCallException;
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应并发限制器
+ * @ClassName: ConcurrencyLimiter
+ * @Description:
+ * 限制同时进行的调用数，超过限制的调用直接拒绝（抛出{@link RejectedCallException}）而不是排队。
+ * 限制值按梯度算法随延迟调整：长期延迟为调用耗时的指数移动平均，每次调用完成后
+ * gradient = clamp(tolerance * 长期延迟 / 本次延迟, 0.5, 1)，新限制 = 限制 * gradient + queueSize，再平滑到当前限制上。
+ * 延迟不变时限制缓慢增长，延迟上升时限制按比例下降；调用失败（计为失败的异常，或被结果分类器判定为失败的结果）时限制乘以backoffRatio。
+ * 进行中的调用数不到限制一半时说明负载不足，限制不再增长，但延迟上升时仍会下降。<br>
+ * 通过{@link #create(String)}创建后链式设置，设置应在使用前完成
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 11:40
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class ConcurrencyLimiter implements CallGuard {
+	/** 允许的排队余量，即延迟不变时每次调整的增长量 */
+	private static final int QUEUE_SIZE = 4;
+	/** 长期延迟的窗口（采样数） */
+	private static final int LONG_WINDOW = 600;
+	/** 新限制的平滑系数 */
+	private static final double SMOOTHING = 0.2;
+
+	private final String name;
+	private int minLimit = 1;
+	private int maxLimit = 1000;
+	private double tolerance = 1.5;
+	private double backoffRatio = 0.9;
+	private RecordedFailures recordOn = RecordedFailures.ALL;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	/** 当前限制，取整后用于无锁的许可判断 */
+	private volatile int limit;
+	/** 以下字段在锁内修改 */
+	private double estimatedLimit;
+	private double longRttNanos;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * 构造，初始限制20
+	 * @param name 名称，用于异常信息
+	 */
+	public ConcurrencyLimiter(String name) {
+		this.name = name;
+		setInitialLimit(20);
+	}
+
+	/**
+	 * 创建并发限制器，默认：初始限制20，范围1~1000，延迟容忍1.5倍，失败时乘以0.9
+	 * @param name 名称
+	 * @return ConcurrencyLimiter
+	 */
+	public static ConcurrencyLimiter create(String name) {
+		return new ConcurrencyLimiter(name);
+	}
+
+	// ---------------------------------------------------------------- Config start
+	/**
+	 * @param initialLimit 初始限制
+	 * @return this
+	 */
+	public synchronized ConcurrencyLimiter setInitialLimit(int initialLimit) {
+		AssertUtil.isTrue(initialLimit > 0, "Initial limit must be positive: " + initialLimit);
+		this.estimatedLimit = initialLimit;
+		this.limit = initialLimit;
+		return this;
+	}
+
+	/**
+	 * @param minLimit 最小限制
+	 * @param maxLimit 最大限制
+	 * @return this
+	 */
+	public synchronized ConcurrencyLimiter setLimitRange(int minLimit, int maxLimit) {
+		AssertUtil.isTrue(minLimit > 0 && maxLimit >= minLimit, "Invalid limit range: " + minLimit + " ~ " + maxLimit);
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		updateLimit(estimatedLimit);
+		return this;
+	}
+
+	/**
+	 * @param tolerance 延迟容忍倍数，不小于1，本次延迟不超过长期延迟的此倍数时限制不下降
+	 * @return this
+	 */
+	public ConcurrencyLimiter setTolerance(double tolerance) {
+		AssertUtil.isTrue(tolerance >= 1, "Tolerance must not be less than 1: " + tolerance);
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * @param backoffRatio 调用失败时限制的缩小比例，0~1
+	 * @return this
+	 */
+	public ConcurrencyLimiter setBackoffRatio(double backoffRatio) {
+		AssertUtil.isTrue(backoffRatio > 0 && backoffRatio <= 1, "Backoff ratio must be in (0, 1]: " + backoffRatio);
+		this.backoffRatio = backoffRatio;
+		return this;
+	}
+
+	/**
+	 * @param recordOn 计为失败的异常类型（含子类），为空表示所有异常都计为失败；{@link Error}总是计为失败
+	 * @return this
+	 */
+	public ConcurrencyLimiter setRecordOn(List<Class<? extends Throwable>> recordOn) {
+		this.recordOn = RecordedFailures.of(recordOn);
+		return this;
+	}
+	// ---------------------------------------------------------------- Config end
+
+	@Override
+	public <T> T call(Callable<T> callable) throws Exception {
+		return call(callable, null);
+	}
+
+	@Override
+	public <T> T call(Callable<T> callable, ResultClassifier<? super T> classifier) throws Exception {
+		final int inFlightAtStart = tryAcquire();
+		if (inFlightAtStart < 0) {
+			throw new RejectedCallException("Concurrency limit of [{}] exceeded: {}", name, limit);
+		}
+		final long start = System.nanoTime();
+		boolean failed = false;
+		try {
+			final T result = callable.call();
+			failed = null != classifier && classifier.isFailure(result);
+			return result;
+		} catch (Exception e) {
+			failed = recordOn.isRecorded(e);
+			throw e;
+		} catch (Error e) {
+			failed = recordOn.isRecorded(e);
+			throw e;
+		} finally {
+			inFlight.decrementAndGet();
+			onSample(System.nanoTime() - start, inFlightAtStart, failed);
+		}
+	}
+
+	/**
+	 * @return 名称
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return 当前限制
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return 进行中的调用数
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return 被拒绝的调用数
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * @return 获取许可后的进行中调用数，超过限制返回-1
+	 */
+	private int tryAcquire() {
+		int current;
+		do {
+			current = inFlight.get();
+			if (current >= limit) {
+				rejected.incrementAndGet();
+				return -1;
+			}
+		} while (false == inFlight.compareAndSet(current, current + 1));
+		return current + 1;
+	}
+
+	private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean failed) {
+		if (failed) {
+			updateLimit(estimatedLimit * backoffRatio);
+			return;
+		}
+		final double rtt = Math.max(1, rttNanos);
+		if (0 == longRttNanos) {
+			longRttNanos = rtt;
+		} else {
+			longRttNanos += (rtt - longRttNanos) / LONG_WINDOW;
+			if (longRttNanos / rtt > 2) {
+				// 延迟明显好转时让长期延迟较快回落，避免限制长期偏高
+				longRttNanos *= 0.95;
+			}
+		}
+		final double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rtt));
+		final boolean appLimited = inFlightAtStart < estimatedLimit / 2;
+		if (appLimited && gradient >= 1.0) {
+			// 负载不足时延迟不能说明限制是否够用，不再增长，但延迟上升时仍然下降
+			return;
+		}
+		final double newLimit = estimatedLimit * gradient + (appLimited ? 0 : QUEUE_SIZE);
+		updateLimit(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+	}
+
+	private void updateLimit(double newLimit) {
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+		limit = (int) estimatedLimit;
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	@Override
+	public String toString() {
+		return "ConcurrencyLimiter[" + name + ", limit=" + limit + ", inFlight=" + inFlight.get() + ", rejected=" + rejected.get() + "]";
+	}
+}
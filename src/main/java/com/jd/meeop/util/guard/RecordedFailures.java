@@ -0,0 +1,70 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.guard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 计为失败的异常
+ * @ClassName: RecordedFailures
+ * @Description:
+ * {@link CallGuard}实现共用的失败判定：{@link Error}总是计为失败；其它异常在未指定类型时都计为失败，
+ * 指定类型后只有这些类型（含子类）计为失败。不可变，可在线程间共享
+ * @author: 冷水(Toby)
+ * @date: 26-10-22 17:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class RecordedFailures {
+	/** 所有异常都计为失败 */
+	static final RecordedFailures ALL = new RecordedFailures(Collections.<Class<? extends Throwable>>emptyList());
+
+	private final List<Class<? extends Throwable>> types;
+
+	private RecordedFailures(List<Class<? extends Throwable>> types) {
+		this.types = types;
+	}
+
+	/**
+	 * @param types 计为失败的异常类型（含子类），为空表示所有异常都计为失败
+	 * @return RecordedFailures
+	 */
+	static RecordedFailures of(List<Class<? extends Throwable>> types) {
+		if (null == types || types.isEmpty()) {
+			return ALL;
+		}
+		return new RecordedFailures(Collections.unmodifiableList(new ArrayList<Class<? extends Throwable>>(types)));
+	}
+
+	/**
+	 * @param e 调用抛出的异常
+	 * @return 是否计为失败
+	 */
+	boolean isRecorded(Throwable e) {
+		if (e instanceof Error || types.isEmpty()) {
+			return true;
+		}
+		for (Class<? extends Throwable> type : types) {
+			if (type.isInstance(e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.guard;
+
+/**
+ * 调用结果分类器
+ * @ClassName: ResultClassifier
+ * @Description:
+ * 判断正常返回的调用结果是否应计为失败，例如HTTP请求返回5xx状态码时虽未抛出异常，对下游而言仍是失败
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 11:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface ResultClassifier<T> {
+
+	/**
+	 * @param result 调用结果，可能为<code>null</code>
+	 * @return 是否计为失败
+	 */
+	boolean isFailure(T result);
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 字节读取策略
+ * @ClassName: Access
+ * @Description:
+ * 把byte[]、ByteBuffer、CharSequence统一看作小端字节序列，使每种hash算法只需实现一次。<br>
+ * CharSequence按UTF-16LE编码读取，即每个char占两个字节，不做字符集转换
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 16:05
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+abstract class Access<T> {
+
+	/** byte[]，下标为数组下标 */
+	static final Access<byte[]> BYTES = new Access<byte[]>() {
+		@Override
+		int getByte(byte[] in, int index) {
+			return in[index] & 0xff;
+		}
+
+		@Override
+		int getInt(byte[] in, int index) {
+			return (in[index] & 0xff)
+					| (in[index + 1] & 0xff) << 8
+					| (in[index + 2] & 0xff) << 16
+					| in[index + 3] << 24;
+		}
+
+		@Override
+		long getLong(byte[] in, int index) {
+			return (getInt(in, index) & 0xffffffffL) | (long) getInt(in, index + 4) << 32;
+		}
+	};
+
+	/** 小端序的ByteBuffer，下标为绝对位置 */
+	static final Access<ByteBuffer> BUFFER = new Access<ByteBuffer>() {
+		@Override
+		int getByte(ByteBuffer in, int index) {
+			return in.get(index) & 0xff;
+		}
+
+		@Override
+		int getInt(ByteBuffer in, int index) {
+			return in.getInt(index);
+		}
+
+		@Override
+		long getLong(ByteBuffer in, int index) {
+			return in.getLong(index);
+		}
+	};
+
+	/** CharSequence，下标为字节下标（char下标的两倍） */
+	static final Access<CharSequence> CHARS = new Access<CharSequence>() {
+		@Override
+		int getByte(CharSequence in, int index) {
+			final char c = in.charAt(index >> 1);
+			return (index & 1) == 0 ? c & 0xff : c >>> 8;
+		}
+
+		@Override
+		int getInt(CharSequence in, int index) {
+			if ((index & 1) != 0) {
+				return super.getInt(in, index);
+			}
+			final int i = index >> 1;
+			return in.charAt(i) | in.charAt(i + 1) << 16;
+		}
+
+		@Override
+		long getLong(CharSequence in, int index) {
+			if ((index & 1) != 0) {
+				return super.getLong(in, index);
+			}
+			final int i = index >> 1;
+			return in.charAt(i)
+					| (long) in.charAt(i + 1) << 16
+					| (long) in.charAt(i + 2) << 32
+					| (long) in.charAt(i + 3) << 48;
+		}
+	};
+
+	/**
+	 * @param in 输入
+	 * @param index 字节下标
+	 * @return 无符号字节
+	 */
+	abstract int getByte(T in, int index);
+
+	/**
+	 * @param in 输入
+	 * @param index 字节下标
+	 * @return 从下标开始的4字节小端整数
+	 */
+	int getInt(T in, int index) {
+		return getByte(in, index)
+				| getByte(in, index + 1) << 8
+				| getByte(in, index + 2) << 16
+				| getByte(in, index + 3) << 24;
+	}
+
+	/**
+	 * @param in 输入
+	 * @param index 字节下标
+	 * @return 从下标开始的8字节小端整数
+	 */
+	long getLong(T in, int index) {
+		return (getInt(in, index) & 0xffffffffL) | (long) getInt(in, index + 4) << 32;
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * MurmurHash3算法
+ * @ClassName: Murmur3
+ * @Description:
+ * 实现x86_32与x64_128两个版本，输出与参考实现（smhasher）一致。<br>
+ * 各入口按4/8字节一次读取，入口方法见{@link com.jd.meeop.util.HashUtil}
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 16:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public final class Murmur3 {
+
+	private static final int C1_32 = 0xcc9e2d51;
+	private static final int C2_32 = 0x1b873593;
+	private static final long C1_128 = 0x87c37b91114253d5L;
+	private static final long C2_128 = 0x4cf5ad432745937fL;
+
+	private Murmur3() {
+	}
+
+	/**
+	 * 32位MurmurHash3（x86_32）
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static int hash32(byte[] data, int offset, int length, int seed) {
+		checkBounds(data.length, offset, length);
+		return hash32(Access.BYTES, data, offset, length, seed);
+	}
+
+	/**
+	 * 32位MurmurHash3（x86_32），计算position到limit之间的数据，不改变position
+	 * @param data 数据
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static int hash32(ByteBuffer data, int seed) {
+		if (data.hasArray()) {
+			return hash32(Access.BYTES, data.array(), data.arrayOffset() + data.position(), data.remaining(), seed);
+		}
+		return hash32(Access.BUFFER, data.duplicate().order(ByteOrder.LITTLE_ENDIAN), data.position(), data.remaining(), seed);
+	}
+
+	/**
+	 * 32位MurmurHash3（x86_32），按UTF-16LE编码计算，不做字符集转换
+	 * @param data 字符序列
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static int hash32(CharSequence data, int seed) {
+		return hash32(Access.CHARS, data, 0, data.length() << 1, seed);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128）
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @param seed 种子
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	public static long[] hash128(byte[] data, int offset, int length, int seed) {
+		checkBounds(data.length, offset, length);
+		return hash128(Access.BYTES, data, offset, length, seed);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128），计算position到limit之间的数据，不改变position
+	 * @param data 数据
+	 * @param seed 种子
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	public static long[] hash128(ByteBuffer data, int seed) {
+		if (data.hasArray()) {
+			return hash128(Access.BYTES, data.array(), data.arrayOffset() + data.position(), data.remaining(), seed);
+		}
+		return hash128(Access.BUFFER, data.duplicate().order(ByteOrder.LITTLE_ENDIAN), data.position(), data.remaining(), seed);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128），按UTF-16LE编码计算，不做字符集转换
+	 * @param data 字符序列
+	 * @param seed 种子
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	public static long[] hash128(CharSequence data, int seed) {
+		return hash128(Access.CHARS, data, 0, data.length() << 1, seed);
+	}
+
+	/**
+	 * 创建128位MurmurHash3的增量计算对象
+	 * @param seed 种子
+	 * @return 增量计算对象
+	 */
+	public static Hasher newHasher(int seed) {
+		return new Hasher(seed);
+	}
+
+	/**
+	 * 32位MurmurHash3（x86_32）
+	 * @param access 读取策略
+	 * @param in 输入
+	 * @param offset 起始字节下标
+	 * @param length 字节数
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	@SuppressWarnings("fallthrough")
+	static <T> int hash32(Access<T> access, T in, int offset, int length, int seed) {
+		int h1 = seed;
+		final int end = offset + (length & ~3);
+		int i = offset;
+		for (; i < end; i += 4) {
+			h1 ^= mixK1(access.getInt(in, i));
+			h1 = Integer.rotateLeft(h1, 13);
+			h1 = h1 * 5 + 0xe6546b64;
+		}
+
+		int k1 = 0;
+		switch (length & 3) {
+			case 3:
+				k1 ^= access.getByte(in, i + 2) << 16;
+			case 2:
+				k1 ^= access.getByte(in, i + 1) << 8;
+			case 1:
+				k1 ^= access.getByte(in, i);
+				h1 ^= mixK1(k1);
+			default:
+				break;
+		}
+		return fmix32(h1 ^ length);
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128）
+	 * @param access 读取策略
+	 * @param in 输入
+	 * @param offset 起始字节下标
+	 * @param length 字节数
+	 * @param seed 种子，按无符号32位使用
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	static <T> long[] hash128(Access<T> access, T in, int offset, int length, int seed) {
+		final long[] h = {seed & 0xffffffffL, seed & 0xffffffffL};
+		final int end = offset + (length & ~15);
+		int i = offset;
+		for (; i < end; i += 16) {
+			block128(h, access.getLong(in, i), access.getLong(in, i + 8));
+		}
+		return finish128(h, access, in, i, length & 15, length);
+	}
+
+	/**
+	 * 处理一个16字节的块
+	 * @param h 状态（h1、h2）
+	 * @param k1 前8字节
+	 * @param k2 后8字节
+	 */
+	static void block128(long[] h, long k1, long k2) {
+		long h1 = h[0];
+		long h2 = h[1];
+		h1 ^= mixK1(k1);
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52dce729;
+
+		h2 ^= mixK2(k2);
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495ab5;
+		h[0] = h1;
+		h[1] = h2;
+	}
+
+	/**
+	 * 处理不足16字节的尾部并做最终混淆，不修改传入的状态
+	 * @param state 状态（h1、h2）
+	 * @param access 读取策略
+	 * @param in 输入
+	 * @param i 尾部起始字节下标
+	 * @param tail 尾部字节数（小于16）
+	 * @param length 总字节数
+	 * @return 长度为2的数组，依次为h1、h2
+	 */
+	@SuppressWarnings("fallthrough")
+	static <T> long[] finish128(long[] state, Access<T> access, T in, int i, int tail, long length) {
+		long h1 = state[0];
+		long h2 = state[1];
+		long k1 = 0;
+		long k2 = 0;
+		switch (tail) {
+			case 15:
+				k2 ^= (long) access.getByte(in, i + 14) << 48;
+			case 14:
+				k2 ^= (long) access.getByte(in, i + 13) << 40;
+			case 13:
+				k2 ^= (long) access.getByte(in, i + 12) << 32;
+			case 12:
+				k2 ^= (long) access.getByte(in, i + 11) << 24;
+			case 11:
+				k2 ^= (long) access.getByte(in, i + 10) << 16;
+			case 10:
+				k2 ^= (long) access.getByte(in, i + 9) << 8;
+			case 9:
+				k2 ^= access.getByte(in, i + 8);
+				h2 ^= mixK2(k2);
+			case 8:
+				k1 ^= (long) access.getByte(in, i + 7) << 56;
+			case 7:
+				k1 ^= (long) access.getByte(in, i + 6) << 48;
+			case 6:
+				k1 ^= (long) access.getByte(in, i + 5) << 40;
+			case 5:
+				k1 ^= (long) access.getByte(in, i + 4) << 32;
+			case 4:
+				k1 ^= (long) access.getByte(in, i + 3) << 24;
+			case 3:
+				k1 ^= (long) access.getByte(in, i + 2) << 16;
+			case 2:
+				k1 ^= (long) access.getByte(in, i + 1) << 8;
+			case 1:
+				k1 ^= access.getByte(in, i);
+				h1 ^= mixK1(k1);
+			default:
+				break;
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix64(h1);
+		h2 = fmix64(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[]{h1, h2};
+	}
+
+	/**
+	 * 128位MurmurHash3（x64_128）的增量计算，通过{@link #newHasher(int)}创建
+	 */
+	public static final class Hasher extends StreamingHasher {
+		private final int seed;
+		private final long[] state = new long[2];
+
+		Hasher(int seed) {
+			super(16);
+			this.seed = seed;
+			resetState();
+		}
+
+		/**
+		 * 计算当前已输入数据的hash，不影响后续继续输入
+		 * @return 长度为2的数组，依次为h1、h2
+		 */
+		public long[] hash128() {
+			return finish128(state, Access.BYTES, buffer, 0, buffered, length);
+		}
+
+		/**
+		 * @return 128位结果的低64位（h1）
+		 */
+		@Override
+		public long hash64() {
+			return hash128()[0];
+		}
+
+		@Override
+		<T> void block(Access<T> access, T in, int i) {
+			block128(state, access.getLong(in, i), access.getLong(in, i + 8));
+		}
+
+		@Override
+		void resetState() {
+			state[0] = seed & 0xffffffffL;
+			state[1] = seed & 0xffffffffL;
+		}
+	}
+
+	/**
+	 * MurmurHash3的32位最终混淆
+	 * @param h 输入
+	 * @return 混淆结果
+	 */
+	public static int fmix32(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * MurmurHash3的64位最终混淆
+	 * @param h 输入
+	 * @return 混淆结果
+	 */
+	public static long fmix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	static void checkBounds(int size, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > size) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + size);
+		}
+	}
+
+	private static int mixK1(int k1) {
+		k1 *= C1_32;
+		k1 = Integer.rotateLeft(k1, 15);
+		k1 *= C2_32;
+		return k1;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= C1_128;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2_128;
+		return k1;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= C2_128;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1_128;
+		return k2;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.hash;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 增量hash计算
+ * @ClassName: StreamingHasher
+ * @Description:
+ * 分多次输入数据，结果与把所有数据拼接后一次计算相同，大数据无需整体读入内存。<br>
+ * 本身是一个OutputStream，可以直接作为IoUtil.copy等方法的输出目标。非线程安全
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 16:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public abstract class StreamingHasher extends OutputStream {
+
+	/** 未凑满一个块的字节 */
+	final byte[] buffer;
+	/** buffer中的有效字节数 */
+	int buffered;
+	/** 已输入的总字节数 */
+	long length;
+
+	/**
+	 * 构造
+	 * @param blockSize 算法的块大小
+	 */
+	StreamingHasher(int blockSize) {
+		this.buffer = new byte[blockSize];
+	}
+
+	/**
+	 * 输入一个字节
+	 * @param b 字节
+	 * @return this
+	 */
+	public StreamingHasher update(byte b) {
+		length++;
+		buffer[buffered++] = b;
+		if (buffered == buffer.length) {
+			block(Access.BYTES, buffer, 0);
+			buffered = 0;
+		}
+		return this;
+	}
+
+	/**
+	 * 输入字节数组
+	 * @param data 数据
+	 * @return this
+	 */
+	public StreamingHasher update(byte[] data) {
+		return update(data, 0, data.length);
+	}
+
+	/**
+	 * 输入字节数组的一部分
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param len 长度
+	 * @return this
+	 */
+	public StreamingHasher update(byte[] data, int offset, int len) {
+		if (offset < 0 || len < 0 || offset + len > data.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		update(Access.BYTES, data, offset, len);
+		return this;
+	}
+
+	/**
+	 * 输入ByteBuffer中position到limit之间的数据，与MessageDigest一样，完成后position移动到limit
+	 * @param data 数据
+	 * @return this
+	 */
+	public StreamingHasher update(ByteBuffer data) {
+		final int position = data.position();
+		final int len = data.remaining();
+		if (data.hasArray()) {
+			update(Access.BYTES, data.array(), data.arrayOffset() + position, len);
+		} else {
+			update(Access.BUFFER, data.duplicate().order(ByteOrder.LITTLE_ENDIAN), position, len);
+		}
+		data.position(position + len);
+		return this;
+	}
+
+	/**
+	 * 输入字符序列，按UTF-16LE编码计入，不做字符集转换
+	 * @param data 数据
+	 * @return this
+	 */
+	public StreamingHasher update(CharSequence data) {
+		update(Access.CHARS, data, 0, data.length() << 1);
+		return this;
+	}
+
+	@Override
+	public void write(int b) {
+		update((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		update(b, off, len);
+	}
+
+	/**
+	 * @return 已输入的总字节数
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * 计算当前已输入数据的hash，不影响后续继续输入
+	 * @return 64位hash值
+	 */
+	public abstract long hash64();
+
+	/**
+	 * 清空状态，可重新开始计算
+	 * @return this
+	 */
+	public StreamingHasher reset() {
+		buffered = 0;
+		length = 0;
+		resetState();
+		return this;
+	}
+
+	/**
+	 * 处理一个完整的块
+	 * @param access 读取策略
+	 * @param in 输入
+	 * @param i 块起始字节下标
+	 */
+	abstract <T> void block(Access<T> access, T in, int i);
+
+	/**
+	 * 把算法状态恢复为初始值
+	 */
+	abstract void resetState();
+
+	private <T> void update(Access<T> access, T in, int offset, int len) {
+		length += len;
+		final int blockSize = buffer.length;
+		final int end = offset + len;
+		int i = offset;
+		if (buffered > 0) {
+			while (buffered < blockSize && i < end) {
+				buffer[buffered++] = (byte) access.getByte(in, i++);
+			}
+			if (buffered < blockSize) {
+				return;
+			}
+			block(Access.BYTES, buffer, 0);
+			buffered = 0;
+		}
+		for (; i + blockSize <= end; i += blockSize) {
+			block(access, in, i);
+		}
+		while (i < end) {
+			buffer[buffered++] = (byte) access.getByte(in, i++);
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64算法
+ * @ClassName: XxHash64
+ * @Description:
+ * 输出与参考实现（XXH64）一致，每轮并行处理4个8字节的lane，入口方法见{@link com.jd.meeop.util.HashUtil}
+ * @author: 冷水(Toby)
+ * @date: 26-10-18 16:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public final class XxHash64 {
+
+	static final long P1 = 0x9E3779B185EBCA87L;
+	static final long P2 = 0xC2B2AE3D27D4EB4FL;
+	static final long P3 = 0x165667B19E3779F9L;
+	static final long P4 = 0x85EBCA77C2B2AE63L;
+	static final long P5 = 0x27D4EB2F165667C5L;
+
+	private XxHash64() {
+	}
+
+	/**
+	 * 计算xxHash64
+	 * @param data 数据
+	 * @param offset 起始位置
+	 * @param length 长度
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static long hash(byte[] data, int offset, int length, long seed) {
+		Murmur3.checkBounds(data.length, offset, length);
+		return hash(Access.BYTES, data, offset, length, seed);
+	}
+
+	/**
+	 * 计算xxHash64，计算position到limit之间的数据，不改变position
+	 * @param data 数据
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static long hash(ByteBuffer data, long seed) {
+		if (data.hasArray()) {
+			return hash(Access.BYTES, data.array(), data.arrayOffset() + data.position(), data.remaining(), seed);
+		}
+		return hash(Access.BUFFER, data.duplicate().order(ByteOrder.LITTLE_ENDIAN), data.position(), data.remaining(), seed);
+	}
+
+	/**
+	 * 计算xxHash64，按UTF-16LE编码计算，不做字符集转换
+	 * @param data 字符序列
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	public static long hash(CharSequence data, long seed) {
+		return hash(Access.CHARS, data, 0, data.length() << 1, seed);
+	}
+
+	/**
+	 * 创建xxHash64的增量计算对象
+	 * @param seed 种子
+	 * @return 增量计算对象
+	 */
+	public static Hasher newHasher(long seed) {
+		return new Hasher(seed);
+	}
+
+	/**
+	 * 计算xxHash64
+	 * @param access 读取策略
+	 * @param in 输入
+	 * @param offset 起始字节下标
+	 * @param length 字节数
+	 * @param seed 种子
+	 * @return hash值
+	 */
+	static <T> long hash(Access<T> access, T in, int offset, int length, long seed) {
+		final int end = offset + length;
+		int i = offset;
+		long h;
+		if (length >= 32) {
+			final long[] v = initLanes(seed);
+			final int limit = end - 32;
+			do {
+				stripe(v, access, in, i);
+				i += 32;
+			} while (i <= limit);
+			h = mergeLanes(v);
+		} else {
+			h = seed + P5;
+		}
+		return finish(h + length, access, in, i, end);
+	}
+
+	/**
+	 * @param seed 种子
+	 * @return 4个lane的初始值
+	 */
+	static long[] initLanes(long seed) {
+		return new long[]{seed + P1 + P2, seed + P2, seed, seed - P1};
+	}
+
+	/**
+	 * 处理一个32字节的条带
+	 * @param v 4个lane
+	 * @param access 读取策略
+	 * @param in 输入
+	 * @param i 起始字节下标
+	 */
+	static <T> void stripe(long[] v, Access<T> access, T in, int i) {
+		v[0] = round(v[0], access.getLong(in, i));
+		v[1] = round(v[1], access.getLong(in, i + 8));
+		v[2] = round(v[2], access.getLong(in, i + 16));
+		v[3] = round(v[3], access.getLong(in, i + 24));
+	}
+
+	/**
+	 * 合并4个lane
+	 * @param v 4个lane
+	 * @return 合并结果
+	 */
+	static long mergeLanes(long[] v) {
+		long h = Long.rotateLeft(v[0], 1) + Long.rotateLeft(v[1], 7) + Long.rotateLeft(v[2], 12) + Long.rotateLeft(v[3], 18);
+		h = mergeRound(h, v[0]);
+		h = mergeRound(h, v[1]);
+		h = mergeRound(h, v[2]);
+		h = mergeRound(h, v[3]);
+		return h;
+	}
+
+	/**
+	 * 处理不足32字节的尾部并做最终混淆
+	 * @param h 已加上总长度的中间值
+	 * @param access 读取策略
+	 * @param in 输入
+	 * @param i 尾部起始字节下标
+	 * @param end 结束字节下标（不含）
+	 * @return hash值
+	 */
+	static <T> long finish(long h, Access<T> access, T in, int i, int end) {
+		for (; i + 8 <= end; i += 8) {
+			h ^= round(0, access.getLong(in, i));
+			h = Long.rotateLeft(h, 27) * P1 + P4;
+		}
+		if (i + 4 <= end) {
+			h ^= (access.getInt(in, i) & 0xffffffffL) * P1;
+			h = Long.rotateLeft(h, 23) * P2 + P3;
+			i += 4;
+		}
+		for (; i < end; i++) {
+			h ^= access.getByte(in, i) * P5;
+			h = Long.rotateLeft(h, 11) * P1;
+		}
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	/**
+	 * xxHash64的增量计算，通过{@link #newHasher(long)}创建
+	 */
+	public static final class Hasher extends StreamingHasher {
+		private final long seed;
+		private long[] lanes;
+
+		Hasher(long seed) {
+			super(32);
+			this.seed = seed;
+			resetState();
+		}
+
+		@Override
+		public long hash64() {
+			final long h = length >= 32 ? mergeLanes(lanes) : seed + P5;
+			return finish(h + length, Access.BYTES, buffer, 0, buffered);
+		}
+
+		@Override
+		<T> void block(Access<T> access, T in, int i) {
+			stripe(lanes, access, in, i);
+		}
+
+		@Override
+		void resetState() {
+			lanes = initLanes(seed);
+		}
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * P2;
+		acc = Long.rotateLeft(acc, 31);
+		acc *= P1;
+		return acc;
+	}
+
+	private static long mergeRound(long acc, long val) {
+		acc ^= round(0, val);
+		return acc * P1 + P4;
+	}
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.StringUtil;
+import com.jd.meeop.util.ThreadUtil;
+import com.jd.meeop.util.http.HttpCodec.ResponseHead;
+import com.jd.meeop.util.io.FastByteArrayOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步Http客户端
+ * @ClassName: AsyncHttpClient
+ * @Description:
+ * 基于NIO的非阻塞客户端，少量IO线程（{@link NioEventLoop}）承载大量并发请求，适合一次调用扇出到多个下游的场景。
+ * 每个路由固定由一个IO线程负责，连接在该线程内按路由复用，最多maxPerRoute个，超出的请求排队。<br>
+ * 超时、重定向、gzip解压、默认请求头和Cookie与同步的{@link HttpRequest#execute()}一致；响应主体读入内存后在回调执行器中构造{@link HttpResponse}，
+ * 默认使用公共执行器，IO线程不执行任何回调；执行器拒绝时回调在IO线程中执行，回调抛出的异常不会中断IO线程。<br>
+ * HTTPS使用{@link #setSSLContext(SSLContext)}设置的SSLContext，不支持请求中设置的SSLSocketFactory。<br>
+ * 通过{@link #create(String)}创建后链式设置，设置应在第一次请求前完成，或者直接使用共享的{@link #getDefault()}
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 16:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class AsyncHttpClient {
+	private final static Logger logger = LoggerFactory.getLogger(AsyncHttpClient.class);
+
+	/** 默认IO线程数 */
+	public static final int DEFAULT_IO_THREADS = 2;
+
+	private final String name;
+	private int ioThreads = DEFAULT_IO_THREADS;
+	private int maxPerRoute = HttpConnectionPool.DEFAULT_MAX_PER_ROUTE;
+	private long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(HttpConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+	private SSLContext sslContext;
+	private Executor callbackExecutor;
+
+	/** 第一次请求时创建 */
+	private volatile NioEventLoop[] loops;
+	private volatile boolean closed;
+
+	/**
+	 * 创建客户端，使用默认设置
+	 * 
+	 * @param name 名称，用作IO线程名前缀
+	 * @return AsyncHttpClient
+	 */
+	public static AsyncHttpClient create(String name) {
+		return new AsyncHttpClient(name);
+	}
+
+	/**
+	 * 获取共享的客户端，IO线程名为biz-http-N
+	 * 
+	 * @return 共享的客户端
+	 */
+	public static AsyncHttpClient getDefault() {
+		return DefaultHolder.CLIENT;
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param name 名称，用作IO线程名前缀
+	 */
+	public AsyncHttpClient(String name) {
+		AssertUtil.isTrue(StringUtil.isNotBlank(name), "name must not be blank");
+		this.name = name;
+	}
+
+	// ---------------------------------------------------------------- Setters start
+	/**
+	 * 设置IO线程数，默认{@link #DEFAULT_IO_THREADS}
+	 * 
+	 * @param ioThreads IO线程数
+	 * @return this
+	 */
+	public AsyncHttpClient setIoThreads(int ioThreads) {
+		AssertUtil.isTrue(ioThreads > 0, "ioThreads must be positive, but was " + ioThreads);
+		this.ioThreads = ioThreads;
+		return this;
+	}
+
+	/**
+	 * 设置每个路由的最大连接数，默认{@link HttpConnectionPool#DEFAULT_MAX_PER_ROUTE}
+	 * 
+	 * @param maxPerRoute 最大连接数
+	 * @return this
+	 */
+	public AsyncHttpClient setMaxPerRoute(int maxPerRoute) {
+		AssertUtil.isTrue(maxPerRoute > 0, "maxPerRoute must be positive, but was " + maxPerRoute);
+		this.maxPerRoute = maxPerRoute;
+		return this;
+	}
+
+	/**
+	 * 设置空闲连接的超时，默认{@link HttpConnectionPool#DEFAULT_IDLE_TIMEOUT_MILLIS}毫秒
+	 * 
+	 * @param idleTimeout 空闲超时
+	 * @param unit 时间单位
+	 * @return this
+	 */
+	public AsyncHttpClient setIdleTimeout(long idleTimeout, TimeUnit unit) {
+		AssertUtil.isTrue(idleTimeout > 0, "idleTimeout must be positive, but was " + idleTimeout);
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+		return this;
+	}
+
+	/**
+	 * 设置HTTPS使用的SSLContext，默认与{@link HttpConnection}一样信任所有证书
+	 * 
+	 * @param sslContext SSLContext
+	 * @return this
+	 */
+	public AsyncHttpClient setSSLContext(SSLContext sslContext) {
+		this.sslContext = sslContext;
+		return this;
+	}
+
+	/**
+	 * 设置完成回调的执行器，构造响应（包括gzip解压）也在其中进行
+	 * 
+	 * @param callbackExecutor 执行器，为<code>null</code>时使用公共执行器
+	 * @return this
+	 */
+	public AsyncHttpClient setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+		return this;
+	}
+	// ---------------------------------------------------------------- Setters end
+
+	/**
+	 * 异步执行请求，请求的调用保护器和传输层不起作用
+	 * 
+	 * @param request 请求，GET请求的表单已拼接到URL中
+	 * @return 响应，失败时为{@link HttpException}
+	 */
+	public ListenableFuture<HttpResponse> execute(HttpRequest request) {
+		final ResponseFuture future = new ResponseFuture();
+		try {
+			if (closed) {
+				throw new IOException("Client is closed");
+			}
+			final URL url = new URL(request.getUrl());
+			final String protocol = url.getProtocol().toLowerCase();
+			if (false == "http".equals(protocol) && false == "https".equals(protocol)) {
+				throw new IOException("Unsupported protocol: " + url);
+			}
+			if ("https".equals(protocol) && null != request.getSSLSocketFactory()) {
+				throw new IOException("SSLSocketFactory is not supported by AsyncHttpClient, use setSSLContext instead");
+			}
+			byte[] body = null;
+			if (request.hasBody()) {
+				final FastByteArrayOutputStream out = new FastByteArrayOutputStream((int) request.bodyLength());
+				request.writeBody(out);
+				body = out.toByteArray();
+			}
+			final NioExchange exchange = new NioExchange(future, request, request.getMethod(), url,
+					HttpRoute.of(url, null, request.getHostnameVerifier()), body, 0,
+					TimeUnit.MILLISECONDS.toNanos(Math.max(request.getTimeout(), 0)));
+			submit(exchange);
+		} catch (IOException e) {
+			future.setException(new HttpException(e.getMessage(), e));
+		}
+		return future;
+	}
+
+	/**
+	 * 关闭客户端，进行中的请求以失败结束，空闲连接被关闭
+	 */
+	public void close() {
+		closed = true;
+		final NioEventLoop[] current = loops;
+		if (null != current) {
+			for (NioEventLoop loop : current) {
+				loop.close();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AsyncHttpClient[" + name + "]";
+	}
+
+	// ---------------------------------------------------------------- Package method start
+	/**
+	 * @return 每个路由的最大连接数
+	 */
+	int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * @return 空闲超时（纳秒）
+	 */
+	long getIdleTimeoutNanos() {
+		return idleTimeoutNanos;
+	}
+
+	/**
+	 * @return HTTPS使用的SSLContext
+	 */
+	SSLContext getSSLContext() {
+		if (null == sslContext) {
+			sslContext = DefaultSSLHolder.CONTEXT;
+		}
+		return sslContext;
+	}
+
+	/**
+	 * 收到完整响应，在IO线程中调用：跟随重定向或在回调执行器中构造响应
+	 * 
+	 * @param exchange 请求
+	 * @param head 响应头
+	 * @param body 响应主体
+	 */
+	void onResponse(NioExchange exchange, final ResponseHead head, final byte[] body) {
+		final String setCookie = head.lastHeader(Header.SET_COOKIE.toString());
+		if (StringUtil.isNotBlank(setCookie)) {
+			logger.debug("Set cookie: [{}]", setCookie);
+			CookiePool.put(exchange.url.getHost(), setCookie);
+		}
+
+		final URL location;
+		try {
+			location = HttpCodec.redirectUrl(head, exchange.url);
+			if (null != location && exchange.redirects >= HttpCodec.MAX_REDIRECTS) {
+				throw new ProtocolException("Server redirected too many times (" + HttpCodec.MAX_REDIRECTS + ")");
+			}
+		} catch (IOException e) {
+			onFailure(exchange, e);
+			return;
+		}
+		if (null != location) {
+			logger.debug("Redirect {} {} to {}", head.status, exchange.url, location);
+			final Method method = HttpCodec.redirectMethod(head.status, exchange.method);
+			final NioExchange next = new NioExchange(exchange.future, exchange.request, method, location,
+					HttpRoute.of(location, null, exchange.request.getHostnameVerifier()),
+					method.equals(exchange.method) ? exchange.body : null, exchange.redirects + 1, exchange.timeoutNanos);
+			submit(next);
+			return;
+		}
+
+		final ResponseFuture future = exchange.future;
+		deliver(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.set(HttpResponse.readResponse(head.status, head.headers, new ByteArrayInputStream(body)));
+				} catch (Throwable e) {
+					future.setException(new HttpException(e.getMessage(), e));
+				}
+			}
+		});
+	}
+
+	/**
+	 * 请求失败，在IO线程中调用
+	 * 
+	 * @param exchange 请求
+	 * @param e 错误
+	 */
+	void onFailure(NioExchange exchange, final IOException e) {
+		final ResponseFuture future = exchange.future;
+		deliver(new Runnable() {
+			@Override
+			public void run() {
+				future.setException(new HttpException(e.getMessage(), e));
+			}
+		});
+	}
+	// ---------------------------------------------------------------- Package method end
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 提交到路由所属的IO线程
+	 * @param exchange 请求
+	 */
+	private void submit(NioExchange exchange) {
+		final NioEventLoop loop;
+		try {
+			loop = loop(exchange.route);
+		} catch (IOException e) {
+			exchange.future.setException(new HttpException(e.getMessage(), e));
+			return;
+		}
+		exchange.future.current(loop, exchange);
+		loop.submit(exchange);
+	}
+
+	/**
+	 * 路由所属的IO线程，第一次调用时启动所有IO线程
+	 * @param route 路由
+	 * @return IO线程
+	 * @throws IOException 打开Selector失败
+	 */
+	private NioEventLoop loop(HttpRoute route) throws IOException {
+		NioEventLoop[] current = loops;
+		if (null == current) {
+			synchronized (this) {
+				current = loops;
+				if (null == current) {
+					current = new NioEventLoop[ioThreads];
+					for (int i = 0; i < ioThreads; i++) {
+						current[i] = new NioEventLoop(this, name + "-" + i);
+					}
+					loops = current;
+				}
+			}
+		}
+		return current[(route.hashCode() & Integer.MAX_VALUE) % current.length];
+	}
+
+	/**
+	 * 在回调执行器中执行，提交失败（执行器拒绝或已关闭，公共执行器的拒绝被包装为UtilException）时在当前线程执行
+	 * @param task 任务
+	 */
+	private void deliver(Runnable task) {
+		try {
+			if (null == callbackExecutor) {
+				ThreadUtil.execute(task);
+			} else {
+				callbackExecutor.execute(task);
+			}
+		} catch (RuntimeException e) {
+			logger.debug("Callback executor rejected the task, run it on the IO thread", e);
+			task.run();
+		}
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 异步响应，取消时关闭进行中的连接
+	 */
+	static final class ResponseFuture extends AbstractFuture<HttpResponse> {
+		private volatile NioEventLoop loop;
+		private volatile NioExchange exchange;
+
+		/**
+		 * 记录当前的请求（重定向后变化），用于取消
+		 * @param loop 请求所属的IO线程
+		 * @param exchange 请求
+		 */
+		void current(NioEventLoop loop, NioExchange exchange) {
+			this.loop = loop;
+			this.exchange = exchange;
+		}
+
+		@Override
+		protected boolean set(HttpResponse value) {
+			return super.set(value);
+		}
+
+		@Override
+		protected boolean setException(Throwable throwable) {
+			return super.setException(throwable);
+		}
+
+		@Override
+		protected void afterDone() {
+			final NioExchange current = this.exchange;
+			if (isCancelled() && null != current) {
+				loop.cancel(current);
+			}
+		}
+	}
+
+	/**
+	 * 共享的客户端
+	 */
+	private static class DefaultHolder {
+		static final AsyncHttpClient CLIENT = new AsyncHttpClient("biz-http");
+	}
+}
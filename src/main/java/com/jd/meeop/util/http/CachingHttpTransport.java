@@ -0,0 +1,241 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带缓存的传输层
+ * @ClassName: CachingHttpTransport
+ * @Description:
+ * 包装另一个传输层，按RFC 7234（私有缓存）缓存GET请求的响应：
+ * 新鲜的缓存直接返回，不发请求；过期但有ETag或Last-Modified的缓存带上If-None-Match/If-Modified-Since验证，
+ * 收到304时用其响应头更新缓存并返回缓存的主体；其它响应按其Cache-Control、Expires等决定是否缓存，
+ * 带Authorization的请求只缓存声明了public、s-maxage或must-revalidate的响应（RFC 7234 3.2节）。<br>
+ * 以下请求不使用缓存：非GET请求（成功后移除该URL的缓存）、流式请求、{@link HttpRequest#disableCache()}、
+ * 请求Cache-Control为no-store、已自带条件头或Range的请求。请求Cache-Control为no-cache时每次都验证。<br>
+ * 返回的缓存响应带有Age头，主体为已解码的内容，响应头与原响应一致，但gzip响应去掉了Content-Encoding，Content-Length为解码后的长度
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 21:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class CachingHttpTransport implements HttpTransport {
+	private final static Logger logger = LoggerFactory.getLogger(CachingHttpTransport.class);
+
+	private final HttpCache cache;
+	private final HttpTransport delegate;
+
+	/**
+	 * 构造，使用{@link UrlConnectionTransport}发送请求
+	 * 
+	 * @param cache 缓存
+	 */
+	public CachingHttpTransport(HttpCache cache) {
+		this(cache, UrlConnectionTransport.INSTANCE);
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param cache 缓存
+	 * @param delegate 发送请求的传输层
+	 */
+	public CachingHttpTransport(HttpCache cache, HttpTransport delegate) {
+		this.cache = cache;
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @return 缓存
+	 */
+	public HttpCache getCache() {
+		return cache;
+	}
+
+	@Override
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		final String url = request.getUrl();
+		if (false == Method.GET.equals(request.getMethod())) {
+			final HttpResponse response = delegate.execute(request);
+			if (false == Method.HEAD.equals(request.getMethod()) && false == Method.OPTIONS.equals(request.getMethod())
+					&& false == Method.TRACE.equals(request.getMethod()) && response.getStatus() < HttpStatus.HTTP_BAD_REQUEST) {
+				cache.invalidate(url);
+			}
+			return response;
+		}
+		final Map<String, String> requestCacheControl = HttpCacheEntry.cacheControl(request.headers());
+		if (isBypassed(request, requestCacheControl)) {
+			return delegate.execute(request);
+		}
+
+		final HttpCacheEntry cached = cache.get(url);
+		if (null == cached || false == cached.matchesVary(request)) {
+			return fetch(request, url);
+		}
+		final boolean noCache = requestCacheControl.containsKey("no-cache")
+				|| "no-cache".equalsIgnoreCase(StringUtil.trim(request.header(Header.PRAGMA)));
+		final long maxAge = HttpCacheEntry.seconds(requestCacheControl.get("max-age"));
+		final long now = System.currentTimeMillis();
+		if (false == noCache && cached.isFresh(now, maxAge < 0 ? -1 : TimeUnit.SECONDS.toMillis(maxAge))) {
+			cache.recordHit();
+			return cached.toResponse(now);
+		}
+		if (false == cached.hasValidator()) {
+			return fetch(request, url);
+		}
+		return revalidate(request, url, cached);
+	}
+
+	@Override
+	public String toString() {
+		return "CachingHttpTransport[" + cache + ", " + delegate + "]";
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 发送请求并按响应决定是否缓存
+	 * @param request 请求
+	 * @param url 缓存的键
+	 * @return 响应
+	 * @throws IOException 请求失败
+	 */
+	private HttpResponse fetch(HttpRequest request, String url) throws IOException {
+		final long requestTime = System.currentTimeMillis();
+		final HttpResponse response = delegate.execute(request);
+		cache.recordMiss();
+		store(request, url, response, requestTime);
+		return response;
+	}
+
+	/**
+	 * 条件请求验证缓存
+	 * @param request 请求
+	 * @param url 缓存的键
+	 * @param cached 过期的缓存
+	 * @return 响应
+	 * @throws IOException 请求失败
+	 */
+	private HttpResponse revalidate(HttpRequest request, String url, HttpCacheEntry cached) throws IOException {
+		final String etag = cached.header(Header.ETAG.toString());
+		final String lastModified = cached.header(Header.LAST_MODIFIED.toString());
+		if (null != etag) {
+			request.header(Header.IF_NONE_MATCH, etag);
+		}
+		if (null != lastModified) {
+			request.header(Header.IF_MODIFIED_SINCE, lastModified);
+		}
+		final long requestTime = System.currentTimeMillis();
+		final HttpResponse response;
+		try {
+			response = delegate.execute(request);
+		} finally {
+			request.removeHeader(Header.IF_NONE_MATCH);
+			request.removeHeader(Header.IF_MODIFIED_SINCE);
+		}
+		final long responseTime = System.currentTimeMillis();
+
+		if (response.getStatus() == HttpStatus.HTTP_NOT_MODIFIED) {
+			logger.debug("Revalidated cache of {}", url);
+			final HttpCacheEntry updated = cached.revalidated(response, requestTime, responseTime);
+			cache.put(updated);
+			cache.recordRevalidated();
+			return updated.toResponse(responseTime);
+		}
+		cache.recordMiss();
+		store(request, url, response, requestTime);
+		return response;
+	}
+
+	/**
+	 * 可缓存的响应存入缓存，明确禁止缓存的移除旧缓存
+	 * @param request 请求
+	 * @param url 缓存的键
+	 * @param response 响应
+	 * @param requestTime 发出请求的时间
+	 */
+	private void store(HttpRequest request, String url, HttpResponse response, long requestTime) {
+		if (false == isCacheableStatus(response.getStatus())) {
+			return;
+		}
+		final Map<String, String> cacheControl = HttpCacheEntry.cacheControl(response.headers());
+		if (cacheControl.containsKey("no-store") || isVaryAll(response)) {
+			cache.invalidate(url);
+			return;
+		}
+		if (null != request.header(Header.AUTHORIZATION) && false == isSharable(cacheControl)) {
+			return;
+		}
+		final HttpCacheEntry entry = HttpCacheEntry.of(url, request, response, requestTime, System.currentTimeMillis());
+		if (entry.freshnessLifetime() > 0 || entry.hasValidator()) {
+			cache.put(entry);
+		}
+	}
+
+	/**
+	 * @param request 请求
+	 * @param cacheControl 请求的Cache-Control
+	 * @return 是否不使用缓存
+	 */
+	private static boolean isBypassed(HttpRequest request, Map<String, String> cacheControl) {
+		return request.isStream() || request.isDisableCache() || cacheControl.containsKey("no-store")
+				|| null != request.header(Header.IF_NONE_MATCH) || null != request.header(Header.IF_MODIFIED_SINCE)
+				|| null != request.header(Header.RANGE) || null != request.header(Header.IF_RANGE);
+	}
+
+	/**
+	 * @param cacheControl 响应的Cache-Control
+	 * @return 带Authorization的请求的响应是否允许缓存
+	 */
+	private static boolean isSharable(Map<String, String> cacheControl) {
+		return cacheControl.containsKey("public") || cacheControl.containsKey("s-maxage") || cacheControl.containsKey("must-revalidate");
+	}
+
+	/**
+	 * @param response 响应
+	 * @return Vary是否为*，此时无法判断请求是否相同
+	 */
+	private static boolean isVaryAll(HttpResponse response) {
+		final String vary = response.header(Header.VARY);
+		return null != vary && vary.contains("*");
+	}
+
+	/**
+	 * @param status 状态码
+	 * @return 是否为默认可缓存的状态码
+	 */
+	private static boolean isCacheableStatus(int status) {
+		switch (status) {
+		case HttpStatus.HTTP_OK:
+		case HttpStatus.HTTP_NOT_AUTHORITATIVE:
+		case HttpStatus.HTTP_MULT_CHOICE:
+		case HttpStatus.HTTP_MOVED_PERM:
+		case HttpStatus.HTTP_NOT_FOUND:
+		case HttpStatus.HTTP_GONE:
+			return true;
+		default:
+			return false;
+		}
+	}
+	// ---------------------------------------------------------------- Private method end
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.http.ssl.SSLSocketFactoryBuilder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 默认SSL设置
+ * @ClassName: DefaultSSLHolder
+ * @Description:
+ * 未指定SSLSocketFactory或SSLContext时，连接池和异步客户端共用的默认实现，与{@link HttpConnection}一致。
+ * 首次使用时创建
+ * @author: 冷水(Toby)
+ * @date: 26-10-22 19:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class DefaultSSLHolder {
+	static final SSLContext CONTEXT;
+	static final SSLSocketFactory FACTORY;
+	static {
+		try {
+			CONTEXT = SSLSocketFactoryBuilder.create().buildContext();
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError(e);
+		}
+		FACTORY = CONTEXT.getSocketFactory();
+	}
+
+	private DefaultSSLHolder() {
+	}
+}
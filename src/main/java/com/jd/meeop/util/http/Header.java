@@ -66,8 +66,18 @@ public enum Header {
 	ACCEPT_CHARSET("Accept-Charset"),
 	/**HTTP请求发送时，会把保存在该请求域名下的所有cookie值一起发送给web服务器*/
 	COOKIE("Cookie"),
+	/**HTTP授权的授权证书，如Basic或Bearer凭证*/
+	AUTHORIZATION("Authorization"),
 	/**请求的内容长度*/
 	CONTENT_LENGTH("Content-Length"),
+	/**只请求实体的一部分，指定范围，如bytes=0-499*/
+	RANGE("Range"),
+	/**实体未改变时才按Range返回部分内容，否则返回全部实体，值为ETag或Last-Modified*/
+	IF_RANGE("If-Range"),
+	/**ETag与缓存的不同时才返回实体，否则返回304*/
+	IF_NONE_MATCH("If-None-Match"),
+	/**在指定时间之后修改过才返回实体，否则返回304*/
+	IF_MODIFIED_SINCE("If-Modified-Since"),
 	
 	//------------------------------------------------------------- 响应头域
 	/**Cookie*/
@@ -75,7 +85,19 @@ public enum Header {
 	/**Content-Encoding*/
 	CONTENT_ENCODING("Content-Encoding"),
 	/**ETag*/
-	ETAG("ETag");
+	ETAG("ETag"),
+	/**服务器是否支持按范围请求，如bytes或none*/
+	ACCEPT_RANGES("Accept-Ranges"),
+	/**部分内容在实体中的位置，如bytes 0-499/1234*/
+	CONTENT_RANGE("Content-Range"),
+	/**资源的最后修改时间*/
+	LAST_MODIFIED("Last-Modified"),
+	/**响应过期的时间*/
+	EXPIRES("Expires"),
+	/**响应在缓存中已存在的秒数*/
+	AGE("Age"),
+	/**缓存响应时需要匹配的请求头*/
+	VARY("Vary");
 	
 	private String value;
 	Header(String value) {
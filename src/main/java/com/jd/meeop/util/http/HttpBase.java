@@ -51,7 +51,7 @@ public abstract class HttpBase<T> {
 	
 	// ---------------------------------------------------------------- Headers start
 	/**
-	 * 根据name获取头信息
+	 * 根据name获取头信息，Header名不区分大小写
 	 * @param name Header名
 	 * @return Header值
 	 */
@@ -61,6 +61,15 @@ public abstract class HttpBase<T> {
 		}
 		
 		List<String> values = headers.get(name.trim());
+		if(null == values) {
+			// HttpURLConnection按服务器发送的原样保存Header名
+			for (Entry<String, List<String>> entry : headers.entrySet()) {
+				if (name.trim().equalsIgnoreCase(entry.getKey())) {
+					values = entry.getValue();
+					break;
+				}
+			}
+		}
 		if(CollectionUtil.isEmpty(values)) {
 			return null;
 		}
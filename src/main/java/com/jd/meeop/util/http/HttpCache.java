@@ -0,0 +1,420 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.DigestUtil;
+import com.jd.meeop.util.IoUtil;
+import com.jd.meeop.util.cache.Cache;
+import com.jd.meeop.util.cache.CacheBuilder;
+import com.jd.meeop.util.cache.Weigher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Http响应缓存
+ * @ClassName: HttpCache
+ * @Description:
+ * 按URL保存GET请求的响应，由{@link CachingHttpTransport}按Cache-Control、Expires、ETag和Last-Modified使用。
+ * 内存层按占用字节数限制大小，淘汰策略同{@link CacheBuilder}；设置了目录时启用磁盘层，写入时同时写磁盘，
+ * 内存中没有时从磁盘读取，磁盘超过上限时删除最久未用的文件。磁盘层可在进程重启后继续使用。<br>
+ * 通过{@link #create()}创建后链式设置，设置应在使用前完成：
+ * <pre>
+ * HttpCache cache = HttpCache.create().setMaximumMemorySize(64 * 1024 * 1024).setDirectory(new File("/data/http-cache"));
+ * HttpRequest.setDefaultTransport(new CachingHttpTransport(cache, new PooledHttpTransport()));
+ * </pre>
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 20:40
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class HttpCache {
+	private final static Logger logger = LoggerFactory.getLogger(HttpCache.class);
+
+	/** 默认内存层上限（字节） */
+	public static final long DEFAULT_MAXIMUM_MEMORY_SIZE = 16 * 1024 * 1024;
+	/** 默认单个响应上限（字节），超过的不缓存 */
+	public static final long DEFAULT_MAXIMUM_ENTRY_SIZE = 1024 * 1024;
+	/** 默认磁盘层上限（字节） */
+	public static final long DEFAULT_MAXIMUM_DISK_SIZE = 256 * 1024 * 1024;
+
+	private static final String FILE_SUFFIX = ".cache";
+
+	private long maximumMemorySize = DEFAULT_MAXIMUM_MEMORY_SIZE;
+	private long maximumEntrySize = DEFAULT_MAXIMUM_ENTRY_SIZE;
+	private long maximumDiskSize = DEFAULT_MAXIMUM_DISK_SIZE;
+	private File directory;
+
+	/** 第一次使用时创建 */
+	private volatile Cache<String, HttpCacheEntry> memory;
+	private volatile DiskStore disk;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong revalidatedCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * 创建缓存，使用默认设置，只有内存层
+	 * 
+	 * @return HttpCache
+	 */
+	public static HttpCache create() {
+		return new HttpCache();
+	}
+
+	// ---------------------------------------------------------------- Setters start
+	/**
+	 * 设置内存层上限，默认{@link #DEFAULT_MAXIMUM_MEMORY_SIZE}
+	 * 
+	 * @param maximumMemorySize 字节数
+	 * @return this
+	 */
+	public HttpCache setMaximumMemorySize(long maximumMemorySize) {
+		AssertUtil.isTrue(maximumMemorySize > 0, "maximumMemorySize must be positive, but was " + maximumMemorySize);
+		this.maximumMemorySize = maximumMemorySize;
+		return this;
+	}
+
+	/**
+	 * 设置单个响应主体的上限，默认{@link #DEFAULT_MAXIMUM_ENTRY_SIZE}
+	 * 
+	 * @param maximumEntrySize 字节数
+	 * @return this
+	 */
+	public HttpCache setMaximumEntrySize(long maximumEntrySize) {
+		AssertUtil.isTrue(maximumEntrySize > 0, "maximumEntrySize must be positive, but was " + maximumEntrySize);
+		this.maximumEntrySize = maximumEntrySize;
+		return this;
+	}
+
+	/**
+	 * 设置磁盘层目录，设置后启用磁盘层
+	 * 
+	 * @param directory 目录，不存在时创建
+	 * @return this
+	 */
+	public HttpCache setDirectory(File directory) {
+		this.directory = directory;
+		return this;
+	}
+
+	/**
+	 * 设置磁盘层上限，默认{@link #DEFAULT_MAXIMUM_DISK_SIZE}
+	 * 
+	 * @param maximumDiskSize 字节数
+	 * @return this
+	 */
+	public HttpCache setMaximumDiskSize(long maximumDiskSize) {
+		AssertUtil.isTrue(maximumDiskSize > 0, "maximumDiskSize must be positive, but was " + maximumDiskSize);
+		this.maximumDiskSize = maximumDiskSize;
+		return this;
+	}
+	// ---------------------------------------------------------------- Setters end
+
+	/**
+	 * 移除URL的缓存
+	 * 
+	 * @param url URL
+	 */
+	public void invalidate(String url) {
+		memory().invalidate(url);
+		final DiskStore disk = disk();
+		if (null != disk) {
+			disk.remove(url);
+		}
+	}
+
+	/**
+	 * 清空缓存，包括磁盘层
+	 */
+	public void invalidateAll() {
+		memory().invalidateAll();
+		final DiskStore disk = disk();
+		if (null != disk) {
+			disk.clear();
+		}
+	}
+
+	/**
+	 * @return 未发出请求、直接使用缓存的次数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return 条件请求得到304、使用缓存主体的次数
+	 */
+	public long getRevalidatedCount() {
+		return revalidatedCount.get();
+	}
+
+	/**
+	 * @return 缓存不存在或已改变、下载了主体的次数
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return "HttpCache[hit=" + hitCount + ", revalidated=" + revalidatedCount + ", miss=" + missCount + ", memory=" + memory().weightedSize() + "]";
+	}
+
+	// ---------------------------------------------------------------- Package method start
+	/**
+	 * 获取缓存，内存中没有时读磁盘
+	 * 
+	 * @param url URL
+	 * @return 缓存的响应，不存在返回<code>null</code>
+	 */
+	HttpCacheEntry get(String url) {
+		final Cache<String, HttpCacheEntry> memory = memory();
+		HttpCacheEntry entry = memory.getIfPresent(url);
+		if (null == entry) {
+			final DiskStore disk = disk();
+			if (null != disk) {
+				entry = disk.get(url);
+				if (null != entry) {
+					memory.put(url, entry);
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * 保存缓存，主体超过上限时移除旧的
+	 * 
+	 * @param entry 缓存的响应
+	 */
+	void put(HttpCacheEntry entry) {
+		if (entry.body.length > maximumEntrySize) {
+			invalidate(entry.url);
+			return;
+		}
+		memory().put(entry.url, entry);
+		final DiskStore disk = disk();
+		if (null != disk) {
+			disk.put(entry);
+		}
+	}
+
+	void recordHit() {
+		hitCount.incrementAndGet();
+	}
+
+	void recordRevalidated() {
+		revalidatedCount.incrementAndGet();
+	}
+
+	void recordMiss() {
+		missCount.incrementAndGet();
+	}
+	// ---------------------------------------------------------------- Package method end
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * @return 内存层，第一次调用时创建
+	 */
+	private Cache<String, HttpCacheEntry> memory() {
+		Cache<String, HttpCacheEntry> current = memory;
+		if (null == current) {
+			synchronized (this) {
+				current = memory;
+				if (null == current) {
+					current = CacheBuilder.<String, HttpCacheEntry>create()
+							.setMaximumWeight(maximumMemorySize)
+							.setWeigher(new Weigher<String, HttpCacheEntry>() {
+								@Override
+								public int weigh(String key, HttpCacheEntry value) {
+									return value.weight();
+								}
+							})
+							.build();
+					memory = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @return 磁盘层，未设置目录返回<code>null</code>
+	 */
+	private DiskStore disk() {
+		if (null == directory) {
+			return null;
+		}
+		DiskStore current = disk;
+		if (null == current) {
+			synchronized (this) {
+				current = disk;
+				if (null == current) {
+					current = new DiskStore(directory, maximumDiskSize);
+					disk = current;
+				}
+			}
+		}
+		return current;
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 磁盘层：每个URL一个文件，文件名为URL的SHA-1，先写临时文件再改名，读取时更新修改时间用于淘汰
+	 */
+	private static final class DiskStore {
+		private static final FileFilter CACHE_FILES = new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(FILE_SUFFIX);
+			}
+		};
+
+		private final File directory;
+		private final long maximumSize;
+		private final AtomicLong size = new AtomicLong();
+
+		DiskStore(File directory, long maximumSize) {
+			if (false == directory.isDirectory() && false == directory.mkdirs()) {
+				logger.warn("Can not create http cache directory {}", directory);
+			}
+			this.directory = directory;
+			this.maximumSize = maximumSize;
+			long total = 0;
+			final File[] files = directory.listFiles(CACHE_FILES);
+			if (null != files) {
+				for (File file : files) {
+					total += file.length();
+				}
+			}
+			size.set(total);
+		}
+
+		HttpCacheEntry get(String url) {
+			final File file = file(url);
+			if (false == file.isFile()) {
+				return null;
+			}
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				final HttpCacheEntry entry = HttpCacheEntry.readFrom(in);
+				if (false == url.equals(entry.url)) {
+					return null;
+				}
+				file.setLastModified(System.currentTimeMillis());
+				return entry;
+			} catch (IOException e) {
+				logger.debug("Broken http cache file {}: {}", file, e.toString());
+				IoUtil.close(in);
+				in = null;
+				delete(file);
+				return null;
+			} finally {
+				IoUtil.close(in);
+			}
+		}
+
+		void put(HttpCacheEntry entry) {
+			final File file = file(entry.url);
+			final File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+				entry.writeTo(out);
+				out.close();
+				out = null;
+				final long oldLength = file.length();
+				final long newLength = temp.length();
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				if (size.addAndGet(newLength - oldLength) > maximumSize) {
+					trim();
+				}
+			} catch (IOException e) {
+				logger.warn("Write http cache file {} failed: {}", file, e.toString());
+				IoUtil.close(out);
+				temp.delete();
+			}
+		}
+
+		void remove(String url) {
+			delete(file(url));
+		}
+
+		void clear() {
+			final File[] files = directory.listFiles(CACHE_FILES);
+			if (null != files) {
+				for (File file : files) {
+					delete(file);
+				}
+			}
+		}
+
+		/**
+		 * 按修改时间从旧到新删除，直到不超过上限的90%
+		 */
+		private synchronized void trim() {
+			final File[] files = directory.listFiles(CACHE_FILES);
+			if (null == files) {
+				return;
+			}
+			final long[] lastModified = new long[files.length];
+			final Integer[] order = new Integer[files.length];
+			for (int i = 0; i < files.length; i++) {
+				lastModified[i] = files[i].lastModified();
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return lastModified[a] < lastModified[b] ? -1 : (lastModified[a] == lastModified[b] ? 0 : 1);
+				}
+			});
+			final long target = maximumSize / 10 * 9;
+			for (int i = 0; i < order.length && size.get() > target; i++) {
+				delete(files[order[i]]);
+			}
+		}
+
+		private void delete(File file) {
+			final long length = file.length();
+			if (file.delete()) {
+				size.addAndGet(-length);
+			}
+		}
+
+		private File file(String url) {
+			return new File(directory, DigestUtil.sha1Hex(url) + FILE_SUFFIX);
+		}
+	}
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.ConvertUtil;
+import com.jd.meeop.util.StringUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存的响应
+ * @ClassName: HttpCacheEntry
+ * @Description:
+ * 不可变，保存解码后的主体、响应头和请求/响应时间，按RFC 7234计算新鲜度和年龄（私有缓存，忽略s-maxage）。
+ * 时间使用{@link System#currentTimeMillis()}，以便写入磁盘后继续使用
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 20:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class HttpCacheEntry {
+	private static final int MAGIC = 0x4D484345;
+	/** 2：gzip响应以解码后的主体保存，去掉Content-Encoding并改写Content-Length */
+	private static final int VERSION = 2;
+
+	/** 无显式过期时间时，按最后修改时间推算新鲜期的上限 */
+	private static final long MAX_HEURISTIC_LIFETIME_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	/** 304响应中不能用于更新缓存的头 */
+	private static final String[] NOT_UPDATED_HEADERS = { "Content-Length", "Content-Encoding", "Transfer-Encoding", "Content-Range" };
+
+	/** RFC 1123格式的日期，SimpleDateFormat不是线程安全的 */
+	private static final ThreadLocal<SimpleDateFormat> HTTP_DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format;
+		}
+	};
+
+	final String url;
+	final int status;
+	/** 响应头，不区分大小写，不可修改 */
+	final Map<String, List<String>> headers;
+	/** 解码后的主体 */
+	final byte[] body;
+	/** 发出请求的时间 */
+	final long requestTime;
+	/** 收到响应的时间 */
+	final long responseTime;
+	/** Vary中列出的请求头的值 */
+	final Map<String, String> varyHeaders;
+
+	HttpCacheEntry(String url, int status, Map<String, List<String>> headers, byte[] body, long requestTime, long responseTime,
+			Map<String, String> varyHeaders) {
+		this.url = url;
+		this.status = status;
+		this.headers = headers;
+		this.body = body;
+		this.requestTime = requestTime;
+		this.responseTime = responseTime;
+		this.varyHeaders = varyHeaders;
+	}
+
+	/**
+	 * 由响应创建
+	 * 
+	 * @param url URL
+	 * @param request 请求
+	 * @param response 已读取主体的响应
+	 * @param requestTime 发出请求的时间
+	 * @param responseTime 收到响应的时间
+	 * @return HttpCacheEntry
+	 */
+	static HttpCacheEntry of(String url, HttpRequest request, HttpResponse response, long requestTime, long responseTime) {
+		final byte[] body = response.bodyBytes();
+		final Map<String, List<String>> headers = copyHeaders(response.headers());
+		if (response.isGzip()) {
+			// 主体已解码，响应头须与之一致
+			headers.remove(Header.CONTENT_ENCODING.toString());
+		}
+		headers.remove(Header.TRANSFER_ENCODING.toString());
+		headers.put(Header.CONTENT_LENGTH.toString(), Collections.singletonList(String.valueOf(null == body ? 0 : body.length)));
+		final Map<String, String> varyHeaders = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		for (String name : varyNames(headers)) {
+			varyHeaders.put(name, StringUtil.nullToEmpty(request.header(name)));
+		}
+		return new HttpCacheEntry(url, response.getStatus(), Collections.unmodifiableMap(headers), null == body ? new byte[0] : body,
+				requestTime, responseTime, Collections.unmodifiableMap(varyHeaders));
+	}
+
+	// ---------------------------------------------------------------- Freshness start
+	/**
+	 * 计算新鲜期
+	 * 
+	 * @return 新鲜期（毫秒），0表示每次都需要验证
+	 */
+	long freshnessLifetime() {
+		final Map<String, String> cacheControl = cacheControl(headers);
+		if (cacheControl.containsKey("no-cache")) {
+			return 0;
+		}
+		final long maxAge = seconds(cacheControl.get("max-age"));
+		if (maxAge >= 0) {
+			return TimeUnit.SECONDS.toMillis(maxAge);
+		}
+		final long date = dateOrResponseTime();
+		final String expires = header(Header.EXPIRES.toString());
+		if (null != expires) {
+			// 非法的日期（如0）表示已过期
+			final long expiresTime = parseDate(expires);
+			return expiresTime > date ? expiresTime - date : 0;
+		}
+		final long lastModified = parseDate(header(Header.LAST_MODIFIED.toString()));
+		if (lastModified > 0 && lastModified < date) {
+			return Math.min((date - lastModified) / 10, MAX_HEURISTIC_LIFETIME_MILLIS);
+		}
+		return 0;
+	}
+
+	/**
+	 * 计算当前年龄
+	 * 
+	 * @param now 当前时间
+	 * @return 年龄（毫秒）
+	 */
+	long currentAge(long now) {
+		final long apparentAge = Math.max(0, responseTime - dateOrResponseTime());
+		final long ageValue = TimeUnit.SECONDS.toMillis(Math.max(0, seconds(header(Header.AGE.toString()))));
+		final long correctedInitialAge = Math.max(apparentAge, ageValue + (responseTime - requestTime));
+		return correctedInitialAge + Math.max(0, now - responseTime);
+	}
+
+	/**
+	 * @param now 当前时间
+	 * @param maxAge 请求能接受的最大年龄（毫秒），小于0表示不限制
+	 * @return 是否可以不经验证直接使用
+	 */
+	boolean isFresh(long now, long maxAge) {
+		final long age = currentAge(now);
+		if (maxAge >= 0 && age > maxAge) {
+			return false;
+		}
+		return freshnessLifetime() > age;
+	}
+
+	/**
+	 * @return 是否有ETag或Last-Modified，可以条件请求验证
+	 */
+	boolean hasValidator() {
+		return null != header(Header.ETAG.toString()) || null != header(Header.LAST_MODIFIED.toString());
+	}
+
+	/**
+	 * @param request 请求
+	 * @return 请求中Vary列出的头是否与缓存时一致
+	 */
+	boolean matchesVary(HttpRequest request) {
+		for (Entry<String, String> entry : varyHeaders.entrySet()) {
+			if (false == entry.getValue().equals(StringUtil.nullToEmpty(request.header(entry.getKey())))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	// ---------------------------------------------------------------- Freshness end
+
+	/**
+	 * 收到304后，用其响应头更新缓存
+	 * 
+	 * @param notModified 304响应
+	 * @param requestTime 发出请求的时间
+	 * @param responseTime 收到响应的时间
+	 * @return 新的HttpCacheEntry
+	 */
+	HttpCacheEntry revalidated(HttpResponse notModified, long requestTime, long responseTime) {
+		final Map<String, List<String>> merged = copyHeaders(this.headers);
+		final Map<String, List<String>> updates = copyHeaders(notModified.headers());
+		for (String name : NOT_UPDATED_HEADERS) {
+			updates.remove(name);
+		}
+		merged.putAll(updates);
+		return new HttpCacheEntry(url, status, Collections.unmodifiableMap(merged), body, requestTime, responseTime, varyHeaders);
+	}
+
+	/**
+	 * 创建响应，加上Age头
+	 * 
+	 * @param now 当前时间
+	 * @return HttpResponse
+	 */
+	HttpResponse toResponse(long now) {
+		final Map<String, List<String>> responseHeaders = copyHeaders(this.headers);
+		responseHeaders.put(Header.AGE.toString(), Collections.singletonList(String.valueOf(TimeUnit.MILLISECONDS.toSeconds(currentAge(now)))));
+		return HttpResponse.cachedResponse(status, responseHeaders, body);
+	}
+
+	/**
+	 * @return 内存中占用的大致字节数
+	 */
+	int weight() {
+		long weight = body.length + 128L + url.length() * 2L;
+		for (Entry<String, List<String>> entry : headers.entrySet()) {
+			weight += entry.getKey().length() * 2L + 64;
+			for (String value : entry.getValue()) {
+				weight += value.length() * 2L + 32;
+			}
+		}
+		return (int) Math.min(weight, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param name 头名
+	 * @return 第一个值
+	 */
+	String header(String name) {
+		final List<String> values = headers.get(name);
+		return null == values || values.isEmpty() ? null : values.get(0);
+	}
+
+	// ---------------------------------------------------------------- Serialization start
+	/**
+	 * 写出到磁盘
+	 * @param out 输出
+	 * @throws IOException 写出失败
+	 */
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(url);
+		out.writeInt(status);
+		out.writeLong(requestTime);
+		out.writeLong(responseTime);
+		out.writeInt(headers.size());
+		for (Entry<String, List<String>> entry : headers.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (String value : entry.getValue()) {
+				out.writeUTF(value);
+			}
+		}
+		out.writeInt(varyHeaders.size());
+		for (Entry<String, String> entry : varyHeaders.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeUTF(entry.getValue());
+		}
+		out.writeInt(body.length);
+		out.write(body);
+	}
+
+	/**
+	 * 从磁盘读取
+	 * @param in 输入
+	 * @return HttpCacheEntry
+	 * @throws IOException 读取失败或格式不对
+	 */
+	static HttpCacheEntry readFrom(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("Not a cache entry");
+		}
+		final String url = in.readUTF();
+		final int status = in.readInt();
+		final long requestTime = in.readLong();
+		final long responseTime = in.readLong();
+		final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = in.readInt(); i > 0; i--) {
+			final String name = in.readUTF();
+			final int count = in.readInt();
+			final List<String> values = new ArrayList<String>(count);
+			for (int j = 0; j < count; j++) {
+				values.add(in.readUTF());
+			}
+			headers.put(name, Collections.unmodifiableList(values));
+		}
+		final Map<String, String> varyHeaders = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = in.readInt(); i > 0; i--) {
+			varyHeaders.put(in.readUTF(), in.readUTF());
+		}
+		final int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Illegal body length: " + length);
+		}
+		final byte[] body = new byte[length];
+		in.readFully(body);
+		return new HttpCacheEntry(url, status, Collections.unmodifiableMap(headers), body, requestTime, responseTime,
+				Collections.unmodifiableMap(varyHeaders));
+	}
+	// ---------------------------------------------------------------- Serialization end
+
+	// ---------------------------------------------------------------- Static method start
+	/**
+	 * 解析Cache-Control，多个头合并
+	 * 
+	 * @param headers 请求头或响应头
+	 * @return 指令名（小写）到值的映射，无值的指令值为空串
+	 */
+	static Map<String, String> cacheControl(Map<String, List<String>> headers) {
+		final Map<String, String> directives = new HashMap<String, String>();
+		for (Entry<String, List<String>> entry : headers.entrySet()) {
+			if (null == entry.getKey() || false == Header.CACHE_CONTROL.toString().equalsIgnoreCase(entry.getKey())) {
+				continue;
+			}
+			for (String value : entry.getValue()) {
+				for (String directive : StringUtil.split(value, ',')) {
+					directive = directive.trim();
+					if (directive.isEmpty()) {
+						continue;
+					}
+					final int eq = directive.indexOf('=');
+					if (eq < 0) {
+						directives.put(directive.toLowerCase(), "");
+					} else {
+						directives.put(directive.substring(0, eq).trim().toLowerCase(), unquote(directive.substring(eq + 1).trim()));
+					}
+				}
+			}
+		}
+		return directives;
+	}
+
+	/**
+	 * @param value 秒数
+	 * @return 秒数，为空或非法返回-1
+	 */
+	static long seconds(String value) {
+		if (StringUtil.isBlank(value)) {
+			return -1;
+		}
+		return ConvertUtil.toLong(value.trim(), -1L);
+	}
+
+	/**
+	 * @param headers 响应头
+	 * @return Vary中的头名，不含*
+	 */
+	static List<String> varyNames(Map<String, List<String>> headers) {
+		final List<String> names = new ArrayList<String>();
+		for (Entry<String, List<String>> entry : headers.entrySet()) {
+			if (null == entry.getKey() || false == Header.VARY.toString().equalsIgnoreCase(entry.getKey())) {
+				continue;
+			}
+			for (String value : entry.getValue()) {
+				for (String name : StringUtil.split(value, ',')) {
+					name = name.trim();
+					if (false == name.isEmpty() && false == "*".equals(name)) {
+						names.add(name);
+					}
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * 解析HTTP日期
+	 * 
+	 * @param value RFC 1123格式的日期
+	 * @return 毫秒数，为空或非法返回-1
+	 */
+	static long parseDate(String value) {
+		if (StringUtil.isBlank(value)) {
+			return -1;
+		}
+		try {
+			return HTTP_DATE_FORMAT.get().parse(value.trim()).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @param value 指令值
+	 * @return 去掉两侧引号的值
+	 */
+	private static String unquote(String value) {
+		if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+			return value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+
+	/**
+	 * 复制为不区分大小写的响应头，去掉HttpURLConnection中状态行对应的<code>null</code>键
+	 * @param headers 响应头
+	 * @return 新的Map
+	 */
+	private static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+		final Map<String, List<String>> copy = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		for (Entry<String, List<String>> entry : headers.entrySet()) {
+			if (null != entry.getKey() && null != entry.getValue()) {
+				copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+			}
+		}
+		return copy;
+	}
+	// ---------------------------------------------------------------- Static method end
+
+	/**
+	 * @return Date头的时间，没有或非法时使用收到响应的时间
+	 */
+	private long dateOrResponseTime() {
+		final long date = parseDate(header(Header.DATE.toString()));
+		return date > 0 ? date : responseTime;
+	}
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.CharsetUtil;
+import com.jd.meeop.util.CollectionUtil;
+import com.jd.meeop.util.StringUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * HTTP/1.1报文编解码
+ * @ClassName: HttpCodec
+ * @Description:
+ * 生成请求头；从输入流读取响应行和响应头，并按Content-Length或chunked为响应主体划定边界，以便连接上可以继续读取下一个响应。
+ * 重定向规则与HttpURLConnection一致
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 11:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class HttpCodec {
+
+	/** 单行最大长度 */
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	/** 最大头信息数 */
+	static final int MAX_HEADER_COUNT = 256;
+	/** 最多跟随的重定向次数，与HttpURLConnection默认一致 */
+	static final int MAX_REDIRECTS = 20;
+
+	/** 无主体 */
+	static final int FRAMING_NONE = 0;
+	/** Content-Length指定长度 */
+	static final int FRAMING_LENGTH = 1;
+	/** chunked编码 */
+	static final int FRAMING_CHUNKED = 2;
+	/** 读到连接关闭为止 */
+	static final int FRAMING_CLOSE = 3;
+
+	private HttpCodec() {}
+
+	// ---------------------------------------------------------------- Write start
+	/**
+	 * 生成请求行和请求头，默认请求头与{@link HttpConnection}一致，请求中的同名头信息覆盖默认值
+	 * 
+	 * @param request 请求
+	 * @param method 请求方法，重定向后可能与请求中的不同
+	 * @param url URL，重定向后可能与请求中的不同
+	 * @param route 路由
+	 * @param bodyLength 请求体长度，小于0表示没有请求体
+	 * @return 字节码
+	 */
+	static byte[] requestHead(HttpRequest request, Method method, URL url, HttpRoute route, long bodyLength) {
+		final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		putHeader(headers, Header.HOST, route.hostHeader());
+		putHeader(headers, Header.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+		putHeader(headers, Header.ACCEPT_ENCODING, "gzip");
+		putHeader(headers, Header.USER_AGENT, "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:36.0) Gecko/20100101 Firefox/36.0");
+		final String cookie = CookiePool.get(url.getHost());
+		if (null != cookie) {
+			putHeader(headers, Header.COOKIE, cookie);
+		}
+		for (Entry<String, List<String>> entry : request.headers().entrySet()) {
+			headers.put(entry.getKey(), entry.getValue());
+		}
+		// 主体长度由传输层决定
+		headers.remove(Header.CONTENT_LENGTH.toString());
+		headers.remove(Header.TRANSFER_ENCODING.toString());
+		if (bodyLength >= 0) {
+			final String contentType = request.bodyContentType();
+			if (null != contentType) {
+				putHeader(headers, Header.CONTENT_TYPE, contentType);
+			}
+			putHeader(headers, Header.CONTENT_LENGTH, String.valueOf(bodyLength));
+		}
+
+		final String file = url.getFile();
+		final StringBuilder builder = StringUtil.builder()
+				.append(method).append(' ')
+				.append(StringUtil.isEmpty(file) ? "/" : file).append(' ')
+				.append(request.httpVersion()).append(StringUtil.CRLF);
+		for (Entry<String, List<String>> entry : headers.entrySet()) {
+			for (String value : entry.getValue()) {
+				builder.append(entry.getKey()).append(": ").append(value).append(StringUtil.CRLF);
+			}
+		}
+		builder.append(StringUtil.CRLF);
+		return StringUtil.bytes(builder.toString(), CharsetUtil.CHARSET_ISO_8859_1);
+	}
+	// ---------------------------------------------------------------- Write end
+
+	// ---------------------------------------------------------------- Read start
+	/**
+	 * 读取响应行和响应头，跳过1xx的中间响应
+	 * 
+	 * @param in 输入流
+	 * @return 响应头
+	 * @throws IOException 读取失败或连接在响应前关闭（{@link EOFException}）
+	 */
+	static ResponseHead readResponseHead(InputStream in) throws IOException {
+		for (;;) {
+			String statusLine = readLine(in);
+			// 容忍上一个响应之后多余的空行
+			for (int i = 0; null != statusLine && statusLine.isEmpty() && i < 8; i++) {
+				statusLine = readLine(in);
+			}
+			if (null == statusLine) {
+				throw new EOFException("Connection closed before response");
+			}
+			final ResponseHead head = parseStatusLine(statusLine);
+			readHeaders(in, head.headers);
+			if (head.status >= 200) {
+				return head;
+			}
+		}
+	}
+
+	/**
+	 * 解析响应行，如“HTTP/1.1 200 OK”
+	 * 
+	 * @param statusLine 响应行
+	 * @return 响应头，头信息为空
+	 * @throws IOException 格式错误
+	 */
+	static ResponseHead parseStatusLine(String statusLine) throws IOException {
+		final int first = statusLine.indexOf(' ');
+		if (false == statusLine.startsWith("HTTP/") || first < 0 || statusLine.length() < first + 4) {
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+		final int status;
+		try {
+			status = Integer.parseInt(statusLine.substring(first + 1, first + 4));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+		final String reason = statusLine.length() > first + 5 ? statusLine.substring(first + 5) : StringUtil.EMPTY;
+		return new ResponseHead(statusLine.substring(0, first), status, reason);
+	}
+
+	/**
+	 * 读取头信息直到空行，头信息名不区分大小写
+	 * 
+	 * @param in 输入流
+	 * @param headers 读取到的头信息
+	 * @throws IOException 读取失败
+	 */
+	static void readHeaders(InputStream in, Map<String, List<String>> headers) throws IOException {
+		String lastName = null;
+		for (int count = 0; ; count++) {
+			final String line = readLine(in);
+			if (null == line) {
+				throw new EOFException("Connection closed while reading headers");
+			}
+			if (line.isEmpty()) {
+				return;
+			}
+			if (count >= MAX_HEADER_COUNT) {
+				throw new IOException("Too many headers");
+			}
+			lastName = parseHeaderLine(headers, line, lastName);
+		}
+	}
+
+	/**
+	 * 解析一行头信息
+	 * 
+	 * @param headers 读取到的头信息
+	 * @param line 非空的行
+	 * @param lastName 上一行的头信息名，用于折叠的多行头信息
+	 * @return 本行的头信息名
+	 * @throws IOException 格式错误
+	 */
+	static String parseHeaderLine(Map<String, List<String>> headers, String line, String lastName) throws IOException {
+		if (null != lastName && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+			// 折叠的多行头信息
+			final List<String> values = headers.get(lastName);
+			final int last = values.size() - 1;
+			values.set(last, values.get(last) + " " + line.trim());
+			return lastName;
+		}
+		final int colon = line.indexOf(':');
+		if (colon <= 0) {
+			throw new IOException("Invalid header: " + line);
+		}
+		final String name = line.substring(0, colon).trim();
+		List<String> values = headers.get(name);
+		if (null == values) {
+			values = new ArrayList<String>(1);
+			headers.put(name, values);
+		}
+		values.add(line.substring(colon + 1).trim());
+		return name;
+	}
+
+	/**
+	 * 读取一行，去掉行尾的CRLF或LF
+	 * 
+	 * @param in 输入流
+	 * @return 行，流已结束返回<code>null</code>
+	 * @throws IOException 读取失败或行过长
+	 */
+	static String readLine(InputStream in) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+		while ((b = in.read()) != -1) {
+			if (b == '\n') {
+				final byte[] bytes = line.toByteArray();
+				final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+				return new String(bytes, 0, length, CharsetUtil.CHARSET_ISO_8859_1);
+			}
+			if (line.size() >= MAX_LINE_LENGTH) {
+				throw new IOException("Line too long");
+			}
+			line.write(b);
+		}
+		if (line.size() > 0) {
+			throw new EOFException("Connection closed in the middle of a line");
+		}
+		return null;
+	}
+
+	/**
+	 * 按响应头为主体划定边界
+	 * 
+	 * @param head 响应头
+	 * @param method 请求方法
+	 * @param in 连接的输入流
+	 * @return 主体流
+	 * @throws IOException Content-Length非法
+	 */
+	static BodyInputStream bodyStream(ResponseHead head, Method method, InputStream in) throws IOException {
+		switch (framing(head, method)) {
+		case FRAMING_NONE:
+			return new FixedLengthInputStream(in, 0);
+		case FRAMING_CHUNKED:
+			return new ChunkedInputStream(in);
+		case FRAMING_LENGTH:
+			return new FixedLengthInputStream(in, contentLength(head));
+		default:
+			return new UntilCloseInputStream(in);
+		}
+	}
+
+	/**
+	 * 判断主体的边界方式
+	 * 
+	 * @param head 响应头
+	 * @param method 请求方法
+	 * @return {@link #FRAMING_NONE}、{@link #FRAMING_LENGTH}、{@link #FRAMING_CHUNKED}或{@link #FRAMING_CLOSE}
+	 */
+	static int framing(ResponseHead head, Method method) {
+		if (Method.HEAD.equals(method) || head.status < 200
+				|| HttpStatus.HTTP_NO_CONTENT == head.status || HttpStatus.HTTP_NOT_MODIFIED == head.status) {
+			return FRAMING_NONE;
+		}
+		final String transferEncoding = head.header(Header.TRANSFER_ENCODING.toString());
+		if (null != transferEncoding && containsToken(transferEncoding, "chunked")) {
+			return FRAMING_CHUNKED;
+		}
+		if (StringUtil.isNotBlank(head.header(Header.CONTENT_LENGTH.toString()))) {
+			return FRAMING_LENGTH;
+		}
+		return FRAMING_CLOSE;
+	}
+
+	/**
+	 * @param head 响应头
+	 * @return Content-Length
+	 * @throws IOException Content-Length非法
+	 */
+	static long contentLength(ResponseHead head) throws IOException {
+		final String contentLength = head.header(Header.CONTENT_LENGTH.toString());
+		try {
+			final long length = Long.parseLong(contentLength.trim());
+			if (length < 0) {
+				throw new IOException("Invalid Content-Length: " + contentLength);
+			}
+			return length;
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid Content-Length: " + contentLength);
+		}
+	}
+
+	/**
+	 * 解析分块大小行，忽略块扩展
+	 * 
+	 * @param line 分块大小行
+	 * @return 块大小
+	 * @throws IOException 格式错误
+	 */
+	static long chunkSize(String line) throws IOException {
+		final int ext = line.indexOf(';');
+		final String size = (ext < 0 ? line : line.substring(0, ext)).trim();
+		try {
+			final long chunkSize = Long.parseLong(size, 16);
+			if (chunkSize >= 0) {
+				return chunkSize;
+			}
+		} catch (NumberFormatException e) {
+			// 下面抛出
+		}
+		throw new IOException("Invalid chunk size: " + line);
+	}
+
+	/**
+	 * 逗号分隔的头信息中是否包含指定值，不区分大小写
+	 * 
+	 * @param value 头信息值
+	 * @param token 要查找的值
+	 * @return 是否包含
+	 */
+	static boolean containsToken(String value, String token) {
+		for (String part : value.split(",")) {
+			if (part.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	// ---------------------------------------------------------------- Read end
+
+	// ---------------------------------------------------------------- Redirect start
+	/**
+	 * 重定向地址，与HttpURLConnection一致：只跟随300~307（304、305、306除外）且协议不变的重定向
+	 * 
+	 * @param head 响应头
+	 * @param url 当前URL
+	 * @return 重定向地址，不需要跟随时返回<code>null</code>
+	 * @throws IOException Location非法
+	 */
+	static URL redirectUrl(ResponseHead head, URL url) throws IOException {
+		final int status = head.status;
+		if (status < HttpStatus.HTTP_MULT_CHOICE || status > HttpStatus.HTTP_TEMP_REDIRECT
+				|| HttpStatus.HTTP_NOT_MODIFIED == status || HttpStatus.HTTP_USE_PROXY == status || 306 == status) {
+			return null;
+		}
+		final String location = head.header("Location");
+		if (StringUtil.isBlank(location)) {
+			return null;
+		}
+		final URL target;
+		try {
+			target = new URL(url, location);
+		} catch (MalformedURLException e) {
+			throw new IOException("Invalid redirect location: " + location, e);
+		}
+		if (false == url.getProtocol().equalsIgnoreCase(target.getProtocol())) {
+			return null;
+		}
+		return target;
+	}
+
+	/**
+	 * 重定向后的请求方法，除307外POST改为GET并丢弃请求体
+	 * 
+	 * @param status 状态码
+	 * @param method 当前请求方法
+	 * @return 重定向后的请求方法
+	 */
+	static Method redirectMethod(int status, Method method) {
+		if (Method.POST.equals(method) && HttpStatus.HTTP_TEMP_REDIRECT != status) {
+			return Method.GET;
+		}
+		return method;
+	}
+	// ---------------------------------------------------------------- Redirect end
+
+	/**
+	 * 设置单值头信息
+	 * @param headers 头信息
+	 * @param name 名
+	 * @param value 值
+	 */
+	private static void putHeader(Map<String, List<String>> headers, Header name, String value) {
+		headers.put(name.toString(), new ArrayList<String>(Collections.singletonList(value)));
+	}
+
+	/**
+	 * 响应行和响应头
+	 */
+	static final class ResponseHead {
+		final String version;
+		final int status;
+		final String reason;
+		/** 头信息名不区分大小写 */
+		final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+		ResponseHead(String version, int status, String reason) {
+			this.version = version;
+			this.status = status;
+			this.reason = reason;
+		}
+
+		/**
+		 * @param name 头信息名
+		 * @return 第一个值，不存在返回<code>null</code>
+		 */
+		String header(String name) {
+			final List<String> values = headers.get(name);
+			return CollectionUtil.isEmpty(values) ? null : values.get(0);
+		}
+
+		/**
+		 * @param name 头信息名
+		 * @return 最后一个值，不存在返回<code>null</code>
+		 */
+		String lastHeader(String name) {
+			final List<String> values = headers.get(name);
+			return CollectionUtil.isEmpty(values) ? null : values.get(values.size() - 1);
+		}
+
+		/**
+		 * HTTP/1.1默认保持连接，HTTP/1.0需要显式声明keep-alive
+		 * @return 服务端是否保持连接
+		 */
+		boolean isKeepAlive() {
+			final String connection = header(Header.CONNECTION.toString());
+			if (null != connection && containsToken(connection, "close")) {
+				return false;
+			}
+			if (HttpBase.HTTP_1_0.equalsIgnoreCase(version)) {
+				return null != connection && containsToken(connection, "keep-alive");
+			}
+			return true;
+		}
+	}
+
+	// ---------------------------------------------------------------- Body stream start
+	/**
+	 * 划定了边界的响应主体流，读到边界返回-1，不关闭底层流
+	 */
+	abstract static class BodyInputStream extends InputStream {
+		protected final InputStream in;
+
+		BodyInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * @return 主体是否已读完，读完后连接上可以继续读取下一个响应
+		 */
+		abstract boolean isComplete();
+
+		/**
+		 * @return 主体结束后连接是否还能继续使用，读到连接关闭为止的主体不能
+		 */
+		boolean isFramed() {
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			final int n = read(b, 0, 1);
+			return n < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public void close() {
+			// 底层流属于连接，由连接池管理
+		}
+	}
+
+	/**
+	 * Content-Length指定长度的主体
+	 */
+	static final class FixedLengthInputStream extends BodyInputStream {
+		private long remaining;
+
+		FixedLengthInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			final int n = in.read(b, off, (int) Math.min(len, remaining));
+			if (n < 0) {
+				throw new EOFException("Connection closed with " + remaining + " bytes of body remaining");
+			}
+			remaining -= n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+
+		@Override
+		boolean isComplete() {
+			return remaining <= 0;
+		}
+	}
+
+	/**
+	 * chunked编码的主体，读到最后一个块和拖挂头后结束
+	 */
+	static final class ChunkedInputStream extends BodyInputStream {
+		/** 当前块剩余字节数 */
+		private long remaining;
+		/** 是否需要先读取上一个块结尾的CRLF */
+		private boolean afterChunk;
+		private boolean eof;
+
+		ChunkedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (eof) {
+				return -1;
+			}
+			if (0 == remaining) {
+				nextChunk();
+				if (eof) {
+					return -1;
+				}
+			}
+			final int n = in.read(b, off, (int) Math.min(len, remaining));
+			if (n < 0) {
+				throw new EOFException("Connection closed in the middle of a chunk");
+			}
+			remaining -= n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return eof ? 0 : (int) Math.min(in.available(), remaining);
+		}
+
+		@Override
+		boolean isComplete() {
+			return eof;
+		}
+
+		/**
+		 * 读取下一个块的大小，大小为0时读取拖挂头并结束
+		 * @throws IOException 格式错误
+		 */
+		private void nextChunk() throws IOException {
+			if (afterChunk) {
+				final String crlf = readLine(in);
+				if (null == crlf || false == crlf.isEmpty()) {
+					throw new IOException("Missing CRLF after chunk");
+				}
+			}
+			final String line = readLine(in);
+			if (null == line) {
+				throw new EOFException("Connection closed before the last chunk");
+			}
+			remaining = chunkSize(line);
+			afterChunk = true;
+			if (0 == remaining) {
+				readHeaders(in, new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER));
+				eof = true;
+			}
+		}
+	}
+
+	/**
+	 * 没有长度信息的主体，读到连接关闭为止
+	 */
+	static final class UntilCloseInputStream extends BodyInputStream {
+		private boolean eof;
+
+		UntilCloseInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (eof) {
+				return -1;
+			}
+			final int n = in.read(b, off, len);
+			if (n < 0) {
+				eof = true;
+			}
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return eof ? 0 : in.available();
+		}
+
+		@Override
+		boolean isComplete() {
+			return eof;
+		}
+
+		@Override
+		boolean isFramed() {
+			return false;
+		}
+	}
+	// ---------------------------------------------------------------- Body stream end
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.ThreadUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Http连接池
+ * @ClassName: HttpConnectionPool
+ * @Description:
+ * 按路由（协议+主机+端口）分别管理连接：每个路由最多maxPerRoute个连接，空闲连接后进先出复用，
+ * 空闲超过idleTimeout的连接由公共定时器定期关闭，空闲超过validateAfterInactivity的连接复用前检查是否已被对端关闭。
+ * 连接数已满时请求在该路由上排队等待，超过waitTimeout抛出{@link HttpException}。<br>
+ * 通过{@link #create()}创建后链式设置，设置应在使用前完成；连接池应被多个请求共享，不再使用时调用{@link #close()}
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 10:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class HttpConnectionPool {
+	private final static Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+	/** 默认每个路由的最大连接数 */
+	public static final int DEFAULT_MAX_PER_ROUTE = 20;
+	/** 默认空闲超时（毫秒） */
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000L;
+	/** 默认空闲多久后复用前需要检查（毫秒） */
+	public static final long DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS = 2000L;
+	/** 默认等待连接的超时（毫秒） */
+	public static final long DEFAULT_WAIT_TIMEOUT_MILLIS = 10000L;
+
+	/** 空闲连接清理的最小间隔 */
+	private static final long MIN_EVICT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+	private long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_MILLIS);
+	private long validateAfterInactivityNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS);
+	private long waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WAIT_TIMEOUT_MILLIS);
+
+	private final ConcurrentMap<HttpRoute, RoutePool> routes = new ConcurrentHashMap<HttpRoute, RoutePool>();
+	/** 是否已安排空闲连接清理 */
+	private final AtomicBoolean evictScheduled = new AtomicBoolean();
+	private volatile boolean closed;
+
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong reusedCount = new AtomicLong();
+	private final AtomicLong discardedCount = new AtomicLong();
+
+	/**
+	 * 创建连接池，使用默认设置
+	 * 
+	 * @return HttpConnectionPool
+	 */
+	public static HttpConnectionPool create() {
+		return new HttpConnectionPool();
+	}
+
+	// ---------------------------------------------------------------- Setters start
+	/**
+	 * 设置每个路由的最大连接数，默认{@link #DEFAULT_MAX_PER_ROUTE}
+	 * 
+	 * @param maxPerRoute 最大连接数
+	 * @return this
+	 */
+	public HttpConnectionPool setMaxPerRoute(int maxPerRoute) {
+		AssertUtil.isTrue(maxPerRoute > 0, "maxPerRoute must be positive, but was " + maxPerRoute);
+		this.maxPerRoute = maxPerRoute;
+		return this;
+	}
+
+	/**
+	 * 设置空闲超时，空闲超过此时长的连接被关闭，默认{@link #DEFAULT_IDLE_TIMEOUT_MILLIS}毫秒<br>
+	 * 应小于服务端的keep-alive超时
+	 * 
+	 * @param idleTimeout 空闲超时
+	 * @param unit 时间单位
+	 * @return this
+	 */
+	public HttpConnectionPool setIdleTimeout(long idleTimeout, TimeUnit unit) {
+		AssertUtil.isTrue(idleTimeout > 0, "idleTimeout must be positive, but was " + idleTimeout);
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+		return this;
+	}
+
+	/**
+	 * 设置空闲多久后在复用前检查连接是否已被对端关闭，默认{@link #DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS}毫秒，0表示每次都检查
+	 * 
+	 * @param inactivity 空闲时长
+	 * @param unit 时间单位
+	 * @return this
+	 */
+	public HttpConnectionPool setValidateAfterInactivity(long inactivity, TimeUnit unit) {
+		AssertUtil.isTrue(inactivity >= 0, "inactivity must not be negative, but was " + inactivity);
+		this.validateAfterInactivityNanos = unit.toNanos(inactivity);
+		return this;
+	}
+
+	/**
+	 * 设置连接数已满时等待可用连接的超时，默认{@link #DEFAULT_WAIT_TIMEOUT_MILLIS}毫秒，0表示不等待
+	 * 
+	 * @param waitTimeout 等待超时
+	 * @param unit 时间单位
+	 * @return this
+	 */
+	public HttpConnectionPool setWaitTimeout(long waitTimeout, TimeUnit unit) {
+		AssertUtil.isTrue(waitTimeout >= 0, "waitTimeout must not be negative, but was " + waitTimeout);
+		this.waitTimeoutNanos = unit.toNanos(waitTimeout);
+		return this;
+	}
+	// ---------------------------------------------------------------- Setters end
+
+	// ---------------------------------------------------------------- Lease start
+	/**
+	 * 租用连接：优先复用最近归还的空闲连接，无可用连接且未达上限时新建，否则排队等待
+	 * 
+	 * @param route 路由
+	 * @param connectTimeout 新建连接的超时（毫秒）
+	 * @return 连接
+	 * @throws IOException 新建连接失败
+	 */
+	PooledConnection lease(HttpRoute route, int connectTimeout) throws IOException {
+		final long deadline = System.nanoTime() + waitTimeoutNanos;
+		PooledConnection conn = null;
+		RoutePool pool;
+		for (;;) {
+			pool = routePool(route);
+			pool.lock.lock();
+			if (false == pool.retired) {
+				break;
+			}
+			// 子池刚被清理回收，重新获取
+			pool.lock.unlock();
+		}
+		try {
+			for (;;) {
+				if (closed) {
+					throw new HttpException("Connection pool is closed");
+				}
+				conn = pool.idle.pollFirst();
+				if (null != conn || pool.leased < maxPerRoute) {
+					// 占用名额，连接检查和新建在锁外进行
+					pool.leased++;
+					break;
+				}
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw new HttpException("Timeout waiting for connection to {}, {} leased", route, pool.leased);
+				}
+				pool.waiters++;
+				try {
+					pool.available.awaitNanos(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new HttpException("Interrupted while waiting for connection to {}", route);
+				} finally {
+					pool.waiters--;
+				}
+			}
+		} finally {
+			pool.lock.unlock();
+		}
+
+		if (null != conn) {
+			if (isReusable(conn)) {
+				conn.leased.set(true);
+				reusedCount.incrementAndGet();
+				return conn;
+			}
+			// 不可复用的空闲连接丢弃后用同一名额新建
+			discardedCount.incrementAndGet();
+			conn.close();
+		}
+		try {
+			conn = PooledConnection.open(route, connectTimeout);
+		} catch (IOException e) {
+			releaseSlot(pool);
+			throw e;
+		} catch (RuntimeException e) {
+			releaseSlot(pool);
+			throw e;
+		}
+		createdCount.incrementAndGet();
+		conn.leased.set(true);
+		logger.debug("Open connection {}", conn);
+		return conn;
+	}
+
+	/**
+	 * 归还连接，重复归还会被忽略
+	 * 
+	 * @param conn 连接
+	 * @param reusable 是否可以复用，响应未读完或连接出错时为<code>false</code>
+	 */
+	void release(PooledConnection conn, boolean reusable) {
+		if (false == conn.leased.compareAndSet(true, false)) {
+			return;
+		}
+		final RoutePool pool = routePool(conn.route);
+		boolean keep = reusable && false == closed && conn.isOpen();
+		pool.lock.lock();
+		try {
+			pool.leased--;
+			if (keep) {
+				conn.lastUsedNanos = System.nanoTime();
+				pool.idle.addFirst(conn);
+			}
+			pool.available.signal();
+		} finally {
+			pool.lock.unlock();
+		}
+		if (keep) {
+			scheduleEvict();
+		} else {
+			conn.close();
+		}
+	}
+	// ---------------------------------------------------------------- Lease end
+
+	/**
+	 * 关闭所有空闲超时的连接，并回收没有任何连接的路由子池，连接池会定期自动执行
+	 */
+	public void evictIdle() {
+		final long now = System.nanoTime();
+		final List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+		for (Entry<HttpRoute, RoutePool> entry : routes.entrySet()) {
+			final RoutePool pool = entry.getValue();
+			pool.lock.lock();
+			try {
+				// 队尾是最久未用的连接
+				final Iterator<PooledConnection> it = pool.idle.descendingIterator();
+				while (it.hasNext()) {
+					final PooledConnection conn = it.next();
+					if (now - conn.lastUsedNanos < idleTimeoutNanos && conn.isOpen()) {
+						break;
+					}
+					it.remove();
+					evicted.add(conn);
+				}
+				if (pool.idle.isEmpty() && 0 == pool.leased && 0 == pool.waiters) {
+					// 访问过的路由很多时避免子池无限增长；回收后仍持有该子池的租用方会重新获取
+					pool.retired = true;
+					routes.remove(entry.getKey(), pool);
+				}
+			} finally {
+				pool.lock.unlock();
+			}
+		}
+		for (PooledConnection conn : evicted) {
+			logger.debug("Evict idle connection {}", conn);
+			conn.close();
+		}
+	}
+
+	/**
+	 * 关闭连接池：关闭所有空闲连接，租用中的连接在归还时关闭，之后租用连接抛出{@link HttpException}
+	 */
+	public void close() {
+		closed = true;
+		for (RoutePool pool : routes.values()) {
+			final List<PooledConnection> idle;
+			pool.lock.lock();
+			try {
+				idle = new ArrayList<PooledConnection>(pool.idle);
+				pool.idle.clear();
+				pool.available.signalAll();
+			} finally {
+				pool.lock.unlock();
+			}
+			for (PooledConnection conn : idle) {
+				conn.close();
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------- Metrics start
+	/**
+	 * @return 租用中的连接数
+	 */
+	public int getLeasedCount() {
+		int count = 0;
+		for (RoutePool pool : routes.values()) {
+			pool.lock.lock();
+			try {
+				count += pool.leased;
+			} finally {
+				pool.lock.unlock();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return 空闲连接数
+	 */
+	public int getIdleCount() {
+		int count = 0;
+		for (RoutePool pool : routes.values()) {
+			pool.lock.lock();
+			try {
+				count += pool.idle.size();
+			} finally {
+				pool.lock.unlock();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return 等待连接的请求数
+	 */
+	public int getWaitingCount() {
+		int count = 0;
+		for (RoutePool pool : routes.values()) {
+			pool.lock.lock();
+			try {
+				count += pool.waiters;
+			} finally {
+				pool.lock.unlock();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return 累计新建的连接数
+	 */
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	/**
+	 * @return 累计复用空闲连接的次数
+	 */
+	public long getReusedCount() {
+		return reusedCount.get();
+	}
+
+	/**
+	 * @return 累计因对端关闭或超时在复用前被丢弃的空闲连接数
+	 */
+	public long getDiscardedCount() {
+		return discardedCount.get();
+	}
+	// ---------------------------------------------------------------- Metrics end
+
+	@Override
+	public String toString() {
+		return "HttpConnectionPool[leased=" + getLeasedCount() + ", idle=" + getIdleCount() + ", waiting=" + getWaitingCount() + "]";
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 获取路由对应的子池
+	 * @param route 路由
+	 * @return 子池
+	 */
+	private RoutePool routePool(HttpRoute route) {
+		RoutePool pool = routes.get(route);
+		if (null == pool) {
+			final RoutePool created = new RoutePool();
+			pool = routes.putIfAbsent(route, created);
+			if (null == pool) {
+				pool = created;
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * 空闲连接是否可以复用
+	 * @param conn 连接
+	 * @return 是否可以复用
+	 */
+	private boolean isReusable(PooledConnection conn) {
+		final long inactivity = System.nanoTime() - conn.lastUsedNanos;
+		if (inactivity >= idleTimeoutNanos || false == conn.isOpen()) {
+			return false;
+		}
+		return inactivity < validateAfterInactivityNanos || false == conn.isStale();
+	}
+
+	/**
+	 * 释放新建失败时占用的名额
+	 * @param pool 子池
+	 */
+	private void releaseSlot(RoutePool pool) {
+		pool.lock.lock();
+		try {
+			pool.leased--;
+			pool.available.signal();
+		} finally {
+			pool.lock.unlock();
+		}
+	}
+
+	/**
+	 * 有空闲连接时在公共定时器上安排清理，清理后仍有空闲连接则继续安排
+	 */
+	private void scheduleEvict() {
+		if (closed || false == evictScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		final long interval = Math.max(idleTimeoutNanos / 2, MIN_EVICT_INTERVAL_NANOS);
+		try {
+			ThreadUtil.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						evictIdle();
+					} finally {
+						evictScheduled.set(false);
+					}
+					if (getIdleCount() > 0) {
+						scheduleEvict();
+					}
+				}
+			}, interval, TimeUnit.NANOSECONDS);
+		} catch (RuntimeException e) {
+			// 定时器不可用时允许之后归还连接时重新安排，否则清理再也不会执行
+			evictScheduled.set(false);
+			logger.warn("Schedule idle connection eviction failed: {}", e.getMessage());
+		}
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 单个路由的连接，leased、waiters和retired受lock保护
+	 */
+	private static class RoutePool {
+		final ReentrantLock lock = new ReentrantLock();
+		final Condition available = lock.newCondition();
+		/** 队首是最近归还的连接 */
+		final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+		int leased;
+		int waiters;
+		/** 已从路由表中移除，不能再租用 */
+		boolean retired;
+	}
+}
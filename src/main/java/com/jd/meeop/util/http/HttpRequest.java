@@ -16,20 +16,26 @@
 package com.jd.meeop.util.http;
 
 import com.alibaba.fastjson.JSONObject;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.jd.meeop.util.*;
 import com.jd.meeop.lang.Base64;
 import com.jd.meeop.util.http.ssl.SSLSocketFactoryBuilder;
 import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.exception.RejectedCallException;
+import com.jd.meeop.util.guard.CallGuard;
+import com.jd.meeop.util.guard.ResultClassifier;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 /**
  * http请求类
@@ -44,6 +50,7 @@ import java.util.Map.Entry;
 public class HttpRequest extends HttpBase<HttpRequest> {
 	private static final String BOUNDARY = "--------------_" + SecureUtil.simpleUUID();
 	private static final byte[] BOUNDARY_END = StringUtil.format("--{}--\r\n", BOUNDARY).getBytes();
+	private static final byte[] CRLF_BYTES = StringUtil.CRLF.getBytes();
 	private static final String CONTENT_DISPOSITION_TEMPLATE = "Content-Disposition: form-data; name=\"{}\"\r\n\r\n";
 	private static final String CONTENT_DISPOSITION_FILE_TEMPLATE = "Content-Disposition: form-data; name=\"{}\"; filename=\"{}\"\r\n";
 	
@@ -60,15 +67,32 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 	/** 文件表单对象，用于文件上传 */
 	protected Map<String, File> fileForm;
 
-	/** 连接对象 */
-	private HttpConnection httpConnection;
+	/** 默认的响应分类器：状态码5xx计为失败 */
+	private static final ResultClassifier<HttpResponse> SERVER_ERROR_CLASSIFIER = new ResultClassifier<HttpResponse>() {
+		@Override
+		public boolean isFailure(HttpResponse response) {
+			return null != response && response.getStatus() >= 500;
+		}
+	};
+
+	/** 默认传输层，请求未单独指定时使用 */
+	private static volatile HttpTransport defaultTransport = UrlConnectionTransport.INSTANCE;
+
+	/** 传输层，为<code>null</code>时使用默认传输层 */
+	private HttpTransport transport;
 	/** 是否禁用缓存 */
 	private boolean isDisableCache;
+	/** 是否流式读取响应主体 */
+	private boolean isStream;
 	
 	/** SSLSocketFactory，用于HTTPS安全连接 */
 	private HostnameVerifier hostnameVerifier;
 	/** SSLSocketFactory，用于HTTPS安全连接 */
 	private SSLSocketFactory ssf;
+	/** 调用保护器，先加入的在外层 */
+	private List<CallGuard> guards;
+	/** 判断响应是否计为调用保护器中的失败 */
+	private ResultClassifier<? super HttpResponse> responseClassifier = SERVER_ERROR_CLASSIFIER;
 
 	/**
 	 * 构造
@@ -395,6 +419,74 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		return this;
 	}
 	
+	/**
+	 * 流式读取响应主体<br>
+	 * {@link #execute()}收到响应头即返回，主体通过{@link HttpResponse#bodyStream()}、{@link HttpResponse#bodyChannel()}
+	 * 或{@link HttpResponse#bodyChunks(HttpResponse.ChunkHandler)}按需读取，读取速度即为接收速度。
+	 * 响应使用完毕必须调用{@link HttpResponse#close()}，连接才会归还。{@link #executeAsync()}不支持流式读取
+	 * 
+	 * @param isStream 是否流式读取
+	 * @return HttpRequest
+	 */
+	public HttpRequest stream(boolean isStream) {
+		this.isStream = isStream;
+		return this;
+	}
+	
+	/**
+	 * 加入调用保护器（如{@link com.jd.meeop.util.guard.CircuitBreaker}、{@link com.jd.meeop.util.guard.ConcurrencyLimiter}），
+	 * 多次调用时先加入的在外层。保护器应按下游共享，被拒绝时{@link #execute()}抛出{@link RejectedCallException}，请求不会发出。<br>
+	 * 请求异常和状态码5xx的响应计为失败，可通过{@link #responseClassifier(ResultClassifier)}修改
+	 * 
+	 * @param guard 调用保护器
+	 * @return HttpRequest
+	 */
+	public HttpRequest guard(CallGuard guard) {
+		if (null == this.guards) {
+			this.guards = new ArrayList<CallGuard>(2);
+		}
+		this.guards.add(guard);
+		return this;
+	}
+
+	/**
+	 * 设置调用保护器判断响应是否计为失败的分类器，默认状态码5xx计为失败。计为失败的响应仍正常返回给调用方
+	 * 
+	 * @param classifier 响应分类器，<code>null</code>表示只有请求异常计为失败
+	 * @return HttpRequest
+	 */
+	public HttpRequest responseClassifier(ResultClassifier<? super HttpResponse> classifier) {
+		this.responseClassifier = classifier;
+		return this;
+	}
+	
+	/**
+	 * 设置本次请求使用的传输层，不设置时使用{@link #getDefaultTransport()}
+	 * 
+	 * @param transport 传输层，如{@link PooledHttpTransport}
+	 * @return HttpRequest
+	 */
+	public HttpRequest transport(HttpTransport transport) {
+		this.transport = transport;
+		return this;
+	}
+	
+	/**
+	 * 设置全局默认传输层，影响之后所有未单独指定传输层的请求
+	 * 
+	 * @param transport 传输层，<code>null</code>表示恢复为{@link UrlConnectionTransport}
+	 */
+	public static void setDefaultTransport(HttpTransport transport) {
+		defaultTransport = null != transport ? transport : UrlConnectionTransport.INSTANCE;
+	}
+	
+	/**
+	 * @return 全局默认传输层
+	 */
+	public static HttpTransport getDefaultTransport() {
+		return defaultTransport;
+	}
+	
 	/**
 	 * 设置域名验证器<br>
 	 * 只针对HTTPS请求，如果不设置，不做验证，所有域名被信任
@@ -437,45 +529,89 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 	}
 
 	/**
-	 * 执行Reuqest请求
+	 * 执行Reuqest请求，设置了调用保护器时在保护器下执行
 	 * 
 	 * @return HttpResponse
 	 */
 	public HttpResponse execute() {
-		if (Method.GET.equals(method)) {
-			// 优先使用body形式的参数，不存在使用form
-			if (StringUtil.isNotBlank(this.body)) {
-				this.url = HttpUtil.urlWithForm(this.url, this.body);
-			} else {
-				this.url = HttpUtil.urlWithForm(this.url, this.form);
+		if (CollectionUtil.isEmpty(this.guards)) {
+			return doExecute();
+		}
+		Callable<HttpResponse> call = new Callable<HttpResponse>() {
+			@Override
+			public HttpResponse call() {
+				return doExecute();
 			}
+		};
+		final ResultClassifier<? super HttpResponse> classifier = this.responseClassifier;
+		for (int i = this.guards.size() - 1; i >= 0; i--) {
+			final CallGuard guard = this.guards.get(i);
+			final Callable<HttpResponse> inner = call;
+			call = new Callable<HttpResponse>() {
+				@Override
+				public HttpResponse call() throws Exception {
+					return guard.call(inner, classifier);
+				}
+			};
 		}
-		
-		// 初始化 connection
-		this.httpConnection = HttpConnection
-				.create(this.url, this.method, this.hostnameVerifier, this.ssf, this.timeout)
-				.header(this.headers, true); // 覆盖默认Header
-		//是否禁用缓存
-		if(this.isDisableCache){
-			this.httpConnection.disableCache();
+		try {
+			return call.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new HttpException(e);
 		}
+	}
+
+	/**
+	 * 使用共享的{@link AsyncHttpClient#getDefault()}异步执行请求<br>
+	 * 超时、重定向和gzip处理与{@link #execute()}一致，调用保护器、传输层和流式读取不起作用
+	 * 
+	 * @return 响应，失败时为{@link HttpException}
+	 */
+	public ListenableFuture<HttpResponse> executeAsync() {
+		return executeAsync(AsyncHttpClient.getDefault());
+	}
+
+	/**
+	 * 使用指定的客户端异步执行请求<br>
+	 * 超时、重定向和gzip处理与{@link #execute()}一致，调用保护器、传输层和流式读取不起作用
+	 * 
+	 * @param client 异步客户端
+	 * @return 响应，失败时为{@link HttpException}
+	 */
+	public ListenableFuture<HttpResponse> executeAsync(AsyncHttpClient client) {
+		prepareUrl();
+		return client.execute(this);
+	}
 
-		// 发送请求
+	/**
+	 * 执行Reuqest请求
+	 * 
+	 * @return HttpResponse
+	 */
+	private HttpResponse doExecute() {
+		prepareUrl();
+		final HttpTransport transport = null != this.transport ? this.transport : defaultTransport;
 		try {
-			if (Method.POST.equals(method) || Method.PUT.equals(method)) {
-				send();// 发送数据
-			} else {
-				this.httpConnection.connect();
-			}
+			return transport.execute(this);
 		} catch (IOException e) {
 			throw new HttpException(e.getMessage(), e);
 		}
+	}
 
-		// 获取响应
-		HttpResponse httpResponse = HttpResponse.readResponse(httpConnection);
-
-		this.httpConnection.disconnect();
-		return httpResponse;
+	/**
+	 * GET请求将参数拼接到URL中
+	 */
+	private void prepareUrl() {
+		if (Method.GET.equals(method)) {
+			// 优先使用body形式的参数，不存在使用form
+			if (StringUtil.isNotBlank(this.body)) {
+				this.url = HttpUtil.urlWithForm(this.url, this.body);
+			} else {
+				this.url = HttpUtil.urlWithForm(this.url, this.form);
+			}
+		}
 	}
 
 	/**
@@ -494,59 +630,144 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		return this;
 	}
 	
-	// ---------------------------------------------------------------- Private method start
+	// ---------------------------------------------------------------- Transport start
 	/**
-	 * 发送数据流
+	 * @return 请求URL，GET请求执行后包含表单参数
+	 */
+	public String getUrl() {
+		return url;
+	}
+	
+	/**
+	 * @return 请求方法
+	 */
+	public Method getMethod() {
+		return method;
+	}
+	
+	/**
+	 * @return 超时（毫秒），小于等于0表示不超时
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+	
+	/**
+	 * @return 域名验证器，未设置返回<code>null</code>
+	 */
+	public HostnameVerifier getHostnameVerifier() {
+		return hostnameVerifier;
+	}
+	
+	/**
+	 * @return SSLSocketFactory，未设置返回<code>null</code>
+	 */
+	public SSLSocketFactory getSSLSocketFactory() {
+		return ssf;
+	}
+	
+	/**
+	 * @return 是否禁用缓存
+	 */
+	public boolean isDisableCache() {
+		return isDisableCache;
+	}
+	
+	/**
+	 * @return 是否流式读取响应主体
+	 */
+	public boolean isStream() {
+		return isStream;
+	}
+	
+	/**
+	 * @return 是否发送请求体，只有POST和PUT请求发送
+	 */
+	public boolean hasBody() {
+		return Method.POST.equals(method) || Method.PUT.equals(method);
+	}
+	
+	/**
+	 * 请求体的Content-Type<br>
+	 * 有文件时为multipart/form-data；未自定义Content-Type时为application/x-www-form-urlencoded；否则返回<code>null</code>，使用请求头中的值
 	 * 
-	 * @throws IOException
+	 * @return Content-Type或<code>null</code>
 	 */
-	private void send() throws IOException {
-		if (CollectionUtil.isEmpty(fileForm)) {
-			sendFormUrlEncoded();//普通表单
-		} else {
-			sendMltipart();	//文件上传表单
+	public String bodyContentType() {
+		if (isMultipart()) {
+			return CONTENT_TYPE_MULTIPART_PREFIX + BOUNDARY;
+		}
+		if (StringUtil.isBlank(this.header(Header.CONTENT_TYPE))) {
+			return CONTENT_TYPE_X_WWW_FORM_URLENCODED_PREFIX + this.charset;
 		}
+		return null;
 	}
 	
 	/**
-	 * 发送普通表单
-	 * @throws IOException
+	 * 计算请求体的字节数，与{@link #writeBody(OutputStream)}写出的一致
+	 * 
+	 * @return 字节数
+	 * @throws IOException 文件不可读
 	 */
-	private void sendFormUrlEncoded() throws IOException{
-		if(StringUtil.isBlank(this.header(Header.CONTENT_TYPE))){
-			//如果未自定义Content-Type，使用默认的application/x-www-form-urlencoded
-			this.httpConnection.header(Header.CONTENT_TYPE, CONTENT_TYPE_X_WWW_FORM_URLENCODED_PREFIX + this.charset, true);
+	public long bodyLength() throws IOException {
+		if (false == isMultipart()) {
+			return formUrlEncodedBytes().length;
 		}
-		
-		// Write的时候会优先使用body中的内容，write时自动关闭OutputStream
-		String content;
-		if (StringUtil.isNotBlank(this.body)) {
-			content = this.body;
-		} else {
-			content = HttpUtil.toParams(this.form, this.charset);
+		long length = 0;
+		for (Entry<String, File> entry : this.fileForm.entrySet()) {
+			final File file = entry.getValue();
+			if (false == file.isFile()) {
+				throw new IOException(StringUtil.format("File [{}] is not readable", file));
+			}
+			length += fileFormHeader(entry.getKey(), file).length + file.length() + CRLF_BYTES.length;
+		}
+		final byte[] formBytes = formBytes();
+		if (null != formBytes) {
+			length += formBytes.length;
 		}
-		IoUtil.write(this.httpConnection.getOutputStream(), this.charset, true, content);
+		return length + BOUNDARY_END.length;
 	}
-
+	
 	/**
-	 * 发送多组件请求（例如包含文件的表单）
+	 * 写出请求体，有文件时为multipart/form-data格式，否则优先写出body，不存在时写出编码后的form<br>
+	 * 可重复调用，写出后不关闭输出流
 	 * 
-	 * @throws IOException
+	 * @param out 输出流
+	 * @throws IOException 写出失败
 	 */
-	private void sendMltipart() throws IOException {
-		setMultipart();//设置表单类型为Multipart
-		
-		final OutputStream out = this.httpConnection.getOutputStream();
-		try {
+	public void writeBody(OutputStream out) throws IOException {
+		if (isMultipart()) {
 			writeFileForm(out);
 			writeForm(out);
 			formEnd(out);
-		} catch (IOException e) {
-			throw e;
-		}finally{
-			IoUtil.close(out);
+		} else {
+			out.write(formUrlEncodedBytes());
+			out.flush();
 		}
 	}
+	// ---------------------------------------------------------------- Transport end
+	
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * @return 是否为文件上传表单
+	 */
+	private boolean isMultipart() {
+		return CollectionUtil.isNotEmpty(fileForm);
+	}
+	
+	/**
+	 * 普通表单的请求体，优先使用body中的内容
+	 * @return 请求体字节码
+	 */
+	private byte[] formUrlEncodedBytes() {
+		final String content;
+		if (StringUtil.isNotBlank(this.body)) {
+			content = this.body;
+		} else {
+			content = HttpUtil.toParams(this.form, this.charset);
+		}
+		return StringUtil.bytes(content, this.charset);
+	}
 
 	// 普通字符串数据
 	/**
@@ -555,14 +776,9 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 	 * @throws IOException
 	 */
 	private void writeForm(OutputStream out) throws IOException {
-		if (CollectionUtil.isNotEmpty(this.form)) {
-			StringBuilder builder = StringUtil.builder();
-			for (Entry<String, Object> entry : this.form.entrySet()) {
-				builder.append("--").append(BOUNDARY).append(StringUtil.CRLF);
-				builder.append(StringUtil.format(CONTENT_DISPOSITION_TEMPLATE, entry.getKey()));
-				builder.append(entry.getValue()).append(StringUtil.CRLF);
-			}
-			IoUtil.write(out, this.charset, false, builder);
+		final byte[] formBytes = formBytes();
+		if (null != formBytes) {
+			out.write(formBytes);
 		}
 	}
 
@@ -575,13 +791,40 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		File file;
 		for (Entry<String, File> entry : this.fileForm.entrySet()) {
 			file = entry.getValue();
-			StringBuilder builder = StringUtil.builder().append("--").append(BOUNDARY).append(StringUtil.CRLF);
-			builder.append(StringUtil.format(CONTENT_DISPOSITION_FILE_TEMPLATE, entry.getKey(), file.getName()));
-			builder.append(StringUtil.format(CONTENT_TYPE_FILE_TEMPLATE, HttpUtil.getMimeType(file.getName())));
-			IoUtil.write(out, this.charset, false, builder);
+			out.write(fileFormHeader(entry.getKey(), file));
 			FileUtil.writeToStream(file, out);
-			IoUtil.write(out, this.charset, false, StringUtil.CRLF);
+			out.write(CRLF_BYTES);
+		}
+	}
+	
+	/**
+	 * 普通表单内容的multipart编码
+	 * @return 字节码，无表单时返回<code>null</code>
+	 */
+	private byte[] formBytes() {
+		if (CollectionUtil.isEmpty(this.form)) {
+			return null;
 		}
+		StringBuilder builder = StringUtil.builder();
+		for (Entry<String, Object> entry : this.form.entrySet()) {
+			builder.append("--").append(BOUNDARY).append(StringUtil.CRLF);
+			builder.append(StringUtil.format(CONTENT_DISPOSITION_TEMPLATE, entry.getKey()));
+			builder.append(entry.getValue()).append(StringUtil.CRLF);
+		}
+		return StringUtil.bytes(builder.toString(), this.charset);
+	}
+	
+	/**
+	 * 文件表单项的头部
+	 * @param name 表单项名
+	 * @param file 文件
+	 * @return 字节码
+	 */
+	private byte[] fileFormHeader(String name, File file) {
+		StringBuilder builder = StringUtil.builder().append("--").append(BOUNDARY).append(StringUtil.CRLF);
+		builder.append(StringUtil.format(CONTENT_DISPOSITION_FILE_TEMPLATE, name, file.getName()));
+		builder.append(StringUtil.format(CONTENT_TYPE_FILE_TEMPLATE, HttpUtil.getMimeType(file.getName())));
+		return StringUtil.bytes(builder.toString(), this.charset);
 	}
 
 	// 添加结尾数据
@@ -594,14 +837,6 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		out.write(BOUNDARY_END);
 		out.flush();
 	}
-	
-	/**
-	 * 设置表单类型为Multipart（文件上传）
-	 * @return HttpConnection
-	 */
-	private void setMultipart(){
-		this.httpConnection.header(Header.CONTENT_TYPE, CONTENT_TYPE_MULTIPART_PREFIX + BOUNDARY, true);
-	}
 	// ---------------------------------------------------------------- Private method end
 
 }
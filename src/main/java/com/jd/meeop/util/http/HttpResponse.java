@@ -23,7 +23,10 @@ import com.jd.meeop.util.IoUtil;
 import com.jd.meeop.util.io.FastByteArrayOutputStream;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.zip.GZIPInputStream;
 
@@ -31,16 +34,33 @@ import java.util.zip.GZIPInputStream;
  * Http响应类
  * @ClassName: HttpResponse
  * @Description:
+ * 默认在返回前读完主体并保存在内存中。请求设置了{@link HttpRequest#stream(boolean)}时为流式响应，收到响应头即返回，
+ * 主体只能读取一次，使用完毕须调用{@link #close()}归还连接：
+ * <pre>
+ * HttpResponse response = HttpRequest.get(url).stream(true).execute();
+ * try {
+ *     IoUtil.copy(response.bodyStream(), out);
+ * } finally {
+ *     response.close();
+ * }
+ * </pre>
+ * 流式响应调用{@link #body()}或{@link #bodyBytes()}时把剩余主体读入内存，之后与普通响应一致
  * @author: 冷水(Toby)
  * @date: 16-12-11 14:45
  * @mail: zhao.wang@aliyun.com
  * @version: v1.0
  * @since: JDK 1.7.0_79(Liunx)
  */
-public class HttpResponse extends HttpBase<HttpResponse> {
+public class HttpResponse extends HttpBase<HttpResponse> implements Closeable {
 	
 	/** 读取服务器返回的流保存至内存 */
 	private FastByteArrayOutputStream out;
+	/** 流式响应尚未读取的主体，未解压 */
+	private InputStream in;
+	/** 流式响应已交给调用方的主体流，{@link #close()}时一并关闭 */
+	private InputStream handedOut;
+	/** 是否为流式响应 */
+	private boolean isStream;
 
 	/**
 	 * 读取响应信息
@@ -49,28 +69,74 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 	 * @return HttpResponse
 	 */
 	public static HttpResponse readResponse(HttpConnection httpConnection) {
+		return fromConnection(httpConnection, false);
+	}
+
+	/**
+	 * 由传输层读取响应信息，读取完毕后关闭主体流
+	 * 
+	 * @param status 状态码
+	 * @param headers 响应头
+	 * @param in 主体流
+	 * @return HttpResponse
+	 * @throws IOException 读取主体失败
+	 */
+	static HttpResponse readResponse(int status, Map<String, List<String>> headers, InputStream in) throws IOException {
 		final HttpResponse httpResponse = new HttpResponse();
-		
+		httpResponse.status = status;
+		httpResponse.headers = headers;
+		httpResponse.charset = HttpUtil.getCharset(httpResponse.header(Header.CONTENT_TYPE));
 		try {
-			httpResponse.status = httpConnection.responseCode();
-			httpResponse.headers =  httpConnection.headers();
-			httpResponse.charset = httpConnection.charset();
-			
-			InputStream in;
-			if(httpResponse.status < HttpStatus.HTTP_BAD_REQUEST){
-				in = httpConnection.getInputStream();
-			}else{
-				in = httpConnection.getErrorStream();
-			}
 			httpResponse.readBody(in);
-		} catch (IOException e) {
-			if(e instanceof FileNotFoundException){
-				//服务器无返回内容，忽略之
-			}else{
-				throw new HttpException(e.getMessage(), e);
-			}
+		} finally {
+			in.close();
 		}
-		
+		return httpResponse;
+	}
+
+	/**
+	 * 读取响应头，主体留在连接上流式读取
+	 * 
+	 * @param httpConnection Http连接对象
+	 * @return HttpResponse
+	 */
+	static HttpResponse streamResponse(HttpConnection httpConnection) {
+		return fromConnection(httpConnection, true);
+	}
+
+	/**
+	 * 由传输层创建流式响应，主体流关闭时归还连接
+	 * 
+	 * @param status 状态码
+	 * @param headers 响应头
+	 * @param in 主体流
+	 * @return HttpResponse
+	 */
+	static HttpResponse streamResponse(int status, Map<String, List<String>> headers, InputStream in) {
+		final HttpResponse httpResponse = new HttpResponse();
+		httpResponse.isStream = true;
+		httpResponse.status = status;
+		httpResponse.headers = headers;
+		httpResponse.charset = HttpUtil.getCharset(httpResponse.header(Header.CONTENT_TYPE));
+		httpResponse.in = in;
+		return httpResponse;
+	}
+
+	/**
+	 * 由缓存创建响应，主体为已解码的内容
+	 * 
+	 * @param status 状态码
+	 * @param headers 响应头
+	 * @param body 主体
+	 * @return HttpResponse
+	 */
+	static HttpResponse cachedResponse(int status, Map<String, List<String>> headers, byte[] body) {
+		final HttpResponse httpResponse = new HttpResponse();
+		httpResponse.status = status;
+		httpResponse.headers = headers;
+		httpResponse.charset = HttpUtil.getCharset(httpResponse.header(Header.CONTENT_TYPE));
+		httpResponse.out = new FastByteArrayOutputStream(Math.max(body.length, 1));
+		httpResponse.out.write(body, 0, body.length);
 		return httpResponse;
 	}
 
@@ -109,18 +175,79 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 	
 	// ---------------------------------------------------------------- Body start
 	/**
-	 * 获得服务区响应流
+	 * @return 是否为流式响应
+	 */
+	public boolean isStream() {
+		return isStream;
+	}
+
+	/**
+	 * 获得服务区响应流<br>
+	 * 流式响应返回连接上的主体流（已解压），只能获取一次，关闭流或调用{@link #close()}即归还连接
 	 * @return 响应流
 	 */
 	public InputStream bodyStream(){
+		if (null != this.in) {
+			final InputStream in = this.in;
+			this.in = null;
+			try {
+				this.handedOut = isGzip() ? new GZIPInputStream(in) : in;
+				return this.handedOut;
+			} catch (IOException e) {
+				IoUtil.close(in);
+				throw new HttpException(e.getMessage(), e);
+			}
+		}
+		if (null == this.out) {
+			throw new HttpException("Response body stream has been consumed");
+		}
 		return new ByteArrayInputStream(this.out.toByteArray());
 	}
+
+	/**
+	 * 获得响应主体的Channel，规则与{@link #bodyStream()}相同
+	 * @return 响应主体的Channel
+	 */
+	public ReadableByteChannel bodyChannel() {
+		return Channels.newChannel(bodyStream());
+	}
+
+	/**
+	 * 分块读取响应主体，在当前线程中逐块回调，读完或回调要求停止后关闭主体流
+	 * @param handler 分块处理器
+	 * @return 已处理的字节数
+	 */
+	public long bodyChunks(ChunkHandler handler) {
+		final InputStream in = bodyStream();
+		final byte[] buffer = new byte[IoUtil.DEFAULT_BUFFER_SIZE];
+		long size = 0;
+		try {
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				if (n == 0) {
+					continue;
+				}
+				size += n;
+				if (false == handler.onChunk(buffer, n)) {
+					break;
+				}
+			}
+		} catch (EOFException e) {
+			//忽略读取HTTP流中的EOF错误
+		} catch (IOException e) {
+			throw new HttpException(e.getMessage(), e);
+		} finally {
+			IoUtil.close(in);
+		}
+		return size;
+	}
 	
 	/**
 	 * 获取响应流字节码
 	 * @return byte[]
 	 */
 	public byte[] bodyBytes() {
+		bufferBody();
 		if(null == this.out){
 			return null;
 		}
@@ -132,6 +259,7 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 	 * @return String
 	 */
 	public String body() {
+		bufferBody();
 		try {
 			return HttpUtil.getString(bodyStream(), this.charset, null == this.charset);
 		} catch (IOException e) {
@@ -139,6 +267,21 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 		}
 	}
 	// ---------------------------------------------------------------- Body end
+
+	/**
+	 * 关闭流式响应的主体（包括已通过{@link #bodyStream()}取出的流），归还连接；普通响应无需关闭，重复调用无影响
+	 */
+	@Override
+	public void close() {
+		if (null != this.in) {
+			IoUtil.close(this.in);
+			this.in = null;
+		}
+		if (null != this.handedOut) {
+			IoUtil.close(this.handedOut);
+			this.handedOut = null;
+		}
+	}
 	
 	@Override
 	public String toString() {
@@ -155,6 +298,63 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 	}
 	
 	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 从连接读取状态码、响应头和编码，主体读入内存或留在连接上
+	 * 
+	 * @param httpConnection Http连接对象
+	 * @param isStream 是否为流式响应
+	 * @return HttpResponse
+	 */
+	private static HttpResponse fromConnection(HttpConnection httpConnection, boolean isStream) {
+		final HttpResponse httpResponse = new HttpResponse();
+		httpResponse.isStream = isStream;
+		try {
+			httpResponse.status = httpConnection.responseCode();
+			httpResponse.headers =  httpConnection.headers();
+			httpResponse.charset = httpConnection.charset();
+			
+			InputStream in;
+			if(httpResponse.status < HttpStatus.HTTP_BAD_REQUEST){
+				in = httpConnection.getInputStream();
+			}else{
+				in = httpConnection.getErrorStream();
+			}
+			if (isStream) {
+				httpResponse.in = in;
+			} else {
+				httpResponse.readBody(in);
+			}
+		} catch (IOException e) {
+			if(e instanceof FileNotFoundException){
+				//服务器无返回内容，忽略之
+			}else{
+				throw new HttpException(e.getMessage(), e);
+			}
+		}
+		if (isStream && null == httpResponse.in) {
+			httpResponse.in = new ByteArrayInputStream(new byte[0]);
+		}
+		return httpResponse;
+	}
+
+	/**
+	 * 流式响应的主体尚未读取时读入内存
+	 */
+	private void bufferBody() {
+		if (null == this.in) {
+			return;
+		}
+		final InputStream in = this.in;
+		this.in = null;
+		try {
+			readBody(in);
+		} catch (IOException e) {
+			throw new HttpException(e.getMessage(), e);
+		} finally {
+			IoUtil.close(in);
+		}
+	}
+
 	/**
 	 * 读取主体
 	 * @param in 输入流
@@ -175,4 +375,18 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 		}
 	}
 	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 响应主体的分块处理器
+	 */
+	public interface ChunkHandler {
+		/**
+		 * 处理一块主体，缓冲区在回调返回后复用
+		 * @param buffer 缓冲区
+		 * @param length 本块的字节数，从0开始
+		 * @return 是否继续读取，返回<code>false</code>时停止并关闭主体流
+		 * @throws IOException 处理失败，主体流被关闭
+		 */
+		boolean onChunk(byte[] buffer, int length) throws IOException;
+	}
 }
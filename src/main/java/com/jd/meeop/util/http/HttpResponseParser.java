@@ -0,0 +1,271 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.CharsetUtil;
+import com.jd.meeop.util.http.HttpCodec.ResponseHead;
+import com.jd.meeop.util.io.FastByteArrayOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 增量响应解析器
+ * @ClassName: HttpResponseParser
+ * @Description:
+ * 用于非阻塞连接：每次读到数据后调用{@link #parse(ByteBuffer)}，数据可以在任意位置被截断，解析规则与{@link HttpCodec}一致。
+ * 主体保存在内存中，解压等处理交给{@link HttpResponse}
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 14:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class HttpResponseParser {
+
+	private static final int STATUS_LINE = 0;
+	private static final int HEADERS = 1;
+	private static final int BODY_LENGTH = 2;
+	private static final int CHUNK_SIZE = 3;
+	private static final int CHUNK_DATA = 4;
+	private static final int CHUNK_END = 5;
+	private static final int TRAILERS = 6;
+	private static final int BODY_CLOSE = 7;
+	private static final int DONE = 8;
+
+	/** 单行最大长度 */
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private final Method method;
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+	private int state = STATUS_LINE;
+	private boolean started;
+	private ResponseHead head;
+	private String lastHeader;
+	private int headerCount;
+	private int framing;
+	private long remaining;
+	private FastByteArrayOutputStream body;
+
+	/**
+	 * 构造
+	 * 
+	 * @param method 请求方法，HEAD请求的响应没有主体
+	 */
+	HttpResponseParser(Method method) {
+		this.method = method;
+	}
+
+	/**
+	 * 解析数据，读取到的数据会被消费
+	 * 
+	 * @param buf 读模式的缓冲区
+	 * @return 响应是否已完整
+	 * @throws IOException 格式错误
+	 */
+	boolean parse(ByteBuffer buf) throws IOException {
+		if (buf.hasRemaining()) {
+			started = true;
+		}
+		while (DONE != state && buf.hasRemaining()) {
+			switch (state) {
+			case STATUS_LINE:
+				final String statusLine = readLine(buf);
+				if (null != statusLine && false == statusLine.isEmpty()) {
+					head = HttpCodec.parseStatusLine(statusLine);
+					lastHeader = null;
+					headerCount = 0;
+					state = HEADERS;
+				}
+				break;
+			case HEADERS:
+				final String header = readLine(buf);
+				if (null == header) {
+					break;
+				}
+				if (header.isEmpty()) {
+					// 跳过1xx的中间响应
+					state = head.status < 200 ? STATUS_LINE : startBody();
+				} else {
+					if (++headerCount > HttpCodec.MAX_HEADER_COUNT) {
+						throw new IOException("Too many headers");
+					}
+					lastHeader = HttpCodec.parseHeaderLine(head.headers, header, lastHeader);
+				}
+				break;
+			case BODY_LENGTH:
+				copy(buf);
+				if (0 == remaining) {
+					state = DONE;
+				}
+				break;
+			case CHUNK_SIZE:
+				final String size = readLine(buf);
+				if (null != size) {
+					remaining = HttpCodec.chunkSize(size);
+					state = 0 == remaining ? TRAILERS : CHUNK_DATA;
+				}
+				break;
+			case CHUNK_DATA:
+				copy(buf);
+				if (0 == remaining) {
+					state = CHUNK_END;
+				}
+				break;
+			case CHUNK_END:
+				final String crlf = readLine(buf);
+				if (null != crlf) {
+					if (false == crlf.isEmpty()) {
+						throw new IOException("Missing CRLF after chunk");
+					}
+					state = CHUNK_SIZE;
+				}
+				break;
+			case TRAILERS:
+				final String trailer = readLine(buf);
+				if (null != trailer && trailer.isEmpty()) {
+					state = DONE;
+				}
+				break;
+			case BODY_CLOSE:
+				remaining = buf.remaining();
+				copy(buf);
+				break;
+			default:
+				throw new IllegalStateException("Unknown state " + state);
+			}
+		}
+		return DONE == state;
+	}
+
+	/**
+	 * 连接被对端关闭
+	 * 
+	 * @return 响应是否已完整，主体读到连接关闭为止时为<code>true</code>
+	 * @throws EOFException 响应不完整
+	 */
+	boolean onClose() throws EOFException {
+		if (BODY_CLOSE == state) {
+			state = DONE;
+			return true;
+		}
+		if (DONE == state) {
+			return true;
+		}
+		throw new EOFException(started ? "Connection closed before the response completed" : "Connection closed before response");
+	}
+
+	/**
+	 * @return 是否已收到任何数据，未收到数据时可以安全地在新连接上重试
+	 */
+	boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * @return 响应结束后连接能否继续使用
+	 */
+	boolean isReusable() {
+		return DONE == state && HttpCodec.FRAMING_CLOSE != framing && head.isKeepAlive();
+	}
+
+	/**
+	 * @return 响应头，完整解析前为<code>null</code>
+	 */
+	ResponseHead getHead() {
+		return state > HEADERS ? head : null;
+	}
+
+	/**
+	 * @return 主体，无主体时为空数组
+	 */
+	byte[] getBody() {
+		return null == body ? new byte[0] : body.toByteArray();
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 头信息结束，按头信息决定主体的读取方式
+	 * @return 下一个状态
+	 * @throws IOException Content-Length非法
+	 */
+	private int startBody() throws IOException {
+		framing = HttpCodec.framing(head, method);
+		switch (framing) {
+		case HttpCodec.FRAMING_NONE:
+			return DONE;
+		case HttpCodec.FRAMING_CHUNKED:
+			body = new FastByteArrayOutputStream();
+			return CHUNK_SIZE;
+		case HttpCodec.FRAMING_LENGTH:
+			remaining = HttpCodec.contentLength(head);
+			if (0 == remaining) {
+				return DONE;
+			}
+			body = remaining < Integer.MAX_VALUE ? new FastByteArrayOutputStream((int) remaining) : new FastByteArrayOutputStream();
+			return BODY_LENGTH;
+		default:
+			body = new FastByteArrayOutputStream();
+			return BODY_CLOSE;
+		}
+	}
+
+	/**
+	 * 复制至多remaining个字节到主体
+	 * @param buf 缓冲区
+	 */
+	private void copy(ByteBuffer buf) {
+		final int n = (int) Math.min(buf.remaining(), remaining);
+		if (buf.hasArray()) {
+			body.write(buf.array(), buf.arrayOffset() + buf.position(), n);
+			buf.position(buf.position() + n);
+		} else {
+			final byte[] bytes = new byte[n];
+			buf.get(bytes);
+			body.write(bytes, 0, n);
+		}
+		remaining -= n;
+	}
+
+	/**
+	 * 读取一行，数据不足一行时暂存
+	 * @param buf 缓冲区
+	 * @return 去掉行尾CRLF的行，数据不足一行时返回<code>null</code>
+	 * @throws IOException 行过长
+	 */
+	private String readLine(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			final byte b = buf.get();
+			if (b == '\n') {
+				final byte[] bytes = line.toByteArray();
+				line.reset();
+				final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+				return new String(bytes, 0, length, CharsetUtil.CHARSET_ISO_8859_1);
+			}
+			if (line.size() >= MAX_LINE_LENGTH) {
+				throw new IOException("Line too long");
+			}
+			line.write(b);
+		}
+		return null;
+	}
+	// ---------------------------------------------------------------- Private method end
+}
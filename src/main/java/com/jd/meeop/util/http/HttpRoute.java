@@ -0,0 +1,112 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+import java.net.URL;
+
+/**
+ * 连接路由
+ * @ClassName: HttpRoute
+ * @Description:
+ * 协议、主机、端口以及HTTPS的SSLSocketFactory和域名验证器都相同的请求才能共用连接，后两者按实例区分
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 10:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class HttpRoute {
+
+	final String scheme;
+	final String host;
+	final int port;
+	/** 非HTTPS时为<code>null</code> */
+	final SSLSocketFactory ssf;
+	/** 非HTTPS时为<code>null</code> */
+	final HostnameVerifier hostnameVerifier;
+
+	private HttpRoute(String scheme, String host, int port, SSLSocketFactory ssf, HostnameVerifier hostnameVerifier) {
+		this.scheme = scheme;
+		this.host = host;
+		this.port = port;
+		this.ssf = ssf;
+		this.hostnameVerifier = hostnameVerifier;
+	}
+
+	/**
+	 * 创建路由
+	 * 
+	 * @param url URL
+	 * @param ssf SSLSocketFactory，可为<code>null</code>
+	 * @param hostnameVerifier 域名验证器，可为<code>null</code>
+	 * @return 路由
+	 */
+	static HttpRoute of(URL url, SSLSocketFactory ssf, HostnameVerifier hostnameVerifier) {
+		final String scheme = url.getProtocol().toLowerCase();
+		final int port = -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+		if ("https".equals(scheme)) {
+			return new HttpRoute(scheme, url.getHost().toLowerCase(), port, ssf, hostnameVerifier);
+		}
+		return new HttpRoute(scheme, url.getHost().toLowerCase(), port, null, null);
+	}
+
+	/**
+	 * @return 是否为HTTPS
+	 */
+	boolean isSecure() {
+		return "https".equals(scheme);
+	}
+
+	/**
+	 * @return Host头的值，默认端口省略
+	 */
+	String hostHeader() {
+		if ((isSecure() && 443 == port) || (false == isSecure() && 80 == port)) {
+			return host;
+		}
+		return host + ":" + port;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (false == obj instanceof HttpRoute) {
+			return false;
+		}
+		final HttpRoute other = (HttpRoute) obj;
+		return port == other.port && scheme.equals(other.scheme) && host.equals(other.host)
+				&& ssf == other.ssf && hostnameVerifier == other.hostnameVerifier;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = scheme.hashCode();
+		result = 31 * result + host.hashCode();
+		result = 31 * result + port;
+		result = 31 * result + System.identityHashCode(ssf);
+		result = 31 * result + System.identityHashCode(hostnameVerifier);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return scheme + "://" + host + ":" + port;
+	}
+}
@@ -99,6 +99,11 @@ public final class HttpStatus {
 	 */
 	public static final int HTTP_USE_PROXY = 305;
 
+	/**
+	 * HTTP Status-Code 307: Temporary Redirect.
+	 */
+	public static final int HTTP_TEMP_REDIRECT = 307;
+
 	/* 4XX: client error */
 
 	/**
@@ -181,6 +186,11 @@ public final class HttpStatus {
 	 */
 	public static final int HTTP_UNSUPPORTED_TYPE = 415;
 
+	/**
+	 * HTTP Status-Code 416: Requested Range Not Satisfiable.
+	 */
+	public static final int HTTP_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
 	/* 5XX: server error */
 
 	/**
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import java.io.IOException;
+
+/**
+ * Http传输层
+ * @ClassName: HttpTransport
+ * @Description:
+ * 负责把{@link HttpRequest}发送出去并读取为{@link HttpResponse}，通过{@link HttpRequest#transport(HttpTransport)}
+ * 或{@link HttpRequest#setDefaultTransport(HttpTransport)}指定。默认实现为{@link UrlConnectionTransport}，
+ * 需要连接复用时使用{@link PooledHttpTransport}
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 09:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface HttpTransport {
+
+	/**
+	 * 执行请求，返回时响应主体已读取完毕；请求为{@link HttpRequest#isStream()}时收到响应头即返回流式响应
+	 * 
+	 * @param request 请求，GET请求的表单已拼接到URL中
+	 * @return 响应
+	 * @throws IOException 连接或读写失败
+	 */
+	HttpResponse execute(HttpRequest request) throws IOException;
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.IoUtil;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 非阻塞连接
+ * @ClassName: NioConnection
+ * @Description:
+ * SocketChannel及其读写缓冲区，HTTPS时通过SSLEngine加解密。只在所属{@link NioEventLoop}的线程中使用
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 14:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class NioConnection {
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	final HttpRoute route;
+	final SocketChannel channel;
+	SelectionKey key;
+	/** HTTPS时不为<code>null</code> */
+	private final SSLEngine engine;
+	/** 待写出的密文，读模式 */
+	private ByteBuffer netOut;
+	/** 已读取未解密的密文，写模式 */
+	private ByteBuffer netIn;
+	/** 已读取的明文，写模式 */
+	ByteBuffer appIn;
+	/** 是否已建立（TCP连接和TLS握手都已完成） */
+	boolean established;
+	private boolean closed;
+
+	/** 当前的请求，空闲时为<code>null</code> */
+	NioExchange exchange;
+	/** 已完成的请求数 */
+	int requestCount;
+	/** 最近一次归还的时间，{@link System#nanoTime()} */
+	long lastUsedNanos;
+
+	/**
+	 * 构造
+	 * 
+	 * @param route 路由
+	 * @param channel 非阻塞的SocketChannel
+	 * @param sslContext HTTPS时使用的SSLContext，HTTP时为<code>null</code>
+	 */
+	NioConnection(HttpRoute route, SocketChannel channel, SSLContext sslContext) {
+		this.route = route;
+		this.channel = channel;
+		if (route.isSecure()) {
+			this.engine = sslContext.createSSLEngine(route.host, route.port);
+			this.engine.setUseClientMode(true);
+			this.netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+			this.netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+			this.netOut.flip();
+			this.appIn = ByteBuffer.allocate(Math.max(BUFFER_SIZE, engine.getSession().getApplicationBufferSize()));
+		} else {
+			this.engine = null;
+			this.appIn = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * 推进TLS握手，未完成时设置需要关注的事件；HTTP连接直接返回<code>true</code>
+	 * 
+	 * @return 握手是否已完成
+	 * @throws IOException 握手失败或域名验证失败
+	 */
+	boolean handshake() throws IOException {
+		if (null == engine) {
+			return true;
+		}
+		if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && false == netOut.hasRemaining()) {
+			engine.beginHandshake();
+		}
+		for (;;) {
+			if (false == flush()) {
+				interest(SelectionKey.OP_WRITE);
+				return false;
+			}
+			switch (engine.getHandshakeStatus()) {
+			case NEED_WRAP:
+				netOut.compact();
+				try {
+					checkClosed(engine.wrap(EMPTY, netOut));
+				} finally {
+					netOut.flip();
+				}
+				break;
+			case NEED_UNWRAP:
+				netIn.flip();
+				final SSLEngineResult result;
+				try {
+					result = engine.unwrap(netIn, appIn);
+				} finally {
+					netIn.compact();
+				}
+				checkClosed(result);
+				if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+					ensureNetInCapacity();
+					final int n = channel.read(netIn);
+					if (n < 0) {
+						throw new EOFException("Connection closed during TLS handshake");
+					}
+					if (0 == n) {
+						interest(SelectionKey.OP_READ);
+						return false;
+					}
+				}
+				break;
+			case NEED_TASK:
+				runDelegatedTasks();
+				break;
+			default:
+				if (null != route.hostnameVerifier && false == route.hostnameVerifier.verify(route.host, engine.getSession())) {
+					throw new SSLPeerUnverifiedException("Hostname " + route.host + " not verified");
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 读取明文到{@link #appIn}
+	 * 
+	 * @return 新读取的明文字节数，连接已关闭返回-1
+	 * @throws IOException 读取或解密失败
+	 */
+	int read() throws IOException {
+		if (null == engine) {
+			return channel.read(appIn);
+		}
+		ensureNetInCapacity();
+		final int n = channel.read(netIn);
+		int produced = 0;
+		netIn.flip();
+		try {
+			while (netIn.hasRemaining()) {
+				final SSLEngineResult result = engine.unwrap(netIn, appIn);
+				produced += result.bytesProduced();
+				if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+					runDelegatedTasks();
+				}
+				if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+					appIn.flip();
+					appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+					continue;
+				}
+				if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+					return produced > 0 ? produced : -1;
+				}
+				if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW
+						|| (0 == result.bytesConsumed() && 0 == result.bytesProduced())) {
+					break;
+				}
+			}
+		} finally {
+			netIn.compact();
+		}
+		return n < 0 && 0 == produced ? -1 : produced;
+	}
+
+	/**
+	 * 写出明文，写不完时关注可写事件
+	 * 
+	 * @param src 读模式的明文
+	 * @return 是否已全部写出
+	 * @throws IOException 写出或加密失败
+	 */
+	boolean write(ByteBuffer src) throws IOException {
+		if (null == engine) {
+			channel.write(src);
+		} else {
+			while (flush() && src.hasRemaining()) {
+				netOut.compact();
+				try {
+					final SSLEngineResult result = engine.wrap(src, netOut);
+					checkClosed(result);
+					if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+						netOut.flip();
+						netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+					}
+				} finally {
+					netOut.flip();
+				}
+			}
+			flush();
+		}
+		final boolean done = false == src.hasRemaining() && (null == engine || false == netOut.hasRemaining());
+		interest(done ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+		return done;
+	}
+
+	/**
+	 * 设置关注的事件
+	 * 
+	 * @param ops 事件
+	 */
+	void interest(int ops) {
+		if (null != key && key.isValid() && key.interestOps() != ops) {
+			key.interestOps(ops);
+		}
+	}
+
+	/**
+	 * 关闭连接
+	 * 
+	 * @return 是否由本次调用关闭
+	 */
+	boolean close() {
+		if (closed) {
+			return false;
+		}
+		closed = true;
+		if (null != key) {
+			key.cancel();
+		}
+		IoUtil.close(channel);
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return route + "(" + channel.socket().getLocalPort() + ")";
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 写出待写的密文
+	 * @return 是否已全部写出
+	 * @throws IOException 写出失败
+	 */
+	private boolean flush() throws IOException {
+		if (netOut.hasRemaining()) {
+			channel.write(netOut);
+		}
+		return false == netOut.hasRemaining();
+	}
+
+	/**
+	 * 在当前线程执行SSLEngine的耗时任务
+	 */
+	private void runDelegatedTasks() {
+		Runnable task;
+		while (null != (task = engine.getDelegatedTask())) {
+			task.run();
+		}
+	}
+
+	/**
+	 * 密文缓冲区已满时扩容
+	 */
+	private void ensureNetInCapacity() {
+		if (false == netIn.hasRemaining()) {
+			netIn.flip();
+			netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+		}
+	}
+
+	/**
+	 * 检查SSLEngine是否已关闭
+	 * @param result 结果
+	 * @throws SSLException 已关闭
+	 */
+	private static void checkClosed(SSLEngineResult result) throws SSLException {
+		if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+			throw new SSLException("SSLEngine closed");
+		}
+	}
+
+	/**
+	 * 扩容缓冲区，保留其中的数据
+	 * @param buf 读模式的缓冲区
+	 * @param minGrowth 最少增加的容量
+	 * @return 写模式的新缓冲区
+	 */
+	private static ByteBuffer enlarge(ByteBuffer buf, int minGrowth) {
+		final ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() + Math.max(minGrowth, buf.capacity()));
+		bigger.put(buf);
+		return bigger;
+	}
+	// ---------------------------------------------------------------- Private method end
+}
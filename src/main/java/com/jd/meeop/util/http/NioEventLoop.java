@@ -0,0 +1,675 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.util.IoUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非阻塞IO事件循环
+ * @ClassName: NioEventLoop
+ * @Description:
+ * 一个线程和一个Selector，负责分配给它的路由上所有连接的建立、读写、超时和空闲回收。
+ * 连接池按路由保存在循环内部，只被循环线程访问，无需加锁；其他线程通过{@link #execute(Runnable)}提交操作
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 15:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class NioEventLoop implements Runnable {
+	private final static Logger logger = LoggerFactory.getLogger(NioEventLoop.class);
+
+	/** 有请求进行时检查超时的间隔 */
+	private static final long CHECK_INTERVAL_MILLIS = 10L;
+	/** 只有空闲连接时检查空闲超时的间隔 */
+	private static final long IDLE_CHECK_INTERVAL_MILLIS = 1000L;
+	/** 一次可读事件中最多读取的次数，避免大响应占住线程 */
+	private static final int MAX_READS_PER_EVENT = 16;
+
+	private final AsyncHttpClient client;
+	private final Selector selector;
+	private final Thread thread;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private final Map<HttpRoute, RouteState> routes = new HashMap<HttpRoute, RouteState>();
+	/** 排队和进行中的请求 */
+	private final Set<NioExchange> active = new HashSet<NioExchange>();
+	private int idleCount;
+	private long lastCheckNanos = System.nanoTime();
+	private long lastIdleCheckNanos = System.nanoTime();
+	private volatile boolean closed;
+
+	/**
+	 * 构造并启动循环线程
+	 * 
+	 * @param client 所属客户端
+	 * @param name 线程名
+	 * @throws IOException 打开Selector失败
+	 */
+	NioEventLoop(AsyncHttpClient client, String name) throws IOException {
+		this.client = client;
+		this.selector = Selector.open();
+		this.thread = new Thread(this, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * 在循环线程中执行操作
+	 * 
+	 * @param task 操作
+	 */
+	void execute(Runnable task) {
+		tasks.offer(task);
+		if (Thread.currentThread() != thread) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * 提交请求
+	 * 
+	 * @param exchange 请求
+	 */
+	void submit(final NioExchange exchange) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				dispatch(exchange);
+			}
+		});
+	}
+
+	/**
+	 * 取消请求，关闭其使用中的连接
+	 * 
+	 * @param exchange 请求
+	 */
+	void cancel(final NioExchange exchange) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				detach(exchange);
+			}
+		});
+	}
+
+	/**
+	 * 关闭循环，进行中的请求以失败结束
+	 */
+	void close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (false == closed) {
+				final long timeout = false == active.isEmpty() ? CHECK_INTERVAL_MILLIS : (idleCount > 0 ? IDLE_CHECK_INTERVAL_MILLIS : 0);
+				if (tasks.isEmpty()) {
+					selector.select(timeout);
+				} else {
+					selector.selectNow();
+				}
+				runTasks();
+				processKeys();
+				checkTimeouts();
+			}
+		} catch (Throwable e) {
+			logger.error("Event loop " + thread.getName() + " stopped unexpectedly", e);
+		} finally {
+			shutdown();
+		}
+	}
+
+	// ---------------------------------------------------------------- Dispatch start
+	/**
+	 * 为请求分配连接：复用空闲连接，未达上限时新建，否则排队
+	 * @param exchange 请求
+	 */
+	private void dispatch(NioExchange exchange) {
+		if (exchange.future.isDone()) {
+			return;
+		}
+		if (closed) {
+			notifyFailure(exchange, new IOException("Client is closed"));
+			return;
+		}
+		active.add(exchange);
+		exchange.touch(System.nanoTime());
+		assign(exchange, routeState(exchange.route));
+	}
+
+	/**
+	 * 分配连接
+	 * @param exchange 请求
+	 * @param rs 路由状态
+	 */
+	private void assign(NioExchange exchange, RouteState rs) {
+		final long now = System.nanoTime();
+		NioConnection conn;
+		while (null != (conn = rs.idle.pollFirst())) {
+			idleCount--;
+			if (conn.channel.isOpen() && now - conn.lastUsedNanos < client.getIdleTimeoutNanos()) {
+				start(exchange, conn);
+				return;
+			}
+			closeConnection(conn, rs);
+		}
+		if (rs.total < client.getMaxPerRoute()) {
+			rs.total++;
+			connect(exchange, rs);
+			return;
+		}
+		rs.waiting.addLast(exchange);
+	}
+
+	/**
+	 * 在已建立的连接上开始请求
+	 * @param exchange 请求
+	 * @param conn 连接
+	 */
+	private void start(NioExchange exchange, NioConnection conn) {
+		exchange.bind(conn);
+		exchange.touch(System.nanoTime());
+		try {
+			conn.write(exchange.out);
+		} catch (IOException e) {
+			onError(conn, e);
+		}
+	}
+
+	/**
+	 * 新建连接
+	 * @param exchange 请求
+	 * @param rs 路由状态，名额已占用
+	 */
+	private void connect(NioExchange exchange, RouteState rs) {
+		NioConnection conn = null;
+		try {
+			conn = openConnection(exchange.route);
+			exchange.bind(conn);
+			if (conn.channel.connect(new InetSocketAddress(exchange.route.host, exchange.route.port))) {
+				establish(conn);
+			} else {
+				conn.interest(SelectionKey.OP_CONNECT);
+			}
+		} catch (IOException e) {
+			connectFailed(exchange, rs, conn, e);
+		} catch (UnresolvedAddressException e) {
+			connectFailed(exchange, rs, conn, new UnknownHostException(exchange.route.host));
+		} catch (RuntimeException e) {
+			connectFailed(exchange, rs, conn, new IOException(e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * 打开非阻塞的SocketChannel并注册到Selector
+	 * @param route 路由
+	 * @return 连接
+	 * @throws IOException 打开失败
+	 */
+	private NioConnection openConnection(HttpRoute route) throws IOException {
+		final SocketChannel channel = SocketChannel.open();
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().setKeepAlive(true);
+			final NioConnection conn = new NioConnection(route, channel, client.getSSLContext());
+			conn.key = channel.register(selector, 0, conn);
+			return conn;
+		} catch (IOException e) {
+			IoUtil.close(channel);
+			throw e;
+		} catch (RuntimeException e) {
+			IoUtil.close(channel);
+			throw e;
+		}
+	}
+
+	/**
+	 * 新建连接失败
+	 * @param exchange 请求
+	 * @param rs 路由状态
+	 * @param conn 连接，未打开时为<code>null</code>
+	 * @param e 错误
+	 */
+	private void connectFailed(NioExchange exchange, RouteState rs, NioConnection conn, IOException e) {
+		if (null != conn) {
+			onError(conn, e);
+			return;
+		}
+		rs.total--;
+		fail(exchange, e);
+		serveWaiting(rs);
+	}
+
+	/**
+	 * TCP连接已建立，推进TLS握手，完成后写出请求
+	 * @param conn 连接
+	 * @throws IOException 握手失败
+	 */
+	private void establish(NioConnection conn) throws IOException {
+		if (conn.handshake()) {
+			conn.established = true;
+			if (null != conn.exchange) {
+				conn.exchange.touch(System.nanoTime());
+				conn.write(conn.exchange.out);
+			}
+		}
+	}
+	// ---------------------------------------------------------------- Dispatch end
+
+	// ---------------------------------------------------------------- IO start
+	/**
+	 * 处理就绪的事件
+	 */
+	private void processKeys() {
+		final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+		while (it.hasNext()) {
+			final SelectionKey key = it.next();
+			it.remove();
+			final NioConnection conn = (NioConnection) key.attachment();
+			try {
+				if (false == key.isValid()) {
+					continue;
+				}
+				if (key.isConnectable()) {
+					if (conn.channel.finishConnect()) {
+						conn.interest(0);
+						establish(conn);
+					}
+					continue;
+				}
+				if (false == conn.established) {
+					establish(conn);
+					continue;
+				}
+				if (key.isWritable() && null != conn.exchange) {
+					conn.exchange.touch(System.nanoTime());
+					conn.write(conn.exchange.out);
+				}
+				if (key.isValid() && key.isReadable()) {
+					onReadable(conn);
+				}
+			} catch (IOException e) {
+				onError(conn, e);
+			} catch (CancelledKeyException e) {
+				onError(conn, new IOException("Connection closed", e));
+			}
+		}
+	}
+
+	/**
+	 * 读取并解析响应
+	 * @param conn 连接
+	 * @throws IOException 读取失败或格式错误
+	 */
+	private void onReadable(NioConnection conn) throws IOException {
+		final NioExchange exchange = conn.exchange;
+		if (null == exchange) {
+			// 空闲连接可读说明已被对端关闭或收到了不该有的数据
+			final RouteState rs = routeState(conn.route);
+			if (rs.idle.remove(conn)) {
+				idleCount--;
+			}
+			closeConnection(conn, rs);
+			return;
+		}
+		for (int i = 0; i < MAX_READS_PER_EVENT; i++) {
+			final int n = conn.read();
+			if (conn.appIn.position() > 0) {
+				exchange.touch(System.nanoTime());
+				conn.appIn.flip();
+				final boolean done;
+				final boolean leftover;
+				try {
+					done = exchange.parser.parse(conn.appIn);
+				} finally {
+					leftover = conn.appIn.hasRemaining();
+					conn.appIn.compact();
+				}
+				if (done) {
+					complete(conn, exchange, false == leftover && n >= 0);
+					return;
+				}
+			}
+			if (n < 0) {
+				if (exchange.parser.onClose()) {
+					complete(conn, exchange, false);
+				}
+				return;
+			}
+			if (0 == n) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 响应完整，归还或关闭连接
+	 * @param conn 连接
+	 * @param exchange 请求
+	 * @param reusable 连接上是否没有多余数据
+	 */
+	private void complete(NioConnection conn, NioExchange exchange, boolean reusable) {
+		active.remove(exchange);
+		exchange.unbind();
+		conn.requestCount++;
+		final RouteState rs = routeState(conn.route);
+		if (reusable && false == closed && exchange.parser.isReusable() && exchange.request.isKeepAlive()) {
+			release(conn, rs);
+		} else {
+			closeConnection(conn, rs);
+		}
+		notifyResponse(exchange);
+	}
+
+	/**
+	 * 连接出错：关闭连接，复用的连接在收到响应前出错时幂等请求换连接重试，否则请求失败
+	 * @param conn 连接
+	 * @param e 错误
+	 */
+	private void onError(NioConnection conn, IOException e) {
+		final RouteState rs = routeState(conn.route);
+		final NioExchange exchange = conn.exchange;
+		if (null == exchange && rs.idle.remove(conn)) {
+			idleCount--;
+		}
+		if (null != exchange) {
+			exchange.unbind();
+		}
+		closeConnection(conn, rs);
+		if (null == exchange || exchange.future.isDone()) {
+			if (null != exchange) {
+				active.remove(exchange);
+			}
+			return;
+		}
+		// 新建的连接失败不重试，复用的连接逐个淘汰，不会无限重试
+		if (conn.requestCount > 0 && false == exchange.parser.isStarted() && isIdempotent(exchange.method)) {
+			logger.debug("Connection {} failed before response, retry: {}", conn, e.toString());
+			assign(exchange, rs);
+			return;
+		}
+		fail(exchange, e);
+	}
+	// ---------------------------------------------------------------- IO end
+
+	// ---------------------------------------------------------------- Pool start
+	/**
+	 * 归还可复用的连接，有排队的请求时直接交给它
+	 * @param conn 连接
+	 * @param rs 路由状态
+	 */
+	private void release(NioConnection conn, RouteState rs) {
+		conn.lastUsedNanos = System.nanoTime();
+		// 空闲时关注可读，以便及时发现对端关闭
+		conn.interest(SelectionKey.OP_READ);
+		final NioExchange waiter = pollWaiting(rs);
+		if (null != waiter) {
+			start(waiter, conn);
+		} else {
+			rs.idle.addFirst(conn);
+			idleCount++;
+		}
+	}
+
+	/**
+	 * 关闭连接，释放名额给排队的请求
+	 * @param conn 连接
+	 * @param rs 路由状态
+	 */
+	private void closeConnection(NioConnection conn, RouteState rs) {
+		if (conn.close()) {
+			rs.total--;
+			serveWaiting(rs);
+		}
+	}
+
+	/**
+	 * 有空余名额时为排队的请求新建连接
+	 * @param rs 路由状态
+	 */
+	private void serveWaiting(RouteState rs) {
+		while (false == closed && rs.total < client.getMaxPerRoute()) {
+			final NioExchange waiter = pollWaiting(rs);
+			if (null == waiter) {
+				return;
+			}
+			rs.total++;
+			connect(waiter, rs);
+		}
+	}
+
+	/**
+	 * @param rs 路由状态
+	 * @return 排在最前且未被取消的请求
+	 */
+	private NioExchange pollWaiting(RouteState rs) {
+		NioExchange waiter;
+		while (null != (waiter = rs.waiting.pollFirst())) {
+			if (false == waiter.future.isDone()) {
+				return waiter;
+			}
+			active.remove(waiter);
+		}
+		return null;
+	}
+
+	/**
+	 * 从循环中移除请求，关闭其使用中的连接（连接上可能还有未读完的响应）
+	 * @param exchange 请求
+	 */
+	private void detach(NioExchange exchange) {
+		if (false == active.remove(exchange)) {
+			return;
+		}
+		final RouteState rs = routeState(exchange.route);
+		final NioConnection conn = exchange.conn;
+		if (null != conn) {
+			exchange.unbind();
+			closeConnection(conn, rs);
+		} else {
+			rs.waiting.remove(exchange);
+		}
+	}
+
+	/**
+	 * 检查请求超时和空闲连接超时
+	 */
+	private void checkTimeouts() {
+		final long now = System.nanoTime();
+		if (now - lastCheckNanos < TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL_MILLIS)) {
+			return;
+		}
+		lastCheckNanos = now;
+		if (false == active.isEmpty()) {
+			final List<NioExchange> expired = new ArrayList<NioExchange>();
+			for (NioExchange exchange : active) {
+				if (exchange.future.isDone() || exchange.isExpired(now)) {
+					expired.add(exchange);
+				}
+			}
+			for (NioExchange exchange : expired) {
+				final NioConnection conn = exchange.conn;
+				final String message = null == conn ? "Timeout waiting for connection to " + exchange.route
+						: (conn.established ? "Read timed out" : "connect timed out");
+				detach(exchange);
+				if (false == exchange.future.isDone()) {
+					fail(exchange, new SocketTimeoutException(message));
+				}
+			}
+		}
+		if (idleCount > 0 && now - lastIdleCheckNanos >= TimeUnit.MILLISECONDS.toNanos(IDLE_CHECK_INTERVAL_MILLIS)) {
+			lastIdleCheckNanos = now;
+			for (RouteState rs : routes.values()) {
+				// 队尾是最久未用的连接
+				NioConnection conn;
+				while (null != (conn = rs.idle.peekLast()) && now - conn.lastUsedNanos >= client.getIdleTimeoutNanos()) {
+					rs.idle.pollLast();
+					idleCount--;
+					logger.debug("Evict idle connection {}", conn);
+					closeConnection(conn, rs);
+				}
+			}
+		}
+	}
+	// ---------------------------------------------------------------- Pool end
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 执行提交的操作
+	 */
+	private void runTasks() {
+		Runnable task;
+		while (null != (task = tasks.poll())) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error("Event loop task failed", e);
+			}
+		}
+	}
+
+	/**
+	 * 请求失败
+	 * @param exchange 请求
+	 * @param e 错误
+	 */
+	private void fail(NioExchange exchange, IOException e) {
+		active.remove(exchange);
+		notifyFailure(exchange, e);
+	}
+
+	/**
+	 * 通知客户端响应完成，回调中的异常只记录日志，不中断IO线程
+	 * @param exchange 请求
+	 */
+	private void notifyResponse(NioExchange exchange) {
+		try {
+			client.onResponse(exchange, exchange.parser.getHead(), exchange.parser.getBody());
+		} catch (RuntimeException e) {
+			logger.error("Response callback of " + exchange.url + " failed", e);
+			exchange.future.setException(new HttpException(e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * 通知客户端请求失败，回调中的异常只记录日志，不中断IO线程
+	 * @param exchange 请求
+	 * @param e 错误
+	 */
+	private void notifyFailure(NioExchange exchange, IOException e) {
+		try {
+			client.onFailure(exchange, e);
+		} catch (RuntimeException ex) {
+			logger.error("Failure callback of " + exchange.url + " failed", ex);
+			exchange.future.setException(new HttpException(e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * 关闭所有连接，未完成的请求以失败结束
+	 */
+	private void shutdown() {
+		closed = true;
+		for (NioExchange exchange : new ArrayList<NioExchange>(active)) {
+			detach(exchange);
+			notifyFailure(exchange, new IOException("Client is closed"));
+		}
+		for (RouteState rs : routes.values()) {
+			for (NioConnection conn : rs.idle) {
+				conn.close();
+			}
+			rs.idle.clear();
+		}
+		idleCount = 0;
+		Runnable task;
+		while (null != (task = tasks.poll())) {
+			// 关闭后提交的请求由dispatch直接失败
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error("Event loop task failed", e);
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// 忽略
+		}
+	}
+
+	/**
+	 * @param route 路由
+	 * @return 路由状态
+	 */
+	private RouteState routeState(HttpRoute route) {
+		RouteState rs = routes.get(route);
+		if (null == rs) {
+			rs = new RouteState();
+			routes.put(route, rs);
+		}
+		return rs;
+	}
+
+	/**
+	 * @param method 请求方法
+	 * @return 是否幂等，可以安全重试
+	 */
+	private static boolean isIdempotent(Method method) {
+		return false == Method.POST.equals(method) && false == Method.CONNECT.equals(method);
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 单个路由的连接
+	 */
+	private static class RouteState {
+		/** 队首是最近归还的连接 */
+		final ArrayDeque<NioConnection> idle = new ArrayDeque<NioConnection>();
+		final ArrayDeque<NioExchange> waiting = new ArrayDeque<NioExchange>();
+		/** 已建立和正在建立的连接数 */
+		int total;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+/**
+ * 一次异步请求
+ * @ClassName: NioExchange
+ * @Description:
+ * 一个URL上的一次请求，重定向时新建；除构造参数外只在所属{@link NioEventLoop}的线程中访问
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 15:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class NioExchange {
+
+	final AsyncHttpClient.ResponseFuture future;
+	final HttpRequest request;
+	final Method method;
+	final URL url;
+	final HttpRoute route;
+	/** 请求体，没有请求体时为<code>null</code> */
+	final byte[] body;
+	/** 已经历的重定向次数 */
+	final int redirects;
+	/** 连接和读取超时，0表示不超时 */
+	final long timeoutNanos;
+
+	/** 使用中的连接，排队时为<code>null</code> */
+	NioConnection conn;
+	HttpResponseParser parser;
+	/** 待写出的请求 */
+	ByteBuffer out;
+	/** 超时时刻，0表示不超时 */
+	private long deadlineNanos;
+
+	NioExchange(AsyncHttpClient.ResponseFuture future, HttpRequest request, Method method, URL url, HttpRoute route,
+			byte[] body, int redirects, long timeoutNanos) {
+		this.future = future;
+		this.request = request;
+		this.method = method;
+		this.url = url;
+		this.route = route;
+		this.body = body;
+		this.redirects = redirects;
+		this.timeoutNanos = timeoutNanos;
+	}
+
+	/**
+	 * 绑定连接，准备请求和解析器
+	 * 
+	 * @param conn 连接
+	 */
+	void bind(NioConnection conn) {
+		this.conn = conn;
+		conn.exchange = this;
+		conn.appIn.clear();
+		this.parser = new HttpResponseParser(method);
+		final byte[] head = HttpCodec.requestHead(request, method, url, route, null == body ? -1 : body.length);
+		this.out = ByteBuffer.allocate(head.length + (null == body ? 0 : body.length));
+		this.out.put(head);
+		if (null != body) {
+			this.out.put(body);
+		}
+		this.out.flip();
+	}
+
+	/**
+	 * 解除与连接的绑定
+	 */
+	void unbind() {
+		if (null != conn) {
+			conn.exchange = null;
+			conn = null;
+		}
+	}
+
+	/**
+	 * 有进展（开始等待、连接、读写）时重新计算超时时刻，与阻塞方式的连接超时和读取超时一致
+	 * 
+	 * @param now 当前时间，{@link System#nanoTime()}
+	 */
+	void touch(long now) {
+		deadlineNanos = timeoutNanos > 0 ? now + timeoutNanos : 0;
+	}
+
+	/**
+	 * @param now 当前时间，{@link System#nanoTime()}
+	 * @return 是否已超时
+	 */
+	boolean isExpired(long now) {
+		return 0 != deadlineNanos && now - deadlineNanos >= 0;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.IoUtil;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 连接池中的连接
+ * @ClassName: PooledConnection
+ * @Description:
+ * 一个Socket及其缓冲流，同一时刻只被一个请求租用
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 10:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+final class PooledConnection {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	final HttpRoute route;
+	final Socket socket;
+	final InputStream in;
+	final OutputStream out;
+	/** 已完成的请求数，大于0表示是复用的连接 */
+	int requestCount;
+	/** 最近一次归还的时间，{@link System#nanoTime()} */
+	volatile long lastUsedNanos;
+	/** 是否被租用，保证只归还一次 */
+	final AtomicBoolean leased = new AtomicBoolean();
+
+	private PooledConnection(HttpRoute route, Socket socket) throws IOException {
+		this.route = route;
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+		this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+		this.lastUsedNanos = System.nanoTime();
+	}
+
+	/**
+	 * 建立连接，HTTPS时完成握手和域名验证
+	 * 
+	 * @param route 路由
+	 * @param connectTimeout 连接超时（毫秒），小于等于0表示不超时
+	 * @return 连接
+	 * @throws IOException 连接失败
+	 */
+	static PooledConnection open(HttpRoute route, int connectTimeout) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(new InetSocketAddress(route.host, route.port), Math.max(connectTimeout, 0));
+			if (route.isSecure()) {
+				final SSLSocketFactory ssf = null != route.ssf ? route.ssf : DefaultSSLHolder.FACTORY;
+				socket = ssf.createSocket(socket, route.host, route.port, true);
+				final SSLSocket sslSocket = (SSLSocket) socket;
+				sslSocket.startHandshake();
+				if (null != route.hostnameVerifier && false == route.hostnameVerifier.verify(route.host, sslSocket.getSession())) {
+					throw new SSLPeerUnverifiedException("Hostname " + route.host + " not verified");
+				}
+			}
+			return new PooledConnection(route, socket);
+		} catch (IOException e) {
+			IoUtil.close(socket);
+			throw e;
+		} catch (RuntimeException e) {
+			IoUtil.close(socket);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return Socket是否仍然打开
+	 */
+	boolean isOpen() {
+		return false == socket.isClosed() && false == socket.isInputShutdown() && false == socket.isOutputShutdown();
+	}
+
+	/**
+	 * 检查空闲连接是否已被对端关闭<br>
+	 * 以1毫秒超时试读一个字节：超时说明连接正常；读到EOF或异常说明已关闭；读到数据说明流已错位，同样不可复用
+	 * 
+	 * @return 是否不可用
+	 */
+	boolean isStale() {
+		if (false == isOpen()) {
+			return true;
+		}
+		int soTimeout = 0;
+		try {
+			if (in.available() > 0) {
+				return true;
+			}
+			soTimeout = socket.getSoTimeout();
+			socket.setSoTimeout(1);
+			in.read();
+			return true;
+		} catch (SocketTimeoutException e) {
+			return false;
+		} catch (IOException e) {
+			return true;
+		} finally {
+			try {
+				socket.setSoTimeout(soTimeout);
+			} catch (IOException e) {
+				// 连接已不可用，由调用方关闭
+			}
+		}
+	}
+
+	/**
+	 * 关闭连接
+	 */
+	void close() {
+		IoUtil.close(socket);
+	}
+
+	@Override
+	public String toString() {
+		return route + "(" + socket.getLocalPort() + ")";
+	}
+}
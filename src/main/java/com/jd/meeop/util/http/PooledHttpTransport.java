@@ -0,0 +1,307 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.util.StringUtil;
+import com.jd.meeop.util.http.HttpCodec.BodyInputStream;
+import com.jd.meeop.util.http.HttpCodec.ResponseHead;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.net.URL;
+
+/**
+ * 基于连接池的传输层
+ * @ClassName: PooledHttpTransport
+ * @Description:
+ * 直接在Socket上收发HTTP/1.1报文，连接由{@link HttpConnectionPool}管理，响应主体读完后连接归还连接池复用。
+ * 默认请求头与{@link HttpConnection}一致，Cookie同样读写{@link CookiePool}；不使用系统代理设置。<br>
+ * 复用的空闲连接可能刚好被服务端关闭，幂等请求（除POST外）在收到响应前失败时换一个连接重试。
+ * 流式响应直接读取连接上的主体，主体读完或响应关闭时连接才归还连接池。
+ * 重定向规则与HttpURLConnection一致。<br>
+ * 传输层应被共享：
+ * <pre>
+ * HttpRequest.setDefaultTransport(new PooledHttpTransport(HttpConnectionPool.create().setMaxPerRoute(50)));
+ * </pre>
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 11:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class PooledHttpTransport implements HttpTransport {
+	private final static Logger logger = LoggerFactory.getLogger(PooledHttpTransport.class);
+
+	/** 关闭未读完的主体时，最多读掉多少字节以保留连接 */
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+	private final HttpConnectionPool pool;
+
+	/**
+	 * 构造，使用默认设置的连接池
+	 */
+	public PooledHttpTransport() {
+		this(HttpConnectionPool.create());
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param pool 连接池
+	 */
+	public PooledHttpTransport(HttpConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @return 连接池
+	 */
+	public HttpConnectionPool getPool() {
+		return pool;
+	}
+
+	@Override
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		URL url = new URL(request.getUrl());
+		Method method = request.getMethod();
+		for (int redirects = 0; ; redirects++) {
+			final String protocol = url.getProtocol().toLowerCase();
+			if (false == "http".equals(protocol) && false == "https".equals(protocol)) {
+				throw new IOException("Unsupported protocol: " + url);
+			}
+			final Exchange exchange = send(request, method, url);
+			final ResponseHead head = exchange.head;
+			storeCookie(url, head);
+			final ResponseBodyStream body = bodyStream(request, method, exchange.conn, head);
+
+			final URL location = HttpCodec.redirectUrl(head, url);
+			if (null == location) {
+				if (request.isStream()) {
+					return HttpResponse.streamResponse(head.status, head.headers, body);
+				}
+				return HttpResponse.readResponse(head.status, head.headers, body);
+			}
+			body.close();
+			if (redirects >= HttpCodec.MAX_REDIRECTS) {
+				throw new ProtocolException("Server redirected too many times (" + HttpCodec.MAX_REDIRECTS + ")");
+			}
+			logger.debug("Redirect {} {} to {}", head.status, url, location);
+			method = HttpCodec.redirectMethod(head.status, method);
+			url = location;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PooledHttpTransport[" + pool + "]";
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 发送请求并读取响应头
+	 * @param request 请求
+	 * @param method 请求方法
+	 * @param url URL
+	 * @return 连接和响应头
+	 * @throws IOException 发送或读取失败
+	 */
+	private Exchange send(HttpRequest request, Method method, URL url) throws IOException {
+		final HttpRoute route = HttpRoute.of(url, request.getSSLSocketFactory(), request.getHostnameVerifier());
+		// 重定向为GET后不再发送请求体
+		final boolean withBody = request.hasBody() && method.equals(request.getMethod());
+		final byte[] head = HttpCodec.requestHead(request, method, url, route, withBody ? request.bodyLength() : -1);
+
+		for (;;) {
+			final PooledConnection conn = pool.lease(route, request.getTimeout());
+			final boolean reused = conn.requestCount > 0;
+			try {
+				conn.socket.setSoTimeout(Math.max(request.getTimeout(), 0));
+				conn.out.write(head);
+				if (withBody) {
+					request.writeBody(conn.out);
+				}
+				conn.out.flush();
+				conn.requestCount++;
+				return new Exchange(conn, HttpCodec.readResponseHead(conn.in));
+			} catch (IOException e) {
+				pool.release(conn, false);
+				// 新建的连接失败不重试，复用的连接逐个淘汰，不会无限重试
+				if (reused && isIdempotent(method)) {
+					logger.debug("Connection {} failed before response, retry: {}", conn, e.toString());
+					continue;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * 为响应主体划定边界，主体读完后归还连接
+	 * @param request 请求
+	 * @param method 请求方法
+	 * @param conn 连接
+	 * @param head 响应头
+	 * @return 主体流
+	 * @throws IOException 响应头非法
+	 */
+	private ResponseBodyStream bodyStream(HttpRequest request, Method method, PooledConnection conn, ResponseHead head) throws IOException {
+		try {
+			final BodyInputStream framed = HttpCodec.bodyStream(head, method, conn.in);
+			final boolean reusable = framed.isFramed() && head.isKeepAlive() && request.isKeepAlive();
+			return new ResponseBodyStream(pool, conn, framed, reusable);
+		} catch (IOException e) {
+			pool.release(conn, false);
+			throw e;
+		}
+	}
+
+	/**
+	 * 记录Set-Cookie到{@link CookiePool}
+	 * @param url URL
+	 * @param head 响应头
+	 */
+	private static void storeCookie(URL url, ResponseHead head) {
+		final String setCookie = head.lastHeader(Header.SET_COOKIE.toString());
+		if (StringUtil.isNotBlank(setCookie)) {
+			logger.debug("Set cookie: [{}]", setCookie);
+			CookiePool.put(url.getHost(), setCookie);
+		}
+	}
+
+	/**
+	 * @param method 请求方法
+	 * @return 是否幂等，可以安全重试
+	 */
+	private static boolean isIdempotent(Method method) {
+		return false == Method.POST.equals(method) && false == Method.CONNECT.equals(method);
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 已收到响应头的请求
+	 */
+	private static final class Exchange {
+		final PooledConnection conn;
+		final ResponseHead head;
+
+		Exchange(PooledConnection conn, ResponseHead head) {
+			this.conn = conn;
+			this.head = head;
+		}
+	}
+
+	/**
+	 * 响应主体流，读到主体结束或关闭时归还连接<br>
+	 * 未读完就关闭时，剩余不超过{@link #MAX_DRAIN_BYTES}则读掉后保留连接，否则关闭连接
+	 */
+	static final class ResponseBodyStream extends InputStream {
+		private final HttpConnectionPool pool;
+		private final PooledConnection conn;
+		private final BodyInputStream body;
+		private final boolean reusable;
+		private boolean released;
+
+		ResponseBodyStream(HttpConnectionPool pool, PooledConnection conn, BodyInputStream body, boolean reusable) {
+			this.pool = pool;
+			this.conn = conn;
+			this.body = body;
+			this.reusable = reusable;
+			if (body.isComplete()) {
+				release(reusable);
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (released) {
+				return -1;
+			}
+			try {
+				final int b = body.read();
+				if (b < 0) {
+					release(reusable);
+				}
+				return b;
+			} catch (IOException e) {
+				release(false);
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (released) {
+				return -1;
+			}
+			try {
+				final int n = body.read(b, off, len);
+				if (n < 0 || body.isComplete()) {
+					release(reusable);
+				}
+				return n;
+			} catch (IOException e) {
+				release(false);
+				throw e;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			return released ? 0 : body.available();
+		}
+
+		@Override
+		public void close() {
+			if (released) {
+				return;
+			}
+			if (reusable && drain()) {
+				release(true);
+			} else {
+				release(false);
+			}
+		}
+
+		/**
+		 * 读掉剩余的主体
+		 * @return 是否读完
+		 */
+		private boolean drain() {
+			final byte[] buffer = new byte[4096];
+			long drained = 0;
+			try {
+				while (drained < MAX_DRAIN_BYTES) {
+					final int n = body.read(buffer, 0, buffer.length);
+					if (n < 0) {
+						return true;
+					}
+					drained += n;
+				}
+				return body.isComplete();
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		private void release(boolean reuse) {
+			released = true;
+			pool.release(conn, reuse);
+		}
+	}
+}
@@ -0,0 +1,826 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.ConvertUtil;
+import com.jd.meeop.util.FileUtil;
+import com.jd.meeop.util.IoUtil;
+import com.jd.meeop.util.StringUtil;
+import com.jd.meeop.util.ThreadUtil;
+import com.jd.meeop.util.io.StreamProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分段并行下载
+ * @ClassName: RangeDownloader
+ * @Description:
+ * 服务器支持Range请求（响应206，或声明Accept-Ranges: bytes）时，把文件分成若干段并行下载，
+ * 每段通过{@link FileChannel}直接写到目标文件中的对应位置；否则退化为单个流顺序下载。<br>
+ * 下载进度记录在目标文件旁的进度文件（目标文件名加{@link #PROGRESS_FILE_SUFFIX}）中，中断后再次下载同一URL到同一文件时从断点继续，
+ * 远端文件的长度或ETag/Last-Modified变化时重新下载；下载完成后删除进度文件。每段失败时从已下载位置重试，
+ * 下载过程中远端文件变化（If-Range请求返回200）时中止所有分段，丢弃进度后重新下载一次。<br>
+ * 分段请求使用{@link HttpRequest}的流式响应，传输层默认为{@link HttpRequest#getDefaultTransport()}：
+ * <pre>
+ * RangeDownloader.create(url).setSegments(8).download(new File("/data/app.tar.gz"), progress);
+ * </pre>
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 18:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class RangeDownloader {
+	private final static Logger logger = LoggerFactory.getLogger(RangeDownloader.class);
+
+	/** 进度文件后缀 */
+	public static final String PROGRESS_FILE_SUFFIX = ".download";
+	/** 默认分段数 */
+	public static final int DEFAULT_SEGMENTS = 4;
+	/** 默认每段的最小字节数，文件较小时减少分段 */
+	public static final long DEFAULT_MIN_SEGMENT_SIZE = 1024 * 1024;
+	/** 默认每段的重试次数 */
+	public static final int DEFAULT_RETRIES = 3;
+
+	/** 读写缓冲区大小 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** 每段至少写入多少字节后落盘并记录进度 */
+	private static final long CHECKPOINT_BYTES = 1024 * 1024;
+
+	private final String url;
+	private int segments = DEFAULT_SEGMENTS;
+	private long minSegmentSize = DEFAULT_MIN_SEGMENT_SIZE;
+	private int retries = DEFAULT_RETRIES;
+	private int timeout = -1;
+	private HttpTransport transport;
+	private Executor executor;
+
+	/**
+	 * 创建下载器，使用默认设置
+	 * 
+	 * @param url 下载地址
+	 * @return RangeDownloader
+	 */
+	public static RangeDownloader create(String url) {
+		return new RangeDownloader(url);
+	}
+
+	/**
+	 * 构造
+	 * 
+	 * @param url 下载地址
+	 */
+	public RangeDownloader(String url) {
+		AssertUtil.isTrue(StringUtil.isNotBlank(url), "[url] is blank!");
+		this.url = url;
+	}
+
+	// ---------------------------------------------------------------- Setters start
+	/**
+	 * 设置分段数，默认{@link #DEFAULT_SEGMENTS}
+	 * 
+	 * @param segments 分段数
+	 * @return this
+	 */
+	public RangeDownloader setSegments(int segments) {
+		AssertUtil.isTrue(segments > 0, "segments must be positive, but was " + segments);
+		this.segments = segments;
+		return this;
+	}
+
+	/**
+	 * 设置每段的最小字节数，默认{@link #DEFAULT_MIN_SEGMENT_SIZE}
+	 * 
+	 * @param minSegmentSize 最小字节数
+	 * @return this
+	 */
+	public RangeDownloader setMinSegmentSize(long minSegmentSize) {
+		AssertUtil.isTrue(minSegmentSize > 0, "minSegmentSize must be positive, but was " + minSegmentSize);
+		this.minSegmentSize = minSegmentSize;
+		return this;
+	}
+
+	/**
+	 * 设置每段失败后的重试次数，默认{@link #DEFAULT_RETRIES}
+	 * 
+	 * @param retries 重试次数
+	 * @return this
+	 */
+	public RangeDownloader setRetries(int retries) {
+		AssertUtil.isTrue(retries >= 0, "retries must not be negative, but was " + retries);
+		this.retries = retries;
+		return this;
+	}
+
+	/**
+	 * 设置每个请求的超时
+	 * 
+	 * @param milliseconds 超时（毫秒），小于等于0表示不超时
+	 * @return this
+	 */
+	public RangeDownloader setTimeout(int milliseconds) {
+		this.timeout = milliseconds;
+		return this;
+	}
+
+	/**
+	 * 设置传输层
+	 * 
+	 * @param transport 传输层，为<code>null</code>时使用默认传输层
+	 * @return this
+	 */
+	public RangeDownloader setTransport(HttpTransport transport) {
+		this.transport = transport;
+		return this;
+	}
+
+	/**
+	 * 设置下载分段的执行器，第一段总在调用线程中下载
+	 * 
+	 * @param executor 执行器，为<code>null</code>时每次下载新建分段数大小的线程池，下载结束后关闭
+	 * @return this
+	 */
+	public RangeDownloader setExecutor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+	// ---------------------------------------------------------------- Setters end
+
+	/**
+	 * 下载到文件，支持断点续传
+	 * 
+	 * @param destFile 目标文件
+	 * @param streamProgress 进度条，可以为<code>null</code>，多个分段可能并发回调progress
+	 * @return 文件大小
+	 * @throws HttpException 下载失败，支持分段时进度文件保留以便续传
+	 */
+	public long download(File destFile, StreamProgress streamProgress) {
+		AssertUtil.isTrue(null != destFile, "[destFile] is null!");
+		final Progress progress = new Progress(streamProgress);
+		try {
+			return download(destFile, progress);
+		} catch (HttpException e) {
+			if (false == progress.isRemoteChanged()) {
+				throw e;
+			}
+			logger.debug("Remote file {} changed during download, restart", url);
+			return download(destFile, new Progress(streamProgress));
+		}
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	/**
+	 * 探测是否支持分段并下载一次
+	 * @param destFile 目标文件
+	 * @param progress 进度
+	 * @return 文件大小
+	 */
+	private long download(File destFile, Progress progress) {
+		HttpResponse response = request().header(Header.RANGE, "bytes=0-0").execute();
+		try {
+			final long total = rangedLength(response);
+			if (total >= 0) {
+				response.close();
+				return downloadRanges(total, validator(response), destFile, progress);
+			}
+			logger.debug("Range is not supported by {}, download in one stream", url);
+			if (response.getStatus() != HttpStatus.HTTP_OK) {
+				// 206但总长度未知，或空文件返回416，重新请求整个文件
+				response.close();
+				response = request().execute();
+				checkStatus(response);
+			}
+			return downloadStream(response, destFile, progress);
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * @return 关闭压缩的流式请求，Range针对的是未压缩的实体
+	 */
+	private HttpRequest request() {
+		return HttpRequest.get(url)
+				.header(Header.ACCEPT_ENCODING, "identity")
+				.timeout(timeout)
+				.transport(transport)
+				.stream(true);
+	}
+
+	/**
+	 * 根据探测响应判断是否可以分段
+	 * @param probe 请求第一个字节的响应
+	 * @return 文件总长度，不能分段返回-1
+	 */
+	private long rangedLength(HttpResponse probe) {
+		final int status = probe.getStatus();
+		if (status == HttpStatus.HTTP_REQUESTED_RANGE_NOT_SATISFIABLE) {
+			return -1;
+		}
+		checkStatus(probe);
+		if (status == HttpStatus.HTTP_PARTIAL) {
+			// bytes 0-0/1234，总长度未知时为*
+			final String contentRange = probe.header(Header.CONTENT_RANGE);
+			final int slash = null == contentRange ? -1 : contentRange.lastIndexOf('/');
+			return slash < 0 ? -1 : ConvertUtil.toLong(contentRange.substring(slash + 1).trim(), -1L);
+		}
+		if (status == HttpStatus.HTTP_OK && "bytes".equalsIgnoreCase(StringUtil.trim(probe.header(Header.ACCEPT_RANGES)))) {
+			return ConvertUtil.toLong(probe.header(Header.CONTENT_LENGTH), -1L);
+		}
+		return -1;
+	}
+
+	/**
+	 * @param response 响应
+	 * @throws HttpException 状态码表示失败
+	 */
+	private void checkStatus(HttpResponse response) {
+		if (response.getStatus() >= HttpStatus.HTTP_BAD_REQUEST) {
+			throw new HttpException("Download {} failed, status {}", url, response.getStatus());
+		}
+	}
+
+	/**
+	 * 断点续传时校验远端文件未变的标识，弱ETag不能用于If-Range
+	 * @param probe 探测响应
+	 * @return ETag或Last-Modified，都没有返回<code>null</code>
+	 */
+	private static String validator(HttpResponse probe) {
+		final String etag = probe.header(Header.ETAG);
+		if (StringUtil.isNotBlank(etag) && false == etag.startsWith("W/")) {
+			return etag;
+		}
+		final String lastModified = probe.header(Header.LAST_MODIFIED);
+		return StringUtil.isBlank(lastModified) ? null : lastModified;
+	}
+
+	/**
+	 * 不支持分段时顺序下载探测响应的主体
+	 */
+	private long downloadStream(HttpResponse response, File destFile, Progress progress) {
+		final File progressFile = progressFile(destFile);
+		InputStream in = null;
+		OutputStream out = null;
+		try {
+			if (progressFile.exists()) {
+				FileUtil.del(progressFile);
+			}
+			in = response.bodyStream();
+			out = FileUtil.getOutputStream(destFile);
+			return IoUtil.copy(in, out, BUFFER_SIZE, progress.streamProgress);
+		} catch (IOException e) {
+			throw new HttpException(e.getMessage(), e);
+		} finally {
+			IoUtil.close(in);
+			IoUtil.close(out);
+		}
+	}
+
+	/**
+	 * 分段并行下载
+	 */
+	private long downloadRanges(long total, String validator, File destFile, Progress progress) {
+		final File progressFile = progressFile(destFile);
+		RandomAccessFile data = null;
+		Journal journal = null;
+		ExecutorService ownExecutor = null;
+		try {
+			journal = Journal.load(progressFile, url, total, validator);
+			if (null == journal || destFile.length() != total) {
+				FileUtil.mkParentDirs(destFile);
+				journal = Journal.create(progressFile, url, total, validator, split(total));
+				data = new RandomAccessFile(destFile, "rw");
+				data.setLength(total);
+			} else {
+				logger.debug("Resume download {} from {}", url, progressFile);
+				data = new RandomAccessFile(destFile, "rw");
+			}
+			final FileChannel channel = data.getChannel();
+			progress.start(journal.downloaded());
+
+			Executor segmentExecutor = this.executor;
+			if (null == segmentExecutor && journal.segments.length > 1) {
+				ownExecutor = ThreadUtil.newExecutor(journal.segments.length - 1);
+				segmentExecutor = ownExecutor;
+			}
+			final List<Future<Void>> futures = new ArrayList<Future<Void>>(journal.segments.length);
+			final FutureTask<Void> first = new FutureTask<Void>(new SegmentTask(journal, 0, channel, validator, progress), null);
+			futures.add(first);
+			final List<FutureTask<Void>> rejected = new ArrayList<FutureTask<Void>>();
+			for (int i = 1; i < journal.segments.length; i++) {
+				final FutureTask<Void> task = new FutureTask<Void>(new SegmentTask(journal, i, channel, validator, progress), null);
+				futures.add(task);
+				try {
+					segmentExecutor.execute(task);
+				} catch (RuntimeException e) {
+					// 执行器拒绝（公共执行器会把拒绝包装为UtilException），在当前线程中下载
+					logger.debug("Segment {} of {} rejected by executor, download in caller: {}", i, url, e.toString());
+					rejected.add(task);
+				}
+			}
+			first.run();
+			for (FutureTask<Void> task : rejected) {
+				task.run();
+			}
+
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					progress.fail(e.getCause());
+				}
+			}
+			final Throwable error = progress.getError();
+			if (null != error) {
+				if (progress.isRemoteChanged()) {
+					// 已下载的数据属于旧文件，丢弃进度
+					journal.close();
+					journal = null;
+					FileUtil.del(progressFile);
+				}
+				throw error instanceof HttpException ? (HttpException) error : new HttpException(error.getMessage(), error);
+			}
+
+			journal.close();
+			journal = null;
+			FileUtil.del(progressFile);
+			progress.finish();
+			return total;
+		} catch (IOException e) {
+			throw new HttpException(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HttpException("Download interrupted: " + url, e);
+		} finally {
+			progress.abort();
+			if (null != ownExecutor) {
+				ownExecutor.shutdownNow();
+			}
+			// 异常退出时等已开始的分段停止后再关闭文件，未开始的不再下载
+			progress.awaitSegments();
+			if (null != journal) {
+				journal.close();
+			}
+			IoUtil.close(data);
+		}
+	}
+
+	/**
+	 * 按分段数和最小段大小切分
+	 * @param total 文件总长度
+	 * @return 每段的起始位置，最后加上总长度
+	 */
+	private long[] split(long total) {
+		final int count = (int) Math.max(1, Math.min(segments, total / minSegmentSize));
+		final long[] bounds = new long[count + 1];
+		for (int i = 0; i <= count; i++) {
+			bounds[i] = total * i / count;
+		}
+		return bounds;
+	}
+
+	/**
+	 * @param destFile 目标文件
+	 * @return 进度文件
+	 */
+	private static File progressFile(File destFile) {
+		return new File(destFile.getPath() + PROGRESS_FILE_SUFFIX);
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 下载一段，失败时从已下载位置重试
+	 */
+	private final class SegmentTask implements Runnable {
+		private final Journal journal;
+		private final int index;
+		private final FileChannel channel;
+		private final String validator;
+		private final Progress progress;
+
+		SegmentTask(Journal journal, int index, FileChannel channel, String validator, Progress progress) {
+			this.journal = journal;
+			this.index = index;
+			this.channel = channel;
+			this.validator = validator;
+			this.progress = progress;
+		}
+
+		@Override
+		public void run() {
+			if (false == progress.enter()) {
+				// 已中止，文件可能已关闭
+				return;
+			}
+			try {
+				for (int attempt = 0; ; attempt++) {
+					try {
+						fetch();
+						return;
+					} catch (IOException e) {
+						if (attempt >= retries || progress.isAborted()) {
+							final HttpException error = new HttpException(e, "Download segment {} of {} failed", index, url);
+							progress.fail(error);
+							throw error;
+						}
+						logger.debug("Retry segment {} of {} from {}: {}", index, url, journal.position(index), e.toString());
+					} catch (HttpException e) {
+						if (attempt >= retries || progress.isAborted()) {
+							progress.fail(e);
+							throw e;
+						}
+						logger.debug("Retry segment {} of {} from {}: {}", index, url, journal.position(index), e.toString());
+					}
+				}
+			} finally {
+				progress.exit();
+			}
+		}
+
+		private void fetch() throws IOException {
+			long position = journal.position(index);
+			final long end = journal.segments[index].end;
+			if (position >= end) {
+				return;
+			}
+			final HttpRequest request = request().header(Header.RANGE, "bytes=" + position + "-" + (end - 1));
+			if (null != validator) {
+				request.header(Header.IF_RANGE, validator);
+			}
+			final HttpResponse response = request.execute();
+			try {
+				if (response.getStatus() != HttpStatus.HTTP_PARTIAL) {
+					final HttpException error = new HttpException("Range request of {} returned status {}, remote file may have changed", url, response.getStatus());
+					if (null != validator && response.getStatus() == HttpStatus.HTTP_OK) {
+						// If-Range不匹配时返回200和整个文件，说明远端文件已变，其它分段也不必继续
+						progress.remoteChanged(error);
+					}
+					throw error;
+				}
+				final String contentRange = response.header(Header.CONTENT_RANGE);
+				if (null == contentRange || false == contentRange.trim().startsWith("bytes " + position + "-")) {
+					throw new HttpException("Unexpected Content-Range [{}] for position {}", contentRange, position);
+				}
+				final InputStream in = response.bodyStream();
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				long checkpoint = position;
+				while (position < end) {
+					if (progress.isAborted()) {
+						throw new IOException("Download aborted");
+					}
+					final int n = in.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+					if (n < 0) {
+						throw new EOFException("Segment " + index + " ended at " + position + ", expected " + end);
+					}
+					final ByteBuffer src = ByteBuffer.wrap(buffer, 0, n);
+					while (src.hasRemaining()) {
+						position += channel.write(src, position);
+					}
+					if (position - checkpoint >= CHECKPOINT_BYTES || position >= end) {
+						// 数据落盘后再记录进度，断电后进度不会超过实际写入的数据
+						channel.force(false);
+						journal.update(index, position);
+						checkpoint = position;
+					}
+					progress.add(n);
+				}
+			} finally {
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * 分段
+	 */
+	private static final class Segment {
+		/** 起始位置（含） */
+		final long start;
+		/** 结束位置（不含） */
+		final long end;
+		/** 下一个要下载的位置 */
+		volatile long position;
+
+		Segment(long start, long end, long position) {
+			this.start = start;
+			this.end = end;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * 进度文件：头部记录URL、总长度和校验标识，之后每段三个long（起始、结束、已下载位置），
+	 * 已下载位置在每次写入数据后原地更新
+	 */
+	private static final class Journal {
+		private static final int MAGIC = 0x4D44524E;
+		private static final int VERSION = 1;
+
+		final Segment[] segments;
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		/** 第一段记录在文件中的偏移 */
+		private final long segmentsOffset;
+
+		private Journal(RandomAccessFile file, long segmentsOffset, Segment[] segments) {
+			this.file = file;
+			this.channel = file.getChannel();
+			this.segmentsOffset = segmentsOffset;
+			this.segments = segments;
+		}
+
+		/**
+		 * 新建进度文件，覆盖已有的
+		 */
+		static Journal create(File progressFile, String url, long total, String validator, long[] bounds) throws IOException {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bytes);
+			writeHeader(out, url, total, validator);
+			final long segmentsOffset = out.size() + 4;
+			final Segment[] segments = new Segment[bounds.length - 1];
+			out.writeInt(segments.length);
+			for (int i = 0; i < segments.length; i++) {
+				segments[i] = new Segment(bounds[i], bounds[i + 1], bounds[i]);
+				out.writeLong(bounds[i]);
+				out.writeLong(bounds[i + 1]);
+				out.writeLong(bounds[i]);
+			}
+			out.flush();
+
+			final RandomAccessFile file = new RandomAccessFile(progressFile, "rw");
+			try {
+				file.setLength(0);
+				file.write(bytes.toByteArray());
+			} catch (IOException e) {
+				IoUtil.close(file);
+				throw e;
+			}
+			return new Journal(file, segmentsOffset, segments);
+		}
+
+		/**
+		 * 读取进度文件，URL、总长度或校验标识不一致时视为不存在
+		 * @return Journal，不存在或不可用返回<code>null</code>
+		 */
+		static Journal load(File progressFile, String url, long total, String validator) {
+			if (false == progressFile.isFile()) {
+				return null;
+			}
+			final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			final Segment[] segments;
+			DataInputStream in = null;
+			try {
+				writeHeader(new DataOutputStream(expected), url, total, validator);
+				final byte[] header = expected.toByteArray();
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(progressFile)));
+				final byte[] actual = new byte[header.length];
+				in.readFully(actual);
+				if (false == Arrays.equals(header, actual)) {
+					logger.debug("Progress file {} does not match {}, restart", progressFile, url);
+					return null;
+				}
+				segments = new Segment[in.readInt()];
+				long expectedStart = 0;
+				for (int i = 0; i < segments.length; i++) {
+					final long start = in.readLong();
+					final long end = in.readLong();
+					final long position = in.readLong();
+					if (start != expectedStart || end < start || position < start || position > end) {
+						return null;
+					}
+					segments[i] = new Segment(start, end, position);
+					expectedStart = end;
+				}
+				if (expectedStart != total || segments.length == 0) {
+					return null;
+				}
+			} catch (IOException e) {
+				logger.debug("Progress file {} is broken, restart: {}", progressFile, e.toString());
+				return null;
+			} finally {
+				IoUtil.close(in);
+			}
+
+			try {
+				return new Journal(new RandomAccessFile(progressFile, "rw"), expected.size() + 4, segments);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		private static void writeHeader(DataOutputStream out, String url, long total, String validator) throws IOException {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(url);
+			out.writeLong(total);
+			out.writeUTF(null == validator ? "" : validator);
+		}
+
+		/**
+		 * @return 已下载的字节数
+		 */
+		long downloaded() {
+			long downloaded = 0;
+			for (Segment segment : segments) {
+				downloaded += segment.position - segment.start;
+			}
+			return downloaded;
+		}
+
+		long position(int index) {
+			return segments[index].position;
+		}
+
+		/**
+		 * 记录一段的已下载位置，数据已写入目标文件并落盘后调用
+		 */
+		void update(int index, long position) throws IOException {
+			segments[index].position = position;
+			final ByteBuffer buffer = ByteBuffer.allocate(8);
+			buffer.putLong(0, position);
+			final long offset = segmentsOffset + index * 24L + 16;
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, offset + buffer.position());
+			}
+		}
+
+		void close() {
+			IoUtil.close(file);
+		}
+	}
+
+	/**
+	 * 汇总各段的进度并回调{@link StreamProgress}，回调在锁外进行，可能并发
+	 */
+	private static final class Progress {
+		final StreamProgress streamProgress;
+		private final AtomicLong downloaded = new AtomicLong();
+		/** 已报告的最大字节数，较晚完成的累加不回退进度 */
+		private final AtomicLong reported = new AtomicLong();
+		private volatile boolean aborted;
+		/** 正在下载的分段数 */
+		private int running;
+		/** 第一个导致中止的错误，其它分段随后的失败只是被中止 */
+		private volatile Throwable error;
+		/** 下载过程中远端文件是否已变化 */
+		private volatile boolean remoteChanged;
+
+		Progress(StreamProgress streamProgress) {
+			this.streamProgress = streamProgress;
+		}
+
+		/**
+		 * 在分段开始前调用
+		 * @param resumed 续传时已下载的字节数
+		 */
+		void start(long resumed) {
+			downloaded.set(resumed);
+			reported.set(resumed);
+			if (null != streamProgress) {
+				streamProgress.start();
+				if (resumed > 0) {
+					streamProgress.progress(resumed);
+				}
+			}
+		}
+
+		void add(long n) {
+			final long current = downloaded.addAndGet(n);
+			if (null == streamProgress) {
+				return;
+			}
+			for (;;) {
+				final long last = reported.get();
+				if (current <= last) {
+					// 其它分段已报告了更大的值
+					return;
+				}
+				if (reported.compareAndSet(last, current)) {
+					break;
+				}
+			}
+			streamProgress.progress(current);
+		}
+
+		/**
+		 * 在所有分段结束后调用
+		 */
+		void finish() {
+			if (null != streamProgress) {
+				streamProgress.finish();
+			}
+		}
+
+		/**
+		 * 分段开始下载
+		 * @return 已中止时返回<code>false</code>，分段不应再访问文件
+		 */
+		synchronized boolean enter() {
+			if (aborted) {
+				return false;
+			}
+			running++;
+			return true;
+		}
+
+		/**
+		 * 分段结束
+		 */
+		synchronized void exit() {
+			if (--running == 0) {
+				notifyAll();
+			}
+		}
+
+		/**
+		 * 等待已开始的分段结束，被中断时保留中断状态并返回
+		 */
+		synchronized void awaitSegments() {
+			while (running > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * 让其它分段尽快停止，未开始的分段不再开始
+		 */
+		synchronized void abort() {
+			aborted = true;
+		}
+
+		/**
+		 * 记录失败并中止
+		 * @param e 错误
+		 */
+		synchronized void fail(Throwable e) {
+			if (null == error) {
+				error = e;
+			}
+			aborted = true;
+		}
+
+		/**
+		 * 远端文件已变化，记录失败并中止
+		 * @param e 错误
+		 */
+		synchronized void remoteChanged(Throwable e) {
+			remoteChanged = true;
+			fail(e);
+		}
+
+		boolean isRemoteChanged() {
+			return remoteChanged;
+		}
+
+		Throwable getError() {
+			return error;
+		}
+
+		boolean isAborted() {
+			return aborted;
+		}
+	}
+}
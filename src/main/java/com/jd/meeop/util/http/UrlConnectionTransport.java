@@ -0,0 +1,72 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 基于HttpURLConnection的传输层
+ * @ClassName: UrlConnectionTransport
+ * @Description:
+ * 每次请求新建{@link HttpConnection}，连接复用交给JDK自身的keep-alive缓存，无法控制连接数和空闲时间。
+ * 这是{@link HttpRequest}的默认传输层
+ * @author: 冷水(Toby)
+ * @date: 26-10-21 09:40
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+	/** 无状态，可共享 */
+	public static final UrlConnectionTransport INSTANCE = new UrlConnectionTransport();
+
+	@Override
+	public HttpResponse execute(HttpRequest request) throws IOException {
+		final HttpConnection httpConnection = HttpConnection
+				.create(request.getUrl(), request.getMethod(), request.getHostnameVerifier(), request.getSSLSocketFactory(), request.getTimeout())
+				.header(request.headers(), true); // 覆盖默认Header
+		//是否禁用缓存
+		if (request.isDisableCache()) {
+			httpConnection.disableCache();
+		}
+
+		// 发送请求
+		if (request.hasBody()) {
+			final String contentType = request.bodyContentType();
+			if (null != contentType) {
+				httpConnection.header(Header.CONTENT_TYPE, contentType, true);
+			}
+			final OutputStream out = httpConnection.getOutputStream();
+			try {
+				request.writeBody(out);
+			} finally {
+				out.close();
+			}
+		} else {
+			httpConnection.connect();
+		}
+
+		// 获取响应，流式响应关闭主体流时连接交还JDK的keep-alive缓存，不能断开
+		if (request.isStream()) {
+			return HttpResponse.streamResponse(httpConnection);
+		}
+		final HttpResponse httpResponse = HttpResponse.readResponse(httpConnection);
+		httpConnection.disconnect();
+		return httpResponse;
+	}
+}
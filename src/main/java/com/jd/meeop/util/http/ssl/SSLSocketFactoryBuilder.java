@@ -125,8 +125,18 @@ public class SSLSocketFactoryBuilder{
 	 * @throws KeyManagementException
 	 */
 	public SSLSocketFactory build() throws NoSuchAlgorithmException, KeyManagementException{
+		return buildContext().getSocketFactory();
+	}
+	
+	/**
+	 * 构建SSLContext，用于需要SSLEngine的非阻塞连接
+	 * @return SSLContext
+	 * @throws NoSuchAlgorithmException
+	 * @throws KeyManagementException
+	 */
+	public SSLContext buildContext() throws NoSuchAlgorithmException, KeyManagementException{
 		SSLContext sslContext = SSLContext.getInstance(protocol);
 		sslContext.init(this.keyManagers, this.trustManagers, this.secureRandom);
-		return sslContext.getSocketFactory();
+		return sslContext;
 	}
 }
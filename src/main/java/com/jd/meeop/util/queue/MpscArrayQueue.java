@@ -0,0 +1,84 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.queue;
+
+/**
+ * 多生产者单消费者有界队列
+ * @ClassName: MpscArrayQueue
+ * @Description:
+ * 生产者通过CAS tail领取位置后写入元素，消费者按位置读取：位置已领取但元素尚未写入时消费者等待该生产者完成。
+ * 生产者共享一个缓存的可写上限（head + 容量），只在达到上限时才读取head，减少对消费者缓存行的访问。
+ * {@link #offer(Object)}可在任意线程中调用，{@link #poll()}只能在一个消费者线程中调用
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 16:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class MpscArrayQueue<E> extends RingBufferQueue<E> {
+
+	/** 生产者可写的上限（不含），即已知的head + 容量 */
+	private final Sequence producerLimit;
+
+	/**
+	 * 构造
+	 * @param capacity 容量，向上取整为2的幂
+	 */
+	public MpscArrayQueue(int capacity) {
+		super(capacity);
+		this.producerLimit = new Sequence(this.capacity);
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (null == e) {
+			throw new NullPointerException();
+		}
+		long currentTail;
+		do {
+			currentTail = tail.get();
+			long limit = producerLimit.get();
+			if (currentTail >= limit) {
+				limit = head.get() + capacity;
+				if (currentTail >= limit) {
+					return false;
+				}
+				producerLimit.set(limit);
+			}
+		} while (false == tail.compareAndSet(currentTail, currentTail + 1));
+		buffer.lazySet((int) (currentTail & mask), e);
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		final long currentHead = head.get();
+		final int index = (int) (currentHead & mask);
+		E e = buffer.get(index);
+		if (null == e) {
+			if (currentHead >= tail.get()) {
+				return null;
+			}
+			// 位置已被领取，等待生产者写入
+			do {
+				e = buffer.get(index);
+			} while (null == e);
+		}
+		buffer.lazySet(index, null);
+		head.lazySet(currentHead + 1);
+		return e;
+	}
+}
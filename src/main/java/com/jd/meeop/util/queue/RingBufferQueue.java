@@ -0,0 +1,141 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.queue;
+
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界环形队列
+ * @ClassName: RingBufferQueue
+ * @Description:
+ * 容量向上取整为2的幂，下标由序号与掩码计算。生产者序号tail和消费者序号head为独立填充的{@link Sequence}。
+ * 不允许null元素；只有一个消费者，{@link #poll()}、{@link #peek()}、{@link #drainTo(Collection, int)}只能在消费者线程中调用。
+ * 迭代器为弱一致的快照，可在任意线程中使用，不支持remove
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 16:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public abstract class RingBufferQueue<E> extends AbstractQueue<E> {
+
+	protected final int capacity;
+	protected final int mask;
+	protected final AtomicReferenceArray<E> buffer;
+	/** 下一个写入位置 */
+	protected final Sequence tail = new Sequence();
+	/** 下一个读取位置 */
+	protected final Sequence head = new Sequence();
+
+	/**
+	 * 构造
+	 * @param capacity 容量，向上取整为2的幂
+	 */
+	protected RingBufferQueue(int capacity) {
+		AssertUtil.isTrue(capacity > 0 && capacity <= (1 << 30), "Capacity must be in (0, 2^30]: " + capacity);
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = size - 1;
+		this.buffer = new AtomicReferenceArray<E>(size);
+	}
+
+	/**
+	 * @return 容量
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	@Override
+	public int size() {
+		// 先读head，保证size不为负
+		final long currentHead = head.get();
+		final long currentTail = tail.get();
+		return (int) Math.max(0, Math.min(capacity, currentTail - currentHead));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return head.get() >= tail.get();
+	}
+
+	@Override
+	public E peek() {
+		return buffer.get((int) (head.get() & mask));
+	}
+
+	/**
+	 * 批量取出元素，只能在消费者线程中调用
+	 * @param c 存放取出的元素
+	 * @param maxElements 最多取出的元素数
+	 * @return 取出的元素数
+	 */
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		int count = 0;
+		E e;
+		while (count < maxElements && null != (e = poll())) {
+			c.add(e);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * 取出全部元素，只能在消费者线程中调用
+	 * @param c 存放取出的元素
+	 * @return 取出的元素数
+	 */
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * 弱一致的快照迭代器：包含创建时队列中已写入的元素，按队列顺序排列，之后的入队和出队不影响迭代，
+	 * 创建过程中被取走的元素可能包含也可能不包含。不支持remove
+	 * @return 迭代器
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		final long currentHead = head.get();
+		final long currentTail = tail.get();
+		final List<E> snapshot = new ArrayList<E>((int) Math.max(0, Math.min(capacity, currentTail - currentHead)));
+		for (long sequence = currentHead; sequence < currentTail; sequence++) {
+			final E e = buffer.get((int) (sequence & mask));
+			// 位置为空：已被取走或生产者尚未写入；读取后head已越过该位置：读到的可能是下一圈的新元素
+			if (null == e || head.get() > sequence) {
+				continue;
+			}
+			snapshot.add(e);
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[capacity=" + capacity + ", size=" + size() + "]";
+	}
+}
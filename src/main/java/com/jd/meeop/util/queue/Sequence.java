@@ -0,0 +1,103 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.queue;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 缓存行填充的序号
+ * @ClassName: Sequence
+ * @Description:
+ * 值的前后各填充56字节，生产者和消费者的序号分别位于不同的缓存行，避免伪共享。
+ * HotSpot按类层次分组排列字段，所以填充放在父类和子类中，而不是与值放在同一个类里
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 16:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public final class Sequence extends SequenceValue {
+	private static final AtomicLongFieldUpdater<SequenceValue> UPDATER = AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+	protected long p9, p10, p11, p12, p13, p14, p15;
+
+	/**
+	 * 构造，初始值0
+	 */
+	public Sequence() {
+		this(0);
+	}
+
+	/**
+	 * 构造
+	 * @param initialValue 初始值
+	 */
+	public Sequence(long initialValue) {
+		this.value = initialValue;
+	}
+
+	/**
+	 * @return 当前值（volatile读）
+	 */
+	public long get() {
+		return value;
+	}
+
+	/**
+	 * volatile写
+	 * @param value 新值
+	 */
+	public void set(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * 有序写：保证之前的写先于此写可见，但不等待写入对其他线程可见，比volatile写快，适合单写者
+	 * @param value 新值
+	 */
+	public void lazySet(long value) {
+		UPDATER.lazySet(this, value);
+	}
+
+	/**
+	 * CAS
+	 * @param expect 期望值
+	 * @param update 新值
+	 * @return 是否成功
+	 */
+	public boolean compareAndSet(long expect, long update) {
+		return UPDATER.compareAndSet(this, expect, update);
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+}
+
+/**
+ * 左侧填充
+ */
+abstract class SequenceLhsPadding {
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * 值
+ */
+abstract class SequenceValue extends SequenceLhsPadding {
+	protected volatile long value;
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.queue;
+
+/**
+ * 单生产者单消费者有界队列
+ * @ClassName: SpscArrayQueue
+ * @Description:
+ * 无锁、无CAS：生产者与消费者各自只写自己的序号，使用有序写发布；各自缓存对方的序号，只在看似满（空）时才重新读取。
+ * {@link #offer(Object)}只能在一个生产者线程中调用，{@link #poll()}只能在一个消费者线程中调用
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 16:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class SpscArrayQueue<E> extends RingBufferQueue<E> {
+
+	/** 生产者缓存的head */
+	private long headCache;
+	/** 消费者缓存的tail */
+	private long tailCache;
+
+	/**
+	 * 构造
+	 * @param capacity 容量，向上取整为2的幂
+	 */
+	public SpscArrayQueue(int capacity) {
+		super(capacity);
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (null == e) {
+			throw new NullPointerException();
+		}
+		final long currentTail = tail.get();
+		if (currentTail - headCache >= capacity) {
+			headCache = head.get();
+			if (currentTail - headCache >= capacity) {
+				return false;
+			}
+		}
+		buffer.lazySet((int) (currentTail & mask), e);
+		tail.lazySet(currentTail + 1);
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		final long currentHead = head.get();
+		if (currentHead >= tailCache) {
+			tailCache = tail.get();
+			if (currentHead >= tailCache) {
+				return null;
+			}
+		}
+		final int index = (int) (currentHead & mask);
+		final E e = buffer.get(index);
+		buffer.lazySet(index, null);
+		head.lazySet(currentHead + 1);
+		return e;
+	}
+}
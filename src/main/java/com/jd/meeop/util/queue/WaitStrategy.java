@@ -0,0 +1,91 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 等待策略
+ * @ClassName: WaitStrategy
+ * @Description:
+ * 消费者无数据（或生产者队列满）时的等待方式，从低延迟高CPU到高延迟低CPU：
+ * BUSY_SPIN忙等，YIELDING自旋后让出CPU，SLEEPING自旋、让出后短暂休眠，PARKING自旋后挂起直到被生产者唤醒
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 16:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public enum WaitStrategy {
+	/** 忙等，延迟最低，独占一个CPU */
+	BUSY_SPIN {
+		@Override
+		public int idle(int idleCount) {
+			return idleCount + 1;
+		}
+	},
+	/** 自旋后让出CPU */
+	YIELDING {
+		@Override
+		public int idle(int idleCount) {
+			if (idleCount >= SPIN_TRIES) {
+				Thread.yield();
+			}
+			return idleCount + 1;
+		}
+	},
+	/** 自旋、让出后每次休眠{@link #SLEEP_NANOS}纳秒 */
+	SLEEPING {
+		@Override
+		public int idle(int idleCount) {
+			if (idleCount >= SPIN_TRIES + YIELD_TRIES) {
+				LockSupport.parkNanos(SLEEP_NANOS);
+			} else if (idleCount >= SPIN_TRIES) {
+				Thread.yield();
+			}
+			return idleCount + 1;
+		}
+	},
+	/**
+	 * 自旋、让出后挂起，需要生产者唤醒：{@link #idle(int)}只负责自旋和让出阶段，返回值超过{@link #PARK_THRESHOLD}后由使用者挂起线程
+	 */
+	PARKING {
+		@Override
+		public int idle(int idleCount) {
+			if (idleCount >= SPIN_TRIES) {
+				Thread.yield();
+			}
+			return idleCount + 1;
+		}
+	};
+
+	/** 自旋次数 */
+	static final int SPIN_TRIES = 100;
+	/** 让出次数 */
+	static final int YIELD_TRIES = 100;
+	/** SLEEPING每次休眠的纳秒数 */
+	public static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	/** PARKING在此空闲次数后挂起 */
+	public static final int PARK_THRESHOLD = SPIN_TRIES + YIELD_TRIES;
+
+	/**
+	 * 空闲一次
+	 * @param idleCount 连续空闲次数，有数据后应清零
+	 * @return 新的连续空闲次数
+	 */
+	public abstract int idle(int idleCount);
+}
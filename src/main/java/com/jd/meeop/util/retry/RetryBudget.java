@@ -0,0 +1,164 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.retry;
+
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重试预算
+ * @ClassName: RetryBudget
+ * @Description:
+ * 令牌桶：每次首次调用存入ratio个令牌，每次重试取出一个令牌，另外每秒补充minRetriesPerSecond个令牌保证低流量时也能重试。
+ * 下游故障时所有调用都失败，重试总量被限制在调用量的ratio倍以内，避免重试放大故障。<br>
+ * 同一下游的调用应共享同一个预算
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 09:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class RetryBudget {
+	/** 令牌的定点精度，1个令牌 = 1000 */
+	private static final long SCALE = 1000L;
+	/** 每秒补充令牌数的上限，超过后补充1个令牌的时间间隔不足1纳秒 */
+	private static final int MAX_RETRIES_PER_SECOND = (int) (TimeUnit.SECONDS.toNanos(1) / SCALE);
+
+	private static final RetryBudget DEFAULT = new RetryBudget(0.2, 10);
+
+	private final long depositPerCall;
+	private final long refillPerSecond;
+	private final long maxBalance;
+	private final AtomicLong balance;
+	private final AtomicLong lastRefillNanos;
+	private final AtomicLong withdrawn = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * 构造，令牌上限为每秒补充数的10倍，且不少于10个
+	 * @param ratio 每次调用存入的令牌数，即允许的重试与调用之比，0~1
+	 * @param minRetriesPerSecond 每秒补充的令牌数，不超过1000000
+	 */
+	public RetryBudget(double ratio, int minRetriesPerSecond) {
+		this(ratio, minRetriesPerSecond, Math.max(10, minRetriesPerSecond * 10));
+	}
+
+	/**
+	 * 构造
+	 * @param ratio 每次调用存入的令牌数，即允许的重试与调用之比，0~1
+	 * @param minRetriesPerSecond 每秒补充的令牌数，不超过1000000
+	 * @param maxRetries 令牌上限，即允许的突发重试数
+	 */
+	public RetryBudget(double ratio, int minRetriesPerSecond, int maxRetries) {
+		AssertUtil.isTrue(ratio >= 0 && ratio <= 1, "Retry ratio must be in [0, 1]: " + ratio);
+		AssertUtil.isTrue(minRetriesPerSecond >= 0 && minRetriesPerSecond <= MAX_RETRIES_PER_SECOND,
+				"Min retries per second must be in [0, " + MAX_RETRIES_PER_SECOND + "]: " + minRetriesPerSecond);
+		AssertUtil.isTrue(maxRetries > 0, "Max retries must be positive: " + maxRetries);
+		this.depositPerCall = Math.round(ratio * SCALE);
+		this.refillPerSecond = minRetriesPerSecond * SCALE;
+		this.maxBalance = maxRetries * SCALE;
+		this.balance = new AtomicLong(Math.min(this.maxBalance, this.refillPerSecond));
+		this.lastRefillNanos = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * @return 默认的共享预算：重试不超过调用的20%，每秒至少允许10次重试
+	 */
+	public static RetryBudget getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * 记录一次调用（首次尝试），存入令牌
+	 */
+	public void deposit() {
+		add(depositPerCall);
+	}
+
+	/**
+	 * 尝试为一次重试取出令牌
+	 * @return 是否允许重试
+	 */
+	public boolean tryWithdraw() {
+		refill();
+		long current;
+		do {
+			current = balance.get();
+			if (current < SCALE) {
+				rejected.incrementAndGet();
+				return false;
+			}
+		} while (false == balance.compareAndSet(current, current - SCALE));
+		withdrawn.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @return 当前可用的重试次数
+	 */
+	public long getBalance() {
+		refill();
+		return balance.get() / SCALE;
+	}
+
+	/**
+	 * @return 已允许的重试次数
+	 */
+	public long getWithdrawnCount() {
+		return withdrawn.get();
+	}
+
+	/**
+	 * @return 因预算不足被拒绝的重试次数
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * 按流逝的时间补充令牌，只有抢到时间段的线程补充
+	 */
+	private void refill() {
+		if (0 == refillPerSecond) {
+			return;
+		}
+		final long now = System.nanoTime();
+		final long last = lastRefillNanos.get();
+		final long elapsed = now - last;
+		// 不足1个令牌的时间段留给下次
+		final long amount = elapsed / (TimeUnit.SECONDS.toNanos(1) / refillPerSecond);
+		if (amount > 0 && lastRefillNanos.compareAndSet(last, now)) {
+			add(amount);
+		}
+	}
+
+	private void add(long amount) {
+		long current;
+		do {
+			current = balance.get();
+			if (current >= maxBalance) {
+				return;
+			}
+		} while (false == balance.compareAndSet(current, Math.min(maxBalance, current + amount)));
+	}
+
+	@Override
+	public String toString() {
+		return "RetryBudget[balance=" + getBalance() + ", withdrawn=" + withdrawn.get() + ", rejected=" + rejected.get() + "]";
+	}
+}
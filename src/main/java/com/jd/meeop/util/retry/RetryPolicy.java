@@ -0,0 +1,224 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.retry;
+
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.thread.HashedWheelTimer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重试策略
+ * @ClassName: RetryPolicy
+ * @Description:
+ * 最多尝试次数、指数退避与随机抖动、总时限、可重试的异常类型和重试预算。<br>
+ * 第n次重试前的等待时间为 min(maxDelay, initialDelay * multiplier^(n-1))，再随机减少其中jitter的比例：
+ * jitter为0时不抖动，为1时在[0, 等待时间]内均匀分布（full jitter）。<br>
+ * 通过{@link #create()}创建后链式设置，设置完成后可在多个线程中共享
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 09:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class RetryPolicy {
+
+	private int maxAttempts = 3;
+	private long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(50);
+	private long maxDelayNanos = TimeUnit.SECONDS.toNanos(5);
+	private double multiplier = 2.0;
+	private double jitter = 0.5;
+	private long timeoutNanos;
+	private List<Class<? extends Throwable>> retryOn = Collections.emptyList();
+	private RetryBudget budget = RetryBudget.getDefault();
+	private Executor executor;
+	private HashedWheelTimer timer;
+
+	/**
+	 * 创建默认策略：最多尝试3次，首次等待50毫秒，翻倍退避，最长5秒，抖动50%，不限总时长，重试所有异常，使用共享的默认预算
+	 * @return RetryPolicy
+	 */
+	public static RetryPolicy create() {
+		return new RetryPolicy();
+	}
+
+	/**
+	 * @param maxAttempts 最多尝试次数（含首次），大于0
+	 * @return this
+	 */
+	public RetryPolicy setMaxAttempts(int maxAttempts) {
+		AssertUtil.isTrue(maxAttempts > 0, "Max attempts must be positive: " + maxAttempts);
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	/**
+	 * 设置退避
+	 * @param initialDelay 首次重试前的等待时间
+	 * @param maxDelay 最长等待时间
+	 * @param unit 时间单位
+	 * @return this
+	 */
+	public RetryPolicy setBackoff(long initialDelay, long maxDelay, TimeUnit unit) {
+		AssertUtil.isTrue(initialDelay >= 0 && maxDelay >= initialDelay, "Invalid backoff: " + initialDelay + " ~ " + maxDelay);
+		this.initialDelayNanos = unit.toNanos(initialDelay);
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		return this;
+	}
+
+	/**
+	 * @param multiplier 退避倍数，不小于1，为1时固定间隔
+	 * @return this
+	 */
+	public RetryPolicy setMultiplier(double multiplier) {
+		AssertUtil.isTrue(multiplier >= 1, "Multiplier must not be less than 1: " + multiplier);
+		this.multiplier = multiplier;
+		return this;
+	}
+
+	/**
+	 * @param jitter 抖动比例，0~1
+	 * @return this
+	 */
+	public RetryPolicy setJitter(double jitter) {
+		AssertUtil.isTrue(jitter >= 0 && jitter <= 1, "Jitter must be in [0, 1]: " + jitter);
+		this.jitter = jitter;
+		return this;
+	}
+
+	/**
+	 * 设置总时限，从首次尝试开始计算，超过后不再重试，异步重试的结果以{@link java.util.concurrent.TimeoutException}失败
+	 * @param timeout 总时限，小于等于0表示不限
+	 * @param unit 时间单位
+	 * @return this
+	 */
+	public RetryPolicy setTimeout(long timeout, TimeUnit unit) {
+		this.timeoutNanos = timeout > 0 ? unit.toNanos(timeout) : 0;
+		return this;
+	}
+
+	/**
+	 * @param retryOn 可重试的异常类型（含子类），为空表示所有异常都重试
+	 * @return this
+	 */
+	public RetryPolicy setRetryOn(List<Class<? extends Throwable>> retryOn) {
+		this.retryOn = null == retryOn ? Collections.<Class<? extends Throwable>>emptyList()
+				: new ArrayList<Class<? extends Throwable>>(retryOn);
+		return this;
+	}
+
+	/**
+	 * @param budget 重试预算，同一下游应共享，为null表示不限
+	 * @return this
+	 */
+	public RetryPolicy setBudget(RetryBudget budget) {
+		this.budget = budget;
+		return this;
+	}
+
+	/**
+	 * @param executor 执行每次尝试的执行器，为null时使用公共执行器
+	 * @return this
+	 */
+	public RetryPolicy setExecutor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * @param timer 调度重试等待的定时器，为null时使用在时钟线程中直接提交重试的专用定时器
+	 * @return this
+	 */
+	public RetryPolicy setTimer(HashedWheelTimer timer) {
+		this.timer = timer;
+		return this;
+	}
+
+	/**
+	 * @return 最多尝试次数（含首次）
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @return 总时限，纳秒，0表示不限
+	 */
+	public long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	/**
+	 * @return 重试预算，可能为null
+	 */
+	public RetryBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return 执行器，可能为null
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @return 定时器，可能为null
+	 */
+	public HashedWheelTimer getTimer() {
+		return timer;
+	}
+
+	/**
+	 * @param e 异常
+	 * @return 该异常是否可重试
+	 */
+	public boolean isRetryable(Throwable e) {
+		if (retryOn.isEmpty()) {
+			return e instanceof Exception;
+		}
+		for (Class<? extends Throwable> cls : retryOn) {
+			if (cls.isInstance(e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 计算重试前的等待时间
+	 * @param retry 第几次重试，从1开始
+	 * @return 等待时间，纳秒
+	 */
+	public long delayNanos(int retry) {
+		double delay = initialDelayNanos;
+		for (int i = 1; i < retry && delay < maxDelayNanos; i++) {
+			delay *= multiplier;
+		}
+		final long capped = (long) Math.min(delay, maxDelayNanos);
+		if (0 == jitter || 0 == capped) {
+			return capped;
+		}
+		final Random random = ThreadLocalRandom.current();
+		return capped - (long) (capped * jitter * random.nextDouble());
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.sketch;
+
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.HashUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min频率估计
+ * @ClassName: CountMinSketch
+ * @Description:
+ * 以depth×width个计数器估计元素出现次数，估计值不小于真实值，
+ * 以1-delta的概率不超过真实值加epsilon×总次数。<br>
+ * 每个元素计算一次64位hash，用双重hash派生每一行的列位置；计数器原子更新，可多线程共享，
+ * 也可各自计数后通过{@link #merge(CountMinSketch)}合并
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 16:50
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class CountMinSketch {
+
+	/** 流格式标识："CMS1" */
+	private static final int MAGIC = 0x434D5331;
+
+	private final int depth;
+	private final int width;
+	private final int mask;
+	private final AtomicLongArray table;
+	private final AtomicLong totalCount = new AtomicLong();
+
+	/**
+	 * 构造
+	 * @param depth 行数（hash函数个数）
+	 * @param width 每行计数器个数，向上取整到2的幂
+	 */
+	public CountMinSketch(int depth, int width) {
+		AssertUtil.isTrue(depth > 0 && depth <= 64, "depth must be in [1, 64]: " + depth);
+		AssertUtil.isTrue(width > 0 && width <= (1 << 30), "width must be in [1, 2^30]: " + width);
+		this.depth = depth;
+		this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+		AssertUtil.isTrue((long) depth * this.width <= Integer.MAX_VALUE, "depth * width too large: " + depth + " * " + this.width);
+		this.mask = this.width - 1;
+		this.table = new AtomicLongArray(depth * this.width);
+	}
+
+	/**
+	 * 按误差参数创建：width = e / epsilon，depth = ln(1 / delta)
+	 * @param epsilon 相对总次数的误差上界，如0.001
+	 * @param delta 超出误差上界的概率，如0.01
+	 * @return CountMinSketch
+	 */
+	public static CountMinSketch create(double epsilon, double delta) {
+		AssertUtil.isTrue(epsilon > 0 && epsilon < 1, "epsilon must be in (0, 1): " + epsilon);
+		AssertUtil.isTrue(delta > 0 && delta < 1, "delta must be in (0, 1): " + delta);
+		final int width = (int) Math.ceil(Math.E / epsilon);
+		final int depth = (int) Math.ceil(Math.log(1 / delta));
+		return new CountMinSketch(depth, width);
+	}
+
+	// ---------------------------------------------------------------- add start
+	/**
+	 * 元素次数加1
+	 * @param item 元素，按UTF-16计算hash，不转码
+	 */
+	public void add(CharSequence item) {
+		addHash(HashUtil.xxHash64(item, 0), 1);
+	}
+
+	/**
+	 * 增加元素次数
+	 * @param item 元素，按UTF-16计算hash，不转码
+	 * @param count 次数，不能为负
+	 */
+	public void add(CharSequence item, long count) {
+		addHash(HashUtil.xxHash64(item, 0), count);
+	}
+
+	/**
+	 * 增加元素次数
+	 * @param item 元素
+	 * @param count 次数，不能为负
+	 */
+	public void add(byte[] item, long count) {
+		addHash(HashUtil.xxHash64(item), count);
+	}
+
+	/**
+	 * 增加元素次数
+	 * @param item 元素
+	 * @param count 次数，不能为负
+	 */
+	public void add(long item, long count) {
+		addHash(HashUtil.mix64(item), count);
+	}
+
+	/**
+	 * 按已计算好的64位hash增加次数，hash应分布均匀
+	 * @param hash hash值
+	 * @param count 次数，不能为负
+	 */
+	public void addHash(long hash, long count) {
+		AssertUtil.isTrue(count >= 0, "count must not be negative: " + count);
+		// h2取奇数，保证其与2的幂宽度互质，各行的下标不会退化为同一个
+		final long h2 = HashUtil.mix64(hash) | 1;
+		long combined = hash;
+		for (int row = 0, base = 0; row < depth; row++, base += width) {
+			table.addAndGet(base + ((int) combined & mask), count);
+			combined += h2;
+		}
+		totalCount.addAndGet(count);
+	}
+	// ---------------------------------------------------------------- add end
+
+	// ---------------------------------------------------------------- estimate start
+	/**
+	 * 估计元素次数
+	 * @param item 元素
+	 * @return 次数估计，不小于真实值
+	 */
+	public long estimateCount(CharSequence item) {
+		return estimateHash(HashUtil.xxHash64(item, 0));
+	}
+
+	/**
+	 * 估计元素次数
+	 * @param item 元素
+	 * @return 次数估计，不小于真实值
+	 */
+	public long estimateCount(byte[] item) {
+		return estimateHash(HashUtil.xxHash64(item));
+	}
+
+	/**
+	 * 估计元素次数
+	 * @param item 元素
+	 * @return 次数估计，不小于真实值
+	 */
+	public long estimateCount(long item) {
+		return estimateHash(HashUtil.mix64(item));
+	}
+
+	/**
+	 * 按已计算好的64位hash估计次数
+	 * @param hash hash值
+	 * @return 次数估计，不小于真实值
+	 */
+	public long estimateHash(long hash) {
+		// h2取奇数，保证其与2的幂宽度互质，各行的下标不会退化为同一个
+		final long h2 = HashUtil.mix64(hash) | 1;
+		long combined = hash;
+		long min = Long.MAX_VALUE;
+		for (int row = 0, base = 0; row < depth; row++, base += width) {
+			min = Math.min(min, table.get(base + ((int) combined & mask)));
+			combined += h2;
+		}
+		return min;
+	}
+	// ---------------------------------------------------------------- estimate end
+
+	/**
+	 * 合并另一个参数相同的CountMinSketch
+	 * @param other 另一个CountMinSketch
+	 * @return this
+	 */
+	public CountMinSketch merge(CountMinSketch other) {
+		AssertUtil.isTrue(this != other, "Cannot merge a sketch with itself");
+		AssertUtil.isTrue(depth == other.depth && width == other.width,
+				"Incompatible sketch, depth: " + depth + "/" + other.depth + ", width: " + width + "/" + other.width);
+		for (int i = 0; i < table.length(); i++) {
+			final long value = other.table.get(i);
+			if (value != 0) {
+				table.addAndGet(i, value);
+			}
+		}
+		totalCount.addAndGet(other.totalCount.get());
+		return this;
+	}
+
+	/**
+	 * @return 所有元素的总次数
+	 */
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * @return 行数
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return 每行计数器个数
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	// ---------------------------------------------------------------- Serialization start
+	/**
+	 * 写出到流，不关闭流
+	 * @param out 输出流
+	 * @throws IOException IO异常
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+		dataOut.writeInt(MAGIC);
+		dataOut.writeInt(depth);
+		dataOut.writeInt(width);
+		dataOut.writeLong(totalCount.get());
+		for (int i = 0; i < table.length(); i++) {
+			dataOut.writeLong(table.get(i));
+		}
+		dataOut.flush();
+	}
+
+	/**
+	 * 从流中读取{@link #writeTo(OutputStream)}写出的CountMinSketch，不关闭流
+	 * @param in 输入流
+	 * @return CountMinSketch
+	 * @throws IOException IO异常或格式错误
+	 */
+	public static CountMinSketch readFrom(InputStream in) throws IOException {
+		final DataInputStream dataIn = new DataInputStream(in);
+		final int magic = dataIn.readInt();
+		if (magic != MAGIC) {
+			throw new IOException("Not a CountMinSketch stream, magic: 0x" + Integer.toHexString(magic));
+		}
+		final int depth = dataIn.readInt();
+		final int width = dataIn.readInt();
+		if (depth <= 0 || depth > 64 || width <= 0 || Integer.bitCount(width) != 1 || (long) depth * width > Integer.MAX_VALUE) {
+			throw new IOException("Corrupted CountMinSketch stream, depth: " + depth + ", width: " + width);
+		}
+		final CountMinSketch sketch = new CountMinSketch(depth, width);
+		sketch.totalCount.set(dataIn.readLong());
+		for (int i = 0; i < sketch.table.length(); i++) {
+			sketch.table.set(i, dataIn.readLong());
+		}
+		return sketch;
+	}
+	// ---------------------------------------------------------------- Serialization end
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.sketch;
+
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.HashUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog基数估计
+ * @ClassName: HyperLogLog
+ * @Description:
+ * 以固定内存（2^precision字节）估计数据流中不同元素的个数，标准误差约为1.04/sqrt(2^precision)，
+ * 例如precision为14时占16KB，误差约0.8%。<br>
+ * 使用64位hash（{@link HashUtil#xxHash64(CharSequence, long)}），小基数时退化为线性计数，不需要大基数修正。<br>
+ * 非线程安全：每个线程各自计数后通过{@link #merge(HyperLogLog)}合并；
+ * 跨节点时通过{@link #writeTo(OutputStream)}/{@link #readFrom(InputStream)}传输后合并
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 16:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class HyperLogLog {
+
+	/** 流格式标识："HLL1" */
+	private static final int MAGIC = 0x484C4C31;
+	/** 默认精度，16KB，误差约0.8% */
+	public static final int DEFAULT_PRECISION = 14;
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 18;
+
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * 构造，使用默认精度{@link #DEFAULT_PRECISION}
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * 构造
+	 * @param precision 精度，寄存器个数为2^precision，取值[4, 18]
+	 */
+	public HyperLogLog(int precision) {
+		AssertUtil.isTrue(precision >= MIN_PRECISION && precision <= MAX_PRECISION,
+				"precision must be in [" + MIN_PRECISION + ", " + MAX_PRECISION + "]: " + precision);
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * 按期望的相对标准误差创建
+	 * @param relativeError 相对标准误差，如0.01
+	 * @return HyperLogLog
+	 */
+	public static HyperLogLog withError(double relativeError) {
+		AssertUtil.isTrue(relativeError > 0 && relativeError < 1, "relativeError must be in (0, 1): " + relativeError);
+		final double m = Math.pow(1.04 / relativeError, 2);
+		final int precision = (int) Math.ceil(Math.log(m) / Math.log(2));
+		return new HyperLogLog(Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision)));
+	}
+
+	// ---------------------------------------------------------------- add start
+	/**
+	 * 加入元素
+	 * @param item 元素，按UTF-16计算hash，不转码
+	 * @return 估计值是否发生变化
+	 */
+	public boolean add(CharSequence item) {
+		return addHash(HashUtil.xxHash64(item, 0));
+	}
+
+	/**
+	 * 加入元素
+	 * @param item 元素
+	 * @return 估计值是否发生变化
+	 */
+	public boolean add(byte[] item) {
+		return addHash(HashUtil.xxHash64(item));
+	}
+
+	/**
+	 * 加入元素
+	 * @param item 元素
+	 * @return 估计值是否发生变化
+	 */
+	public boolean add(long item) {
+		return addHash(HashUtil.mix64(item));
+	}
+
+	/**
+	 * 加入已计算好的64位hash，hash应分布均匀
+	 * @param hash hash值
+	 * @return 估计值是否发生变化
+	 */
+	public boolean addHash(long hash) {
+		final int index = (int) (hash >>> (64 - precision));
+		// 补一个哨兵位，保证rank不超过64 - precision + 1
+		final long rest = (hash << precision) | (1L << (precision - 1));
+		final byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[index]) {
+			registers[index] = rank;
+			return true;
+		}
+		return false;
+	}
+	// ---------------------------------------------------------------- add end
+
+	/**
+	 * @return 基数估计值
+	 */
+	public long cardinality() {
+		final int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		final double estimate = alpha(m) * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// 小基数：线性计数更准确
+			return Math.round(m * Math.log((double) m / zeros));
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * 合并另一个精度相同的HyperLogLog，合并后等价于对两者所有元素计数
+	 * @param other 另一个HyperLogLog
+	 * @return this
+	 */
+	public HyperLogLog merge(HyperLogLog other) {
+		AssertUtil.isTrue(precision == other.precision, "Incompatible precision: " + precision + "/" + other.precision);
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return 精度
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * 清空
+	 */
+	public void clear() {
+		Arrays.fill(registers, (byte) 0);
+	}
+
+	// ---------------------------------------------------------------- Serialization start
+	/**
+	 * 写出到流，不关闭流
+	 * @param out 输出流
+	 * @throws IOException IO异常
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		final DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.writeInt(MAGIC);
+		dataOut.writeByte(precision);
+		dataOut.write(registers);
+		dataOut.flush();
+	}
+
+	/**
+	 * 从流中读取{@link #writeTo(OutputStream)}写出的HyperLogLog，不关闭流
+	 * @param in 输入流
+	 * @return HyperLogLog
+	 * @throws IOException IO异常或格式错误
+	 */
+	public static HyperLogLog readFrom(InputStream in) throws IOException {
+		final DataInputStream dataIn = new DataInputStream(in);
+		final int magic = dataIn.readInt();
+		if (magic != MAGIC) {
+			throw new IOException("Not a HyperLogLog stream, magic: 0x" + Integer.toHexString(magic));
+		}
+		final int precision = dataIn.readUnsignedByte();
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IOException("Corrupted HyperLogLog stream, precision: " + precision);
+		}
+		final HyperLogLog hll = new HyperLogLog(precision);
+		dataIn.readFully(hll.registers);
+		return hll;
+	}
+	// ---------------------------------------------------------------- Serialization end
+
+	private static double alpha(int m) {
+		switch (m) {
+			case 16:
+				return 0.673;
+			case 32:
+				return 0.697;
+			case 64:
+				return 0.709;
+			default:
+				return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+}
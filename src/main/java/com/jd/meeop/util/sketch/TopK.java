@@ -0,0 +1,254 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.sketch;
+
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 高频元素统计（Space-Saving算法）
+ * @ClassName: TopK
+ * @Description:
+ * 最多跟踪capacity个元素：已跟踪的元素直接计数；新元素替换当前计数最小的元素，
+ * 并继承其计数作为误差上界。出现次数超过总次数/capacity的元素一定会被保留。<br>
+ * 内存固定为capacity个计数器，每次更新O(log capacity)。方法均已同步，可多线程共享，
+ * 也可各自统计后通过{@link #merge(TopK)}合并
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 17:20
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class TopK<T> {
+
+	private final int capacity;
+	private final Map<T, Counter<T>> counters;
+	/** 按计数排列的最小堆 */
+	private final Counter<T>[] heap;
+	private int size;
+	private long totalCount;
+
+	/**
+	 * 构造
+	 * @param capacity 最多跟踪的元素数，一般取需要的K的数倍以提高准确度
+	 */
+	@SuppressWarnings("unchecked")
+	public TopK(int capacity) {
+		AssertUtil.isTrue(capacity > 0, "capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		this.counters = new HashMap<T, Counter<T>>(capacity * 4 / 3 + 1);
+		this.heap = (Counter<T>[]) new Counter<?>[capacity];
+	}
+
+	/**
+	 * 元素次数加1
+	 * @param item 元素
+	 * @return 被替换出去的元素，没有替换时为<code>null</code>
+	 */
+	public T offer(T item) {
+		return offer(item, 1);
+	}
+
+	/**
+	 * 增加元素次数
+	 * @param item 元素
+	 * @param increment 次数，必须为正
+	 * @return 被替换出去的元素，没有替换时为<code>null</code>
+	 */
+	public synchronized T offer(T item, long increment) {
+		return offer(item, increment, 0);
+	}
+
+	/**
+	 * 合并另一个TopK：对方跟踪的每个元素按其计数和误差加入本对象
+	 * @param other 另一个TopK
+	 * @return this
+	 */
+	public TopK<T> merge(TopK<T> other) {
+		AssertUtil.isTrue(this != other, "Cannot merge a TopK with itself");
+		final List<Counter<T>> snapshot;
+		synchronized (other) {
+			snapshot = new ArrayList<Counter<T>>(other.size);
+			for (int i = 0; i < other.size; i++) {
+				snapshot.add(other.heap[i].copy());
+			}
+		}
+		// 每次替换都保留被替换者的计数，因此各计数之和恒等于总次数，逐个加入即可得到正确的总数
+		synchronized (this) {
+			for (Counter<T> counter : snapshot) {
+				offer(counter.item, counter.count, counter.error);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * 次数最高的k个元素，按次数降序
+	 * @param k 个数
+	 * @return 计数器快照
+	 */
+	public synchronized List<Counter<T>> top(int k) {
+		final List<Counter<T>> result = new ArrayList<Counter<T>>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(heap[i].copy());
+		}
+		Collections.sort(result, new Comparator<Counter<T>>() {
+			@Override
+			public int compare(Counter<T> o1, Counter<T> o2) {
+				return o1.count < o2.count ? 1 : (o1.count == o2.count ? 0 : -1);
+			}
+		});
+		return k < result.size() ? new ArrayList<Counter<T>>(result.subList(0, k)) : result;
+	}
+
+	/**
+	 * 元素次数估计
+	 * @param item 元素
+	 * @return 次数估计（不小于真实值），未被跟踪时为0
+	 */
+	public synchronized long estimateCount(T item) {
+		final Counter<T> counter = counters.get(item);
+		return null == counter ? 0 : counter.count;
+	}
+
+	/**
+	 * @return 所有元素的总次数
+	 */
+	public synchronized long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return 最多跟踪的元素数
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * 清空
+	 */
+	public synchronized void clear() {
+		counters.clear();
+		Arrays.fill(heap, null);
+		size = 0;
+		totalCount = 0;
+	}
+
+	private T offer(T item, long increment, long error) {
+		AssertUtil.isTrue(increment > 0, "increment must be positive: " + increment);
+		totalCount += increment;
+		Counter<T> counter = counters.get(item);
+		if (null != counter) {
+			counter.count += increment;
+			counter.error += error;
+			siftDown(counter.index);
+			return null;
+		}
+
+		T evicted = null;
+		if (size < capacity) {
+			counter = new Counter<T>(item);
+			counter.index = size;
+			heap[size++] = counter;
+		} else {
+			// 复用计数最小的计数器，其计数作为新元素的误差
+			counter = heap[0];
+			evicted = counter.item;
+			counters.remove(evicted);
+			counter.item = item;
+			counter.error = counter.count + error;
+		}
+		counter.count += increment;
+		counters.put(item, counter);
+		siftDown(counter.index);
+		return evicted;
+	}
+
+	private void siftDown(int index) {
+		final Counter<T> counter = heap[index];
+		final int half = size >>> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			final int right = child + 1;
+			if (right < size && heap[right].count < heap[child].count) {
+				child = right;
+			}
+			if (counter.count <= heap[child].count) {
+				break;
+			}
+			heap[index] = heap[child];
+			heap[index].index = index;
+			index = child;
+		}
+		heap[index] = counter;
+		counter.index = index;
+	}
+
+	/**
+	 * 元素计数
+	 */
+	public static class Counter<T> {
+		private T item;
+		private long count;
+		private long error;
+		private int index;
+
+		Counter(T item) {
+			this.item = item;
+		}
+
+		/**
+		 * @return 元素
+		 */
+		public T getItem() {
+			return item;
+		}
+
+		/**
+		 * @return 次数估计，不小于真实值
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return 误差上界，真实次数不小于count - error
+		 */
+		public long getError() {
+			return error;
+		}
+
+		Counter<T> copy() {
+			final Counter<T> copy = new Counter<T>(item);
+			copy.count = count;
+			copy.error = error;
+			return copy;
+		}
+
+		@Override
+		public String toString() {
+			return item + "=" + count + "(error: " + error + ")";
+		}
+	}
+}
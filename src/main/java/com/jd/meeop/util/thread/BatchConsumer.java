@@ -0,0 +1,40 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import java.util.List;
+
+/**
+ * 批量处理
+ * @ClassName: BatchConsumer
+ * @Description:
+ * 由{@link MicroBatcher}调用，一次处理合并后的一批元素
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 14:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface BatchConsumer<T, R> {
+
+	/**
+	 * 处理一批元素
+	 * @param batch 元素，按提交顺序
+	 * @return 每个元素的结果，与batch一一对应；返回null表示所有元素的结果都为null
+	 * @throws Exception 处理失败，该批所有元素的Future以此异常失败
+	 */
+	List<R> process(List<T> batch) throws Exception;
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import com.jd.meeop.util.AssertUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间轮定时器
+ * @ClassName: HashedWheelTimer
+ * @Description:
+ * 所有定时任务共用一个时钟线程，按刻度推进环形时间轮，到期的任务提交给执行器运行。
+ * 新建与取消都只是入队，时间复杂度O(1)，由时钟线程在下一个刻度批量放入或移出时间轮；
+ * 到期时间的精度为一个刻度，适合请求超时、缓存过期、重试延迟等大量、允许少量误差的定时任务。<br>
+ * 执行器拒绝到期任务时（已关闭或饱和），任务改为在时钟线程中直接运行，到期的任务不会被丢弃。<br>
+ * 时钟线程在第一次新建定时任务时启动，{@link #stop()}后不可再使用
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 23:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class HashedWheelTimer {
+	private final static Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	/** 默认刻度，毫秒 */
+	public static final long DEFAULT_TICK_MILLIS = 10L;
+	/** 默认时间轮槽数 */
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+	/** 每个刻度最多放入时间轮的新任务数，避免新任务过多时拖慢时钟 */
+	private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+	private static final int STATE_INIT = 0;
+	private static final int STATE_STARTED = 1;
+	private static final int STATE_STOPPED = 2;
+
+	/** 直接在时钟线程中运行任务的执行器 */
+	private static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final String name;
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Executor taskExecutor;
+	private final Worker worker = new Worker();
+	private final Thread workerThread;
+	private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+	private final AtomicLong pendingCount = new AtomicLong();
+	private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+	private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+	/** 时钟起点，由时钟线程设置，新任务的到期时间为绝对时间，放入时间轮时才换算为刻度 */
+	private long startTime;
+
+	/**
+	 * 构造，使用默认刻度和槽数，到期任务在时钟线程中直接运行
+	 * @param name 时钟线程名
+	 */
+	public HashedWheelTimer(String name) {
+		this(name, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL, null);
+	}
+
+	/**
+	 * 构造
+	 * @param name 时钟线程名
+	 * @param tickDuration 刻度
+	 * @param unit 刻度单位
+	 * @param ticksPerWheel 时间轮槽数，向上取整为2的幂
+	 * @param taskExecutor 到期任务的执行器，为null时在时钟线程中直接运行（任务应足够短）；执行器拒绝时同样在时钟线程中运行
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, Executor taskExecutor) {
+		AssertUtil.notNull(unit, "Time unit must not be null!");
+		AssertUtil.isTrue(tickDuration > 0, "Tick duration must be positive: " + tickDuration);
+		AssertUtil.isTrue(ticksPerWheel > 0 && ticksPerWheel <= (1 << 30), "Ticks per wheel must be in (0, 2^30]: " + ticksPerWheel);
+		this.name = null == name ? "wheel-timer" : name;
+		this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), unit.toNanos(tickDuration));
+		int size = 1;
+		while (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.taskExecutor = null == taskExecutor ? DIRECT_EXECUTOR : taskExecutor;
+		this.workerThread = new Thread(worker, this.name);
+		this.workerThread.setDaemon(true);
+	}
+
+	/**
+	 * 新建定时任务
+	 * @param task 任务
+	 * @param delay 延迟
+	 * @param unit 延迟单位
+	 * @return 定时任务句柄
+	 * @throws IllegalStateException 定时器已停止
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		AssertUtil.notNull(task, "Task must not be null!");
+		AssertUtil.notNull(unit, "Time unit must not be null!");
+		start();
+		final long deadline = System.nanoTime() + Math.max(0, unit.toNanos(delay));
+		final WheelTimeout timeout = new WheelTimeout(task, deadline);
+		pendingCount.incrementAndGet();
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * @return 尚未到期且未取消的定时任务数
+	 */
+	public long pendingTimeouts() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * @return 时钟线程名
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 停止定时器，等待时钟线程退出
+	 * @return 未到期且未取消的定时任务
+	 */
+	public List<Timeout> stop() {
+		AssertUtil.isTrue(Thread.currentThread() != workerThread, "Timer can not be stopped from its own task!");
+		if (false == state.compareAndSet(STATE_STARTED, STATE_STOPPED)) {
+			state.set(STATE_STOPPED);
+			return new ArrayList<Timeout>();
+		}
+		boolean interrupted = false;
+		while (workerThread.isAlive()) {
+			workerThread.interrupt();
+			try {
+				workerThread.join(100);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return worker.unprocessed;
+	}
+
+	private void start() {
+		switch (state.get()) {
+		case STATE_INIT:
+			if (state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+				workerThread.start();
+			}
+			break;
+		case STATE_STARTED:
+			break;
+		default:
+			throw new IllegalStateException("Timer [" + name + "] is stopped!");
+		}
+	}
+
+	/**
+	 * 到期任务提交执行，执行器拒绝时在时钟线程中直接运行
+	 */
+	private void expire(WheelTimeout timeout) {
+		try {
+			taskExecutor.execute(timeout.task);
+		} catch (RejectedExecutionException e) {
+			if (DIRECT_EXECUTOR == taskExecutor) {
+				// 任务本身抛出的拒绝异常，不能再运行一次
+				logger.warn("Timer [" + name + "] task threw an exception", e);
+				return;
+			}
+			logger.warn("Timer [{}] task rejected by executor, run it in timer thread: {}", name, e.getMessage());
+			try {
+				timeout.task.run();
+			} catch (Throwable t) {
+				logger.warn("Timer [" + name + "] task threw an exception", t);
+			}
+		} catch (Throwable e) {
+			logger.warn("Timer [" + name + "] task threw an exception", e);
+		}
+	}
+
+	// ---------------------------------------------------------------- Worker start
+	private class Worker implements Runnable {
+		private final List<Timeout> unprocessed = new ArrayList<Timeout>();
+		private long tick;
+
+		@Override
+		public void run() {
+			startTime = System.nanoTime();
+
+			while (STATE_STARTED == state.get()) {
+				if (waitForNextTick()) {
+					processCancelled();
+					transferTimeouts();
+					wheel[(int) (tick & mask)].expire();
+					tick++;
+				}
+			}
+
+			for (Bucket bucket : wheel) {
+				bucket.drainTo(unprocessed);
+			}
+			WheelTimeout timeout;
+			while (null != (timeout = pendingTimeouts.poll())) {
+				if (false == timeout.isCancelled()) {
+					unprocessed.add(timeout);
+				}
+			}
+			processCancelled();
+		}
+
+		/**
+		 * 把新任务放入时间轮：轮数 = 距今的刻度数 / 槽数，槽位 = 到期刻度 & mask，已过期的放入当前槽
+		 */
+		private void transferTimeouts() {
+			for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+				final WheelTimeout timeout = pendingTimeouts.poll();
+				if (null == timeout) {
+					break;
+				}
+				if (timeout.isCancelled()) {
+					continue;
+				}
+				final long calculated = (timeout.deadline - startTime) / tickNanos;
+				timeout.remainingRounds = (calculated - tick) / wheel.length;
+				final long ticks = Math.max(calculated, tick);
+				wheel[(int) (ticks & mask)].add(timeout);
+			}
+		}
+
+		private void processCancelled() {
+			WheelTimeout timeout;
+			while (null != (timeout = cancelledTimeouts.poll())) {
+				if (null != timeout.bucket) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+
+		/**
+		 * 等待到下一个刻度
+		 * @return 是否到达，定时器停止时返回false
+		 */
+		private boolean waitForNextTick() {
+			final long deadline = tickNanos * (tick + 1);
+			while (true) {
+				final long current = System.nanoTime() - startTime;
+				final long sleepMillis = (deadline - current + 999999) / 1000000;
+				if (sleepMillis <= 0) {
+					return true;
+				}
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+					if (STATE_STOPPED == state.get()) {
+						return false;
+					}
+				}
+			}
+		}
+	}
+	// ---------------------------------------------------------------- Worker end
+
+	// ---------------------------------------------------------------- Bucket start
+	/**
+	 * 时间轮的槽，双向链表，只由时钟线程访问
+	 */
+	private class Bucket {
+		private WheelTimeout head;
+		private WheelTimeout tail;
+
+		void add(WheelTimeout timeout) {
+			timeout.bucket = this;
+			if (null == head) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		/**
+		 * 剩余轮数为0的任务提交执行，其余轮数减一
+		 */
+		void expire() {
+			WheelTimeout timeout = head;
+			while (null != timeout) {
+				final WheelTimeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					timeout.expire();
+				} else if (timeout.isCancelled()) {
+					remove(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+
+		void remove(WheelTimeout timeout) {
+			if (timeout.bucket != this) {
+				return;
+			}
+			final WheelTimeout next = timeout.next;
+			if (null != timeout.prev) {
+				timeout.prev.next = next;
+			}
+			if (null != next) {
+				next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		void drainTo(List<Timeout> list) {
+			WheelTimeout timeout;
+			while (null != (timeout = head)) {
+				remove(timeout);
+				if (false == timeout.isCancelled() && false == timeout.isExpired()) {
+					list.add(timeout);
+				}
+			}
+		}
+	}
+	// ---------------------------------------------------------------- Bucket end
+
+	// ---------------------------------------------------------------- Timeout start
+	private class WheelTimeout implements Timeout {
+		private static final int ST_INIT = 0;
+		private static final int ST_CANCELLED = 1;
+		private static final int ST_EXPIRED = 2;
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+		// 以下字段只由时钟线程访问
+		private long remainingRounds;
+		private Bucket bucket;
+		private WheelTimeout prev;
+		private WheelTimeout next;
+
+		WheelTimeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public Runnable getTask() {
+			return task;
+		}
+
+		@Override
+		public long getDeadline() {
+			return deadline;
+		}
+
+		@Override
+		public boolean isExpired() {
+			return ST_EXPIRED == state.get();
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return ST_CANCELLED == state.get();
+		}
+
+		@Override
+		public boolean cancel() {
+			if (false == state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			pendingCount.decrementAndGet();
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		void expire() {
+			if (state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+				pendingCount.decrementAndGet();
+				HashedWheelTimer.this.expire(this);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Timeout[" + task + ", remaining=" + TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + "ms"
+					+ (isCancelled() ? ", cancelled" : "") + (isExpired() ? ", expired" : "") + "]";
+		}
+	}
+	// ---------------------------------------------------------------- Timeout end
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带统计的线程池
+ * @ClassName: InstrumentedThreadPool
+ * @Description:
+ * 在ThreadPoolExecutor的基础上统计提交、完成、失败、拒绝的任务数，以及任务在队列中的等待时间和执行时间，
+ * 通过{@link #getMetrics()}获取快照。<br>
+ * 为记录入队时间，提交的任务会被包装一层，{@link #shutdownNow()}返回的是解包后的原始任务。
+ * 一般通过{@link ThreadPoolBuilder}创建
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 19:10
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class InstrumentedThreadPool extends ThreadPoolExecutor {
+
+	private final String name;
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong totalRunNanos = new AtomicLong();
+	private final AtomicLong maxRunNanos = new AtomicLong();
+
+	/**
+	 * 构造
+	 * @param name 线程池名称
+	 * @param corePoolSize 核心线程数
+	 * @param maximumPoolSize 最大线程数
+	 * @param keepAliveTime 空闲线程存活时间
+	 * @param unit 时间单位
+	 * @param workQueue 任务队列
+	 * @param threadFactory 线程工厂
+	 * @param handler 拒绝策略
+	 */
+	public InstrumentedThreadPool(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+			BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+		super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, new RejectionCounter(handler));
+		this.name = name;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (null == command) {
+			throw new NullPointerException();
+		}
+		submitted.incrementAndGet();
+		super.execute(new TimedTask(command));
+	}
+
+	@Override
+	public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+		final RejectionCounter counter = (RejectionCounter) getRejectedExecutionHandler();
+		super.setRejectedExecutionHandler(new RejectionCounter(handler, counter.rejected));
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		final List<Runnable> pending = super.shutdownNow();
+		final List<Runnable> unwrapped = new ArrayList<Runnable>(pending.size());
+		for (Runnable runnable : pending) {
+			unwrapped.add(runnable instanceof TimedTask ? ((TimedTask) runnable).task : runnable);
+		}
+		return unwrapped;
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		if (r instanceof TimedTask) {
+			final TimedTask task = (TimedTask) r;
+			task.startNanos = System.nanoTime();
+			final long wait = task.startNanos - task.enqueueNanos;
+			totalWaitNanos.addAndGet(wait);
+			updateMax(maxWaitNanos, wait);
+			started.incrementAndGet();
+		}
+		super.beforeExecute(t, r);
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		Runnable task = r;
+		if (r instanceof TimedTask) {
+			final long run = System.nanoTime() - ((TimedTask) r).startNanos;
+			totalRunNanos.addAndGet(run);
+			updateMax(maxRunNanos, run);
+			task = ((TimedTask) r).task;
+		}
+		completed.incrementAndGet();
+		if (null != t || null != failureOf(task)) {
+			failed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return 线程池名称
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 获取统计快照
+	 * @return 统计快照
+	 */
+	public PoolMetrics getMetrics() {
+		final PoolMetrics metrics = new PoolMetrics();
+		metrics.name = name;
+		metrics.poolSize = getPoolSize();
+		metrics.corePoolSize = getCorePoolSize();
+		metrics.maximumPoolSize = getMaximumPoolSize();
+		metrics.largestPoolSize = getLargestPoolSize();
+		metrics.activeCount = getActiveCount();
+		metrics.queueSize = getQueue().size();
+		metrics.queueRemainingCapacity = getQueue().remainingCapacity();
+		metrics.submitted = submitted.get();
+		metrics.started = started.get();
+		metrics.completed = completed.get();
+		metrics.failed = failed.get();
+		metrics.rejected = ((RejectionCounter) getRejectedExecutionHandler()).rejected.get();
+		metrics.totalWaitNanos = totalWaitNanos.get();
+		metrics.maxWaitNanos = maxWaitNanos.get();
+		metrics.totalRunNanos = totalRunNanos.get();
+		metrics.maxRunNanos = maxRunNanos.get();
+		return metrics;
+	}
+
+	/**
+	 * 清零累计的统计值（任务数、等待与执行时间）
+	 */
+	public void resetMetrics() {
+		submitted.set(0);
+		started.set(0);
+		completed.set(0);
+		failed.set(0);
+		((RejectionCounter) getRejectedExecutionHandler()).rejected.set(0);
+		totalWaitNanos.set(0);
+		maxWaitNanos.set(0);
+		totalRunNanos.set(0);
+		maxRunNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return getMetrics().toString();
+	}
+
+	/**
+	 * submit提交的任务异常被Future吞掉，afterExecute收到的Throwable为null，需从已完成的Future中取出
+	 * @param task 原始任务
+	 * @return 任务的异常，没有异常返回<code>null</code>
+	 */
+	private static Throwable failureOf(Runnable task) {
+		if (false == (task instanceof Future) || false == ((Future<?>) task).isDone()) {
+			return null;
+		}
+		try {
+			((Future<?>) task).get();
+			return null;
+		} catch (CancellationException e) {
+			return e;
+		} catch (ExecutionException e) {
+			return e.getCause();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 记录入队与开始时间的任务包装
+	 */
+	private static class TimedTask implements Runnable {
+		private final Runnable task;
+		private final long enqueueNanos = System.nanoTime();
+		private long startNanos;
+
+		TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+
+		@Override
+		public String toString() {
+			return task.toString();
+		}
+	}
+
+	/**
+	 * 统计拒绝次数的拒绝策略包装
+	 */
+	private static class RejectionCounter implements RejectedExecutionHandler {
+		private final RejectedExecutionHandler delegate;
+		private final AtomicLong rejected;
+
+		RejectionCounter(RejectedExecutionHandler delegate) {
+			this(delegate, new AtomicLong());
+		}
+
+		RejectionCounter(RejectedExecutionHandler delegate, AtomicLong rejected) {
+			if (null == delegate) {
+				throw new NullPointerException();
+			}
+			this.delegate = delegate;
+			this.rejected = rejected;
+		}
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			rejected.incrementAndGet();
+			delegate.rejectedExecution(r instanceof TimedTask ? ((TimedTask) r).task : r, executor);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import com.jd.meeop.util.AssertUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按键串行的执行器
+ * @ClassName: KeyedSerialExecutor
+ * @Description:
+ * 同一个键的任务按提交顺序逐个执行，不同键的任务在共享的执行器中并行执行。
+ * 每个有任务的键对应一个轻量的无锁队列，没有独占线程，也没有全局锁；队列中的任务执行完后该键的队列立即回收。<br>
+ * 一个键连续执行{@link #MAX_TASKS_PER_RUN}个任务后让出线程，重新提交到执行器，避免繁忙的键长期占用线程。
+ * 执行器拒绝时在当前线程中继续执行，直到该键的任务执行完
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 15:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class KeyedSerialExecutor {
+	private final static Logger logger = LoggerFactory.getLogger(KeyedSerialExecutor.class);
+
+	/** 一个键每次连续执行的最多任务数 */
+	public static final int MAX_TASKS_PER_RUN = 32;
+	/** 队列已回收的标记 */
+	private static final int DEAD = -1;
+	/** 等待任务入队时先让出CPU的次数，之后改为逐步加长的休眠 */
+	private static final int YIELD_SPINS = 16;
+	private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+	private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final Executor executor;
+	private final ConcurrentMap<Object, SerialQueue> queues = new ConcurrentHashMap<Object, SerialQueue>();
+
+	/**
+	 * 构造
+	 * @param executor 执行任务的共享执行器
+	 */
+	public KeyedSerialExecutor(Executor executor) {
+		AssertUtil.notNull(executor, "Executor must not be null!");
+		this.executor = executor;
+	}
+
+	/**
+	 * 提交任务，任务抛出的异常被记录日志，不影响同一键的后续任务
+	 * @param key 键，决定执行顺序，不能为null
+	 * @param task 任务
+	 */
+	public void execute(Object key, Runnable task) {
+		AssertUtil.notNull(key, "Key must not be null!");
+		AssertUtil.notNull(task, "Task must not be null!");
+		while (true) {
+			SerialQueue queue = queues.get(key);
+			if (null == queue) {
+				final SerialQueue created = new SerialQueue(key);
+				queue = queues.putIfAbsent(key, created);
+				if (null == queue) {
+					queue = created;
+				}
+			}
+			if (queue.offer(task)) {
+				return;
+			}
+			// 队列刚被回收，重新获取
+		}
+	}
+
+	/**
+	 * 提交有返回值的任务
+	 * @param key 键，决定执行顺序，不能为null
+	 * @param task 任务
+	 * @return Future
+	 */
+	public <T> Future<T> submit(Object key, Callable<T> task) {
+		final FutureTask<T> future = new FutureTask<T>(task);
+		execute(key, future);
+		return future;
+	}
+
+	/**
+	 * 获取只执行指定键的执行器视图
+	 * @param key 键
+	 * @return Executor
+	 */
+	public Executor forKey(final Object key) {
+		AssertUtil.notNull(key, "Key must not be null!");
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				KeyedSerialExecutor.this.execute(key, command);
+			}
+		};
+	}
+
+	/**
+	 * @return 当前有未完成任务的键数
+	 */
+	public int getActiveKeys() {
+		return queues.size();
+	}
+
+	/**
+	 * 一个键的任务队列
+	 */
+	private class SerialQueue implements Runnable {
+		private final Object key;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		/** 已提交未完成的任务数，为{@link #DEAD}时队列已回收 */
+		private final AtomicInteger pending = new AtomicInteger();
+
+		SerialQueue(Object key) {
+			this.key = key;
+		}
+
+		/**
+		 * 加入任务，待执行任务数从0变为1的提交者负责调度执行
+		 * @return 队列已回收返回false
+		 */
+		boolean offer(Runnable task) {
+			int current;
+			do {
+				current = pending.get();
+				if (DEAD == current) {
+					return false;
+				}
+			} while (false == pending.compareAndSet(current, current + 1));
+			tasks.offer(task);
+			if (0 == current && false == handOff()) {
+				drain();
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			drain();
+		}
+
+		/**
+		 * 交给执行器执行
+		 * @return 执行器是否接受
+		 */
+		private boolean handOff() {
+			try {
+				executor.execute(this);
+				return true;
+			} catch (RuntimeException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * 在当前线程中执行任务，每执行{@link #MAX_TASKS_PER_RUN}个任务尝试让出线程，执行器拒绝时继续执行
+		 */
+		private void drain() {
+			while (true) {
+				for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+					final Runnable task = take();
+					try {
+						task.run();
+					} catch (Throwable e) {
+						logger.error("Task for key [" + key + "] failed", e);
+					}
+					if (0 == pending.decrementAndGet()) {
+						// 没有任务了：回收队列；若此时有新任务，其提交者已负责调度
+						if (pending.compareAndSet(0, DEAD)) {
+							queues.remove(key, this);
+						}
+						return;
+					}
+				}
+				if (handOff()) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * 取出下一个任务：计数已增加但任务尚未入队时，提交者马上会入队，先让出CPU，
+		 * 提交者被抢占等仍未入队时改为休眠，休眠时间逐步加长但不超过{@link #MAX_BACKOFF_NANOS}
+		 */
+		private Runnable take() {
+			Runnable task;
+			for (int spins = 0; null == (task = tasks.poll()); spins++) {
+				if (spins < YIELD_SPINS) {
+					Thread.yield();
+				} else {
+					LockSupport.parkNanos(Math.min(MAX_BACKOFF_NANOS, MIN_BACKOFF_NANOS << Math.min(spins - YIELD_SPINS, 10)));
+				}
+			}
+			return task;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "KeyedSerialExecutor[activeKeys=" + queues.size() + "]";
+	}
+}
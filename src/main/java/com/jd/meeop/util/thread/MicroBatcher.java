@@ -0,0 +1,341 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 微批处理器
+ * @ClassName: MicroBatcher
+ * @Description:
+ * 把逐个提交的元素合并为批次交给{@link BatchConsumer}：批次达到maxBatchSize立即提交，
+ * 否则从批次的第一个元素起等待maxLinger后提交。每个元素得到自己的Future，由批次结果中对应的值完成。<br>
+ * 背压：已提交未完成的元素最多为maxOutstandingBatches * maxBatchSize个，超过时{@link #submit(Object)}阻塞，
+ * {@link #trySubmit(Object, long, TimeUnit)}等待超时后拒绝。<br>
+ * 等待时间由定时器调度，批次在执行器中处理，调用线程只做入队。
+ * 定时器不可用（如已停止）时批次在调用线程中立即提交；等待时间已过仍在收集的批次由下一次提交代为提交，
+ * 定时任务丢失时批次也不会一直滞留
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 14:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class MicroBatcher<T, R> {
+
+	private final String name;
+	private final BatchConsumer<T, R> consumer;
+	private final int maxBatchSize;
+	private final long maxLingerNanos;
+	private final Executor executor;
+	private final HashedWheelTimer timer;
+	/** 最多未完成的元素数 */
+	private final int maxOutstandingItems;
+	/** 未完成元素的许可 */
+	private final Semaphore permits;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	/** 正在收集的批次，锁内访问 */
+	private Batch current;
+	private volatile boolean closed;
+
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong itemCount = new AtomicLong();
+
+	/**
+	 * 构造
+	 * @param name 名称，用于异常信息
+	 * @param consumer 批量处理，可能在多个线程中同时调用
+	 * @param maxBatchSize 每批最多元素数
+	 * @param maxLinger 批次的最长等待时间
+	 * @param unit 时间单位
+	 * @param maxOutstandingBatches 最多未完成的批次数
+	 * @param executor 处理批次的执行器
+	 * @param timer 调度等待时间的定时器
+	 */
+	public MicroBatcher(String name, BatchConsumer<T, R> consumer, int maxBatchSize, long maxLinger, TimeUnit unit,
+			int maxOutstandingBatches, Executor executor, HashedWheelTimer timer) {
+		AssertUtil.notNull(consumer, "Batch consumer must not be null!");
+		AssertUtil.notNull(executor, "Executor must not be null!");
+		AssertUtil.notNull(timer, "Timer must not be null!");
+		AssertUtil.isTrue(maxBatchSize > 0, "Max batch size must be positive: " + maxBatchSize);
+		AssertUtil.isTrue(maxLinger >= 0, "Max linger must not be negative: " + maxLinger);
+		AssertUtil.isTrue(maxOutstandingBatches > 0, "Max outstanding batches must be positive: " + maxOutstandingBatches);
+		this.name = name;
+		this.consumer = consumer;
+		this.maxBatchSize = maxBatchSize;
+		this.maxLingerNanos = unit.toNanos(maxLinger);
+		this.executor = executor;
+		this.timer = timer;
+		this.maxOutstandingItems = (int) Math.min(Integer.MAX_VALUE, (long) maxOutstandingBatches * maxBatchSize);
+		this.permits = new Semaphore(this.maxOutstandingItems);
+	}
+
+	/**
+	 * 提交元素，未完成的元素过多时阻塞
+	 * @param item 元素
+	 * @return 该元素的结果
+	 * @throws IllegalStateException 已关闭
+	 * @throws RejectedExecutionException 等待时被中断
+	 */
+	public ListenableFuture<R> submit(T item) {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for batcher [" + name + "]");
+		}
+		return add(item);
+	}
+
+	/**
+	 * 提交元素，未完成的元素过多时最多等待timeout
+	 * @param item 元素
+	 * @param timeout 最长等待时间
+	 * @param unit 时间单位
+	 * @return 该元素的结果
+	 * @throws IllegalStateException 已关闭
+	 * @throws RejectedExecutionException 等待超时或被中断
+	 */
+	public ListenableFuture<R> trySubmit(T item, long timeout, TimeUnit unit) {
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		}
+		if (false == acquired) {
+			throw new RejectedExecutionException("Too many outstanding items in batcher [" + name + "]");
+		}
+		return add(item);
+	}
+
+	/**
+	 * 立即提交正在收集的批次
+	 */
+	public void flush() {
+		Batch batch = null;
+		lock.lock();
+		try {
+			if (null != current) {
+				batch = current;
+				current = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+		dispatch(batch);
+	}
+
+	/**
+	 * 关闭：提交正在收集的批次，之后不再接受新元素，已提交的批次继续处理
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
+		flush();
+	}
+
+	/**
+	 * @return 名称
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return 已提交处理的批次数
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/**
+	 * @return 已提交处理的元素数
+	 */
+	public long getItemCount() {
+		return itemCount.get();
+	}
+
+	/**
+	 * @return 已提交未完成的元素数（含正在收集的）
+	 */
+	public int getOutstandingItems() {
+		return maxOutstandingItems - permits.availablePermits();
+	}
+
+	// ---------------------------------------------------------------- Private method start
+	private ListenableFuture<R> add(T item) {
+		final SettableFuture<R> future = SettableFuture.create();
+		Batch expired = null;
+		Batch full = null;
+		boolean newBatch = false;
+		Batch batch;
+		lock.lock();
+		try {
+			if (closed) {
+				permits.release();
+				throw new IllegalStateException("Batcher [" + name + "] is closed!");
+			}
+			if (null != current && System.nanoTime() - current.createNanos >= maxLingerNanos) {
+				// 等待时间已过仍在收集，说明定时任务没有按时执行，由本次提交代为提交
+				expired = current;
+				current = null;
+			}
+			if (null == current) {
+				current = new Batch(maxBatchSize);
+				newBatch = true;
+			}
+			batch = current;
+			batch.items.add(item);
+			batch.futures.add(future);
+			if (batch.items.size() >= maxBatchSize) {
+				full = batch;
+				current = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+		dispatch(expired);
+		if (null != full) {
+			dispatch(full);
+		} else if (newBatch) {
+			scheduleLinger(batch);
+		}
+		return future;
+	}
+
+	private void scheduleLinger(final Batch batch) {
+		if (0 == maxLingerNanos) {
+			flushIfCurrent(batch);
+			return;
+		}
+		try {
+			batch.lingerTimeout = timer.newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					flushIfCurrent(batch);
+				}
+			}, maxLingerNanos, TimeUnit.NANOSECONDS);
+		} catch (RuntimeException e) {
+			// 定时器已停止等，无法等待，立即提交，避免批次滞留、许可无法归还
+			flushIfCurrent(batch);
+		}
+	}
+
+	/**
+	 * 等待时间到，批次仍在收集时提交
+	 */
+	private void flushIfCurrent(Batch batch) {
+		lock.lock();
+		try {
+			if (current != batch) {
+				return;
+			}
+			current = null;
+		} finally {
+			lock.unlock();
+		}
+		dispatch(batch);
+	}
+
+	private void dispatch(final Batch batch) {
+		if (null == batch) {
+			return;
+		}
+		final Timeout linger = batch.lingerTimeout;
+		if (null != linger) {
+			linger.cancel();
+		}
+		batchCount.incrementAndGet();
+		itemCount.addAndGet(batch.items.size());
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					process(batch);
+				}
+			});
+		} catch (RuntimeException e) {
+			fail(batch, e);
+		}
+	}
+
+	private void process(Batch batch) {
+		final List<R> results;
+		try {
+			results = consumer.process(batch.items);
+		} catch (Throwable e) {
+			fail(batch, e);
+			return;
+		}
+		final int size = batch.futures.size();
+		if (null != results && results.size() != size) {
+			fail(batch, new IllegalStateException("Batcher [" + name + "] consumer returned " + results.size()
+					+ " results for " + size + " items"));
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			batch.futures.get(i).set(null == results ? null : results.get(i));
+		}
+		permits.release(size);
+	}
+
+	private void fail(Batch batch, Throwable e) {
+		for (SettableFuture<R> future : batch.futures) {
+			future.setException(e);
+		}
+		permits.release(batch.futures.size());
+	}
+	// ---------------------------------------------------------------- Private method end
+
+	/**
+	 * 一个批次
+	 */
+	private class Batch {
+		final List<T> items;
+		final List<SettableFuture<R>> futures;
+		final long createNanos = System.nanoTime();
+		/** 等待时间的定时任务，在锁外设置，只用于批次提前提交时取消 */
+		volatile Timeout lingerTimeout;
+
+		Batch(int capacity) {
+			this.items = new ArrayList<T>(Math.min(capacity, 1024));
+			this.futures = new ArrayList<SettableFuture<R>>(Math.min(capacity, 1024));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MicroBatcher[" + name + ", batches=" + batchCount.get() + ", items=" + itemCount.get() + "]";
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程池统计快照
+ * @ClassName: PoolMetrics
+ * @Description:
+ * 由{@link InstrumentedThreadPool#getMetrics()}生成，生成后不再变化。
+ * 计数类指标为线程池创建（或上次重置）以来的累计值
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 19:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class PoolMetrics {
+	String name;
+	int poolSize;
+	int corePoolSize;
+	int maximumPoolSize;
+	int largestPoolSize;
+	int activeCount;
+	int queueSize;
+	int queueRemainingCapacity;
+	long submitted;
+	long started;
+	long completed;
+	long failed;
+	long rejected;
+	long totalWaitNanos;
+	long maxWaitNanos;
+	long totalRunNanos;
+	long maxRunNanos;
+
+	PoolMetrics() {
+	}
+
+	/**
+	 * @return 线程池名称
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return 当前线程数
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * @return 核心线程数
+	 */
+	public int getCorePoolSize() {
+		return corePoolSize;
+	}
+
+	/**
+	 * @return 最大线程数
+	 */
+	public int getMaximumPoolSize() {
+		return maximumPoolSize;
+	}
+
+	/**
+	 * @return 历史最大线程数
+	 */
+	public int getLargestPoolSize() {
+		return largestPoolSize;
+	}
+
+	/**
+	 * @return 正在执行任务的线程数（近似值）
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * @return 队列中等待的任务数
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * @return 队列剩余容量，无界队列为Integer.MAX_VALUE
+	 */
+	public int getQueueRemainingCapacity() {
+		return queueRemainingCapacity;
+	}
+
+	/**
+	 * @return 提交的任务数（包括被拒绝的）
+	 */
+	public long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * @return 在线程池中开始执行的任务数
+	 */
+	public long getStarted() {
+		return started;
+	}
+
+	/**
+	 * @return 在线程池中执行完成的任务数（包括失败的）
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return 执行时抛出异常的任务数，包括submit提交、异常由Future持有的任务以及被取消的任务
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * @return 被拒绝的任务数
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @param unit 时间单位
+	 * @return 任务在队列中的平均等待时间
+	 */
+	public long getAvgWait(TimeUnit unit) {
+		return started == 0 ? 0 : unit.convert(totalWaitNanos / started, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param unit 时间单位
+	 * @return 任务在队列中的最长等待时间
+	 */
+	public long getMaxWait(TimeUnit unit) {
+		return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param unit 时间单位
+	 * @return 任务的平均执行时间
+	 */
+	public long getAvgRun(TimeUnit unit) {
+		return completed == 0 ? 0 : unit.convert(totalRunNanos / completed, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param unit 时间单位
+	 * @return 任务的最长执行时间
+	 */
+	public long getMaxRun(TimeUnit unit) {
+		return unit.convert(maxRunNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "PoolMetrics[name=" + name
+				+ ", pool=" + poolSize + "/" + corePoolSize + "/" + maximumPoolSize
+				+ ", largest=" + largestPoolSize
+				+ ", active=" + activeCount
+				+ ", queue=" + queueSize + "(remaining " + queueRemainingCapacity + ")"
+				+ ", submitted=" + submitted
+				+ ", started=" + started
+				+ ", completed=" + completed
+				+ ", failed=" + failed
+				+ ", rejected=" + rejected
+				+ ", wait(avg/max)=" + getAvgWait(TimeUnit.MICROSECONDS) + "/" + getMaxWait(TimeUnit.MICROSECONDS) + "us"
+				+ ", run(avg/max)=" + getAvgRun(TimeUnit.MICROSECONDS) + "/" + getMaxRun(TimeUnit.MICROSECONDS) + "us]";
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import com.jd.meeop.util.AssertUtil;
+import com.jd.meeop.util.queue.MpscArrayQueue;
+import com.jd.meeop.util.queue.WaitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于环形队列的单线程执行器
+ * @ClassName: RingBufferExecutor
+ * @Description:
+ * 多个线程提交任务，一个消费线程按提交顺序执行，适合把请求线程中的事件交给后台写入线程。
+ * 任务队列为无锁的{@link MpscArrayQueue}，提交不加锁；队列满时提交线程等待空位（背压）。<br>
+ * 消费线程空闲时按{@link WaitStrategy}等待，为PARKING时挂起，由提交线程唤醒。<br>
+ * {@link #shutdown()}后执行完队列中的任务再退出
+ * @author: 冷水(Toby)
+ * @date: 26-10-20 16:30
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class RingBufferExecutor extends AbstractExecutorService {
+	private final static Logger logger = LoggerFactory.getLogger(RingBufferExecutor.class);
+
+	/** 队列满时提交线程每次休眠的纳秒数 */
+	private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+	private final MpscArrayQueue<Runnable> queue;
+	private final WaitStrategy waitStrategy;
+	private final Thread consumer;
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	/** 正在提交的线程数，关闭时等待其完成入队 */
+	private final AtomicInteger submitting = new AtomicInteger();
+	private volatile boolean shutdown;
+	/** 是否立即关闭 */
+	private volatile boolean stopNow;
+	/** 立即关闭时未执行的任务，由消费线程在退出前写入 */
+	private final List<Runnable> unexecuted = new ArrayList<Runnable>();
+	/** 消费线程是否已挂起（PARKING） */
+	private volatile boolean parked;
+
+	/**
+	 * 构造
+	 * @param name 消费线程名
+	 * @param capacity 队列容量，向上取整为2的幂
+	 * @param waitStrategy 消费线程的等待策略
+	 */
+	public RingBufferExecutor(String name, int capacity, WaitStrategy waitStrategy) {
+		AssertUtil.notNull(waitStrategy, "Wait strategy must not be null!");
+		this.queue = new MpscArrayQueue<Runnable>(capacity);
+		this.waitStrategy = waitStrategy;
+		this.consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, null == name ? "ring-executor" : name);
+		this.consumer.setDaemon(true);
+		this.consumer.start();
+	}
+
+	/**
+	 * 提交任务，队列满时等待
+	 * @param command 任务
+	 * @throws RejectedExecutionException 已关闭，或等待时被中断
+	 */
+	@Override
+	public void execute(Runnable command) {
+		if (null == command) {
+			throw new NullPointerException();
+		}
+		submitting.incrementAndGet();
+		try {
+			// 计数之后再检查：消费线程在关闭后等待计数归零，已通过检查的任务一定会被执行
+			if (shutdown) {
+				throw new RejectedExecutionException("Executor [" + consumer.getName() + "] is shut down");
+			}
+			while (false == queue.offer(command)) {
+				if (shutdown) {
+					throw new RejectedExecutionException("Executor [" + consumer.getName() + "] is shut down");
+				}
+				if (Thread.currentThread() == consumer) {
+					// 消费线程自己提交时不能等待自己
+					throw new RejectedExecutionException("Queue of [" + consumer.getName() + "] is full");
+				}
+				signal();
+				LockSupport.parkNanos(FULL_WAIT_NANOS);
+				if (Thread.interrupted()) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("Interrupted while waiting for queue of [" + consumer.getName() + "]");
+				}
+			}
+		} finally {
+			submitting.decrementAndGet();
+		}
+		signal();
+	}
+
+	/**
+	 * @return 队列中等待执行的任务数
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * 立即关闭：中断正在执行的任务，等待消费线程取出队列中未执行的任务后返回
+	 * @return 未执行的任务
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		stopNow = true;
+		shutdown();
+		consumer.interrupt();
+		try {
+			terminated.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return new ArrayList<Runnable>(unexecuted);
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return 0 == terminated.getCount();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * PARKING时唤醒挂起的消费线程
+	 */
+	private void signal() {
+		if (parked) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * 消费线程主循环
+	 */
+	private void consume() {
+		int idleCount = 0;
+		try {
+			while (true) {
+				final Runnable task = queue.poll();
+				if (null != task) {
+					idleCount = 0;
+					if (stopNow) {
+						unexecuted.add(task);
+					} else {
+						clearInterrupt();
+						run(task);
+					}
+					continue;
+				}
+				if (shutdown && 0 == submitting.get() && queue.isEmpty()) {
+					break;
+				}
+				clearInterrupt();
+				if (WaitStrategy.PARKING == waitStrategy && idleCount >= WaitStrategy.PARK_THRESHOLD) {
+					parked = true;
+					// 设置标记后再检查一次，避免错过设置前入队的任务的唤醒
+					if (queue.isEmpty() && false == shutdown) {
+						LockSupport.park(this);
+					}
+					parked = false;
+					idleCount = 0;
+				} else {
+					idleCount = waitStrategy.idle(idleCount);
+				}
+			}
+		} finally {
+			terminated.countDown();
+		}
+	}
+
+	/**
+	 * 同ThreadPoolExecutor.runWorker，清除任务留下的中断标记：否则会被下一个任务误判为关闭，
+	 * PARKING时park也会立即返回而空转。清除后再检查一次，{@link #shutdownNow()}的中断需保留
+	 */
+	private void clearInterrupt() {
+		if (Thread.interrupted() && stopNow) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run(Runnable task) {
+		try {
+			task.run();
+		} catch (Throwable e) {
+			logger.error("Task in [" + consumer.getName() + "] failed", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RingBufferExecutor[" + consumer.getName() + ", queued=" + queue.size() + ", shutdown=" + shutdown + "]";
+	}
+}
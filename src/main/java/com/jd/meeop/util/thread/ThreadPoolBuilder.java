@@ -0,0 +1,249 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jd.meeop.util.AssertUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程池构建器
+ * @ClassName: ThreadPoolBuilder
+ * @Description:
+ * 构建带名称和统计的{@link InstrumentedThreadPool}。未设置线程数时按可用CPU数确定：
+ * 核心线程数为CPU数，最大线程数与核心线程数相同；{@link #sizeForCpu()}、{@link #sizeForIo(double)}按任务类型计算。<br>
+ * 队列默认为容量1024的有界队列，拒绝策略默认为AbortPolicy
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 19:40
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public class ThreadPoolBuilder {
+	private static final int UNSET = -1;
+	/** 默认队列容量 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private String name = "pool";
+	private int corePoolSize = UNSET;
+	private int maximumPoolSize = UNSET;
+	private long keepAliveNanos = TimeUnit.SECONDS.toNanos(60);
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private BlockingQueue<Runnable> workQueue;
+	private RejectedExecutionHandler rejectedHandler = new ThreadPoolExecutor.AbortPolicy();
+	private ThreadFactory threadFactory;
+	private boolean daemon;
+	private boolean allowCoreThreadTimeOut;
+	private boolean prestartCoreThreads;
+
+	/**
+	 * 创建构建器
+	 * @return ThreadPoolBuilder
+	 */
+	public static ThreadPoolBuilder create() {
+		return new ThreadPoolBuilder();
+	}
+
+	/**
+	 * 设置线程池名称，线程命名为“名称-序号”
+	 * @param name 名称
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setName(String name) {
+		AssertUtil.notNull(name, "name must not be null");
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * 设置核心线程数
+	 * @param corePoolSize 核心线程数
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setCorePoolSize(int corePoolSize) {
+		AssertUtil.isTrue(corePoolSize >= 0, "corePoolSize must not be negative: " + corePoolSize);
+		this.corePoolSize = corePoolSize;
+		return this;
+	}
+
+	/**
+	 * 设置最大线程数
+	 * @param maximumPoolSize 最大线程数
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setMaximumPoolSize(int maximumPoolSize) {
+		AssertUtil.isTrue(maximumPoolSize > 0, "maximumPoolSize must be positive: " + maximumPoolSize);
+		this.maximumPoolSize = maximumPoolSize;
+		return this;
+	}
+
+	/**
+	 * 按CPU密集型任务设置线程数：核心与最大线程数均为可用CPU数
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder sizeForCpu() {
+		this.corePoolSize = availableProcessors();
+		this.maximumPoolSize = this.corePoolSize;
+		return this;
+	}
+
+	/**
+	 * 按阻塞型任务设置线程数：CPU数 / (1 - 阻塞系数)，核心与最大线程数相同
+	 * @param blockingCoefficient 阻塞系数，即任务等待IO的时间占比，[0, 1)
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder sizeForIo(double blockingCoefficient) {
+		AssertUtil.isTrue(blockingCoefficient >= 0 && blockingCoefficient < 1, "blockingCoefficient must be in [0, 1): " + blockingCoefficient);
+		this.corePoolSize = (int) Math.ceil(availableProcessors() / (1 - blockingCoefficient));
+		this.maximumPoolSize = this.corePoolSize;
+		return this;
+	}
+
+	/**
+	 * 设置超过核心线程数的空闲线程存活时间
+	 * @param keepAliveTime 存活时间
+	 * @param unit 时间单位
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setKeepAliveTime(long keepAliveTime, TimeUnit unit) {
+		AssertUtil.isTrue(keepAliveTime >= 0, "keepAliveTime must not be negative: " + keepAliveTime);
+		this.keepAliveNanos = unit.toNanos(keepAliveTime);
+		return this;
+	}
+
+	/**
+	 * 设置队列容量：大于0为有界队列（ArrayBlockingQueue），0为直接交付（SynchronousQueue），小于0为无界队列
+	 * @param queueCapacity 队列容量
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+		this.workQueue = null;
+		return this;
+	}
+
+	/**
+	 * 直接指定任务队列，优先于{@link #setQueueCapacity(int)}
+	 * @param workQueue 任务队列
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setWorkQueue(BlockingQueue<Runnable> workQueue) {
+		AssertUtil.notNull(workQueue, "workQueue must not be null");
+		this.workQueue = workQueue;
+		return this;
+	}
+
+	/**
+	 * 设置拒绝策略
+	 * @param rejectedHandler 拒绝策略，如{@link ThreadPoolExecutor.CallerRunsPolicy}
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setRejectedHandler(RejectedExecutionHandler rejectedHandler) {
+		AssertUtil.notNull(rejectedHandler, "rejectedHandler must not be null");
+		this.rejectedHandler = rejectedHandler;
+		return this;
+	}
+
+	/**
+	 * 设置线程工厂，设置后名称与守护线程设置不再作用于线程
+	 * @param threadFactory 线程工厂
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+		return this;
+	}
+
+	/**
+	 * 设置是否为守护线程
+	 * @param daemon 是否为守护线程
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setDaemon(boolean daemon) {
+		this.daemon = daemon;
+		return this;
+	}
+
+	/**
+	 * 设置核心线程空闲超时后是否回收
+	 * @param allowCoreThreadTimeOut 是否回收
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setAllowCoreThreadTimeOut(boolean allowCoreThreadTimeOut) {
+		this.allowCoreThreadTimeOut = allowCoreThreadTimeOut;
+		return this;
+	}
+
+	/**
+	 * 设置是否在创建时启动全部核心线程，默认按需创建
+	 * @param prestartCoreThreads 是否预先启动
+	 * @return 自身
+	 */
+	public ThreadPoolBuilder setPrestartCoreThreads(boolean prestartCoreThreads) {
+		this.prestartCoreThreads = prestartCoreThreads;
+		return this;
+	}
+
+	/**
+	 * 构建线程池
+	 * @return InstrumentedThreadPool
+	 */
+	public InstrumentedThreadPool build() {
+		final int core = corePoolSize == UNSET ? availableProcessors() : corePoolSize;
+		final int max = maximumPoolSize == UNSET ? Math.max(core, 1) : maximumPoolSize;
+		AssertUtil.isTrue(max >= core, "maximumPoolSize " + max + " must not be less than corePoolSize " + core);
+
+		BlockingQueue<Runnable> queue = workQueue;
+		if (null == queue) {
+			if (queueCapacity > 0) {
+				queue = new ArrayBlockingQueue<Runnable>(queueCapacity);
+			} else if (queueCapacity == 0) {
+				queue = new SynchronousQueue<Runnable>();
+			} else {
+				queue = new LinkedBlockingQueue<Runnable>();
+			}
+		}
+		ThreadFactory factory = threadFactory;
+		if (null == factory) {
+			factory = new ThreadFactoryBuilder().setNameFormat(name.replace("%", "%%") + "-%d").setDaemon(daemon).build();
+		}
+
+		final InstrumentedThreadPool pool = new InstrumentedThreadPool(name, core, max, keepAliveNanos, TimeUnit.NANOSECONDS, queue, factory, rejectedHandler);
+		if (allowCoreThreadTimeOut && keepAliveNanos > 0) {
+			pool.allowCoreThreadTimeOut(true);
+		}
+		if (prestartCoreThreads) {
+			pool.prestartAllCoreThreads();
+		}
+		return pool;
+	}
+
+	/**
+	 * 当前进程可用的CPU数（容器中为分配给容器的CPU数，取决于JVM版本对容器的支持）
+	 * @return CPU数
+	 */
+	public static int availableProcessors() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+}
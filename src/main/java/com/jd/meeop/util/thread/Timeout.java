@@ -0,0 +1,56 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+/**
+ * 定时任务句柄
+ * @ClassName: Timeout
+ * @Description:
+ * 由{@link HashedWheelTimer#newTimeout(Runnable, long, java.util.concurrent.TimeUnit)}返回，用于取消或查询定时任务
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 23:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public interface Timeout {
+
+	/**
+	 * @return 定时任务
+	 */
+	Runnable getTask();
+
+	/**
+	 * @return 到期时间，与{@link System#nanoTime()}同一基准
+	 */
+	long getDeadline();
+
+	/**
+	 * @return 是否已到期（任务已提交执行）
+	 */
+	boolean isExpired();
+
+	/**
+	 * @return 是否已取消
+	 */
+	boolean isCancelled();
+
+	/**
+	 * 取消定时任务，O(1)，从时间轮中的移除由时钟线程在下一个刻度完成
+	 * @return 是否取消成功，已到期或已取消返回false
+	 */
+	boolean cancel();
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import com.jd.meeop.exception.UtilException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程支持
+ * @ClassName: VirtualThreads
+ * @Description:
+ * 基础版本，用于Java 21之前的JVM，或未以multi-release jar方式加载的情况：通过反射探测
+ * Executors.newVirtualThreadPerTaskExecutor，存在时仍可使用（线程不命名）。<br>
+ * 以JDK 21+构建时，src/main/java21下的同名类会打入META-INF/versions/21，在Java 21+上直接调用虚拟线程API
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 21:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 1.7.0_79(Liunx)
+ */
+public final class VirtualThreads {
+
+	/** Executors.newVirtualThreadPerTaskExecutor，不存在时为null */
+	private static final Method NEW_EXECUTOR = findNewExecutor();
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return 当前JVM是否支持虚拟线程
+	 */
+	public static boolean isSupported() {
+		return null != NEW_EXECUTOR;
+	}
+
+	/**
+	 * 创建每个任务一个虚拟线程的执行器
+	 * @param name 线程名前缀，基础版本中忽略
+	 * @return ExecutorService
+	 * @throws UnsupportedOperationException 当前JVM不支持虚拟线程
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+		if (null == NEW_EXECUTOR) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21+");
+		}
+		try {
+			return (ExecutorService) NEW_EXECUTOR.invoke(null);
+		} catch (Exception e) {
+			throw new UtilException(e, "Create virtual thread executor error!");
+		}
+	}
+
+	private static Method findNewExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2004-2016 JD.com Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jd.meeop.util.thread;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程支持
+ * @ClassName: VirtualThreads
+ * @Description:
+ * Java 21+版本，打入multi-release jar的META-INF/versions/21，直接使用虚拟线程API
+ * @author: 冷水(Toby)
+ * @date: 26-10-19 21:00
+ * @mail: zhao.wang@aliyun.com
+ * @version: v1.0
+ * @since: JDK 21
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return 当前JVM是否支持虚拟线程
+	 */
+	public static boolean isSupported() {
+		return true;
+	}
+
+	/**
+	 * 创建每个任务一个虚拟线程的执行器
+	 * @param name 线程名前缀，线程命名为“前缀-序号”
+	 * @return ExecutorService
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+	}
+}
@@ -0,0 +1,168 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.exception.UtilException;
+import com.jd.meeop.util.http.AsyncHttpClient;
+import com.jd.meeop.util.http.HttpRequest;
+import com.jd.meeop.util.http.HttpResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步Http客户端（测试）
+* @ClassName:AsyncHttpClientTest
+* @Description: 回调执行器拒绝或关闭时回调在IO线程中执行，IO线程不因此退出
+* @author: 冷水(Toby)
+* @date: 26-10-21 17:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class AsyncHttpClientTest {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncHttpClientTest.class);
+
+    /** 总是拒绝的执行器 */
+    private static final Executor REJECTING = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            throw new RejectedExecutionException("rejected");
+        }
+    };
+
+    /** 与公共执行器一样把拒绝包装为UtilException */
+    private static final Executor WRAPPING = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            throw new UtilException("Exception when running task!", new RejectedExecutionException("rejected"));
+        }
+    };
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch hanging = new CountDownLatch(1);
+    private HttpServer server;
+    private String base;
+
+    private void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.createContext("/hang", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                hanging.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void stop() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    /**
+     * 执行器拒绝时回调在IO线程中执行，同一IO线程之后的请求正常完成
+     */
+    @Test
+    public void rejectedCallbackRunsInline() throws Exception {
+        assertInline(REJECTING);
+    }
+
+    /**
+     * 执行器把拒绝包装为UtilException时同样在IO线程中执行
+     */
+    @Test
+    public void wrappedRejectionRunsInline() throws Exception {
+        assertInline(WRAPPING);
+    }
+
+    /**
+     * 关闭时进行中的请求以失败结束，执行器拒绝也不影响
+     */
+    @Test
+    public void closeFailsPendingRequests() throws Exception {
+        start();
+        final AsyncHttpClient client = AsyncHttpClient.create("test-close").setIoThreads(1).setCallbackExecutor(REJECTING);
+        try {
+            final Future<HttpResponse> pending = client.execute(HttpRequest.get(base + "/hang").timeout(10000));
+            Assert.assertTrue(hanging.await(5, TimeUnit.SECONDS));
+            client.close();
+            assertFailed(pending);
+            // 关闭后提交的请求直接失败
+            assertFailed(client.execute(HttpRequest.get(base + "/ok")));
+        } finally {
+            client.close();
+            stop();
+        }
+    }
+
+    private void assertInline(Executor executor) throws Exception {
+        start();
+        final AsyncHttpClient client = AsyncHttpClient.create("test-inline").setIoThreads(1).setCallbackExecutor(executor);
+        try {
+            for (int i = 0; i < 3; i++) {
+                final HttpResponse response = client.execute(HttpRequest.get(base + "/ok")).get(5, TimeUnit.SECONDS);
+                Assert.assertEquals(200, response.getStatus());
+                Assert.assertEquals("ok", new String(response.bodyBytes(), "UTF-8"));
+            }
+        } finally {
+            client.close();
+            stop();
+        }
+    }
+
+    private static void assertFailed(Future<HttpResponse> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("request should fail");
+        } catch (ExecutionException e) {
+            logger.debug("Request failed as expected", e);
+            Assert.assertTrue(e.getCause() instanceof HttpException);
+        }
+    }
+}
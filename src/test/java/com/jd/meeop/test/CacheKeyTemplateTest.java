@@ -0,0 +1,69 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.util.cache.CacheKeyTemplate;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 缓存key模板（测试）
+* @ClassName:CacheKeyTemplateTest
+* @Description: 与String.format结果一致，参数的toString中再次生成key时不破坏外层key
+* @author: 冷水(Toby)
+* @date: 26-10-18 16:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class CacheKeyTemplateTest {
+    private static final Logger logger = LoggerFactory.getLogger(CacheKeyTemplateTest.class);
+
+    private static final CacheKeyTemplate INNER = CacheKeyTemplate.compile("inner:%s");
+
+    /** toString中使用另一个模板生成key的参数 */
+    private static final class Nested {
+        private final long id;
+
+        Nested(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return INNER.format(id);
+        }
+    }
+
+    @Test
+    public void formatMatchesStringFormat() {
+        final CacheKeyTemplate template = CacheKeyTemplate.compile("entity:%s:%s:100%%");
+        Assert.assertEquals(String.format("entity:%s:%s:100%%", 42, "abc"), template.format(42, "abc"));
+        Assert.assertEquals(String.format("entity:%s:%s:100%%", -7L, null), template.format(-7L, null));
+    }
+
+    @Test
+    public void reentrantFormat() {
+        final CacheKeyTemplate outer = CacheKeyTemplate.compile("outer:%s:%s");
+        final String key = outer.format(new Nested(1), new Nested(2));
+        logger.debug("Nested key: {}", key);
+        Assert.assertEquals("outer:inner:1:inner:2", key);
+        // 外层结束后线程内的StringBuilder可以继续复用
+        Assert.assertEquals("outer:a:b", outer.format("a", "b"));
+    }
+}
@@ -0,0 +1,203 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.util.http.CachingHttpTransport;
+import com.jd.meeop.util.http.HttpCache;
+import com.jd.meeop.util.http.HttpRequest;
+import com.jd.meeop.util.http.HttpResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带缓存的传输层（测试）
+* @ClassName:CachingHttpTransportTest
+* @Description: 新鲜的缓存不发请求，过期后带ETag验证并在304时复用主体，Vary的请求头不同时不使用缓存
+* @author: 冷水(Toby)
+* @date: 26-10-22 21:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class CachingHttpTransportTest {
+    private static final Logger logger = LoggerFactory.getLogger(CachingHttpTransportTest.class);
+
+    /** 服务端收到的请求数 */
+    private final AtomicInteger requests = new AtomicInteger();
+    /** 服务端收到的If-None-Match */
+    private final List<String> conditions = new CopyOnWriteArrayList<String>();
+    /** /validated返回的ETag和主体 */
+    private volatile String version = "v1";
+    private HttpServer server;
+    private String base;
+
+    private void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fresh", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                send(exchange, 200, "fresh" + requests.get());
+            }
+        });
+        server.createContext("/validated", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                final String etag = "\"" + version + "\"";
+                final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                conditions.add(String.valueOf(ifNoneMatch));
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=0");
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                send(exchange, 200, version);
+            }
+        });
+        server.createContext("/vary", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                exchange.getResponseHeaders().set("Vary", "Accept-Language");
+                send(exchange, 200, String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Language")));
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void stop() {
+        server.stop(0);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        exchange.close();
+    }
+
+    private static String get(CachingHttpTransport transport, HttpRequest request) throws IOException {
+        final HttpResponse response = request.transport(transport).timeout(5000).execute();
+        try {
+            Assert.assertEquals(200, response.getStatus());
+            return new String(response.bodyBytes(), "UTF-8");
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * 新鲜的缓存直接返回，不发请求；请求no-cache时重新获取
+     */
+    @Test
+    public void freshHit() throws Exception {
+        start();
+        final HttpCache cache = HttpCache.create();
+        final CachingHttpTransport transport = new CachingHttpTransport(cache);
+        try {
+            Assert.assertEquals("fresh1", get(transport, HttpRequest.get(base + "/fresh")));
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals("fresh1", get(transport, HttpRequest.get(base + "/fresh")));
+            }
+            Assert.assertEquals(1, requests.get());
+            Assert.assertEquals(3, cache.getHitCount());
+            Assert.assertEquals(1, cache.getMissCount());
+
+            // 没有验证器时no-cache直接重新获取
+            Assert.assertEquals("fresh2", get(transport, HttpRequest.get(base + "/fresh").header("Cache-Control", "no-cache")));
+            Assert.assertEquals(2, requests.get());
+            Assert.assertEquals("fresh2", get(transport, HttpRequest.get(base + "/fresh")));
+            Assert.assertEquals(2, requests.get());
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * 过期的缓存带If-None-Match验证，304时返回缓存的主体，ETag变化时返回并缓存新主体
+     */
+    @Test
+    public void revalidateWithETag() throws Exception {
+        start();
+        final HttpCache cache = HttpCache.create();
+        final CachingHttpTransport transport = new CachingHttpTransport(cache);
+        try {
+            Assert.assertEquals("v1", get(transport, HttpRequest.get(base + "/validated")));
+            Assert.assertEquals("v1", get(transport, HttpRequest.get(base + "/validated")));
+            Assert.assertEquals(1, cache.getRevalidatedCount());
+
+            version = "v2";
+            Assert.assertEquals("v2", get(transport, HttpRequest.get(base + "/validated")));
+            Assert.assertEquals("v2", get(transport, HttpRequest.get(base + "/validated")));
+            Assert.assertEquals(2, cache.getRevalidatedCount());
+            Assert.assertEquals(0, cache.getHitCount());
+            Assert.assertEquals(2, cache.getMissCount());
+
+            logger.debug("Conditions sent: {}", conditions);
+            Assert.assertEquals("null", conditions.get(0));
+            Assert.assertEquals("\"v1\"", conditions.get(1));
+            Assert.assertEquals("\"v1\"", conditions.get(2));
+            Assert.assertEquals("\"v2\"", conditions.get(3));
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Vary列出的请求头不同时不使用缓存，新响应替换旧的缓存
+     */
+    @Test
+    public void varyByRequestHeader() throws Exception {
+        start();
+        final HttpCache cache = HttpCache.create();
+        final CachingHttpTransport transport = new CachingHttpTransport(cache);
+        try {
+            Assert.assertEquals("en", get(transport, HttpRequest.get(base + "/vary").header("Accept-Language", "en")));
+            Assert.assertEquals("en", get(transport, HttpRequest.get(base + "/vary").header("Accept-Language", "en")));
+            Assert.assertEquals(1, requests.get());
+
+            Assert.assertEquals("fr", get(transport, HttpRequest.get(base + "/vary").header("Accept-Language", "fr")));
+            Assert.assertEquals(2, requests.get());
+            Assert.assertEquals("fr", get(transport, HttpRequest.get(base + "/vary").header("Accept-Language", "fr")));
+            Assert.assertEquals(2, requests.get());
+
+            Assert.assertEquals("en", get(transport, HttpRequest.get(base + "/vary").header("Accept-Language", "en")));
+            Assert.assertEquals(3, requests.get());
+            Assert.assertEquals(2, cache.getHitCount());
+        } finally {
+            stop();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.lang.ConsistentHash;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一致性Hash有界负载（测试）
+* @ClassName:ConsistentHashTest
+* @Description: 负载通过占用时的对象归还，节点移除或重新设置权重后总负载不漂移；热点key按上限分散
+* @author: 冷水(Toby)
+* @date: 26-10-19 16:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class ConsistentHashTest {
+    private static final Logger logger = LoggerFactory.getLogger(ConsistentHashTest.class);
+
+    private static ConsistentHash<String> newHash(double epsilon) {
+        return new ConsistentHash<String>(16, Arrays.asList("a", "b", "c")).setLoadBound(epsilon);
+    }
+
+    /**
+     * 节点移除后归还，总负载不会多减也不会残留
+     */
+    @Test
+    public void releaseAfterRemove() {
+        final ConsistentHash<String> hash = newHash(0.25);
+        final ConsistentHash.Lease<String> lease = hash.acquire("key");
+        final ConsistentHash.Lease<String> other = hash.acquire("other");
+        hash.remove(lease.getNode());
+        lease.release();
+        if (false == other.getNode().equals(lease.getNode())) {
+            Assert.assertEquals(1, hash.getTotalLoad());
+        }
+        other.release();
+        Assert.assertEquals(0, hash.getTotalLoad());
+    }
+
+    /**
+     * 重新设置权重后归还到旧的负载对象，不影响新对象的计数
+     */
+    @Test
+    public void releaseAfterReweight() {
+        final ConsistentHash<String> hash = newHash(0.25);
+        final ConsistentHash.Lease<String> lease = hash.acquire("key");
+        final String node = lease.getNode();
+        hash.add(node, 2);
+        Assert.assertEquals(2, hash.getWeight(node));
+        Assert.assertEquals(0, hash.getTotalLoad());
+
+        final List<ConsistentHash.Lease<String>> held = new ArrayList<ConsistentHash.Lease<String>>();
+        for (int i = 0; i < 5; i++) {
+            held.add(hash.acquire("key"));
+        }
+        lease.release();
+        Assert.assertEquals(5, hash.getTotalLoad());
+        for (ConsistentHash.Lease<String> h : held) {
+            h.release();
+        }
+        Assert.assertEquals(0, hash.getTotalLoad());
+        Assert.assertEquals(0, hash.getLoad(node));
+    }
+
+    /**
+     * 重复归还无影响
+     */
+    @Test
+    public void releaseTwice() {
+        final ConsistentHash<String> hash = newHash(0.25);
+        final ConsistentHash.Lease<String> first = hash.acquire("key");
+        final ConsistentHash.Lease<String> second = hash.acquire("key");
+        first.release();
+        first.release();
+        Assert.assertEquals(1, hash.getTotalLoad());
+        second.release();
+        Assert.assertEquals(0, hash.getTotalLoad());
+    }
+
+    /**
+     * 同一个热点key的负载按(1+ε)倍平均值的上限分散到各节点
+     */
+    @Test
+    public void hotKeyIsSpread() {
+        final ConsistentHash<String> hash = newHash(0.25);
+        final List<ConsistentHash.Lease<String>> held = new ArrayList<ConsistentHash.Lease<String>>();
+        for (int i = 0; i < 30; i++) {
+            held.add(hash.acquire("hot"));
+        }
+        for (String node : Arrays.asList("a", "b", "c")) {
+            logger.debug("Load of {}: {}", node, hash.getLoad(node));
+            Assert.assertTrue(hash.getLoad(node) <= (long) Math.ceil(30 / 3.0 * 1.25));
+        }
+        for (ConsistentHash.Lease<String> lease : held) {
+            lease.release();
+        }
+        Assert.assertEquals(0, hash.getTotalLoad());
+    }
+
+    /**
+     * 未设置有界负载时与get选择相同的节点
+     */
+    @Test
+    public void unboundedMatchesGet() {
+        final ConsistentHash<String> hash = newHash(0);
+        for (int i = 0; i < 100; i++) {
+            final ConsistentHash.Lease<String> lease = hash.acquire("key" + i);
+            Assert.assertEquals(hash.get("key" + i), lease.getNode());
+            lease.release();
+        }
+        Assert.assertEquals(0, hash.getTotalLoad());
+    }
+}
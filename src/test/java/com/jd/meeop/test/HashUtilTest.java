@@ -0,0 +1,274 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.util.HashUtil;
+import com.jd.meeop.util.hash.Murmur3;
+import com.jd.meeop.util.hash.StreamingHasher;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Hash算法工具类（测试）
+* @ClassName:HashUtilTest
+* @Description: MurmurHash3 x86_32、x64_128和xxHash64与参考实现的测试向量一致，覆盖不同种子和0~15字节的尾部长度；
+* ByteBuffer、CharSequence和流式计算与byte[]结果一致
+* @author: 冷水(Toby)
+* @date: 26-10-22 18:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class HashUtilTest {
+    private static final Logger logger = LoggerFactory.getLogger(HashUtilTest.class);
+
+    private static final int SEED = 0x9747b28c;
+    private static final long PRIME32 = 2654435761L;
+
+    /**
+     * xxHash自带的自检缓冲区：byteGen从PRIME32开始，每个字节取最高8位后乘以11400714785074694797
+     */
+    private static final byte[] SANITY = new byte[256];
+
+    static {
+        long byteGen = PRIME32;
+        for (int i = 0; i < SANITY.length; i++) {
+            SANITY[i] = (byte) (byteGen >>> 56);
+            byteGen *= 0x9E3779B185EBCA8DL;
+        }
+    }
+
+    // 以下各表由参考C实现（MurmurHash3.cpp、xxhash.c）的逐行移植生成，移植先通过了各*PublishedVectors中的全部向量
+
+    /** MurmurHash3_x86_32(SANITY[0, len), 0)，len为0~15 */
+    private static final int[] MURMUR32_SEED_0 = {
+            0x00000000, 0x514E28B7, 0x78BF4EBF, 0x80A3F0AB,
+            0xEE9BDD07, 0xAF8D7EE6, 0x2D6E919E, 0x1CBD1F36,
+            0x5E6CCC3A, 0xBD4E58D7, 0x81AC0D5E, 0xF351E735,
+            0xB4BE83CF, 0xA0CC595E, 0x4337F67B, 0x4B39F226
+    };
+
+    /** MurmurHash3_x86_32(SANITY[0, len), 0x9747b28c) */
+    private static final int[] MURMUR32_SEED_9747B28C = {
+            0xEBB6C228, 0x2933BEA8, 0x3E99DA46, 0x38EB3726,
+            0x0F3ADB21, 0xA5D3CB2D, 0xCE66DAE9, 0x36070F6A,
+            0xA547AABA, 0xC66BF0CC, 0x82DE7F85, 0xB6D04E56,
+            0x7D6DBD2E, 0x3FB75234, 0xF46F2C8F, 0x43742E42
+    };
+
+    /** MurmurHash3_x64_128(SANITY[0, len), 0)，{h1, h2} */
+    private static final long[][] MURMUR128_SEED_0 = {
+            {0x0000000000000000L, 0x0000000000000000L},
+            {0x4610ABE56EFF5CB5L, 0x51622DAA78F83583L},
+            {0x3D027FFAC595307BL, 0x8923C78EF307D74AL},
+            {0xFE1769EE35054037L, 0xC8D249920325E07EL},
+            {0x060C8FF476EFA5F6L, 0xF1821682A97D42A9L},
+            {0x595CF3FEC52FD1E4L, 0xFFA9B992D2DDE39CL},
+            {0xCD8C68C63DCDF2C4L, 0xD1961B5F36FFDB57L},
+            {0x6E967CB79CBE23A9L, 0xB82A2373910832AAL},
+            {0x434F03C972B92C7AL, 0xD9EFB1EE5CB1E393L},
+            {0x18C5826188D1634DL, 0x2D07F09D70590766L},
+            {0x3E54FEE4489DC274L, 0x7826E9A2EFF1C5B4L},
+            {0x531959F9F2BE28BEL, 0x5CFB751D666B1573L},
+            {0xAD1697F4DD3453C8L, 0xFA3B1264A7478035L},
+            {0x54EC3DFBDE1EF6ADL, 0xA5FEA8E2C1484283L},
+            {0xA05246922B4A7AFBL, 0xC3036EF59D943CC4L},
+            {0xE9B5F2BA861E79E6L, 0x4C87BC3312C13986L}
+    };
+
+    /** MurmurHash3_x64_128(SANITY[0, len), 0x9747b28c)，种子按无符号32位扩展 */
+    private static final long[][] MURMUR128_SEED_9747B28C = {
+            {0x392B208A1DAABBB3L, 0x93B0608FE302957AL},
+            {0x02C9F69A7DD730C0L, 0xF67103344E6F94C8L},
+            {0x6287C3BD9F9BB294L, 0x768234B00C35D2CBL},
+            {0x484C05E3F4C41059L, 0xA7980E97BDA00C46L},
+            {0x5F9D4215255ED13FL, 0xDD2E6EE7065D1DBDL},
+            {0x1BFE6137F68C1621L, 0xED2B01ACE8461873L},
+            {0x83B4A03CF2DDE093L, 0x666FFC4B0B0D794FL},
+            {0x1BFC35FC810B60C8L, 0x5389D1D3E85548AFL},
+            {0xDF26CB37486519E3L, 0x463CDAC22C0BD139L},
+            {0x0B5B1DC8307074A8L, 0xD121B261BB582E11L},
+            {0x4812406387D9571FL, 0x4A8FF7986A29F2FFL},
+            {0x4C7595A9F827FF05L, 0x473C7D09AB1CBEDEL},
+            {0x452071767B2E41AEL, 0x5084EA9955DDEB78L},
+            {0x139EB2B958B5D810L, 0x663B34CA734BF713L},
+            {0x4F2B1996C750566FL, 0x4C8EFB170B30D306L},
+            {0x7D885811B5933B2FL, 0x9487093003973677L}
+    };
+
+    /** XXH64(SANITY[0, len), 0) */
+    private static final long[] XXH64_SEED_0 = {
+            0xEF46DB3751D8E999L, 0xE934A84ADB052768L, 0x5D48CD60A77E23FFL, 0xFF7E1959CB50794AL,
+            0x9136A0DCA57457EEL, 0x9B046FB1397F09A5L, 0xC72565B7154268A8L, 0x6C83909A9F01ED25L,
+            0xCDBCF538E71D1348L, 0x554B1AE991EDA6B6L, 0x5D00E7351392EA84L, 0x6345D5746F35DA70L,
+            0x0723BF50086EAD9AL, 0xC2E5013E3C40BCF7L, 0x8282DCC4994E35C8L, 0x180719316D622D84L
+    };
+
+    /** XXH64(SANITY[0, len), PRIME32) */
+    private static final long[] XXH64_SEED_PRIME32 = {
+            0xAC75FDA2929B17EFL, 0x5014607643A9B4C3L, 0x9E93152232D54A39L, 0xAA8584E83660F7D1L,
+            0xCAAB286BD8E9FDB5L, 0x2AF5249930F984ECL, 0xCA4C6723580E8EF6L, 0xF98D03B1AD6F9293L,
+            0xFE0C047A5353CDACL, 0x7908265248F6D73FL, 0x2A8AE16B86CD2F12L, 0xEAA08A8C8BE3CCCFL,
+            0x8252819F4E506951L, 0x4DF437A291CB1039L, 0xC3BD6BF63DEB6DF0L, 0xD61105C20E91F99FL
+    };
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(Charset.forName("US-ASCII"));
+    }
+
+    private static int murmur32(byte[] data, int seed) {
+        return HashUtil.murmur32(data, 0, data.length, seed);
+    }
+
+    /**
+     * SMHasher验证用的常见向量
+     */
+    @Test
+    public void murmur32PublishedVectors() {
+        Assert.assertEquals(0, murmur32(new byte[0], 0));
+        Assert.assertEquals(0x514E28B7, murmur32(new byte[0], 1));
+        Assert.assertEquals(0x81F16F39, murmur32(new byte[0], 0xffffffff));
+        Assert.assertEquals(0x2362F9DE, murmur32(new byte[4], 0));
+        Assert.assertEquals(0x5A97808A, murmur32(ascii("aaaa"), SEED));
+        Assert.assertEquals(0xB3DD93FA, murmur32(ascii("abc"), 0));
+        Assert.assertEquals(0x24884CBA, murmur32(ascii("Hello, world!"), SEED));
+        Assert.assertEquals(0x2FA826CD, murmur32(ascii("The quick brown fox jumps over the lazy dog"), SEED));
+    }
+
+    @Test
+    public void murmur32EveryTail() {
+        for (int len = 0; len < 16; len++) {
+            Assert.assertEquals("len " + len, MURMUR32_SEED_0[len], HashUtil.murmur32(SANITY, 0, len, 0));
+            Assert.assertEquals("len " + len, MURMUR32_SEED_9747B28C[len], HashUtil.murmur32(SANITY, 0, len, SEED));
+            Assert.assertEquals("len " + len, MURMUR32_SEED_9747B28C[len], HashUtil.murmur32(heapBuffer(len), SEED));
+            Assert.assertEquals("len " + len, MURMUR32_SEED_9747B28C[len], HashUtil.murmur32(directBuffer(len), SEED));
+        }
+    }
+
+    @Test
+    public void murmur128PublishedVectors() {
+        final byte[] fox = ascii("The quick brown fox jumps over the lazy dog");
+        final long[] hash = HashUtil.murmur128(fox, 0, fox.length, 0);
+        Assert.assertEquals(0xe34bbc7bbc071b6cL, hash[0]);
+        Assert.assertEquals(0x7a433ca9c49a9347L, hash[1]);
+    }
+
+    @Test
+    public void murmur128EveryTail() {
+        for (int len = 0; len < 16; len++) {
+            assertHash128(len, MURMUR128_SEED_0[len], HashUtil.murmur128(SANITY, 0, len, 0));
+            assertHash128(len, MURMUR128_SEED_9747B28C[len], HashUtil.murmur128(SANITY, 0, len, SEED));
+            assertHash128(len, MURMUR128_SEED_9747B28C[len], HashUtil.murmur128(heapBuffer(len), SEED));
+            assertHash128(len, MURMUR128_SEED_9747B28C[len], HashUtil.murmur128(directBuffer(len), SEED));
+
+            final Murmur3.Hasher hasher = HashUtil.newMurmur128Hasher(SEED);
+            for (int i = 0; i < len; i++) {
+                hasher.update(SANITY[i]);
+            }
+            assertHash128(len, MURMUR128_SEED_9747B28C[len], hasher.hash128());
+        }
+    }
+
+    /**
+     * xxHash自检用例（长度0、1、4、14、222）及python-xxhash文档中的向量
+     */
+    @Test
+    public void xxHash64PublishedVectors() {
+        Assert.assertEquals(0xEF46DB3751D8E999L, HashUtil.xxHash64(SANITY, 0, 0, 0));
+        Assert.assertEquals(0xAC75FDA2929B17EFL, HashUtil.xxHash64(SANITY, 0, 0, PRIME32));
+        Assert.assertEquals(0xE934A84ADB052768L, HashUtil.xxHash64(SANITY, 0, 1, 0));
+        Assert.assertEquals(0x5014607643A9B4C3L, HashUtil.xxHash64(SANITY, 0, 1, PRIME32));
+        Assert.assertEquals(0x9136A0DCA57457EEL, HashUtil.xxHash64(SANITY, 0, 4, 0));
+        Assert.assertEquals(0x8282DCC4994E35C8L, HashUtil.xxHash64(SANITY, 0, 14, 0));
+        Assert.assertEquals(0xC3BD6BF63DEB6DF0L, HashUtil.xxHash64(SANITY, 0, 14, PRIME32));
+        Assert.assertEquals(0xB641AE8CB691C174L, HashUtil.xxHash64(SANITY, 0, 222, 0));
+        Assert.assertEquals(0x20CB8AB7AE10C14AL, HashUtil.xxHash64(SANITY, 0, 222, PRIME32));
+
+        final byte[] xxhash = ascii("xxhash");
+        Assert.assertEquals(0x32dd38952c4bc720L, HashUtil.xxHash64(xxhash, 0, xxhash.length, 0));
+        Assert.assertEquals(0xb559b98d844e0635L, HashUtil.xxHash64(xxhash, 0, xxhash.length, 20141025));
+        final byte[] spam = ascii("Nobody inspects the spammish repetition");
+        Assert.assertEquals(0xfbcea83c8a378bf1L, HashUtil.xxHash64(spam, 0, spam.length, 0));
+    }
+
+    @Test
+    public void xxHash64EveryTail() {
+        for (int len = 0; len < 16; len++) {
+            Assert.assertEquals("len " + len, XXH64_SEED_0[len], HashUtil.xxHash64(SANITY, 0, len, 0));
+            Assert.assertEquals("len " + len, XXH64_SEED_PRIME32[len], HashUtil.xxHash64(SANITY, 0, len, PRIME32));
+            Assert.assertEquals("len " + len, XXH64_SEED_PRIME32[len], HashUtil.xxHash64(heapBuffer(len), PRIME32));
+            Assert.assertEquals("len " + len, XXH64_SEED_PRIME32[len], HashUtil.xxHash64(directBuffer(len), PRIME32));
+
+            final StreamingHasher hasher = HashUtil.newXxHash64Hasher(PRIME32);
+            for (int i = 0; i < len; i++) {
+                hasher.update(SANITY[i]);
+            }
+            Assert.assertEquals("len " + len, XXH64_SEED_PRIME32[len], hasher.hash64());
+        }
+        // 跨越32字节条带的流式输入
+        final StreamingHasher hasher = HashUtil.newXxHash64Hasher(PRIME32);
+        hasher.update(SANITY, 0, 100).update(SANITY, 100, 122);
+        Assert.assertEquals(0x20CB8AB7AE10C14AL, hasher.hash64());
+    }
+
+    /**
+     * CharSequence按UTF-16LE计算，与对应的字节一致
+     */
+    @Test
+    public void charSequenceMatchesUtf16Le() {
+        final String text = "一致性Hash key-7";
+        for (int len = 0; len <= text.length(); len++) {
+            final String s = text.substring(0, len);
+            final byte[] bytes = s.getBytes(Charset.forName("UTF-16LE"));
+            Assert.assertEquals(murmur32(bytes, SEED), HashUtil.murmur32(s, SEED));
+            assertHash128(len, HashUtil.murmur128(bytes, 0, bytes.length, SEED), HashUtil.murmur128(s, SEED));
+            Assert.assertEquals(HashUtil.xxHash64(bytes, 0, bytes.length, PRIME32), HashUtil.xxHash64(s, PRIME32));
+        }
+        logger.debug("Checked {} prefixes", text.length() + 1);
+    }
+
+    private static void assertHash128(int len, long[] expected, long[] actual) {
+        Assert.assertEquals("h1 of len " + len, expected[0], actual[0]);
+        Assert.assertEquals("h2 of len " + len, expected[1], actual[1]);
+    }
+
+    /**
+     * @return 位置不为0的堆缓冲区，内容为SANITY的前len个字节
+     */
+    private static ByteBuffer heapBuffer(int len) {
+        final ByteBuffer buffer = ByteBuffer.allocate(len + 3);
+        buffer.position(3);
+        buffer.put(SANITY, 0, len);
+        buffer.position(3);
+        return buffer.slice();
+    }
+
+    /**
+     * @return 直接缓冲区，内容为SANITY的前len个字节
+     */
+    private static ByteBuffer directBuffer(int len) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(len + 5);
+        buffer.position(5);
+        buffer.put(SANITY, 0, len);
+        buffer.position(5);
+        return buffer;
+    }
+}
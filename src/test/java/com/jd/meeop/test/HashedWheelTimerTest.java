@@ -0,0 +1,108 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.util.thread.HashedWheelTimer;
+import com.jd.meeop.util.thread.Timeout;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 时间轮定时器（测试）
+* @ClassName:HashedWheelTimerTest
+* @Description: 执行器拒绝与停止时的行为
+* @author: 冷水(Toby)
+* @date: 26-10-21 10:00
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class HashedWheelTimerTest {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimerTest.class);
+
+    private static final Executor REJECTING = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            throw new RejectedExecutionException("rejected");
+        }
+    };
+
+    @Test
+    public void rejectedTaskRunsInTimerThread() throws InterruptedException {
+        final HashedWheelTimer timer = new HashedWheelTimer("reject-timer", 1, TimeUnit.MILLISECONDS, 8, REJECTING);
+        final CountDownLatch ran = new CountDownLatch(1);
+        final AtomicReference<String> thread = new AtomicReference<String>();
+        try {
+            final Timeout timeout = timer.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    thread.set(Thread.currentThread().getName());
+                    ran.countDown();
+                }
+            }, 5, TimeUnit.MILLISECONDS);
+            Assert.assertTrue("rejected task must still run", ran.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals("reject-timer", thread.get());
+            Assert.assertTrue(timeout.isExpired());
+            Assert.assertEquals(0, timer.pendingTimeouts());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void stopReturnsUnprocessedTimeouts() {
+        final HashedWheelTimer timer = new HashedWheelTimer("stop-timer");
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                Assert.fail("task must not run after stop");
+            }
+        };
+        final Timeout pending = timer.newTimeout(task, 1, TimeUnit.HOURS);
+        timer.newTimeout(task, 1, TimeUnit.HOURS).cancel();
+
+        final List<Timeout> unprocessed = timer.stop();
+        logger.info("unprocessed: {}", unprocessed);
+        Assert.assertEquals(1, unprocessed.size());
+        Assert.assertSame(pending, unprocessed.get(0));
+        Assert.assertFalse(pending.isExpired());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void newTimeoutAfterStop() {
+        final HashedWheelTimer timer = new HashedWheelTimer("stopped-timer");
+        timer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 1, TimeUnit.SECONDS);
+        timer.stop();
+        timer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.util.thread.KeyedSerialExecutor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按键串行的执行器（测试）
+* @ClassName:KeyedSerialExecutorTest
+* @Description: 执行器拒绝（已关闭）时在当前线程中按顺序执行，不递归
+* @author: 冷水(Toby)
+* @date: 26-10-21 12:00
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class KeyedSerialExecutorTest {
+    private static final Logger logger = LoggerFactory.getLogger(KeyedSerialExecutorTest.class);
+
+    @Test
+    public void shutdownExecutorDrainsInCallerWithoutRecursion() {
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        final KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+        final int count = KeyedSerialExecutor.MAX_TASKS_PER_RUN * 100;
+        final List<Integer> order = new ArrayList<Integer>(count);
+        final int[] depth = { Integer.MAX_VALUE, 0 };
+        final Thread caller = Thread.currentThread();
+
+        // 第一个任务执行时再提交其余任务，它们进入同一个队列，由第一个任务所在的线程继续执行
+        executor.execute("key", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i < count; i++) {
+                    final int index = i;
+                    executor.execute("key", new Runnable() {
+                        @Override
+                        public void run() {
+                            Assert.assertSame(caller, Thread.currentThread());
+                            final int stack = Thread.currentThread().getStackTrace().length;
+                            depth[0] = Math.min(depth[0], stack);
+                            depth[1] = Math.max(depth[1], stack);
+                            order.add(index);
+                        }
+                    });
+                }
+            }
+        });
+
+        Assert.assertEquals(count - 1, order.size());
+        for (int i = 0; i < order.size(); i++) {
+            Assert.assertEquals(i + 1, order.get(i).intValue());
+        }
+        logger.info("stack depth {} ~ {}", depth[0], depth[1]);
+        Assert.assertEquals("stack must not grow with each batch", depth[0], depth[1]);
+        Assert.assertEquals(0, executor.getActiveKeys());
+    }
+
+    @Test
+    public void keepsOrderPerKey() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+            final int keys = 8;
+            final int perKey = 1000;
+            final CountDownLatch done = new CountDownLatch(keys * perKey);
+            final int[] next = new int[keys];
+            final boolean[] ordered = { true };
+            for (int i = 0; i < perKey; i++) {
+                for (int k = 0; k < keys; k++) {
+                    final int key = k;
+                    final int index = i;
+                    executor.execute(key, new Runnable() {
+                        @Override
+                        public void run() {
+                            if (next[key] != index) {
+                                ordered[0] = false;
+                            }
+                            next[key] = index + 1;
+                            done.countDown();
+                        }
+                    });
+                }
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(ordered[0]);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.helper.LoadingCacheHelper;
+import com.jd.meeop.util.cache.Cache;
+import com.jd.meeop.util.cache.CacheBuilder;
+import com.jd.meeop.util.cache.CacheLoader;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自动加载的缓存辅助类（测试）
+* @ClassName:LoadingCacheHelperTest
+* @Description: 同一个key的并发未命中只加载一次；加载期间put或invalidate后，加载结果不写回缓存
+* @author: 冷水(Toby)
+* @date: 26-10-22 15:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class LoadingCacheHelperTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadingCacheHelperTest.class);
+
+    /** 阻塞到放行为止的加载器 */
+    private static final class BlockingLoader extends CacheLoader<String, String> {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String load(String key) throws Exception {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return "loaded:" + key;
+        }
+    }
+
+    private static Cache<String, String> newCache() {
+        return CacheBuilder.<String, String>create().setMaximumSize(100).build();
+    }
+
+    /**
+     * 并发未命中共享一次加载
+     */
+    @Test
+    public void singleFlight() throws Exception {
+        final BlockingLoader loader = new BlockingLoader();
+        final LoadingCacheHelper<String, String> helper = new LoadingCacheHelper<String, String>(newCache(), loader);
+        final ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return helper.get("k");
+                    }
+                }));
+            }
+            Assert.assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+            // 让其它调用方都进入等待
+            Thread.sleep(100);
+            loader.release.countDown();
+            for (Future<String> result : results) {
+                Assert.assertEquals("loaded:k", result.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, loader.loads.get());
+            Assert.assertEquals("loaded:k", helper.getCache().getIfPresent("k"));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    /**
+     * 加载期间invalidate，调用方拿到加载结果，但结果不写回缓存
+     */
+    @Test
+    public void invalidateDuringLoad() throws Exception {
+        final BlockingLoader loader = new BlockingLoader();
+        final LoadingCacheHelper<String, String> helper = new LoadingCacheHelper<String, String>(newCache(), loader);
+        final Future<String> result = startLoad(helper);
+        try {
+            Assert.assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+            helper.invalidate("k");
+            loader.release.countDown();
+            Assert.assertEquals("loaded:k", result.get(5, TimeUnit.SECONDS));
+            Assert.assertNull(helper.getCache().getIfPresent("k"));
+        } finally {
+            loader.release.countDown();
+        }
+    }
+
+    /**
+     * 加载期间put，加载结果不覆盖put的值
+     */
+    @Test
+    public void putDuringLoad() throws Exception {
+        final BlockingLoader loader = new BlockingLoader();
+        final LoadingCacheHelper<String, String> helper = new LoadingCacheHelper<String, String>(newCache(), loader);
+        final Future<String> result = startLoad(helper);
+        try {
+            Assert.assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+            helper.put("k", "put");
+            loader.release.countDown();
+            result.get(5, TimeUnit.SECONDS);
+            logger.debug("Cached after load: {}", helper.getCache().getIfPresent("k"));
+            Assert.assertEquals("put", helper.getCache().getIfPresent("k"));
+            // 作废的加载已移出，之后的读取直接命中
+            Assert.assertEquals("put", helper.get("k"));
+            Assert.assertEquals(1, loader.loads.get());
+        } finally {
+            loader.release.countDown();
+        }
+    }
+
+    private static Future<String> startLoad(final LoadingCacheHelper<String, String> helper) {
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            return caller.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return helper.get("k");
+                }
+            });
+        } finally {
+            caller.shutdown();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.util.cache.Cache;
+import com.jd.meeop.util.cache.CacheBuilder;
+import com.jd.meeop.util.cache.RemovalCause;
+import com.jd.meeop.util.cache.RemovalListener;
+import com.jd.meeop.util.cache.Weigher;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内缓存（测试）
+* @ClassName:LocalCacheTest
+* @Description: 按条目数和权重淘汰、频率准入、写入/访问过期及混合TTL下的过期清理
+* @author: 冷水(Toby)
+* @date: 26-10-18 11:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class LocalCacheTest {
+    private static final Logger logger = LoggerFactory.getLogger(LocalCacheTest.class);
+
+    /** 时间轮第一层的桶宽约1.07秒，等待超过一个桶宽保证走过到期的桶 */
+    private static final long WHEEL_TICK_MILLIS = 1300;
+
+    /**
+     * 条目数超过上限时淘汰
+     */
+    @Test
+    public void evictBySize() {
+        final AtomicInteger evicted = new AtomicInteger();
+        final Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>create()
+                .setMaximumSize(100)
+                .setRemovalListener(new RemovalListener<Integer, Integer>() {
+                    @Override
+                    public void onRemoval(Integer key, Integer value, RemovalCause cause) {
+                        if (cause == RemovalCause.SIZE) {
+                            evicted.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        cache.cleanUp();
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(100, cache.weightedSize());
+        Assert.assertEquals(900, evicted.get());
+    }
+
+    /**
+     * 总权重超过上限时淘汰，单个超过上限的条目不被保留
+     */
+    @Test
+    public void evictByWeight() {
+        final Cache<Integer, String> cache = CacheBuilder.<Integer, String>create()
+                .setMaximumWeight(100)
+                .setWeigher(new Weigher<Integer, String>() {
+                    @Override
+                    public int weigh(Integer key, String value) {
+                        return value.length();
+                    }
+                })
+                .build();
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, "0123456789");
+        }
+        cache.cleanUp();
+        Assert.assertTrue(cache.weightedSize() <= 100);
+        Assert.assertEquals(cache.size() * 10, cache.weightedSize());
+
+        final StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < 101; i++) {
+            huge.append('x');
+        }
+        cache.put(-1, huge.toString());
+        cache.cleanUp();
+        Assert.assertNull(cache.getIfPresent(-1));
+        Assert.assertTrue(cache.weightedSize() <= 100);
+    }
+
+    /**
+     * 频繁访问的条目不会被一次性的扫描流量冲掉
+     */
+    @Test
+    public void admitByFrequency() {
+        final Cache<String, Integer> cache = CacheBuilder.<String, Integer>create().setMaximumSize(100).build();
+        for (int i = 0; i < 50; i++) {
+            cache.put("hot" + i, i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.getIfPresent("hot" + i);
+            }
+            cache.cleanUp();
+        }
+        for (int i = 0; i < 5000; i++) {
+            cache.put("cold" + i, i);
+        }
+        int retained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (null != cache.getIfPresent("hot" + i)) {
+                retained++;
+            }
+        }
+        logger.debug("Retained {} of 50 hot entries after scan", retained);
+        Assert.assertTrue(retained >= 45);
+        Assert.assertTrue(cache.size() <= 100);
+    }
+
+    /**
+     * 混用不同TTL时，排在未过期条目之后的过期条目也会在维护中移除，不需要读取
+     */
+    @Test
+    public void expireMixedTtlWithoutReads() throws InterruptedException {
+        final AtomicInteger expired = new AtomicInteger();
+        final Cache<String, String> cache = CacheBuilder.<String, String>create()
+                .setRemovalListener(new RemovalListener<String, String>() {
+                    @Override
+                    public void onRemoval(String key, String value, RemovalCause cause) {
+                        if (cause == RemovalCause.EXPIRED) {
+                            expired.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+        for (int i = 0; i < 40; i++) {
+            cache.put("long" + i, "v", 1, TimeUnit.HOURS);
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.put("short" + i, "v", 50, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(WHEEL_TICK_MILLIS);
+        // 写入触发维护
+        cache.put("trigger", "v");
+        Assert.assertEquals(10, expired.get());
+        Assert.assertEquals(41, cache.size());
+    }
+
+    /**
+     * 写入后过期，读取时即视为不存在
+     */
+    @Test
+    public void expireAfterWrite() throws InterruptedException {
+        final Cache<String, String> cache = CacheBuilder.<String, String>create()
+                .setExpireAfterWrite(50, TimeUnit.MILLISECONDS)
+                .build();
+        cache.put("k", "v");
+        Assert.assertEquals("v", cache.getIfPresent("k"));
+        Thread.sleep(100);
+        Assert.assertNull(cache.getIfPresent("k"));
+    }
+
+    /**
+     * 访问推迟过期时间，停止访问后过期并在维护中移除
+     */
+    @Test
+    public void expireAfterAccess() throws InterruptedException {
+        final Cache<String, String> cache = CacheBuilder.<String, String>create().build();
+        cache.put("k", "v", 0, 200, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(100);
+            Assert.assertEquals("v", cache.getIfPresent("k"));
+        }
+        Thread.sleep(WHEEL_TICK_MILLIS);
+        cache.put("trigger", "v");
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.getIfPresent("k"));
+    }
+
+    /**
+     * cleanUp全量清理过期条目
+     */
+    @Test
+    public void cleanUpRemovesAllExpired() throws InterruptedException {
+        final Cache<Integer, Integer> cache = CacheBuilder.<Integer, Integer>create().setMaximumSize(1000).build();
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i, i % 2 == 0 ? 20 : 3600000, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(50);
+        cache.cleanUp();
+        Assert.assertEquals(50, cache.size());
+    }
+}
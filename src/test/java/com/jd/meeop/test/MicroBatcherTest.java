@@ -0,0 +1,149 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jd.meeop.util.thread.BatchConsumer;
+import com.jd.meeop.util.thread.HashedWheelTimer;
+import com.jd.meeop.util.thread.MicroBatcher;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微批处理器（测试）
+* @ClassName:MicroBatcherTest
+* @Description: 定时器不可用、执行器拒绝、关闭时批次不滞留，许可全部归还
+* @author: 冷水(Toby)
+* @date: 26-10-21 11:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class MicroBatcherTest {
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcherTest.class);
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /** 返回每批的元素数 */
+    private static final BatchConsumer<String, Integer> SIZE = new BatchConsumer<String, Integer>() {
+        @Override
+        public List<Integer> process(List<String> batch) {
+            final List<Integer> results = new ArrayList<Integer>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                results.add(batch.size());
+            }
+            return results;
+        }
+    };
+
+    @Test
+    public void stoppedTimerFlushesOnCaller() throws Exception {
+        final HashedWheelTimer timer = new HashedWheelTimer("batch-stopped-timer");
+        timer.stop();
+        final MicroBatcher<String, Integer> batcher = new MicroBatcher<String, Integer>("stopped", SIZE, 10, 1,
+                TimeUnit.HOURS, 2, DIRECT, timer);
+        final ListenableFuture<Integer> future = batcher.submit("a");
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(Integer.valueOf(1), future.get());
+        Assert.assertEquals(0, batcher.getOutstandingItems());
+    }
+
+    @Test
+    public void lingeringBatchFlushedByNextSubmit() throws Exception {
+        // 刻度为1小时，等待时间的定时任务在测试期间不会执行
+        final HashedWheelTimer timer = new HashedWheelTimer("batch-slow-timer", 1, TimeUnit.HOURS, 8, null);
+        try {
+            final MicroBatcher<String, Integer> batcher = new MicroBatcher<String, Integer>("lingering", SIZE, 10, 10,
+                    TimeUnit.MILLISECONDS, 2, DIRECT, timer);
+            final ListenableFuture<Integer> first = batcher.submit("a");
+            Thread.sleep(30);
+            Assert.assertFalse(first.isDone());
+            final ListenableFuture<Integer> second = batcher.submit("b");
+            Assert.assertTrue(first.isDone());
+            Assert.assertEquals(Integer.valueOf(1), first.get());
+            Assert.assertFalse(second.isDone());
+            Assert.assertEquals(1, batcher.getOutstandingItems());
+            batcher.close();
+            Assert.assertEquals(Integer.valueOf(1), second.get());
+            Assert.assertEquals(0, batcher.getOutstandingItems());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void rejectedBatchFailsAndReleasesPermits() throws Exception {
+        final HashedWheelTimer timer = new HashedWheelTimer("batch-reject-timer");
+        try {
+            final MicroBatcher<String, Integer> batcher = new MicroBatcher<String, Integer>("rejected", SIZE, 2, 1,
+                    TimeUnit.HOURS, 1, new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            throw new RejectedExecutionException("shutdown");
+                        }
+                    }, timer);
+            final ListenableFuture<Integer> first = batcher.submit("a");
+            final ListenableFuture<Integer> second = batcher.submit("b");
+            assertRejected(first);
+            assertRejected(second);
+            Assert.assertEquals(0, batcher.getOutstandingItems());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static void assertRejected(ListenableFuture<Integer> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            Assert.fail("batch must fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void submitAfterClose() {
+        final HashedWheelTimer timer = new HashedWheelTimer("batch-close-timer");
+        try {
+            final MicroBatcher<String, Integer> batcher = new MicroBatcher<String, Integer>("closed", SIZE, 10, 1,
+                    TimeUnit.HOURS, 1, DIRECT, timer);
+            batcher.close();
+            try {
+                batcher.submit("a");
+                Assert.fail("closed batcher must reject");
+            } catch (IllegalStateException e) {
+                logger.info(e.getMessage());
+            }
+            Assert.assertEquals(0, batcher.getOutstandingItems());
+        } finally {
+            timer.stop();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.util.http.HttpConnectionPool;
+import com.jd.meeop.util.http.HttpRequest;
+import com.jd.meeop.util.http.HttpResponse;
+import com.jd.meeop.util.http.PooledHttpTransport;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于连接池的传输层（测试）
+* @ClassName:PooledHttpTransportTest
+* @Description: 在本地ServerSocket上验证长连接复用、每路由连接数上限、空闲连接清理、
+* 复用连接已被服务端关闭时幂等请求的重试，以及关闭未读完的主体时读掉或关闭连接
+* @author: 冷水(Toby)
+* @date: 26-10-22 20:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class PooledHttpTransportTest {
+    private static final Logger logger = LoggerFactory.getLogger(PooledHttpTransportTest.class);
+
+    /** 小于传输层读掉上限（64KB）的主体 */
+    private static final int SMALL_BODY = 1000;
+    /** 超过传输层读掉上限的主体 */
+    private static final int LARGE_BODY = 512 * 1024;
+
+    private ServerSocket serverSocket;
+    private String base;
+    /** 服务端接受的连接数 */
+    private final AtomicInteger accepted = new AtomicInteger();
+    /** 服务端收到的请求数 */
+    private final AtomicInteger requests = new AtomicInteger();
+    /** 为true时服务端发送响应后直接关闭连接，且不发送Connection: close */
+    private volatile boolean closeAfterResponse;
+
+    private void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        base = "http://127.0.0.1:" + serverSocket.getLocalPort();
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (false == serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        accepted.incrementAndGet();
+                        final Thread handler = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        });
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void stop() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * 按HTTP/1.1长连接依次处理请求：/small和/large返回对应大小的主体，其它路径返回ok
+     */
+    private void serve(Socket socket) {
+        try {
+            final InputStream in = socket.getInputStream();
+            final OutputStream out = socket.getOutputStream();
+            for (;;) {
+                final String head = readHead(in);
+                if (null == head) {
+                    break;
+                }
+                requests.incrementAndGet();
+                final int contentLength = contentLength(head);
+                for (int i = 0; i < contentLength; i++) {
+                    in.read();
+                }
+                final String path = head.substring(head.indexOf(' ') + 1, head.indexOf(' ', head.indexOf(' ') + 1));
+                final byte[] body;
+                if (path.startsWith("/small")) {
+                    body = filled(SMALL_BODY);
+                } else if (path.startsWith("/large")) {
+                    body = filled(LARGE_BODY);
+                } else {
+                    body = "ok".getBytes("UTF-8");
+                }
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("UTF-8"));
+                out.write(body);
+                out.flush();
+                if (closeAfterResponse) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Server connection ended: {}", e.toString());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        final StringBuilder head = new StringBuilder();
+        for (;;) {
+            final int b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            head.append((char) b);
+            if (head.length() >= 4 && "\r\n\r\n".equals(head.substring(head.length() - 4))) {
+                return head.toString();
+            }
+        }
+    }
+
+    private static int contentLength(String head) {
+        for (String line : head.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                return Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] filled(int length) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) 'x');
+        return bytes;
+    }
+
+    private static String get(PooledHttpTransport transport, String url) throws IOException {
+        final HttpResponse response = HttpRequest.get(url).transport(transport).timeout(5000).execute();
+        try {
+            Assert.assertEquals(200, response.getStatus());
+            return new String(response.bodyBytes(), "UTF-8");
+        } finally {
+            response.close();
+        }
+    }
+
+    private static HttpResponse stream(PooledHttpTransport transport, String url) {
+        return HttpRequest.get(url).transport(transport).timeout(5000).stream(true).execute();
+    }
+
+    /**
+     * 顺序请求复用同一个长连接
+     */
+    @Test
+    public void keepAliveReuse() throws Exception {
+        start();
+        final HttpConnectionPool pool = HttpConnectionPool.create();
+        final PooledHttpTransport transport = new PooledHttpTransport(pool);
+        try {
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals("ok", get(transport, base + "/ok"));
+            }
+            Assert.assertEquals(1, accepted.get());
+            Assert.assertEquals(5, requests.get());
+            Assert.assertEquals(1, pool.getCreatedCount());
+            Assert.assertEquals(4, pool.getReusedCount());
+            Assert.assertEquals(0, pool.getLeasedCount());
+            Assert.assertEquals(1, pool.getIdleCount());
+        } finally {
+            pool.close();
+            stop();
+        }
+    }
+
+    /**
+     * 路由的连接数达到上限时等待，超时抛出异常；有连接归还后可以继续请求
+     */
+    @Test
+    public void maxPerRoute() throws Exception {
+        start();
+        final HttpConnectionPool pool = HttpConnectionPool.create().setMaxPerRoute(2).setWaitTimeout(200, TimeUnit.MILLISECONDS);
+        final PooledHttpTransport transport = new PooledHttpTransport(pool);
+        try {
+            // 流式响应未读完前一直占用连接
+            final HttpResponse first = stream(transport, base + "/small");
+            final HttpResponse second = stream(transport, base + "/small");
+            Assert.assertEquals(2, pool.getLeasedCount());
+            try {
+                stream(transport, base + "/small");
+                Assert.fail("third lease should time out");
+            } catch (HttpException e) {
+                logger.debug("Third lease failed as expected: {}", e.getMessage());
+            }
+            Assert.assertEquals(2, accepted.get());
+
+            first.close();
+            Assert.assertEquals("ok", get(transport, base + "/ok"));
+            second.close();
+            Assert.assertEquals(2, accepted.get());
+            Assert.assertEquals(0, pool.getLeasedCount());
+        } finally {
+            pool.close();
+            stop();
+        }
+    }
+
+    /**
+     * 空闲超时的连接被清理，之后的请求新建连接
+     */
+    @Test
+    public void evictIdle() throws Exception {
+        start();
+        final HttpConnectionPool pool = HttpConnectionPool.create().setIdleTimeout(100, TimeUnit.MILLISECONDS);
+        final PooledHttpTransport transport = new PooledHttpTransport(pool);
+        try {
+            Assert.assertEquals("ok", get(transport, base + "/ok"));
+            Assert.assertEquals(1, pool.getIdleCount());
+            Thread.sleep(200);
+            pool.evictIdle();
+            Assert.assertEquals(0, pool.getIdleCount());
+
+            Assert.assertEquals("ok", get(transport, base + "/ok"));
+            Assert.assertEquals(2, accepted.get());
+            Assert.assertEquals(2, pool.getCreatedCount());
+            Assert.assertEquals(0, pool.getReusedCount());
+        } finally {
+            pool.close();
+            stop();
+        }
+    }
+
+    /**
+     * 复用的连接已被服务端关闭：幂等请求换一个连接重试，POST不重试
+     */
+    @Test
+    public void retryIdempotentOnStaleConnection() throws Exception {
+        start();
+        closeAfterResponse = true;
+        // 不在复用前检查连接，模拟检查之后服务端才关闭的情况
+        final HttpConnectionPool pool = HttpConnectionPool.create().setValidateAfterInactivity(1, TimeUnit.HOURS);
+        final PooledHttpTransport transport = new PooledHttpTransport(pool);
+        try {
+            Assert.assertEquals("ok", get(transport, base + "/ok"));
+            Thread.sleep(100);
+            Assert.assertEquals("ok", get(transport, base + "/ok"));
+            Assert.assertEquals(2, requests.get());
+            Assert.assertEquals(2, pool.getCreatedCount());
+
+            Thread.sleep(100);
+            try {
+                final HttpResponse response = HttpRequest.post(base + "/ok").body("a=1").transport(transport).timeout(5000).execute();
+                response.close();
+                Assert.fail("POST on a stale connection should not be retried");
+            } catch (HttpException e) {
+                logger.debug("POST failed as expected: {}", e.getMessage());
+            }
+            Assert.assertEquals(2, requests.get());
+        } finally {
+            pool.close();
+            stop();
+        }
+    }
+
+    /**
+     * 关闭未读完的主体：剩余较少时读掉并保留连接，剩余较多时关闭连接
+     */
+    @Test
+    public void drainOrCloseUnreadBody() throws Exception {
+        start();
+        final HttpConnectionPool pool = HttpConnectionPool.create();
+        final PooledHttpTransport transport = new PooledHttpTransport(pool);
+        try {
+            HttpResponse response = stream(transport, base + "/small");
+            Assert.assertEquals('x', response.bodyStream().read());
+            response.close();
+            Assert.assertEquals(1, pool.getIdleCount());
+            Assert.assertEquals("ok", get(transport, base + "/ok"));
+            Assert.assertEquals(1, accepted.get());
+
+            response = stream(transport, base + "/large");
+            Assert.assertEquals('x', response.bodyStream().read());
+            response.close();
+            Assert.assertEquals(0, pool.getIdleCount());
+            Assert.assertEquals(0, pool.getLeasedCount());
+            Assert.assertEquals("ok", get(transport, base + "/ok"));
+            Assert.assertEquals(2, accepted.get());
+        } finally {
+            pool.close();
+            stop();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.exception.HttpException;
+import com.jd.meeop.util.http.RangeDownloader;
+import com.jd.meeop.util.io.StreamProgress;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分段并行下载（测试）
+* @ClassName:RangeDownloaderTest
+* @Description: 根据进度文件续传并带If-Range，远端文件变化时重新下载，执行器拒绝时在调用线程下载
+* @author: 冷水(Toby)
+* @date: 26-10-22 10:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class RangeDownloaderTest {
+    private static final Logger logger = LoggerFactory.getLogger(RangeDownloaderTest.class);
+
+    private static final int SIZE = 256 * 1024;
+    private static final int SEGMENTS = 4;
+
+    /** 总是拒绝的执行器 */
+    private static final Executor REJECTING = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            throw new RejectedExecutionException("rejected");
+        }
+    };
+
+    /** 收到的Range请求头，格式为"Range|If-Range" */
+    private final List<String> ranges = new CopyOnWriteArrayList<String>();
+    private volatile byte[] content;
+    private volatile String etag;
+    /** 从该位置开始的分段只返回一半数据后断开，小于0时正常返回 */
+    private volatile long brokenFrom = -1;
+    /** 不为null时在响应下一个探测请求后替换文件内容和ETag */
+    private volatile byte[] changedContent;
+    /** 分段请求并发处理，断开的分段不阻塞其它分段 */
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private String url;
+
+    private void start() throws IOException {
+        content = content('a');
+        etag = "\"a\"";
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final byte[] body = content;
+                final String tag = etag;
+                final String range = exchange.getRequestHeaders().getFirst("Range");
+                final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                ranges.add(range + "|" + ifRange);
+                exchange.getResponseHeaders().set("ETag", tag);
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                final OutputStream out = exchange.getResponseBody();
+                if (null == range || (null != ifRange && false == ifRange.equals(tag))) {
+                    exchange.sendResponseHeaders(200, body.length);
+                    out.write(body);
+                    exchange.close();
+                    return;
+                }
+                final String[] bounds = range.substring("bytes=".length()).split("-");
+                final int first = Integer.parseInt(bounds[0]);
+                final int last = Integer.parseInt(bounds[1]);
+                final int length = last - first + 1;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + body.length);
+                exchange.sendResponseHeaders(206, length);
+                if (length > 1 && brokenFrom >= 0 && first >= brokenFrom) {
+                    // 稍后断开，让前面的分段先完成并记录进度
+                    sleep(300);
+                    out.write(body, first, length / 2);
+                    out.flush();
+                } else {
+                    out.write(body, first, length);
+                }
+                exchange.close();
+                if (length == 1 && null != changedContent) {
+                    content = changedContent;
+                    etag = "\"b\"";
+                    changedContent = null;
+                }
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+    }
+
+    private void stop() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] content(char c) {
+        final byte[] bytes = new byte[SIZE];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (c + i % 7);
+        }
+        return bytes;
+    }
+
+    private RangeDownloader downloader() {
+        return RangeDownloader.create(url).setSegments(SEGMENTS).setMinSegmentSize(1024).setRetries(0).setTimeout(5000);
+    }
+
+    private static File tempFile() throws IOException {
+        final File file = File.createTempFile("range", ".bin");
+        file.delete();
+        return file;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            final byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 中断后根据进度文件只下载未完成的分段，分段请求带If-Range
+     */
+    @Test
+    public void resumeFromJournal() throws Exception {
+        start();
+        final File file = tempFile();
+        final File progressFile = new File(file.getPath() + RangeDownloader.PROGRESS_FILE_SUFFIX);
+        try {
+            brokenFrom = SIZE / 2;
+            try {
+                downloader().download(file, null);
+                Assert.fail("download should fail");
+            } catch (HttpException e) {
+                logger.debug("First download failed as expected: {}", e.getMessage());
+            }
+            Assert.assertTrue(progressFile.exists());
+
+            brokenFrom = -1;
+            ranges.clear();
+            Assert.assertEquals(SIZE, downloader().download(file, null));
+            Assert.assertTrue(Arrays.equals(content, read(file)));
+            Assert.assertFalse(progressFile.exists());
+
+            logger.debug("Resumed requests: {}", ranges);
+            for (String range : ranges) {
+                if (range.startsWith("bytes=0-0|")) {
+                    continue;
+                }
+                // 前两段已完成，续传的分段从后半部分开始并带If-Range
+                final long start = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+                Assert.assertTrue(range, start >= SIZE / 2);
+                Assert.assertTrue(range, range.endsWith("|" + etag));
+            }
+        } finally {
+            file.delete();
+            progressFile.delete();
+            stop();
+        }
+    }
+
+    /**
+     * 续传时远端文件已变（If-Range不匹配返回200），丢弃进度后下载新文件
+     */
+    @Test
+    public void restartWhenRemoteChanged() throws Exception {
+        start();
+        final File file = tempFile();
+        final File progressFile = new File(file.getPath() + RangeDownloader.PROGRESS_FILE_SUFFIX);
+        try {
+            brokenFrom = SIZE / 2;
+            try {
+                downloader().download(file, null);
+                Assert.fail("download should fail");
+            } catch (HttpException e) {
+                logger.debug("First download failed as expected: {}", e.getMessage());
+            }
+            Assert.assertTrue(progressFile.exists());
+
+            // 探测请求仍看到旧的ETag，之后的分段请求发现文件已变
+            brokenFrom = -1;
+            final byte[] changed = content('k');
+            changedContent = changed;
+
+            Assert.assertEquals(SIZE, downloader().download(file, null));
+            Assert.assertTrue(Arrays.equals(changed, read(file)));
+            Assert.assertFalse(progressFile.exists());
+        } finally {
+            file.delete();
+            progressFile.delete();
+            stop();
+        }
+    }
+
+    /**
+     * 执行器拒绝的分段在调用线程中下载，进度回调报告全部字节
+     */
+    @Test
+    public void rejectedSegmentsRunInCaller() throws Exception {
+        start();
+        final File file = tempFile();
+        final AtomicLong reported = new AtomicLong();
+        try {
+            final long size = downloader().setExecutor(REJECTING).download(file, new StreamProgress() {
+                @Override
+                public void start() {
+                }
+
+                @Override
+                public void progress(long progressSize) {
+                    reported.set(Math.max(reported.get(), progressSize));
+                }
+
+                @Override
+                public void finish() {
+                }
+            });
+            Assert.assertEquals(SIZE, size);
+            Assert.assertTrue(Arrays.equals(content, read(file)));
+            Assert.assertEquals(SIZE, reported.get());
+        } finally {
+            file.delete();
+            stop();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.util.queue.MpscArrayQueue;
+import com.jd.meeop.util.queue.SpscArrayQueue;
+import com.jd.meeop.util.queue.WaitStrategy;
+import com.jd.meeop.util.thread.RingBufferExecutor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 环形队列与单线程执行器（测试）
+* @ClassName:RingBufferExecutorTest
+* @Description: 中断标记的清除、关闭与立即关闭、队列的快照迭代
+* @author: 冷水(Toby)
+* @date: 26-10-21 12:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class RingBufferExecutorTest {
+    private static final Logger logger = LoggerFactory.getLogger(RingBufferExecutorTest.class);
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test
+    public void interruptFromTaskIsCleared() throws InterruptedException {
+        final RingBufferExecutor executor = new RingBufferExecutor("ring-interrupt", 16, WaitStrategy.PARKING);
+        try {
+            final AtomicLong consumerId = new AtomicLong();
+            final AtomicBoolean interrupted = new AtomicBoolean(true);
+            final CountDownLatch done = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    consumerId.set(Thread.currentThread().getId());
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                    done.countDown();
+                }
+            });
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assert.assertFalse("next task must not see the interrupt", interrupted.get());
+
+            // 最后一个任务再留下中断标记，空闲的消费线程必须挂起而不是空转
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Thread.sleep(50);
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads.isThreadCpuTimeSupported()) {
+                final long before = threads.getThreadCpuTime(consumerId.get());
+                Thread.sleep(300);
+                final long used = TimeUnit.NANOSECONDS.toMillis(threads.getThreadCpuTime(consumerId.get()) - before);
+                logger.info("idle consumer cpu: {}ms", used);
+                Assert.assertTrue("idle consumer used " + used + "ms cpu", used < 100);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shutdownRunsQueuedTasksAndRejectsNew() throws InterruptedException {
+        final RingBufferExecutor executor = new RingBufferExecutor("ring-shutdown", 16, WaitStrategy.SLEEPING);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(5);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.execute(NOOP);
+            Assert.fail("shut down executor must reject");
+        } catch (RejectedExecutionException e) {
+            logger.info(e.getMessage());
+        }
+        release.countDown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, ran.getCount());
+    }
+
+    @Test
+    public void shutdownNowInterruptsAndReturnsQueued() throws InterruptedException {
+        final RingBufferExecutor executor = new RingBufferExecutor("ring-shutdown-now", 16, WaitStrategy.PARKING);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            executor.execute(NOOP);
+        }
+        final List<Runnable> unexecuted = executor.shutdownNow();
+        Assert.assertTrue(interrupted.get());
+        Assert.assertEquals(3, unexecuted.size());
+        Assert.assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void queueIteratorIsSnapshot() {
+        for (Queue<Integer> queue : Arrays.<Queue<Integer>>asList(new MpscArrayQueue<Integer>(4), new SpscArrayQueue<Integer>(4))) {
+            for (int i = 1; i <= 4; i++) {
+                Assert.assertTrue(queue.offer(i));
+            }
+            queue.poll();
+            queue.poll();
+            queue.offer(5);
+
+            final Iterator<Integer> iterator = queue.iterator();
+            queue.poll();
+            queue.offer(6);
+            final List<Integer> seen = new ArrayList<Integer>();
+            while (iterator.hasNext()) {
+                seen.add(iterator.next());
+            }
+            Assert.assertEquals(Arrays.asList(3, 4, 5), seen);
+            Assert.assertTrue(queue.contains(6));
+            Assert.assertFalse(queue.contains(3));
+            Assert.assertEquals(Arrays.asList(4, 5, 6), Arrays.asList(queue.toArray()));
+            try {
+                queue.iterator().remove();
+                Assert.fail("snapshot iterator must not support remove");
+            } catch (UnsupportedOperationException e) {
+                logger.info("remove unsupported");
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.jd.meeop.lang.SyncFinisher;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 线程同步结束器（测试）
+* @ClassName:SyncFinisherTest
+* @Description: 线程池拒绝的任务在调用线程执行时不持有锁，超时取消不被阻塞
+* @author: 冷水(Toby)
+* @date: 26-10-20 10:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class SyncFinisherTest {
+    private static final Logger logger = LoggerFactory.getLogger(SyncFinisherTest.class);
+
+    /** 总是拒绝的执行器 */
+    private static final Executor REJECTING = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            throw new RejectedExecutionException("rejected");
+        }
+    };
+
+    /**
+     * 调用线程执行被拒绝的任务时，其它线程可以取消本轮
+     */
+    @Test
+    public void cancelWhileRunningInline() throws Exception {
+        final SyncFinisher finisher = new SyncFinisher(REJECTING);
+        final CountDownLatch running = new CountDownLatch(1);
+        final AtomicBoolean secondRan = new AtomicBoolean();
+        final SyncFinisher.Task<Object> first = finisher.addTask(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                running.countDown();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                return null;
+            }
+        });
+        finisher.addTask(new Callable<Object>() {
+            @Override
+            public Object call() {
+                secondRan.set(true);
+                return null;
+            }
+        });
+
+        final Thread starter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                finisher.start();
+            }
+        });
+        starter.start();
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        final long begin = System.nanoTime();
+        Assert.assertFalse(finisher.await(50, TimeUnit.MILLISECONDS));
+        starter.join(TimeUnit.SECONDS.toMillis(5));
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        logger.debug("Cancelled inline round in {}ms", elapsedMillis);
+
+        Assert.assertFalse(starter.isAlive());
+        Assert.assertTrue(elapsedMillis < 5000);
+        Assert.assertFalse(secondRan.get());
+        Assert.assertEquals(0, finisher.count());
+        Assert.assertTrue(first.isCancelled());
+    }
+
+    /**
+     * 全部在调用线程执行时，start返回即本轮结束
+     */
+    @Test
+    public void rejectedTasksRunInCaller() throws Exception {
+        final SyncFinisher finisher = new SyncFinisher(REJECTING);
+        final SyncFinisher.Task<String> task = finisher.addTask(new Callable<String>() {
+            @Override
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        });
+        finisher.start();
+        Assert.assertEquals(0, finisher.count());
+        finisher.await();
+        Assert.assertEquals(Thread.currentThread().getName(), task.getResult());
+        Assert.assertEquals(1, finisher.getStats().getSucceeded());
+    }
+}
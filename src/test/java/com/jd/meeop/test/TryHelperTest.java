@@ -0,0 +1,111 @@
+/*
+* Copyright 2004-2017 JD.com Group.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package com.jd.meeop.test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.jd.meeop.helper.TryHelper;
+import com.jd.meeop.util.retry.RetryBudget;
+import com.jd.meeop.util.retry.RetryPolicy;
+import com.jd.meeop.util.thread.HashedWheelTimer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步重试（测试）
+* @ClassName:TryHelperTest
+* @Description: 执行器拒绝、定时器停止时重试结果必须结束
+* @author: 冷水(Toby)
+* @date: 26-10-21 10:30
+* @mail: zhao.wang@aliyun.com
+* @version: v1.0
+* @since: JDK 1.7.0_79(Liunx)
+*/
+public class TryHelperTest {
+    private static final Logger logger = LoggerFactory.getLogger(TryHelperTest.class);
+
+    private static final Callable<String> FAILING = new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+            throw new IOException("down");
+        }
+    };
+
+    @Test
+    public void rejectedRetryGivesUp() throws Exception {
+        final AtomicInteger submits = new AtomicInteger();
+        // 首次尝试在调用线程中运行，之后的重试全部被拒绝
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (submits.incrementAndGet() > 1) {
+                    throw new RejectedExecutionException("saturated");
+                }
+                command.run();
+            }
+        };
+        final RetryPolicy policy = RetryPolicy.create().setMaxAttempts(5).setBudget(null)
+                .setBackoff(1, 1, TimeUnit.MILLISECONDS).setExecutor(executor);
+        final ListenableFuture<String> future = TryHelper.retryAsync(FAILING, policy);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("retry must fail");
+        } catch (ExecutionException e) {
+            logger.info("gave up: {}", e.getCause().toString());
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(2, submits.get());
+    }
+
+    @Test
+    public void stoppedTimerFailsRetry() throws Exception {
+        final HashedWheelTimer timer = new HashedWheelTimer("retry-test-timer");
+        timer.stop();
+        final RetryPolicy policy = RetryPolicy.create().setBudget(null).setTimer(timer).setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        final ListenableFuture<String> future = TryHelper.retryAsync(FAILING, policy);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("retry must fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budgetRejectsRefillBelowOneNanosecond() {
+        new RetryBudget(0.1, 1000001);
+    }
+
+    @Test
+    public void budgetAcceptsMaxRefill() {
+        final RetryBudget budget = new RetryBudget(0.1, 1000000, 10);
+        Assert.assertTrue(budget.tryWithdraw());
+    }
+}